@@ -0,0 +1,394 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.common.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A LRU cache of {@link File}s with maximum filesystem size, keeping an in-memory index of the cached files.
+ * <p>
+ * Contrary to {@link LRUFileCache}, the directory is never listed during normal operation: the sizes and access times
+ * of the files are kept in a concurrent in-memory index, and {@link #getFile} only updates this index. When the cache
+ * becomes bigger than its maximum size or count, the eviction of the least recently used files is done by a background
+ * thread, so it never blocks callers.
+ * <p>
+ * The index is rebuilt from the directory content at construction, and the access times are written back to the file
+ * modification times when the cache is closed, so that the LRU order survives a restart when the same directory is
+ * reused.
+ * <p>
+ * The cache keys are restricted to a subset of ASCII: letters, digits and dashes. Usually a MD5 or SHA1 hash is used.
+ *
+ * @since 9.2
+ */
+public class ConcurrentLRUFileCache implements FileCache {
+
+    private static final Log log = LogFactory.getLog(ConcurrentLRUFileCache.class);
+
+    private static final String TMP_PREFIX = "nxbin_";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    protected static class Entry {
+
+        protected final Path path;
+
+        protected final long size;
+
+        /** Last access time, in milliseconds. */
+        protected volatile long time;
+
+        /** Whether the access time has not been written to the filesystem yet. */
+        protected volatile boolean dirty;
+
+        public Entry(Path path, long size, long time) {
+            this.path = path;
+            this.size = size;
+            this.time = time;
+        }
+
+        protected void touch() {
+            time = System.currentTimeMillis();
+            dirty = true;
+        }
+    }
+
+    protected final Path dir;
+
+    protected final long maxSize;
+
+    protected final long maxCount;
+
+    protected final long minAgeMillis;
+
+    protected final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    protected final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    protected final ExecutorService evictor;
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     * <p>
+     * Files already present in the directory are part of the cache.
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     */
+    public ConcurrentLRUFileCache(File dir, long maxSize, long maxCount, long minAge) {
+        this.dir = dir.toPath();
+        this.maxSize = maxSize;
+        this.maxCount = maxCount;
+        this.minAgeMillis = minAge * 1000;
+        evictor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-FileCache-Evictor-" + dir.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadEntries();
+        scheduleEviction();
+    }
+
+    /**
+     * Rebuilds the in-memory index from the directory, removing leftover temporary files.
+     */
+    protected void loadEntries() {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path path : ds) {
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                String filename = path.getFileName().toString();
+                try {
+                    if (filename.startsWith(TMP_PREFIX) && filename.endsWith(TMP_SUFFIX)) {
+                        Files.delete(path);
+                        continue;
+                    }
+                    long fileSize = Files.size(path);
+                    long time = Files.getLastModifiedTime(path).toMillis();
+                    entries.put(filename, new Entry(path, fileSize, time));
+                    size.addAndGet(fileSize);
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
+            }
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of files evicted from the cache since its creation.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public void clear() {
+        for (String key : new ArrayList<>(entries.keySet())) {
+            entries.computeIfPresent(key, (k, entry) -> {
+                delete(entry);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Stops the background eviction and writes the access times to the filesystem.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        try {
+            evictor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.dirty) {
+                writeAccessTime(entry);
+            }
+        }
+    }
+
+    @Override
+    public File getTempFile() throws IOException {
+        return Files.createTempFile(dir, TMP_PREFIX, TMP_SUFFIX).toFile();
+    }
+
+    protected void checkKey(String key) throws IllegalArgumentException {
+        if (!LRUFileCache.SIMPLE_ASCII.matcher(key).matches() || ".".equals(key) || "..".equals(key)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in the directory cache.
+     */
+    @Override
+    public File putFile(String key, InputStream in) throws IOException {
+        File tmp;
+        try {
+            // check the cache
+            File file = getFile(key);
+            if (file != null) {
+                return file;
+            }
+
+            // store the stream in a temporary file
+            tmp = getTempFile();
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                IOUtils.copy(in, out);
+            }
+        } finally {
+            in.close();
+        }
+        return putFile(key, tmp);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in the directory cache.
+     */
+    @Override
+    public File putFile(String key, File file) throws IllegalArgumentException, IOException {
+        Path source = file.toPath();
+
+        // put file in cache
+        checkKey(key);
+        Path path = dir.resolve(key);
+        long[] added = new long[1];
+        try {
+            // filesystem changes for a key are done atomically with the index changes
+            entries.compute(key, (k, entry) -> {
+                if (entry != null) {
+                    // already in cache, remove unused tmp file
+                    try {
+                        Files.delete(source);
+                    } catch (IOException e) {
+                        log.error(e, e);
+                    }
+                    entry.touch();
+                    return entry;
+                }
+                try {
+                    Files.move(source, path, StandardCopyOption.REPLACE_EXISTING);
+                    long fileSize = Files.size(path);
+                    added[0] = fileSize;
+                    return new Entry(path, fileSize, System.currentTimeMillis());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (added[0] != 0 && (size.addAndGet(added[0]) > maxSize || entries.size() > maxCount)) {
+            scheduleEviction();
+        }
+        return path.toFile();
+    }
+
+    @Override
+    public File getFile(String key) {
+        checkKey(key);
+        // atomic with respect to eviction decisions
+        Entry entry = entries.computeIfPresent(key, (k, e) -> {
+            e.touch();
+            return e;
+        });
+        return entry == null ? null : entry.path.toFile();
+    }
+
+    /**
+     * Schedules a background eviction, unless one is already pending.
+     */
+    protected void scheduleEviction() {
+        if (evictionScheduled.compareAndSet(false, true)) {
+            try {
+                evictor.execute(this::evictQuietly);
+            } catch (RuntimeException e) { // RejectedExecutionException
+                evictionScheduled.set(false);
+            }
+        }
+    }
+
+    protected void evictQuietly() {
+        evictionScheduled.set(false);
+        try {
+            evict();
+        } catch (RuntimeException e) {
+            log.error("Failed to evict files from cache: " + dir, e);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries if they are old enough and the cache is bigger than its maximum size or
+     * count.
+     */
+    protected void evict() {
+        if (size.get() <= maxSize && entries.size() <= maxCount) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> list = new ArrayList<>(entries.entrySet());
+        // snapshot the times as they may change during the sort
+        long[] times = new long[list.size()];
+        List<Integer> order = new ArrayList<>(list.size());
+        for (int i = 0; i < times.length; i++) {
+            times[i] = list.get(i).getValue().time;
+            order.add(Integer.valueOf(i));
+        }
+        order.sort(Comparator.comparingLong(i -> times[i])); // least recently used first
+        long threshold = System.currentTimeMillis() - minAgeMillis;
+        for (Integer i : order) {
+            if (size.get() <= maxSize && entries.size() <= maxCount) {
+                break;
+            }
+            if (times[i] >= threshold) {
+                // all the next ones are too recent
+                break;
+            }
+            Map.Entry<String, Entry> es = list.get(i);
+            Entry entry = es.getValue();
+            entries.computeIfPresent(es.getKey(), (k, e) -> {
+                if (e != entry || e.time >= threshold) {
+                    // replaced or accessed since the snapshot
+                    return e;
+                }
+                delete(e);
+                evictions.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    protected void delete(Entry entry) {
+        size.addAndGet(-entry.size);
+        try {
+            Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    protected void writeAccessTime(Entry entry) {
+        try {
+            Files.setLastModifiedTime(entry.path, FileTime.fromMillis(entry.time));
+            entry.dirty = false;
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * Waits until the pending evictions are done. For tests.
+     */
+    protected void awaitEviction() throws InterruptedException, ExecutionException {
+        // the executor is single-threaded, so once a new task has run the previous ones are done
+        evictor.submit(() -> {
+        }).get();
+    }
+
+}
@@ -34,6 +34,7 @@ import java.io.InputStream;
  * then pass this file to {@link #putFile(String, File)}.
  *
  * @see LRUFileCache
+ * @see ConcurrentLRUFileCache
  */
 public interface FileCache {
 
@@ -93,4 +94,12 @@ public interface FileCache {
      */
     void clear();
 
+    /**
+     * Releases the resources held by the cache, like background threads. The cached files are not removed.
+     *
+     * @since 9.2
+     */
+    default void close() {
+    }
+
 }
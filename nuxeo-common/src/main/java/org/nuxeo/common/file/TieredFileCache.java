@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.common.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A {@link FileCache} made of two tiers: a small fast tier for small files (typically in a RAM-backed directory, to
+ * serve thumbnails and other small renditions), and a main tier for the other files.
+ * <p>
+ * Each file is cached in only one tier, depending on its size.
+ *
+ * @since 9.2
+ */
+public class TieredFileCache implements FileCache {
+
+    protected final FileCache fastTier;
+
+    protected final long fastTierMaxFileSize;
+
+    protected final FileCache mainTier;
+
+    /**
+     * Constructs a tiered cache.
+     *
+     * @param fastTier the fast tier
+     * @param fastTierMaxFileSize the maximum size of a file to be put in the fast tier (in bytes)
+     * @param mainTier the main tier
+     */
+    public TieredFileCache(FileCache fastTier, long fastTierMaxFileSize, FileCache mainTier) {
+        this.fastTier = fastTier;
+        this.fastTierMaxFileSize = fastTierMaxFileSize;
+        this.mainTier = mainTier;
+    }
+
+    public FileCache getFastTier() {
+        return fastTier;
+    }
+
+    public FileCache getMainTier() {
+        return mainTier;
+    }
+
+    @Override
+    public long getSize() {
+        return fastTier.getSize() + mainTier.getSize();
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        return fastTier.getNumberOfItems() + mainTier.getNumberOfItems();
+    }
+
+    @Override
+    public File getTempFile() throws IOException {
+        return mainTier.getTempFile();
+    }
+
+    @Override
+    public File putFile(String key, InputStream in) throws IOException {
+        File tmp;
+        try {
+            // check the cache
+            File file = getFile(key);
+            if (file != null) {
+                return file;
+            }
+
+            // store the stream in a temporary file
+            tmp = getTempFile();
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                IOUtils.copy(in, out);
+            }
+        } finally {
+            in.close();
+        }
+        return putFile(key, tmp);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The file is moved to the fast tier if it's small enough.
+     */
+    @Override
+    public File putFile(String key, File file) throws IOException {
+        if (file.length() <= fastTierMaxFileSize) {
+            return fastTier.putFile(key, file);
+        } else {
+            return mainTier.putFile(key, file);
+        }
+    }
+
+    @Override
+    public File getFile(String key) {
+        File file = fastTier.getFile(key);
+        if (file == null) {
+            file = mainTier.getFile(key);
+        }
+        return file;
+    }
+
+    @Override
+    public void clear() {
+        fastTier.clear();
+        mainTier.clear();
+    }
+
+    @Override
+    public void close() {
+        fastTier.close();
+        mainTier.close();
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.common.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConcurrentLRUFileCache {
+
+    public File dir;
+
+    public File dir2;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = newDir();
+        dir2 = newDir();
+    }
+
+    protected static File newDir() throws Exception {
+        File dir = File.createTempFile("nxtestlrufilecache.", "", new File(System.getProperty("java.io.tmpdir")));
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+        FileUtils.deleteQuietly(dir2);
+    }
+
+    public static long getDirSize(File dir) {
+        long size = 0;
+        for (File f : dir.listFiles()) {
+            size += f.length();
+        }
+        return size;
+    }
+
+    protected static void put(ConcurrentLRUFileCache cache, String key, int size) throws Exception {
+        Thread.sleep(10); // distinct access times
+        cache.putFile(key, new ByteArrayInputStream(new byte[size]));
+        cache.awaitEviction();
+    }
+
+    @Test
+    public void testConcurrentLRUFileCache() throws Exception {
+        ConcurrentLRUFileCache cache = new ConcurrentLRUFileCache(dir, 100, 9999, 0); // 100 bytes max
+        try {
+            assertEquals(0, cache.getSize());
+            assertEquals(0, cache.getNumberOfItems());
+
+            put(cache, "1", 30);
+            put(cache, "2", 30);
+            put(cache, "3", 30);
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(90, cache.getSize());
+            assertEquals(90, getDirSize(dir));
+
+            // access 1 so that 2 is the least recently used
+            Thread.sleep(10);
+            assertNotNull(cache.getFile("1"));
+
+            put(cache, "4", 30);
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(90, cache.getSize());
+            assertEquals(90, getDirSize(dir));
+            assertTrue(new File(dir, "1").exists());
+            assertFalse(new File(dir, "2").exists());
+            assertNull(cache.getFile("2"));
+            assertEquals(1, cache.getEvictionCount());
+
+            // store something bigger than the whole cache
+            put(cache, "5", 150);
+            assertFalse(new File(dir, "1").exists());
+            assertFalse(new File(dir, "3").exists());
+            assertFalse(new File(dir, "4").exists());
+            // 5 itself may be evicted as there is no minimum age
+            assertEquals(getDirSize(dir), cache.getSize());
+
+            // clear
+            cache.clear();
+            assertEquals(0, cache.getNumberOfItems());
+            assertEquals(0, cache.getSize());
+            assertEquals(0, getDirSize(dir));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentLRUFileCacheMinAge() throws Exception {
+        ConcurrentLRUFileCache cache = new ConcurrentLRUFileCache(dir, 10000, 2, 3600); // 2 files max
+        try {
+            put(cache, "1", 30);
+            put(cache, "2", 30);
+            put(cache, "3", 30);
+            // too recent to be evicted
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(0, cache.getEvictionCount());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentLRUFileCacheRestart() throws Exception {
+        ConcurrentLRUFileCache cache = new ConcurrentLRUFileCache(dir, 100, 9999, 0);
+        put(cache, "1", 30);
+        put(cache, "2", 30);
+        put(cache, "3", 30);
+        Thread.sleep(10);
+        assertNotNull(cache.getFile("1"));
+        cache.getTempFile(); // leftover temporary file
+        cache.close();
+
+        // reopen on the same directory
+        cache = new ConcurrentLRUFileCache(dir, 100, 9999, 0);
+        try {
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(90, cache.getSize());
+            assertEquals(90, getDirSize(dir));
+            // access time of 1 was persisted, 2 is the least recently used
+            put(cache, "4", 30);
+            assertTrue(new File(dir, "1").exists());
+            assertFalse(new File(dir, "2").exists());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testTieredFileCache() throws Exception {
+        ConcurrentLRUFileCache fastTier = new ConcurrentLRUFileCache(dir2, 100, 9999, 0);
+        ConcurrentLRUFileCache mainTier = new ConcurrentLRUFileCache(dir, 1000, 9999, 0);
+        FileCache cache = new TieredFileCache(fastTier, 50, mainTier);
+        try {
+            cache.putFile("small", new ByteArrayInputStream(new byte[40]));
+            cache.putFile("big", new ByteArrayInputStream(new byte[400]));
+            assertEquals(2, cache.getNumberOfItems());
+            assertEquals(440, cache.getSize());
+            assertTrue(new File(dir2, "small").exists());
+            assertTrue(new File(dir, "big").exists());
+            assertEquals(new File(dir2, "small"), cache.getFile("small"));
+            assertEquals(new File(dir, "big"), cache.getFile("big"));
+            assertNull(cache.getFile("other"));
+
+            cache.clear();
+            assertEquals(0, cache.getNumberOfItems());
+            assertEquals(0, getDirSize(dir) + getDirSize(dir2));
+        } finally {
+            cache.close();
+        }
+    }
+
+}
@@ -490,6 +490,19 @@ public interface CoreSession extends AutoCloseable {
      */
     DocumentModel[] createDocument(DocumentModel[] docModels);
 
+    /**
+     * Bulk creation of documents.
+     * <p>
+     * Each document is created as with {@link #createDocument(DocumentModel)}, with the same events, but the parents
+     * are resolved and checked once for the whole batch, the existing names are looked up with one query per parent,
+     * and the ids of the new documents are allocated in one block when the storage allows it.
+     *
+     * @param docModels the document models to use for initialization
+     * @return the created documents, in the same order
+     * @since 9.2
+     */
+    List<DocumentModel> createDocuments(List<DocumentModel> docModels);
+
     /**
      * Low-level import of documents, reserved for the administrator.
      * <p>
@@ -763,6 +776,19 @@ public interface CoreSession extends AutoCloseable {
      */
     DataModel getDataModel(DocumentRef docRef, Schema schema);
 
+    /**
+     * Retrieves the data models of a schema for several documents, reading them in bulk when possible.
+     * <p>
+     * For INTERNAL use by the core.
+     *
+     * @param docRefs the document references
+     * @param schema the schema
+     * @return the data models in the same order as the given docRefs, with {@code null} for the documents that cannot
+     *         be read
+     * @since 9.2
+     */
+    DataModel[] getDataModels(DocumentRef[] docRefs, Schema schema);
+
     // -------- Versioning API ---------------
 
     /**
@@ -1055,6 +1081,25 @@ public interface CoreSession extends AutoCloseable {
      */
     IterableQueryResult queryAndFetch(String query, String queryType, boolean distinctDocuments, Object... params);
 
+    /**
+     * Executes the given query and returns an iterable of maps containing the requested properties (which must be
+     * closed when done), streamed from the storage.
+     * <p>
+     * Only {@code fetchSize} results at a time are held in memory, which allows iterating over very large results. The
+     * result can only be iterated once, its {@link IterableQueryResult#size size} is unknown ({@code -1}) and it can
+     * only {@link IterableQueryResult#skipTo skip} forward. This must be called inside a transaction.
+     * <p>
+     * Storages that cannot stream results return them as with {@link #queryAndFetch(String, String, Object...)}.
+     *
+     * @param query the query to execute
+     * @param queryType the query type, usually "NXQL"
+     * @param fetchSize the number of results to fetch at a time
+     * @param params optional query-type-dependent parameters
+     * @return an {@link IterableQueryResult}, which <b>must</b> be closed after use
+     * @since 9.2
+     */
+    IterableQueryResult queryAndFetchStream(String query, String queryType, int fetchSize, Object... params);
+
     /**
      * Executes the given NXQL query and returns the result that matches the filter.
      *
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DataModel;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.schema.types.Schema;
+
+/**
+ * Group of document models read together, typically a page of query results, whose data models are lazily loaded
+ * together.
+ * <p>
+ * When a data model is lazily loaded for one document of the group, it is loaded at the same time for all the other
+ * documents of the group that have the same schema and don't have it loaded yet, so that the backend can fetch them in
+ * bulk.
+ *
+ * @since 9.2
+ */
+public class DataModelLoadGroup {
+
+    protected final List<DocumentModelImpl> docs;
+
+    protected DataModelLoadGroup(List<DocumentModelImpl> docs) {
+        this.docs = docs;
+    }
+
+    /**
+     * Groups the given document models for lazy loading.
+     *
+     * @param docModels the document models
+     */
+    public static void attach(List<DocumentModel> docModels) {
+        List<DocumentModelImpl> docs = new ArrayList<>(docModels.size());
+        for (DocumentModel docModel : docModels) {
+            if (docModel instanceof DocumentModelImpl) {
+                docs.add((DocumentModelImpl) docModel);
+            }
+        }
+        if (docs.size() < 2) {
+            return;
+        }
+        DataModelLoadGroup group = new DataModelLoadGroup(docs);
+        for (DocumentModelImpl doc : docs) {
+            doc.loadGroup = group;
+        }
+    }
+
+    /**
+     * Loads the data model of the given schema for the given document and for the other documents of the group that
+     * need it.
+     *
+     * @param doc the document for which the data model is requested
+     * @param schema the schema
+     * @return the data model for the given document
+     */
+    protected synchronized DataModel loadDataModel(DocumentModelImpl doc, Schema schema) {
+        String schemaName = schema.getName();
+        DataModel dataModel = doc.dataModels.get(schemaName);
+        if (dataModel != null) {
+            // loaded by a concurrent call for another document of the group
+            return dataModel;
+        }
+        List<DocumentModelImpl> toLoad = new ArrayList<>();
+        toLoad.add(doc);
+        for (DocumentModelImpl other : docs) {
+            if (other != doc && needsLoad(other, doc.sid, schemaName)) {
+                toLoad.add(other);
+            }
+        }
+        CoreSession session = doc.getSession();
+        if (toLoad.size() == 1) {
+            dataModel = session.getDataModel(doc.ref, schema);
+            doc.dataModels.put(schemaName, dataModel);
+            return dataModel;
+        }
+        DocumentRef[] refs = new DocumentRef[toLoad.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = toLoad.get(i).ref;
+        }
+        DataModel[] dataModels = session.getDataModels(refs, schema);
+        for (int i = 0; i < refs.length; i++) {
+            if (dataModels[i] != null) {
+                toLoad.get(i).dataModels.put(schemaName, dataModels[i]);
+            }
+        }
+        if (dataModels[0] == null) {
+            // not readable, let the session report it
+            return session.getDataModel(doc.ref, schema);
+        }
+        return dataModels[0];
+    }
+
+    protected static boolean needsLoad(DocumentModelImpl doc, String sid, String schemaName) {
+        return sid.equals(doc.sid) && doc.ref != null && doc.schemas.contains(schemaName)
+                && doc.schemasOrig.contains(schemaName) && !doc.dataModels.containsKey(schemaName);
+    }
+
+}
@@ -194,6 +194,9 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
     // public for unit tests
     public Prefetch prefetch;
 
+    /** The documents whose data models are lazily loaded together with this one, or {@code null}. */
+    protected transient DataModelLoadGroup loadGroup;
+
     private String detachedVersionLabel;
 
     // always refetched when a session is accessible, but also available without one
@@ -445,6 +448,9 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         // load from session
         TypeProvider typeProvider = Framework.getLocalService(SchemaManager.class);
         final Schema schemaType = typeProvider.getSchema(schema);
+        if (loadGroup != null) {
+            return loadGroup.loadDataModel(this, schemaType);
+        }
         DataModel dataModel = getSession().getDataModel(ref, schemaType);
         dataModels.put(schema, dataModel);
         return dataModel;
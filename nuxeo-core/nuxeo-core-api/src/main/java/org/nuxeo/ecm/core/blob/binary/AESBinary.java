@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Binary stored encrypted by an {@link AESBinaryManager}.
+ * <p>
+ * The stream decrypts the stored file while it is read. A decrypted file is only written if {@link #getFile} is called.
+ *
+ * @since 9.2
+ */
+public class AESBinary extends Binary {
+
+    private static final long serialVersionUID = 1L;
+
+    // transient to be Serializable
+    protected transient AESBinaryManager abm;
+
+    public AESBinary(String digest, String blobProviderId, AESBinaryManager abm) {
+        super(digest, blobProviderId);
+        this.abm = abm;
+    }
+
+    // because the class is Serializable, re-acquire the AESBinaryManager
+    protected AESBinaryManager getAESBinaryManager() {
+        if (abm == null) {
+            if (blobProviderId == null) {
+                throw new UnsupportedOperationException("Cannot find binary manager, no blob provider id");
+            }
+            BlobManager bm = Framework.getService(BlobManager.class);
+            BlobProvider bp = bm.getBlobProvider(blobProviderId);
+            abm = (AESBinaryManager) bp.getBinaryManager();
+        }
+        return abm;
+    }
+
+    @Override
+    public InputStream getStream() throws IOException {
+        return getStream(0, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the chunked file format, the chunks before the offset are not decrypted.
+     */
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        if (file != null) {
+            return getStream(file, offset, length);
+        }
+        return getAESBinaryManager().getDecryptedStream(digest, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The binary is decrypted into a temporary file on first call.
+     */
+    @Override
+    public synchronized File getFile() {
+        if (file == null) {
+            try {
+                File tmp = File.createTempFile("bin_", ".tmp", getAESBinaryManager().tmpDir);
+                Framework.trackFile(tmp, this);
+                try (InputStream in = getStream();
+                        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                    IOUtils.copy(in, out);
+                }
+                file = tmp;
+            } catch (IOException e) {
+                throw new NuxeoException(e);
+            }
+        }
+        return file;
+    }
+
+    @Override
+    protected File recomputeFile() {
+        // decrypted lazily
+        return null;
+    }
+
+}
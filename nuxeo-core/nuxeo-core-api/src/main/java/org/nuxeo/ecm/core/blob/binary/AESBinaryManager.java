@@ -28,21 +28,40 @@ import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -52,7 +71,6 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.NuxeoException;
-import org.nuxeo.runtime.api.Framework;
 
 /**
  * A binary manager that encrypts binaries on the filesystem using AES.
@@ -79,8 +97,12 @@ import org.nuxeo.runtime.api.Framework;
  * using PBKDF2 (in which case each stored file contains a different salt for security reasons). The file format is
  * described in {@link #storeAndDigest(InputStream, OutputStream)}.
  * <p>
- * While the binary is being used by the application, a temporarily-decrypted file is held in a temporary directory. It
- * is removed as soon as possible.
+ * Binaries are decrypted on the fly when their stream is read, and with the chunked format (version 2) a range can be
+ * decrypted without decrypting the beginning of the file. A temporarily-decrypted file is only held in a temporary
+ * directory if the application asks for a file. It is removed as soon as possible.
+ * <p>
+ * New files are written using the file format version given by the {@value #PROP_FILE_VERSION} property (default 2).
+ * Files using the previous format stay readable, and can be converted using {@link #migrate}.
  * <p>
  * Note: if the Java Cryptographic Extension (JCE) is not configured for 256-bit key length, you may get an exception
  * "java.security.InvalidKeyException: Illegal key size or default parameters". If this is the case, go to <a
@@ -97,6 +119,9 @@ public class AESBinaryManager extends LocalBinaryManager {
 
     protected static final int FILE_VERSION_1 = 1;
 
+    /** @since 9.2 */
+    protected static final int FILE_VERSION_2 = 2;
+
     protected static final int USE_KEYSTORE = 1;
 
     protected static final int USE_PBKDF2 = 2;
@@ -105,6 +130,42 @@ public class AESBinaryManager extends LocalBinaryManager {
 
     protected static final String AES_CBC_PKCS5_PADDING = "AES/CBC/PKCS5Padding";
 
+    /** @since 9.2 */
+    protected static final String AES_GCM_NO_PADDING = "AES/GCM/NoPadding";
+
+    /** Length of the GCM authentication tag at the end of each chunk, in bytes. */
+    protected static final int GCM_TAG_LENGTH = 16;
+
+    /** Length of the random prefix of the per-chunk nonces, in bytes. The rest is the chunk index. */
+    protected static final int NONCE_PREFIX_LENGTH = 8;
+
+    /**
+     * In the initialization properties, the property for the file format version of new files.
+     *
+     * @since 9.2
+     */
+    public static final String PROP_FILE_VERSION = "fileVersion";
+
+    /**
+     * In the initialization properties, the property for the plaintext size of the chunks of the version 2 format.
+     *
+     * @since 9.2
+     */
+    public static final String PROP_ENCRYPTION_CHUNK_SIZE = "encryptionChunkSize";
+
+    /**
+     * In the initialization properties, the property for the number of chunks encrypted in parallel.
+     *
+     * @since 9.2
+     */
+    public static final String PROP_ENCRYPTION_PARALLELISM = "encryptionParallelism";
+
+    /** @since 9.2 */
+    public static final int DEFAULT_ENCRYPTION_CHUNK_SIZE = 64 * 1024; // 64 kB
+
+    // for sanity check during reads
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
     protected static final String PBKDF2_WITH_HMAC_SHA1 = "PBKDF2WithHmacSHA1";
 
     protected static final int PBKDF2_ITERATIONS = 10000;
@@ -150,6 +211,18 @@ public class AESBinaryManager extends LocalBinaryManager {
 
     protected String keyPassword;
 
+    /** @since 9.2 */
+    protected int fileVersion = FILE_VERSION_2;
+
+    /** @since 9.2 */
+    protected int chunkSize = DEFAULT_ENCRYPTION_CHUNK_SIZE;
+
+    /** @since 9.2 */
+    protected int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** @since 9.2 */
+    protected ExecutorService encryptionExecutor;
+
     public AESBinaryManager() {
         setUnlimitedJCEPolicy();
     }
@@ -187,6 +260,54 @@ public class AESBinaryManager extends LocalBinaryManager {
             throw new NuxeoException("Missing key for " + getClass().getSimpleName());
         }
         initializeOptions(options);
+        String value = properties.get(PROP_FILE_VERSION);
+        if (StringUtils.isNotBlank(value)) {
+            fileVersion = Integer.parseInt(value.trim());
+            if (fileVersion != FILE_VERSION_1 && fileVersion != FILE_VERSION_2) {
+                throw new NuxeoException("Unknown file version: " + value);
+            }
+        }
+        value = properties.get(PROP_ENCRYPTION_CHUNK_SIZE);
+        if (StringUtils.isNotBlank(value)) {
+            chunkSize = Integer.parseInt(value.trim());
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new NuxeoException("Invalid chunk size: " + value);
+            }
+        }
+        value = properties.get(PROP_ENCRYPTION_PARALLELISM);
+        if (StringUtils.isNotBlank(value)) {
+            parallelism = Math.max(1, Integer.parseInt(value.trim()));
+        }
+    }
+
+    /**
+     * Gets the executor encrypting the chunks in parallel, created on first use with {@code parallelism - 1} threads
+     * as the calling thread encrypts one of the chunks itself.
+     *
+     * @since 9.2
+     */
+    protected synchronized ExecutorService getEncryptionExecutor() {
+        if (encryptionExecutor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            encryptionExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism - 1), r -> {
+                Thread thread = new Thread(r,
+                        "Nuxeo-AES-Encryption-" + blobProviderId + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return encryptionExecutor;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (encryptionExecutor != null) {
+                encryptionExecutor.shutdownNow();
+                encryptionExecutor = null;
+            }
+        }
+        super.close();
     }
 
     protected void initializeOptions(String options) {
@@ -309,19 +430,9 @@ public class AESBinaryManager extends LocalBinaryManager {
 
     @Override
     protected Binary getBinary(InputStream in) throws IOException {
-        // write to a tmp file that will be used by the returned Binary
-        // TODO if stream source, avoid copy (no-copy optimization)
-        File tmp = File.createTempFile("bin_", ".tmp", tmpDir);
-        Framework.trackFile(tmp, tmp);
-        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
-        IOUtils.copy(in, out);
-        in.close();
-        out.close();
-        // encrypt an digest into final file
-        InputStream nin = new BufferedInputStream(new FileInputStream(tmp));
-        String digest = storeAndDigest(nin); // calls our storeAndDigest
-        // return a binary on our tmp file
-        return new Binary(tmp, digest, blobProviderId);
+        // encrypt and digest into final file, the binary will decrypt it when read
+        String digest = storeAndDigest(in); // calls our storeAndDigest
+        return new AESBinary(digest, blobProviderId, this);
     }
 
     @Override
@@ -334,23 +445,44 @@ public class AESBinaryManager extends LocalBinaryManager {
         if (!file.exists()) {
             return null;
         }
-        File tmp;
+        return new AESBinary(digest, blobProviderId, this);
+    }
+
+    /**
+     * Gets a decrypted stream for a range of a stored binary.
+     * <p>
+     * With the version 2 file format, only the chunks containing the range are read and decrypted.
+     *
+     * @param digest the binary digest
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read, or {@code -1} to read until the end
+     * @since 9.2
+     */
+    public InputStream getDecryptedStream(String digest, long offset, long length) throws IOException {
+        File file = getFileForDigest(digest, false);
+        if (file == null) {
+            throw new IOException("Invalid digest format: " + digest);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
         try {
-            tmp = File.createTempFile("bin_", ".tmp", tmpDir);
-            Framework.trackFile(tmp, tmp);
-            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
-            InputStream in = new BufferedInputStream(new FileInputStream(file));
-            try {
-                decrypt(in, out);
-            } finally {
-                in.close();
-                out.close();
+            // header is read unbuffered so that the channel position is known
+            InputStream in = Channels.newInputStream(channel);
+            Header header = readHeader(in);
+            InputStream decrypted;
+            if (header.version == FILE_VERSION_1) {
+                decrypted = getDecryptingStream(new BufferedInputStream(in), header, 0);
+                IOUtils.skipFully(decrypted, offset);
+            } else {
+                long chunkIndex = offset / header.chunkSize;
+                channel.position(header.length + chunkIndex * (header.chunkSize + GCM_TAG_LENGTH));
+                decrypted = getDecryptingStream(new BufferedInputStream(in), header, chunkIndex);
+                IOUtils.skipFully(decrypted, offset % header.chunkSize);
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return Binary.getBoundedStream(decrypted, length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
         }
-        // return a binary on our tmp file
-        return new Binary(tmp, digest, blobProviderId);
     }
 
     @Override
@@ -395,8 +527,28 @@ public class AESBinaryManager extends LocalBinaryManager {
      * </ul>
      * <li>4 bytes: IV length = p
      * <li>p bytes: IV data
-     * <li>x bytes: encrypted stream
+     * <li>x bytes: encrypted stream (AES/CBC/PKCS5Padding)
+     * </ul>
+     * <p>
+     * File format version 2 (values are in network order):
+     * <ul>
+     * <li>10 bytes: magic number "NUXEOCRYPT"
+     * <li>1 byte: file format version = 2
+     * <li>1 byte: use keystore = 1, use PBKDF2 = 2
+     * <li>if use PBKDF2:
+     * <ul>
+     * <li>4 bytes: salt length = n
+     * <li>n bytes: salt data
+     * </ul>
+     * <li>4 bytes: chunk size = c
+     * <li>4 bytes: nonce prefix length = 8
+     * <li>8 bytes: nonce prefix
+     * <li>chunks: each chunk of c bytes of the stream (the last one may be shorter) is encrypted using AES/GCM/NoPadding
+     * into c + 16 bytes, with a nonce made of the nonce prefix and of the 4-byte chunk index, and with 1 byte of
+     * additional authenticated data set to 1 for the last chunk and 0 otherwise. An empty stream has one empty chunk.
      * </ul>
+     * The chunks are independent, which allows random access and parallel encryption, and the authentication prevents
+     * their modification, reordering or truncation.
      *
      * @param in the input stream containing the data
      * @param file the file containing the encrypted data
@@ -404,9 +556,19 @@ public class AESBinaryManager extends LocalBinaryManager {
      */
     @Override
     public String storeAndDigest(InputStream in, OutputStream out) throws IOException {
+        return storeAndDigest(in, out, fileVersion);
+    }
+
+    /**
+     * Encrypts the given input stream into the given output stream using the given file format version, while also
+     * computing the digest of the input stream.
+     *
+     * @since 9.2
+     */
+    protected String storeAndDigest(InputStream in, OutputStream out, int version) throws IOException {
         out.write(FILE_MAGIC);
         DataOutputStream data = new DataOutputStream(out);
-        data.writeByte(FILE_VERSION_1);
+        data.writeByte(version);
 
         try {
             // get digest to use
@@ -430,31 +592,180 @@ public class AESBinaryManager extends LocalBinaryManager {
                 secret = getSecretKey();
             }
 
-            // cipher
-            Cipher cipher = Cipher.getInstance(AES_CBC_PKCS5_PADDING);
-            cipher.init(Cipher.ENCRYPT_MODE, secret);
+            if (version == FILE_VERSION_1) {
+                return storeAndDigestV1(in, out, secret, messageDigest);
+            } else {
+                return storeAndDigestV2(in, out, secret, messageDigest);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    protected String storeAndDigestV1(InputStream in, OutputStream out, Key secret, MessageDigest messageDigest)
+            throws IOException, GeneralSecurityException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        // cipher
+        Cipher cipher = Cipher.getInstance(AES_CBC_PKCS5_PADDING);
+        cipher.init(Cipher.ENCRYPT_MODE, secret);
+
+        // write IV
+        byte[] iv = cipher.getIV();
+        data.writeInt(iv.length);
+        data.write(iv);
+
+        // digest and write the encrypted data
+        CipherAndDigestOutputStream cipherOut = new CipherAndDigestOutputStream(out, cipher, messageDigest);
+        IOUtils.copy(in, cipherOut);
+        cipherOut.close();
+        byte[] digest = cipherOut.getDigest();
+        return toHexString(digest);
+    }
+
+    /**
+     * Encrypts using the chunked format. Chunks are read and digested sequentially, and then encrypted by batches in
+     * parallel.
+     *
+     * @since 9.2
+     */
+    protected String storeAndDigestV2(InputStream in, OutputStream out, Key secret, MessageDigest messageDigest)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        RANDOM.nextBytes(prefix);
+        data.writeInt(chunkSize);
+        data.writeInt(prefix.length);
+        data.write(prefix);
+
+        PushbackInputStream pin = new PushbackInputStream(in, 1);
+        long index = 0;
+        boolean last = false;
+        while (!last) {
+            // read a batch of chunks
+            List<byte[]> chunks = new ArrayList<>(parallelism);
+            while (chunks.size() < parallelism && !last) {
+                byte[] buf = new byte[chunkSize];
+                int n = IOUtils.read(pin, buf);
+                messageDigest.update(buf, 0, n);
+                if (n < chunkSize) {
+                    last = true;
+                    buf = Arrays.copyOf(buf, n);
+                } else {
+                    // check if there is more data
+                    int b = pin.read();
+                    if (b == -1) {
+                        last = true;
+                    } else {
+                        pin.unread(b);
+                    }
+                }
+                chunks.add(buf);
+            }
+            // encrypt them in parallel
+            long firstIndex = index;
+            boolean lastBatch = last;
+            int count = chunks.size();
+            List<Future<byte[]>> futures = new ArrayList<>(count - 1);
+            ExecutorService executor = count > 1 ? getEncryptionExecutor() : null;
+            for (int i = 1; i < count; i++) {
+                int n = i;
+                futures.add(executor.submit(() -> encryptChunk(secret, prefix, firstIndex + n,
+                        lastBatch && n == count - 1, chunks.get(n))));
+            }
+            out.write(encryptChunk(secret, prefix, firstIndex, lastBatch && count == 1, chunks.get(0)));
+            for (Future<byte[]> future : futures) {
+                out.write(getEncryptedChunk(future));
+            }
+            index += count;
+        }
+        out.flush();
+        return toHexString(messageDigest.digest());
+    }
 
-            // write IV
-            byte[] iv = cipher.getIV();
-            data.writeInt(iv.length);
-            data.write(iv);
+    protected static byte[] getEncryptedChunk(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during encryption");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new NuxeoException(cause);
+        }
+    }
 
-            // digest and write the encrypted data
-            CipherAndDigestOutputStream cipherOut = new CipherAndDigestOutputStream(out, cipher, messageDigest);
-            IOUtils.copy(in, cipherOut);
-            cipherOut.close();
-            byte[] digest = cipherOut.getDigest();
-            return toHexString(digest);
+    protected static byte[] encryptChunk(Key secret, byte[] prefix, long index, boolean last, byte[] chunk) {
+        try {
+            Cipher cipher = getChunkCipher(Cipher.ENCRYPT_MODE, secret, prefix, index, last);
+            return cipher.doFinal(chunk);
         } catch (GeneralSecurityException e) {
             throw new NuxeoException(e);
         }
+    }
 
+    protected static Cipher getChunkCipher(int mode, Key secret, byte[] prefix, long index, boolean last)
+            throws GeneralSecurityException {
+        if (index > 0xFFFFFFFFL) {
+            throw new GeneralSecurityException("Too many chunks");
+        }
+        byte[] nonce = Arrays.copyOf(prefix, prefix.length + 4);
+        for (int i = 0; i < 4; i++) {
+            nonce[prefix.length + i] = (byte) (index >>> (8 * (3 - i)));
+        }
+        Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
+        cipher.init(mode, secret, new GCMParameterSpec(8 * GCM_TAG_LENGTH, nonce));
+        cipher.updateAAD(new byte[] { (byte) (last ? 1 : 0) });
+        return cipher;
     }
 
     /**
      * Decrypts the given input stream into the given output stream.
      */
     protected void decrypt(InputStream in, OutputStream out) throws IOException {
+        Header header = readHeader(in);
+        // read the encrypted data
+        try (InputStream cipherIn = getDecryptingStream(in, header, 0)) {
+            IOUtils.copy(cipherIn, out);
+        } catch (IOException e) {
+            Throwable cause = e.getCause();
+            if (cause != null && cause instanceof BadPaddingException) {
+                throw new NuxeoException(cause.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The header of an encrypted file.
+     *
+     * @since 9.2
+     */
+    protected static class Header {
+
+        protected int version;
+
+        protected Key secret;
+
+        /** The IV for version 1, the nonce prefix for version 2. */
+        protected byte[] iv;
+
+        protected int chunkSize;
+
+        /** The length of the header, in bytes. */
+        protected long length;
+    }
+
+    /**
+     * Reads the header of an encrypted file, and gets the secret key.
+     *
+     * @since 9.2
+     */
+    protected Header readHeader(InputStream in) throws IOException {
+        Header header = new Header();
         byte[] magic = new byte[FILE_MAGIC.length];
         IOUtils.read(in, magic);
         if (!Arrays.equals(magic, FILE_MAGIC)) {
@@ -462,9 +773,11 @@ public class AESBinaryManager extends LocalBinaryManager {
         }
         DataInputStream data = new DataInputStream(in);
         byte magicvers = data.readByte();
-        if (magicvers != FILE_VERSION_1) {
+        if (magicvers != FILE_VERSION_1 && magicvers != FILE_VERSION_2) {
             throw new IOException("Invalid file (bad version)");
         }
+        header.version = magicvers;
+        header.length = magic.length + 2;
 
         byte usepb = data.readByte();
         if (usepb == USE_PBKDF2) {
@@ -481,7 +794,6 @@ public class AESBinaryManager extends LocalBinaryManager {
 
         try {
             // secret key
-            Key secret;
             if (usePBKDF2) {
                 // read salt first
                 int saltLen = data.readInt();
@@ -489,39 +801,212 @@ public class AESBinaryManager extends LocalBinaryManager {
                     throw new NuxeoException("Invalid salt length: " + saltLen);
                 }
                 byte[] salt = new byte[saltLen];
-                data.read(salt, 0, saltLen);
-                secret = generateSecretKey(salt);
+                data.readFully(salt);
+                header.secret = generateSecretKey(salt);
+                header.length += 4 + saltLen;
             } else {
-                secret = getSecretKey();
+                header.secret = getSecretKey();
             }
+        } catch (GeneralSecurityException e) {
+            throw new NuxeoException(e);
+        }
 
-            // read IV
-            int ivLen = data.readInt();
-            if (ivLen <= 0 || ivLen > MAX_IV_LEN) {
-                throw new NuxeoException("Invalid IV length: " + ivLen);
+        if (header.version == FILE_VERSION_2) {
+            header.chunkSize = data.readInt();
+            if (header.chunkSize <= 0 || header.chunkSize > MAX_CHUNK_SIZE) {
+                throw new NuxeoException("Invalid chunk size: " + header.chunkSize);
             }
-            byte[] iv = new byte[ivLen];
-            data.read(iv, 0, ivLen);
+            header.length += 4;
+        }
 
-            // cipher
-            Cipher cipher;
-            cipher = Cipher.getInstance(AES_CBC_PKCS5_PADDING);
-            cipher.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(iv));
+        // read IV
+        int ivLen = data.readInt();
+        if (ivLen <= 0 || ivLen > MAX_IV_LEN) {
+            throw new NuxeoException("Invalid IV length: " + ivLen);
+        }
+        header.iv = new byte[ivLen];
+        data.readFully(header.iv);
+        header.length += 4 + ivLen;
+        return header;
+    }
 
-            // read the encrypted data
-            try (InputStream cipherIn = new CipherInputStream(in, cipher)) {
-                IOUtils.copy(cipherIn, out);
-            } catch (IOException e) {
-                Throwable cause = e.getCause();
-                if (cause != null && cause instanceof BadPaddingException) {
-                    throw new NuxeoException(cause.getMessage(), e);
-                }
+    /**
+     * Gets a stream decrypting the data following the header.
+     *
+     * @param in the stream, positioned after the header, or at the given chunk for version 2
+     * @param header the header
+     * @param chunkIndex the index of the first chunk to read, for version 2
+     * @since 9.2
+     */
+    protected InputStream getDecryptingStream(InputStream in, Header header, long chunkIndex) throws IOException {
+        try {
+            if (header.version == FILE_VERSION_1) {
+                Cipher cipher = Cipher.getInstance(AES_CBC_PKCS5_PADDING);
+                cipher.init(Cipher.DECRYPT_MODE, header.secret, new IvParameterSpec(header.iv));
+                return new CipherInputStream(in, cipher);
+            } else {
+                return new ChunkDecryptingInputStream(in, header, chunkIndex);
             }
         } catch (GeneralSecurityException e) {
             throw new NuxeoException(e);
         }
     }
 
+    /**
+     * Stream decrypting the chunks of the version 2 file format one at a time.
+     *
+     * @since 9.2
+     */
+    protected static class ChunkDecryptingInputStream extends InputStream {
+
+        protected final PushbackInputStream in;
+
+        protected final Header header;
+
+        protected long index;
+
+        protected byte[] chunk = new byte[0];
+
+        protected int pos;
+
+        protected boolean last;
+
+        public ChunkDecryptingInputStream(InputStream in, Header header, long index) {
+            this.in = new PushbackInputStream(in, 1);
+            this.header = header;
+            this.index = index;
+        }
+
+        /**
+         * Reads and decrypts the next chunk.
+         *
+         * @return {@code false} if there is no more data
+         */
+        protected boolean nextChunk() throws IOException {
+            while (pos == chunk.length) {
+                if (last) {
+                    return false;
+                }
+                byte[] buf = new byte[header.chunkSize + GCM_TAG_LENGTH];
+                int n = IOUtils.read(in, buf);
+                if (n == 0) {
+                    if (index == 0) {
+                        // even an empty file has a first chunk holding its tag
+                        throw new IOException("Missing chunk 0, the file is truncated");
+                    }
+                    // only happens when starting after the end of the file
+                    last = true;
+                    return false;
+                }
+                if (n < buf.length) {
+                    last = true;
+                } else {
+                    int b = in.read();
+                    if (b == -1) {
+                        last = true;
+                    } else {
+                        in.unread(b);
+                    }
+                }
+                try {
+                    Cipher cipher = getChunkCipher(Cipher.DECRYPT_MODE, header.secret, header.iv, index, last);
+                    chunk = cipher.doFinal(buf, 0, n);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Cannot decrypt chunk " + index, e);
+                }
+                pos = 0;
+                index++;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            return chunk[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts all the files stored using the version 1 file format to the version 2 file format.
+     * <p>
+     * This is never done automatically, and can be run while the binary manager is in use.
+     *
+     * @return the number of converted files
+     * @since 9.2
+     */
+    public long migrate() throws IOException {
+        long[] count = new long[1];
+        Files.walkFileTree(storageDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (migrate(file.getFileName().toString())) {
+                    count[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Converts a file stored using the version 1 file format to the version 2 file format.
+     *
+     * @param digest the binary digest
+     * @return {@code true} if the file was converted, {@code false} if it was already using the version 2 format
+     * @since 9.2
+     */
+    public boolean migrate(String digest) throws IOException {
+        File file = getFileForDigest(digest, false);
+        if (file == null || !file.exists()) {
+            return false;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            Header header = readHeader(in);
+            if (header.version != FILE_VERSION_1) {
+                return false;
+            }
+        }
+        // not Files.createTempFile, whose owner-only permissions would end up on the migrated file
+        Path tmp = File.createTempFile("migrate_", ".tmp", tmpDir).toPath();
+        try {
+            String newDigest;
+            try (InputStream in = getDecryptedStream(digest, 0, -1);
+                    OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                newDigest = storeAndDigest(in, out, FILE_VERSION_2);
+            }
+            if (!digest.equals(newDigest)) {
+                throw new IOException("Digest mismatch during migration of: " + digest);
+            }
+            // the content is unchanged, so replacing the file is safe even if it's being read or created concurrently
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return true;
+    }
+
     /**
      * A {@link javax.crypto.CipherOutputStream CipherOutputStream} that also does a digest of the original stream at
      * the same time.
@@ -24,11 +24,16 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.nuxeo.common.xmap.XMap;
 import org.nuxeo.ecm.core.api.Blob;
@@ -129,13 +134,66 @@ public abstract class AbstractBinaryManager implements BinaryManager {
 
     public static final int MAX_BUF_SIZE = 64 * 1024; // 64 kB
 
-    protected String storeAndDigest(InputStream in, OutputStream out) throws IOException {
-        MessageDigest digest;
+    /**
+     * Size of the direct buffers used to copy and digest through channels.
+     *
+     * @since 9.2
+     */
+    public static final int NIO_BUF_SIZE = 256 * 1024; // 256 kB
+
+    /**
+     * Maximum number of idle direct buffers kept for reuse.
+     *
+     * @since 9.2
+     */
+    public static final int NIO_BUF_POOL_SIZE = 16;
+
+    /**
+     * Idle direct buffers, reused as allocating them is costly. Buffers released when the pool is full are left to the
+     * garbage collector, so at most {@link #NIO_BUF_POOL_SIZE} buffers stay allocated when idle.
+     *
+     * @since 9.2
+     */
+    protected static final BlockingQueue<ByteBuffer> NIO_BUFFERS = new ArrayBlockingQueue<>(NIO_BUF_POOL_SIZE);
+
+    /**
+     * Gets a direct buffer of {@link #NIO_BUF_SIZE} bytes from the pool, or a new one if the pool is empty.
+     *
+     * @since 9.2
+     */
+    protected static ByteBuffer acquireNioBuffer() {
+        ByteBuffer buf = NIO_BUFFERS.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(NIO_BUF_SIZE);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Gives back a direct buffer obtained from {@link #acquireNioBuffer}.
+     *
+     * @since 9.2
+     */
+    protected static void releaseNioBuffer(ByteBuffer buf) {
+        NIO_BUFFERS.offer(buf);
+    }
+
+    /**
+     * Gets a new {@link MessageDigest} for the digest algorithm of this binary manager.
+     *
+     * @since 9.2
+     */
+    protected MessageDigest getMessageDigest() throws IOException {
         try {
-            digest = MessageDigest.getInstance(getDigestAlgorithm());
+            return MessageDigest.getInstance(getDigestAlgorithm());
         } catch (NoSuchAlgorithmException e) {
             throw (IOException) new IOException().initCause(e);
         }
+    }
+
+    protected String storeAndDigest(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest = getMessageDigest();
 
         int size = in.available();
         if (size == 0) {
@@ -160,6 +218,39 @@ public abstract class AbstractBinaryManager implements BinaryManager {
         return toHexString(digest.digest());
     }
 
+    /**
+     * Copies a channel to another one while computing the digest of the content.
+     * <p>
+     * The content goes through a pooled direct buffer that is used both to update the digest and to write to the
+     * destination, so channels can transfer it without an intermediate heap buffer. The digest itself still reads the
+     * buffer through a small heap array.
+     *
+     * @param in the source channel
+     * @param out the destination channel, or {@code null} if only the digest is needed
+     * @return the digest
+     * @since 9.2
+     */
+    protected String storeAndDigest(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        MessageDigest digest = getMessageDigest();
+        ByteBuffer buf = acquireNioBuffer();
+        try {
+            while (in.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                if (out != null) {
+                    buf.rewind();
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                }
+                buf.clear();
+            }
+        } finally {
+            releaseNioBuffer(buf);
+        }
+        return toHexString(digest.digest());
+    }
+
     private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     public static String toHexString(byte[] data) {
@@ -24,6 +24,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobProvider;
@@ -101,6 +107,55 @@ public class Binary implements Serializable {
         return new FileInputStream(file);
     }
 
+    /**
+     * Gets an input stream for a range of the binary.
+     * <p>
+     * When the binary has a file, it is read from the given position without reading the beginning of the file.
+     * Subclasses for remote binaries override this to fetch only the requested range.
+     *
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read, or {@code -1} to read until the end
+     * @return the input stream
+     * @since 9.2
+     */
+    public InputStream getStream(long offset, long length) throws IOException {
+        File file = getFile();
+        if (file == null) {
+            InputStream in = getStream();
+            if (in == null) {
+                return null;
+            }
+            IOUtils.skipFully(in, offset);
+            return getBoundedStream(in, length);
+        }
+        return getStream(file, offset, length);
+    }
+
+    /**
+     * Gets an input stream for a range of a file, using a positioned channel.
+     *
+     * @since 9.2
+     */
+    public static InputStream getStream(File file, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return getBoundedStream(Channels.newInputStream(channel), length);
+    }
+
+    /**
+     * Limits a stream to the given length, if not {@code -1}. Closing the returned stream closes the original stream.
+     *
+     * @since 9.2
+     */
+    public static InputStream getBoundedStream(InputStream in, long length) {
+        return length < 0 ? in : new BoundedInputStream(in, length);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '(' + digest + ')';
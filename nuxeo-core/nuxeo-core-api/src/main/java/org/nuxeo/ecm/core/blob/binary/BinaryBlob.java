@@ -65,6 +65,18 @@ public class BinaryBlob extends AbstractBlob implements ManagedBlob, Serializabl
         return binary.getStream();
     }
 
+    /**
+     * Gets an input stream for a range of the blob, without reading or fetching the whole blob if possible.
+     *
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read, or {@code -1} to read until the end
+     * @since 9.2
+     * @see Binary#getStream(long, long)
+     */
+    public InputStream getStream(long offset, long length) throws IOException {
+        return binary.getStream(offset, length);
+    }
+
     /**
      * Gets the {@link Binary} attached to this blob.
      *
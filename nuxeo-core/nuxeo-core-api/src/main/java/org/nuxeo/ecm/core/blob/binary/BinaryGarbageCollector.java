@@ -81,4 +81,30 @@ public interface BinaryGarbageCollector {
      */
     boolean isInProgress();
 
+    /**
+     * Makes the marks done so far durable, so that if the process stops before {@link #stop} is called, the next
+     * {@link #start} resumes the GC with these marks.
+     * <p>
+     * The default implementation returns {@code false}, meaning that the GC cannot be resumed.
+     *
+     * @return {@code true} if the marks done so far will be kept by a resumed GC
+     * @since 9.2
+     */
+    default boolean checkpoint() {
+        return false;
+    }
+
+    /**
+     * Checks if this garbage collector accepts the same binary being marked several times, possibly concurrently,
+     * without keeping all the marks in memory, so that callers marking in parallel don't have to deduplicate the marks.
+     * <p>
+     * The default implementation returns {@code false}.
+     *
+     * @return {@code true} if duplicate marks are handled by this garbage collector
+     * @since 9.2
+     */
+    default boolean deduplicatesMarks() {
+        return false;
+    }
+
 }
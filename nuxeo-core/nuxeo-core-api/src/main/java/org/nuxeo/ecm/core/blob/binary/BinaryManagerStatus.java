@@ -33,6 +33,12 @@ public class BinaryManagerStatus {
 
     public long sizeBinariesGC;
 
+    /** @since 9.2 */
+    public volatile long numSweepTasks;
+
+    /** @since 9.2 */
+    public volatile long numSweepTasksDone;
+
     /**
      * The GC duration, in milliseconds
      */
@@ -68,6 +74,26 @@ public class BinaryManagerStatus {
         return sizeBinariesGC;
     }
 
+    /**
+     * The number of tasks of the sweep phase, for garbage collectors reporting progress. Zero if unknown.
+     *
+     * @since 9.2
+     */
+    public long getNumSweepTasks() {
+        return numSweepTasks;
+    }
+
+    /**
+     * The number of completed tasks of the sweep phase, for garbage collectors reporting progress.
+     * <p>
+     * This may be read while the garbage collection is in progress.
+     *
+     * @since 9.2
+     */
+    public long getNumSweepTasksDone() {
+        return numSweepTasksDone;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -75,7 +101,9 @@ public class BinaryManagerStatus {
         .append(", numBinaries=").append(numBinaries) //
         .append(", sizeBinaries=").append(sizeBinaries) //
         .append(", numBinariesGC=").append(numBinariesGC) //
-        .append(", sizeBinariesGC=").append(sizeBinariesGC).append("]");
+        .append(", sizeBinariesGC=").append(sizeBinariesGC) //
+        .append(", numSweepTasksDone=").append(numSweepTasksDone) //
+        .append(", numSweepTasks=").append(numSweepTasks).append("]");
         return builder.toString();
     }
 
@@ -26,16 +26,23 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.common.file.ConcurrentLRUFileCache;
 import org.nuxeo.common.file.FileCache;
-import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.common.file.TieredFileCache;
 import org.nuxeo.common.utils.SizeUtils;
-import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * Abstract class for a {@link BinaryManager} that uses a cache for its files because fetching them is expensive.
  * <p>
@@ -47,15 +54,61 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     private static final Log log = LogFactory.getLog(CachingBinaryManager.class);
 
+    /**
+     * Property for the directory of the cache. A relative path is relative to the data directory. The cache of each
+     * blob provider is in a subdirectory named after it. The cache is kept across restarts.
+     *
+     * @since 9.2
+     */
+    public static final String CACHE_DIR_PROPERTY = "cachedir";
+
+    /** @since 9.2 */
+    public static final String DEFAULT_CACHE_DIR = "binarycache";
+
+    /**
+     * Property for the directory of the fast tier of the cache, typically on a RAM-backed filesystem like
+     * {@code /dev/shm}. No fast tier is used if not set.
+     *
+     * @since 9.2
+     */
+    public static final String CACHE_TIER_DIR_PROPERTY = "cachetierdir";
+
+    /** @since 9.2 */
+    public static final String CACHE_TIER_SIZE_PROPERTY = "cachetiersize";
+
+    /** @since 9.2 */
+    public static final String DEFAULT_CACHE_TIER_SIZE = "100MB";
+
+    /** @since 9.2 */
+    public static final String CACHE_TIER_MAX_FILE_SIZE_PROPERTY = "cachetiermaxfilesize";
+
+    /** @since 9.2 */
+    public static final String DEFAULT_CACHE_TIER_MAX_FILE_SIZE = "100KB";
+
     protected File cachedir;
 
+    /** @since 9.2 */
+    protected File tierdir;
+
     public FileCache fileCache;
 
     protected FileStorage fileStorage;
 
+    /** @since 9.2 */
+    protected Map<String, String> properties;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /** @since 9.2 */
+    protected Counter cacheHits;
+
+    /** @since 9.2 */
+    protected Counter cacheMisses;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         super.initialize(blobProviderId, properties);
+        this.properties = properties;
         descriptor = new BinaryManagerRootDescriptor();
         descriptor.digest = getDefaultDigestAlgorithm();
         log.info("Registering binary manager '" + blobProviderId + "' using " + getClass().getSimpleName());
@@ -72,8 +125,9 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * @since 5.9.2
      */
     protected void initializeCache(File dir, long maxSize, long maxCount, long minAge, FileStorage fileStorage) {
-        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        fileCache = new ConcurrentLRUFileCache(dir, maxSize, maxCount, minAge);
         this.fileStorage = fileStorage;
+        registerMetrics();
     }
 
     /**
@@ -92,6 +146,8 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     /**
      * Initializes the cache.
+     * <p>
+     * A fast tier is added if the {@value #CACHE_TIER_DIR_PROPERTY} property is set.
      *
      * @param maxSizeStr the maximum size of the cache (as a String)
      * @param maxCountStr the maximum number of files in the cache
@@ -102,30 +158,120 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      */
     public void initializeCache(String maxSizeStr, String maxCountStr, String minAgeStr, FileStorage fileStorage)
             throws IOException {
-        cachedir = Framework.createTempFile("nxbincache.", "");
-        cachedir.delete();
-        cachedir.mkdir();
+        String tierDir = getProperty(CACHE_TIER_DIR_PROPERTY, null);
+        String tierMaxSize = getProperty(CACHE_TIER_SIZE_PROPERTY, DEFAULT_CACHE_TIER_SIZE);
+        String tierMaxFileSize = getProperty(CACHE_TIER_MAX_FILE_SIZE_PROPERTY, DEFAULT_CACHE_TIER_MAX_FILE_SIZE);
+        initializeCache(maxSizeStr, maxCountStr, minAgeStr, tierDir, tierMaxSize, tierMaxFileSize, fileStorage);
+    }
+
+    /**
+     * Initializes the cache with an additional fast tier for small files.
+     * <p>
+     * The fast tier is typically put on a RAM-backed filesystem (like {@code /dev/shm}) to serve thumbnails and other
+     * small renditions.
+     *
+     * @param maxSizeStr the maximum size of the main tier (as a String)
+     * @param maxCountStr the maximum number of files in the main tier
+     * @param minAgeStr the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param tierParentDir the directory in which to create the fast tier, or {@code null} for no fast tier
+     * @param tierMaxSizeStr the maximum size of the fast tier (as a String)
+     * @param tierMaxFileSizeStr the maximum size of a file to be put in the fast tier (as a String)
+     * @param fileStorage the file storage mechanism to use to store and fetch files
+     * @see SizeUtils#parseSizeInBytes(String)
+     * @since 9.2
+     */
+    public void initializeCache(String maxSizeStr, String maxCountStr, String minAgeStr, String tierParentDir,
+            String tierMaxSizeStr, String tierMaxFileSizeStr, FileStorage fileStorage) throws IOException {
+        cachedir = getCacheDir(getProperty(CACHE_DIR_PROPERTY, DEFAULT_CACHE_DIR));
         long maxSize = SizeUtils.parseSizeInBytes(maxSizeStr);
         long maxCount = Long.parseLong(maxCountStr);
         long minAge = Long.parseLong(minAgeStr);
-        initializeCache(cachedir, maxSize, maxCount, minAge, fileStorage);
+        fileCache = new ConcurrentLRUFileCache(cachedir, maxSize, maxCount, minAge);
+        this.fileStorage = fileStorage;
         log.info("Using binary cache directory: " + cachedir.getPath() + " size: " + maxSizeStr + " maxCount: "
                 + maxCount + " minAge: " + minAge);
-
         // be sure FileTracker won't steal our files !
         FileEventTracker.registerProtectedPath(cachedir.getAbsolutePath());
+
+        if (tierParentDir != null) {
+            tierdir = getCacheDir(tierParentDir);
+            long tierMaxSize = SizeUtils.parseSizeInBytes(tierMaxSizeStr);
+            long tierMaxFileSize = SizeUtils.parseSizeInBytes(tierMaxFileSizeStr);
+            FileCache fastTier = new ConcurrentLRUFileCache(tierdir, tierMaxSize, maxCount, minAge);
+            fileCache = new TieredFileCache(fastTier, tierMaxFileSize, fileCache);
+            log.info("Using binary cache fast tier directory: " + tierdir.getPath() + " size: " + tierMaxSizeStr
+                    + " maxFileSize: " + tierMaxFileSizeStr);
+            FileEventTracker.registerProtectedPath(tierdir.getAbsolutePath());
+        }
+        registerMetrics();
+    }
+
+    /** @since 9.2 */
+    protected String getProperty(String name, String defaultValue) {
+        String value = properties == null ? null : properties.get(name);
+        return StringUtils.isBlank(value) ? defaultValue : Framework.expandVars(value.trim());
+    }
+
+    /**
+     * Gets the cache directory of this blob provider in the given directory, creating it if needed.
+     *
+     * @param path the parent directory, relative to the data directory if not absolute
+     * @since 9.2
+     */
+    protected File getCacheDir(String path) throws IOException {
+        File base = new File(path);
+        if (!base.isAbsolute()) {
+            base = new File(Environment.getDefault().getData(), path);
+        }
+        File dir = new File(base, blobProviderId);
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new IOException("Cannot create binary cache directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Registers the cache metrics with the {@link MetricsService}.
+     *
+     * @since 9.2
+     */
+    protected void registerMetrics() {
+        unregisterMetrics();
+        cacheHits = registry.counter(getMetricName("hits"));
+        cacheMisses = registry.counter(getMetricName("misses"));
+        registry.register(getMetricName("size"), (Gauge<Long>) () -> fileCache.getSize());
+        registry.register(getMetricName("count"), (Gauge<Integer>) () -> fileCache.getNumberOfItems());
+        registry.register(getMetricName("evictions"), (Gauge<Long>) () -> getEvictionCount(fileCache));
+    }
+
+    /** @since 9.2 */
+    protected void unregisterMetrics() {
+        String prefix = getMetricName("") + '.';
+        registry.removeMatching((name, metric) -> name.startsWith(prefix));
+    }
+
+    /** @since 9.2 */
+    protected String getMetricName(String name) {
+        return MetricRegistry.name("nuxeo", "binaries", blobProviderId, "cache", name);
+    }
+
+    protected static long getEvictionCount(FileCache fileCache) {
+        if (fileCache instanceof ConcurrentLRUFileCache) {
+            return ((ConcurrentLRUFileCache) fileCache).getEvictionCount();
+        } else if (fileCache instanceof TieredFileCache) {
+            TieredFileCache tiered = (TieredFileCache) fileCache;
+            return getEvictionCount(tiered.getFastTier()) + getEvictionCount(tiered.getMainTier());
+        } else {
+            return 0;
+        }
     }
 
     @Override
     public void close() {
-        fileCache.clear();
-        if (cachedir != null) {
-            try {
-                FileUtils.deleteDirectory(cachedir);
-            } catch (IOException e) {
-                throw new NuxeoException(e);
-            }
-        }
+        unregisterMetrics();
+        // the cached files and their access times are kept for the next start
+        fileCache.close();
     }
 
     @Override
@@ -174,8 +320,10 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         // get file from cache
         File file = fileCache.getFile(digest);
         if (file != null) {
+            cacheHits.inc();
             return file;
         }
+        cacheMisses.inc();
         // fetch file from storage
         File tmp = fileCache.getTempFile();
         if (fileStorage.fetchFile(digest, tmp)) {
@@ -189,4 +337,29 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         }
     }
 
+    /**
+     * Gets a stream for a range of a file from cache or storage.
+     * <p>
+     * If the file is not in the cache and the storage can fetch ranges, the cache is not filled.
+     * <p>
+     * Used by {@link LazyBinary}.
+     *
+     * @since 9.2
+     */
+    public InputStream getStream(String digest, long offset, long length) throws IOException {
+        File file = fileCache.getFile(digest);
+        if (file != null) {
+            cacheHits.inc();
+            return Binary.getStream(file, offset, length);
+        }
+        InputStream in = fileStorage.fetchStream(digest, offset, length);
+        if (in != null) {
+            cacheMisses.inc();
+            return in;
+        }
+        // range fetch not supported, fill the cache with the whole file
+        file = getFile(digest);
+        return file == null ? null : Binary.getStream(file, offset, length);
+    }
+
 }
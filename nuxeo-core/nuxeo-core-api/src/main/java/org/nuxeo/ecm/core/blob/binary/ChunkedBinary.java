@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.binary.ChunkingBinaryManager.Chunk;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Binary stored as chunks by a {@link ChunkingBinaryManager}.
+ * <p>
+ * The stream reads the chunks one after the other, opening each chunk only when the previous one has been read, and
+ * range reads skip the chunks before the requested range. A file is only reassembled if {@link #getFile} is called.
+ *
+ * @since 9.2
+ */
+public class ChunkedBinary extends Binary {
+
+    private static final long serialVersionUID = 1L;
+
+    // transient to be Serializable
+    protected transient ChunkingBinaryManager cbm;
+
+    public ChunkedBinary(String digest, String blobProviderId, ChunkingBinaryManager cbm) {
+        super(digest, blobProviderId);
+        this.cbm = cbm;
+    }
+
+    // because the class is Serializable, re-acquire the ChunkingBinaryManager
+    protected ChunkingBinaryManager getChunkingBinaryManager() {
+        if (cbm == null) {
+            if (blobProviderId == null) {
+                throw new UnsupportedOperationException("Cannot find binary manager, no blob provider id");
+            }
+            BlobManager bm = Framework.getService(BlobManager.class);
+            BlobProvider bp = bm.getBlobProvider(blobProviderId);
+            cbm = (ChunkingBinaryManager) bp.getBinaryManager();
+        }
+        return cbm;
+    }
+
+    @Override
+    public InputStream getStream() throws IOException {
+        return getStream(0, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The chunks before the offset are not read.
+     */
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        ChunkingBinaryManager bm = getChunkingBinaryManager();
+        // find the first chunk to read
+        List<Chunk> chunks = bm.getChunks(digest);
+        int first = 0;
+        long skip = offset;
+        while (first < chunks.size() && skip >= chunks.get(first).length) {
+            skip -= chunks.get(first).length;
+            first++;
+        }
+        long firstSkip = skip;
+        Iterator<Chunk> it = chunks.subList(first, chunks.size()).iterator();
+        InputStream in = new SequenceInputStream(new Enumeration<InputStream>() {
+
+            boolean isFirst = true;
+
+            @Override
+            public boolean hasMoreElements() {
+                return it.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                Chunk chunk = it.next();
+                File file = bm.getFileForDigest(chunk.digest, false);
+                try {
+                    if (isFirst) {
+                        isFirst = false;
+                        return getStream(file, firstSkip, -1);
+                    }
+                    return new FileInputStream(file);
+                } catch (IOException e) {
+                    throw new NuxeoException("Missing chunk " + chunk.digest + " for binary: " + digest, e);
+                }
+            }
+        });
+        return getBoundedStream(in, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The binary is reassembled into a temporary file on first call.
+     */
+    @Override
+    public synchronized File getFile() {
+        if (file == null) {
+            try {
+                File tmp = File.createTempFile("bin_", ".tmp", getChunkingBinaryManager().tmpDir);
+                Framework.trackFile(tmp, this);
+                try (InputStream in = getStream(); OutputStream out = new FileOutputStream(tmp)) {
+                    IOUtils.copy(in, out);
+                }
+                file = tmp;
+            } catch (IOException e) {
+                throw new NuxeoException(e);
+            }
+        }
+        return file;
+    }
+
+    @Override
+    protected File recomputeFile() {
+        // reassembled lazily
+        return null;
+    }
+
+}
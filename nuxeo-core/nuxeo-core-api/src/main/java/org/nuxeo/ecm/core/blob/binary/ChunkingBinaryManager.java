@@ -0,0 +1,340 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.trackers.files.FileEventTracker;
+
+/**
+ * A filesystem-based binary manager that splits the binaries into content-defined chunks, and stores each chunk
+ * according to its digest. Binaries sharing most of their content (for instance successive versions of a large file)
+ * therefore share most of their chunks.
+ * <p>
+ * Chunk boundaries are found using a rolling "gear" hash of the content, so an insertion or deletion in a file only
+ * changes the chunks around the modification.
+ * <p>
+ * The format of the <em>binaries</em> directory is:
+ * <ul>
+ * <li><em>data/</em> hierarchy with the chunks in subdirectories,</li>
+ * <li><em>manifests/</em> hierarchy with, for each binary, the list of its chunks,</li>
+ * <li><em>tmp/</em> temporary storage during creation,</li>
+ * <li><em>config.xml</em> a file containing the configuration used.</li>
+ * </ul>
+ * The binaries are reassembled lazily when read, see {@link ChunkedBinary}.
+ *
+ * @since 9.2
+ */
+public class ChunkingBinaryManager extends LocalBinaryManager {
+
+    private static final Log log = LogFactory.getLog(ChunkingBinaryManager.class);
+
+    public static final String MANIFESTS = "manifests";
+
+    /** In the initialization properties, the property for the average chunk size (in bytes). */
+    public static final String PROP_CHUNK_SIZE = "chunkSize";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024; // 1 MB
+
+    /** Random values for the rolling hash, the fixed seed makes them stable across runs. */
+    protected static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6e7578656fL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    protected File manifestDir;
+
+    protected int minChunkSize;
+
+    protected int maxChunkSize;
+
+    /** A chunk boundary is found when the rolling hash has all these bits to 0. */
+    protected long chunkMask;
+
+    @Override
+    public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
+        super.initialize(blobProviderId, properties);
+        String chunkSizeStr = properties.get(PROP_CHUNK_SIZE);
+        int chunkSize = StringUtils.isBlank(chunkSizeStr) ? DEFAULT_CHUNK_SIZE : Integer.parseInt(chunkSizeStr.trim());
+        // the average size of a chunk is the minimum size + 2^bits
+        chunkMask = Integer.highestOneBit(Math.max(chunkSize, 64)) - 1;
+        minChunkSize = (int) (chunkMask + 1) / 4;
+        maxChunkSize = (int) (chunkMask + 1) * 4;
+        manifestDir = new File(storageDir.getParentFile(), MANIFESTS);
+        manifestDir.mkdirs();
+        FileEventTracker.registerProtectedPath(manifestDir.getAbsolutePath());
+    }
+
+    public File getManifestDir() {
+        return manifestDir;
+    }
+
+    @Override
+    protected Binary getBinary(InputStream in) throws IOException {
+        MessageDigest fileDigest = getMessageDigest();
+        StringBuilder manifest = new StringBuilder();
+        byte[] buf = new byte[maxChunkSize];
+        int len = 0;
+        boolean eof = false;
+        try {
+            for (;;) {
+                while (!eof && len < buf.length) {
+                    int n = in.read(buf, len, buf.length - len);
+                    if (n == -1) {
+                        eof = true;
+                    } else {
+                        len += n;
+                    }
+                }
+                if (len == 0) {
+                    break;
+                }
+                int chunkLength = findChunkBoundary(buf, len);
+                fileDigest.update(buf, 0, chunkLength);
+                String chunkDigest = storeChunk(buf, chunkLength);
+                manifest.append(chunkDigest).append(' ').append(chunkLength).append('\n');
+                // keep the rest for the next chunk
+                System.arraycopy(buf, chunkLength, buf, 0, len - chunkLength);
+                len -= chunkLength;
+            }
+        } finally {
+            in.close();
+        }
+        String digest = toHexString(fileDigest.digest());
+        File file = getManifestFile(digest, true);
+        storeFile(manifest.toString().getBytes(UTF_8), -1, file);
+        return new ChunkedBinary(digest, blobProviderId, this);
+    }
+
+    /**
+     * Finds the end of the next chunk, which is the first position where the rolling hash matches the mask after the
+     * minimum chunk size, or the end of the buffer.
+     *
+     * @param buf the buffer, which is full unless the end of the stream is reached
+     * @param len the number of bytes in the buffer
+     * @return the length of the chunk
+     */
+    protected int findChunkBoundary(byte[] buf, int len) {
+        if (len <= minChunkSize) {
+            return len;
+        }
+        long hash = 0;
+        // the hash only depends on the last 64 bytes, so start a bit before the minimum size
+        for (int i = Math.max(0, minChunkSize - 64); i < len; i++) {
+            hash = (hash << 1) + GEAR[buf[i] & 0xFF];
+            if (i >= minChunkSize && (hash & chunkMask) == 0) {
+                return i + 1;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Stores a chunk if not already present.
+     *
+     * @return the chunk digest
+     */
+    protected String storeChunk(byte[] buf, int length) throws IOException {
+        MessageDigest chunkDigest = getMessageDigest();
+        chunkDigest.update(buf, 0, length);
+        String digest = toHexString(chunkDigest.digest());
+        storeFile(buf, length, getFileForDigest(digest, true));
+        return digest;
+    }
+
+    /**
+     * Stores bytes in a file, unless it already exists in which case it's just touched for the GC.
+     *
+     * @param length the number of bytes to store, or -1 for the whole buffer
+     */
+    protected void storeFile(byte[] buf, int length, File file) throws IOException {
+        if (file.exists()) {
+            touch(file);
+            return;
+        }
+        File tmp = File.createTempFile("create_", ".tmp", tmpDir);
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                out.write(buf, 0, length == -1 ? buf.length : length);
+            }
+            atomicMove(tmp, file);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Override
+    public Binary getBinary(String digest) {
+        File file = getManifestFile(digest, false);
+        if (file == null) {
+            // invalid digest
+            return null;
+        }
+        if (!file.exists()) {
+            log.warn("cannot fetch content at " + file.getPath() + " (file does not exist), check your configuration");
+            return null;
+        }
+        return new ChunkedBinary(digest, blobProviderId, this);
+    }
+
+    /**
+     * Gets the file holding the list of chunks of a binary.
+     *
+     * @param digest the binary digest
+     * @param createDir {@code true} if the directory containing the file itself must be created
+     * @return the manifest file for this digest
+     */
+    public File getManifestFile(String digest, boolean createDir) {
+        File file = getFileForDigest(digest, false);
+        if (file == null) {
+            return null;
+        }
+        Path path = manifestDir.toPath().resolve(storageDir.toPath().relativize(file.toPath()));
+        if (createDir) {
+            path.getParent().toFile().mkdirs();
+        }
+        return path.toFile();
+    }
+
+    /**
+     * A chunk of a binary.
+     */
+    public static class Chunk {
+
+        public final String digest;
+
+        public final long length;
+
+        public Chunk(String digest, long length) {
+            this.digest = digest;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Gets the chunks of a binary, in order.
+     */
+    public List<Chunk> getChunks(String digest) throws IOException {
+        File file = getManifestFile(digest, false);
+        if (file == null) {
+            throw new IOException("Invalid digest: " + digest);
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), UTF_8)) {
+            if (!line.isEmpty()) {
+                int space = line.indexOf(' ');
+                chunks.add(new Chunk(line.substring(0, space), Long.parseLong(line.substring(space + 1))));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Gets the digests of the chunks of a binary, in order.
+     */
+    public List<String> getChunkDigests(String digest) throws IOException {
+        List<String> digests = new ArrayList<>();
+        for (Chunk chunk : getChunks(digest)) {
+            digests.add(chunk.digest);
+        }
+        return digests;
+    }
+
+    @Override
+    protected void createGarbageCollector() {
+        garbageCollector = new ChunkingBinaryGarbageCollector(this);
+    }
+
+    /**
+     * Garbage collector marking the manifest of a binary and all its chunks.
+     * <p>
+     * In the status, the number of binaries is the number of manifests, and the size is the size of the chunks.
+     */
+    public static class ChunkingBinaryGarbageCollector extends DefaultBinaryGarbageCollector {
+
+        public ChunkingBinaryGarbageCollector(ChunkingBinaryManager binaryManager) {
+            super(binaryManager);
+        }
+
+        protected ChunkingBinaryManager getChunkingBinaryManager() {
+            return (ChunkingBinaryManager) binaryManager;
+        }
+
+        @Override
+        public void mark(String digest) {
+            ChunkingBinaryManager bm = getChunkingBinaryManager();
+            File file = bm.getManifestFile(digest, false);
+            if (file == null || !file.exists()) {
+                log.error("Unknown file digest: " + digest);
+                return;
+            }
+            touch(file);
+            List<String> chunkDigests;
+            try {
+                chunkDigests = bm.getChunkDigests(digest);
+            } catch (IOException e) {
+                log.error("Cannot read chunks for digest: " + digest, e);
+                return;
+            }
+            for (String chunkDigest : chunkDigests) {
+                touch(bm.getFileForDigest(chunkDigest, false));
+            }
+        }
+
+        @Override
+        public void stop(boolean delete) {
+            if (startTime == 0) {
+                throw new RuntimeException("Not started");
+            }
+            long minTime = startTime - TIME_RESOLUTION;
+            // manifests first, so that their chunks are unused when swept
+            deleteOld(getChunkingBinaryManager().getManifestDir(), minTime, 0, delete);
+            BinaryManagerStatus manifestStatus = status;
+            status = new BinaryManagerStatus();
+            deleteOld(binaryManager.getStorageDir(), minTime, 0, delete);
+            BinaryManagerStatus chunkStatus = status;
+            status = manifestStatus;
+            status.sizeBinaries = chunkStatus.sizeBinaries;
+            status.sizeBinariesGC = chunkStatus.sizeBinariesGC;
+            status.gcDuration = System.currentTimeMillis() - startTime;
+            startTime = 0;
+        }
+    }
+
+}
@@ -21,9 +21,9 @@ package org.nuxeo.ecm.core.blob.binary;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
-import org.apache.commons.io.output.NullOutputStream;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 
@@ -59,11 +59,14 @@ public class DefaultBinaryManager extends LocalBinaryManager {
 
     /**
      * Stores and digests a temporary FileBlob.
+     * <p>
+     * The file is only read to compute the digest, then it's renamed to its final location, so it's never copied if
+     * it's on the same filesystem as the binaries.
      */
     protected String storeAndDigest(FileBlob blob) throws IOException {
         String digest;
-        try (InputStream in = blob.getStream()) {
-            digest = storeAndDigest(in, NullOutputStream.NULL_OUTPUT_STREAM);
+        try (FileChannel in = FileChannel.open(blob.getFile().toPath(), StandardOpenOption.READ)) {
+            digest = storeAndDigest(in, null);
         }
         File digestFile = getFileForDigest(digest, true);
         if (digestFile.exists()) {
@@ -20,6 +20,7 @@ package org.nuxeo.ecm.core.blob.binary;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Interface to store a file or fetch a file or its length.
@@ -47,4 +48,20 @@ public interface FileStorage {
      */
     boolean fetchFile(String key, File file) throws IOException;
 
+
+    /**
+     * Fetches a range of a file based on its key, without fetching the whole file.
+     *
+     * @param key the file key
+     * @param offset the position of the first byte to fetch
+     * @param length the number of bytes to fetch, or {@code -1} to fetch until the end
+     * @return a stream for the range, or {@code null} if range fetches are not supported by this storage, in which case
+     *         the whole file will be fetched instead
+     * @throws IOException if a storage error occurred, or if the file was not found
+     * @since 9.2
+     */
+    default InputStream fetchStream(String key, long offset, long length) throws IOException {
+        return null;
+    }
+
 }
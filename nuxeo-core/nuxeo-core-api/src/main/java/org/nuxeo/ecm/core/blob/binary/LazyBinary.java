@@ -61,6 +61,17 @@ public class LazyBinary extends Binary {
         return file == null ? null : new FileInputStream(file);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the file is not in the cache, only the range is fetched if the storage allows it, and the cache is not
+     * filled.
+     */
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        return getCachingBinaryManager().getStream(digest, offset, length);
+    }
+
     @Override
     public File getFile() {
         try {
@@ -21,16 +21,20 @@ package org.nuxeo.ecm.core.blob.binary;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,7 +53,8 @@ import org.nuxeo.runtime.trackers.files.FileEventTracker;
  * <ul>
  * <li><em>data/</em> hierarchy with the actual binaries in subdirectories,</li>
  * <li><em>tmp/</em> temporary storage during creation,</li>
- * <li><em>config.xml</em> a file containing the configuration used.</li>
+ * <li><em>config.xml</em> a file containing the configuration used,</li>
+ * <li><em>gc/</em> the state of the garbage collection when the {@value #GC_MODE_PARALLEL} GC mode is used.</li>
  * </ul>
  *
  * @author Florent Guillaume
@@ -69,10 +74,45 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
     public static final String CONFIG_FILE = "config.xml";
 
+    /** @since 9.2 */
+    public static final String GC = "gc";
+
+    /**
+     * In the initialization properties, the property for the garbage collection mode.
+     *
+     * @since 9.2
+     */
+    public static final String PROP_GC_MODE = "gcMode";
+
+    /**
+     * In the initialization properties, the property for the number of threads used by the
+     * {@value #GC_MODE_PARALLEL} garbage collection mode.
+     *
+     * @since 9.2
+     */
+    public static final String PROP_GC_PARALLELISM = "gcParallelism";
+
+    /**
+     * Garbage collection mode recording marks on disk and sweeping in parallel.
+     *
+     * @see ParallelBinaryGarbageCollector
+     * @since 9.2
+     */
+    public static final String GC_MODE_PARALLEL = "parallel";
+
     protected File storageDir;
 
     protected File tmpDir;
 
+    /** @since 9.2 */
+    protected File gcDir;
+
+    /** @since 9.2 */
+    protected String gcMode;
+
+    /** @since 9.2 */
+    protected int gcParallelism;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         super.initialize(blobProviderId, properties);
@@ -105,9 +145,14 @@ public class LocalBinaryManager extends AbstractBinaryManager {
                 + "binary store: " + base);
         storageDir = new File(base, DATA);
         tmpDir = new File(base, TMP);
+        gcDir = new File(base, GC);
         storageDir.mkdirs();
         tmpDir.mkdirs();
         descriptor = getDescriptor(new File(base, CONFIG_FILE));
+        gcMode = properties.get(PROP_GC_MODE);
+        String parallelism = properties.get(PROP_GC_PARALLELISM);
+        gcParallelism = StringUtils.isBlank(parallelism) ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(parallelism.trim());
         createGarbageCollector();
 
         // be sure FileTracker won't steal our files !
@@ -129,6 +174,24 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         return storageDir;
     }
 
+    /**
+     * Gets the directory where the garbage collector keeps its state.
+     *
+     * @since 9.2
+     */
+    public File getGCDir() {
+        return gcDir;
+    }
+
+    /**
+     * Gets the depth of the directories where binaries are stored.
+     *
+     * @since 9.2
+     */
+    public int getDepth() {
+        return descriptor.depth;
+    }
+
     @Override
     protected Binary getBinary(InputStream in) throws IOException {
         String digest = storeAndDigest(in);
@@ -179,30 +242,47 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         return new File(dir, digest);
     }
 
+    /**
+     * Stores a stream in a temporary file while computing its digest, then moves it to its final location.
+     * <p>
+     * The copy is done through channels and a direct buffer, see {@link #storeAndDigest(ReadableByteChannel,
+     * WritableByteChannel)}.
+     */
     protected String storeAndDigest(InputStream in) throws IOException {
-        File tmp = File.createTempFile("create_", ".tmp", tmpDir);
-        OutputStream out = new FileOutputStream(tmp);
+        // not Files.createTempFile, whose owner-only permissions would end up on the stored file
+        Path tmp = File.createTempFile("create_", ".tmp", tmpDir).toPath();
         /*
          * First, write the input stream to a temporary file, while computing a digest.
          */
         try {
             String digest;
-            try {
-                digest = storeAndDigest(in, out);
+            try (ReadableByteChannel src = getChannel(in); //
+                    FileChannel dst = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                digest = storeAndDigest(src, dst);
             } finally {
                 in.close();
-                out.close();
             }
             /*
              * Move the tmp file to its destination.
              */
             File file = getFileForDigest(digest, true);
-            atomicMove(tmp, file);
+            atomicMove(tmp.toFile(), file);
             return digest;
         } finally {
-            tmp.delete();
+            Files.deleteIfExists(tmp);
         }
+    }
 
+    /**
+     * Gets a channel reading from a stream, using the underlying file channel directly if possible.
+     *
+     * @since 9.2
+     */
+    protected static ReadableByteChannel getChannel(InputStream in) {
+        if (in instanceof FileInputStream) {
+            return ((FileInputStream) in).getChannel();
+        }
+        return Channels.newChannel(in);
     }
 
     /**
@@ -229,10 +309,7 @@ public class LocalBinaryManager extends AbstractBinaryManager {
             // atomic rename.
             File tmp = File.createTempFile(dest.getName(), ".tmp", dest.getParentFile());
             try {
-                try (InputStream in = new FileInputStream(source); //
-                        OutputStream out = new FileOutputStream(tmp)) {
-                    IOUtils.copy(in, out);
-                }
+                copy(source, tmp);
                 // then do the atomic rename
                 tmp.renameTo(dest);
             } finally {
@@ -246,8 +323,34 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         }
     }
 
+    /**
+     * Copies a file to another one, letting the OS transfer the bytes directly between the files if it can.
+     *
+     * @since 9.2
+     */
+    protected static void copy(File source, File dest) throws IOException {
+        try (FileChannel src = FileChannel.open(source.toPath(), StandardOpenOption.READ); //
+                FileChannel dst = FileChannel.open(dest.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = src.size();
+            long pos = 0;
+            while (pos < size) {
+                long n = dst.transferFrom(src, pos, size - pos);
+                if (n <= 0) {
+                    // source truncated concurrently
+                    break;
+                }
+                pos += n;
+            }
+        }
+    }
+
     protected void createGarbageCollector() {
-        garbageCollector = new DefaultBinaryGarbageCollector(this);
+        if (GC_MODE_PARALLEL.equals(gcMode)) {
+            garbageCollector = new ParallelBinaryGarbageCollector(this, gcParallelism);
+        } else {
+            garbageCollector = new DefaultBinaryGarbageCollector(this);
+        }
     }
 
     public static class DefaultBinaryGarbageCollector implements BinaryGarbageCollector {
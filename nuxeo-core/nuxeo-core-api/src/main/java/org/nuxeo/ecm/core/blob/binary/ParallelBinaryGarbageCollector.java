@@ -0,0 +1,405 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.binary.LocalBinaryManager.DefaultBinaryGarbageCollector;
+
+/**
+ * A garbage collector for a {@link LocalBinaryManager} that doesn't touch the binaries to mark them, and sweeps them in
+ * parallel.
+ * <p>
+ * The marked digests are appended to files in the <em>gc/</em> directory, one file per first-level directory of the
+ * storage (i.e., per two first characters of the digest). When the GC is stopped, each first-level directory is swept
+ * by a fork-join pool against the set of marks for this directory only, so the memory used is bounded by the number of
+ * marks of one directory.
+ * <p>
+ * The GC start time and the already-swept directories are recorded in the <em>gc/</em> directory. If the process is
+ * restarted during a GC, the next GC resumes it: the previous start time and marks are kept, and the directories
+ * already swept are not swept again.
+ * <p>
+ * Like for {@link DefaultBinaryGarbageCollector}, binaries created or re-uploaded since the start of the GC are never
+ * deleted.
+ *
+ * @since 9.2
+ */
+public class ParallelBinaryGarbageCollector implements BinaryGarbageCollector {
+
+    private static final Log log = LogFactory.getLog(ParallelBinaryGarbageCollector.class);
+
+    protected static final String STATE_FILE = "state";
+
+    protected static final String DONE_FILE = "done";
+
+    protected static final String MARKS_PREFIX = "marks-";
+
+    protected final LocalBinaryManager binaryManager;
+
+    protected final int parallelism;
+
+    protected volatile long startTime;
+
+    protected BinaryManagerStatus status;
+
+    /** Open mark files, by first-level directory name. */
+    protected final Map<String, Writer> markWriters = new ConcurrentHashMap<>();
+
+    public ParallelBinaryGarbageCollector(LocalBinaryManager binaryManager, int parallelism) {
+        this.binaryManager = binaryManager;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String getId() {
+        return binaryManager.getStorageDir().toURI().toString();
+    }
+
+    @Override
+    public BinaryManagerStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean isInProgress() {
+        // volatile as this is designed to be called from another thread
+        return startTime != 0;
+    }
+
+    @Override
+    public void start() {
+        if (startTime != 0) {
+            throw new RuntimeException("Alread started");
+        }
+        status = new BinaryManagerStatus();
+        Path stateFile = getGCPath().resolve(STATE_FILE);
+        try {
+            Files.createDirectories(getGCPath());
+            if (Files.exists(stateFile)) {
+                startTime = Long.parseLong(new String(Files.readAllBytes(stateFile), UTF_8).trim());
+                log.info("Resuming binaries GC started at " + startTime + " for: " + getId());
+            } else {
+                long time = System.currentTimeMillis();
+                Files.write(stateFile, String.valueOf(time).getBytes(UTF_8));
+                startTime = time;
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new NuxeoException("Cannot start binaries GC for: " + getId(), e);
+        }
+    }
+
+    @Override
+    public void mark(String digest) {
+        if (digest.length() < 2 * binaryManager.getDepth()) {
+            log.error("Invalid file digest: " + digest);
+            return;
+        }
+        String prefix = digest.substring(0, 2);
+        Writer writer = markWriters.computeIfAbsent(prefix, this::openMarkWriter);
+        try {
+            synchronized (writer) {
+                writer.write(digest);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot mark binary: " + digest, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The mark files are flushed.
+     */
+    @Override
+    public boolean checkpoint() {
+        try {
+            for (Writer writer : markWriters.values()) {
+                synchronized (writer) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot flush binaries GC marks for: " + getId(), e);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Duplicate marks are only written to the mark files, and are deduplicated per first-level directory when sweeping.
+     */
+    @Override
+    public boolean deduplicatesMarks() {
+        return true;
+    }
+
+    protected Writer openMarkWriter(String prefix) {
+        try {
+            return Files.newBufferedWriter(getGCPath().resolve(MARKS_PREFIX + prefix), UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void stop(boolean delete) {
+        if (startTime == 0) {
+            throw new RuntimeException("Not started");
+        }
+        try {
+            closeMarkWriters();
+            sweep(delete);
+            // completed, forget the state
+            FileUtils.deleteDirectory(binaryManager.getGCDir());
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot sweep binaries for: " + getId(), e);
+        } finally {
+            markWriters.clear();
+            status.gcDuration = System.currentTimeMillis() - startTime;
+            startTime = 0;
+        }
+    }
+
+    protected void closeMarkWriters() throws IOException {
+        IOException exception = null;
+        for (Writer writer : markWriters.values()) {
+            try {
+                synchronized (writer) {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    protected void sweep(boolean delete) throws IOException {
+        Map<String, long[]> done = readDone(delete);
+        File[] files = binaryManager.getStorageDir().listFiles();
+        List<File> dirs = new ArrayList<>();
+        for (File dir : files == null ? new File[0] : files) {
+            // skip directories already swept before a restart
+            if (dir.isDirectory() && !done.containsKey(dir.getName())) {
+                dirs.add(dir);
+            }
+        }
+        for (long[] counts : done.values()) {
+            addCounts(counts);
+        }
+        status.numSweepTasks = done.size() + dirs.size();
+        status.numSweepTasksDone = done.size();
+        long minTime = startTime - DefaultBinaryGarbageCollector.TIME_RESOLUTION;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SweepAction(dirs, minTime, delete));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sweeps a list of first-level directories, splitting the list until there's only one.
+     */
+    protected class SweepAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final List<File> dirs;
+
+        protected final long minTime;
+
+        protected final boolean delete;
+
+        public SweepAction(List<File> dirs, long minTime, boolean delete) {
+            this.dirs = dirs;
+            this.minTime = minTime;
+            this.delete = delete;
+        }
+
+        @Override
+        protected void compute() {
+            int size = dirs.size();
+            if (size == 0) {
+                return;
+            }
+            if (size == 1) {
+                try {
+                    sweepDirectory(dirs.get(0), minTime, delete);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int half = size / 2;
+            invokeAll(new SweepAction(dirs.subList(0, half), minTime, delete),
+                    new SweepAction(dirs.subList(half, size), minTime, delete));
+        }
+    }
+
+    /**
+     * Sweeps a first-level directory, then records it as done and reports progress.
+     */
+    protected void sweepDirectory(File dir, long minTime, boolean delete) throws IOException {
+        String prefix = dir.getName();
+        Path marksFile = getGCPath().resolve(MARKS_PREFIX + prefix);
+        Set<String> marks;
+        if (Files.exists(marksFile)) {
+            marks = new HashSet<>(Files.readAllLines(marksFile, UTF_8));
+        } else {
+            marks = Collections.emptySet();
+        }
+        long[] counts = new long[4];
+        sweep(dir, marks, minTime, delete, counts);
+        if (dir.list().length == 0) {
+            // empty directory
+            dir.delete();
+        }
+        addCounts(counts);
+        writeDone(prefix, delete, counts);
+        Files.deleteIfExists(marksFile);
+    }
+
+    /**
+     * Sweeps a file or a directory recursively.
+     *
+     * @param counts numBinaries, sizeBinaries, numBinariesGC, sizeBinariesGC
+     */
+    protected void sweep(File file, Set<String> marks, long minTime, boolean delete, long[] counts) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File f : files) {
+                sweep(f, marks, minTime, delete, counts);
+                if (f.isDirectory() && f.list().length == 0) {
+                    // empty directory
+                    f.delete();
+                }
+            }
+        } else if (file.isFile() && file.canWrite()) {
+            long length = file.length();
+            if (marks.contains(file.getName())) {
+                counts[0]++;
+                counts[1] += length;
+                return;
+            }
+            long lastModified = file.lastModified();
+            if (lastModified == 0) {
+                log.error("Cannot read last modified for file: " + file);
+            } else if (lastModified < minTime) {
+                counts[2]++;
+                counts[3] += length;
+                if (delete && !file.delete()) {
+                    log.warn("Cannot gc file: " + file);
+                }
+            } else {
+                // created or re-uploaded since the GC start
+                counts[0]++;
+                counts[1] += length;
+            }
+        }
+    }
+
+    protected void addCounts(long[] counts) {
+        synchronized (status) {
+            status.numBinaries += counts[0];
+            status.sizeBinaries += counts[1];
+            status.numBinariesGC += counts[2];
+            status.sizeBinariesGC += counts[3];
+        }
+    }
+
+    /**
+     * Reads the directories already swept by a previous interrupted GC in the same delete mode.
+     */
+    protected Map<String, long[]> readDone(boolean delete) throws IOException {
+        Map<String, long[]> done = new HashMap<>();
+        Path doneFile = getGCPath().resolve(DONE_FILE);
+        if (!Files.exists(doneFile)) {
+            return done;
+        }
+        for (String line : Files.readAllLines(doneFile, UTF_8)) {
+            // prefix delete numBinaries sizeBinaries numBinariesGC sizeBinariesGC
+            String[] parts = line.split(" ");
+            if (parts.length != 6 || Boolean.parseBoolean(parts[1]) != delete) {
+                // truncated line or other mode
+                continue;
+            }
+            long[] counts = new long[4];
+            for (int i = 0; i < 4; i++) {
+                counts[i] = Long.parseLong(parts[i + 2]);
+            }
+            done.put(parts[0], counts);
+        }
+        return done;
+    }
+
+    protected void writeDone(String prefix, boolean delete, long[] counts) throws IOException {
+        String line = prefix + " " + delete + " " + counts[0] + " " + counts[1] + " " + counts[2] + " " + counts[3]
+                + "\n";
+        synchronized (status) {
+            try (BufferedWriter writer = Files.newBufferedWriter(getGCPath().resolve(DONE_FILE), UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+            }
+            status.numSweepTasksDone++;
+        }
+    }
+
+    protected Path getGCPath() {
+        return binaryManager.getGCDir().toPath();
+    }
+
+}
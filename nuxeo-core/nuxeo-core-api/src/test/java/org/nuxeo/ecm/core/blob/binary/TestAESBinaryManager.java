@@ -18,11 +18,13 @@
  */
 package org.nuxeo.ecm.core.blob.binary;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 import static org.nuxeo.ecm.core.blob.binary.AESBinaryManager.PARAM_KEY_ALIAS;
 import static org.nuxeo.ecm.core.blob.binary.AESBinaryManager.PARAM_KEY_PASSWORD;
@@ -31,21 +33,32 @@ import static org.nuxeo.ecm.core.blob.binary.AESBinaryManager.PARAM_KEY_STORE_PA
 import static org.nuxeo.ecm.core.blob.binary.AESBinaryManager.PARAM_KEY_STORE_TYPE;
 import static org.nuxeo.ecm.core.blob.binary.AESBinaryManager.PARAM_PASSWORD;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyStore;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 import javax.crypto.KeyGenerator;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -57,6 +70,11 @@ import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
 public class TestAESBinaryManager extends NXRuntimeTestCase {
 
+    private static final Log log = LogFactory.getLog(TestAESBinaryManager.class);
+
+    /** The benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
     private static final String KEY_STORE_TYPE = "JCEKS";
 
     private static final String KEY_STORE_PASSWORD = "keystoresecret";
@@ -82,6 +100,7 @@ public class TestAESBinaryManager extends NXRuntimeTestCase {
         binaryManager.digestAlgorithm = binaryManager.getDefaultDigestAlgorithm(); // MD5
         String options = String.format("%s=%s", PARAM_PASSWORD, "mypassword");
         binaryManager.initializeOptions(options);
+        binaryManager.fileVersion = AESBinaryManager.FILE_VERSION_1;
 
         // encrypt
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -112,6 +131,60 @@ public class TestAESBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testEncryptDecryptChunkedWithPassword() throws Exception {
+        AESBinaryManager binaryManager = new AESBinaryManager();
+        binaryManager.digestAlgorithm = binaryManager.getDefaultDigestAlgorithm(); // MD5
+        binaryManager.initializeOptions(String.format("%s=%s", PARAM_PASSWORD, "mypassword"));
+        binaryManager.chunkSize = 10; // several chunks
+        binaryManager.parallelism = 2;
+
+        // encrypt
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String digest = binaryManager.storeAndDigest(new ByteArrayInputStream(CONTENT.getBytes(UTF8)), out);
+        assertEquals(CONTENT_MD5, digest);
+        byte[] encrypted = out.toByteArray();
+
+        // decrypt
+        out = new ByteArrayOutputStream();
+        binaryManager.decrypt(new ByteArrayInputStream(encrypted), out);
+        assertEquals(CONTENT, new String(out.toByteArray(), UTF8));
+
+        // truncated file is detected
+        byte[] truncated = new byte[encrypted.length - 10 - AESBinaryManager.GCM_TAG_LENGTH];
+        System.arraycopy(encrypted, 0, truncated, 0, truncated.length);
+        try {
+            binaryManager.decrypt(new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+            fail("truncation should be detected");
+        } catch (NuxeoException e) {
+            String message = e.getMessage();
+            assertTrue(message, message.contains("Tag mismatch"));
+        }
+
+        // file truncated to its header is detected
+        long headerLength = binaryManager.readHeader(new ByteArrayInputStream(encrypted)).length;
+        truncated = Arrays.copyOf(encrypted, (int) headerLength);
+        try {
+            binaryManager.decrypt(new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+            fail("truncation should be detected");
+        } catch (IOException e) {
+            String message = e.getMessage();
+            assertTrue(message, message.contains("truncated"));
+        }
+
+        // cannot decrypt with wrong password
+        binaryManager.initializeOptions(String.format("%s=%s", PARAM_PASSWORD, "badpassword"));
+        try {
+            binaryManager.decrypt(new ByteArrayInputStream(encrypted), new ByteArrayOutputStream());
+            fail("wrong password should be detected");
+        } catch (NuxeoException e) {
+            String message = e.getMessage();
+            assertTrue(message, message.contains("Tag mismatch"));
+        }
+
+        binaryManager.close();
+    }
+
     @Test
     public void testEncryptDecryptWithKeyStore() throws Exception {
         File keyStoreFile = Framework.createTempFile("nuxeoKeyStore_", "");
@@ -183,4 +256,118 @@ public class TestAESBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    protected AESBinaryManager newBinaryManager(String blobProviderId, int fileVersion) throws IOException {
+        AESBinaryManager binaryManager = new AESBinaryManager();
+        Map<String, String> properties = new HashMap<>();
+        properties.put(BinaryManager.PROP_KEY, String.format("%s=%s", PARAM_PASSWORD, "mypassword"));
+        properties.put(AESBinaryManager.PROP_FILE_VERSION, String.valueOf(fileVersion));
+        properties.put(AESBinaryManager.PROP_ENCRYPTION_CHUNK_SIZE, String.valueOf(4 * 1024));
+        binaryManager.initialize(blobProviderId, properties);
+        return binaryManager;
+    }
+
+    protected static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(1234).nextBytes(bytes);
+        return bytes;
+    }
+
+    protected static void checkRanges(byte[] bytes, Binary binary) throws IOException {
+        for (int[] range : new int[][] { { 0, 10 }, { 1000, 100 }, { 4096, 4096 }, { 30_000, 50_000 },
+                { bytes.length - 10, -1 }, { bytes.length, -1 } }) {
+            int offset = range[0];
+            int length = range[1] == -1 ? bytes.length - offset : range[1];
+            byte[] expected = new byte[length];
+            System.arraycopy(bytes, offset, expected, 0, length);
+            try (InputStream in = binary.getStream(offset, range[1])) {
+                assertArrayEquals(expected, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    @Test
+    public void testAESBinaryManagerRanges() throws Exception {
+        byte[] bytes = randomBytes(100_000);
+        for (int fileVersion : new int[] { AESBinaryManager.FILE_VERSION_1, AESBinaryManager.FILE_VERSION_2 }) {
+            AESBinaryManager binaryManager = newBinaryManager("repov" + fileVersion, fileVersion);
+            try {
+                Binary binary = binaryManager.getBinary(new ByteArrayInputStream(bytes));
+                // no decrypted file unless requested
+                assertTrue(binary instanceof AESBinary);
+                binary = binaryManager.getBinary(binary.getDigest());
+                try (InputStream in = binary.getStream()) {
+                    assertArrayEquals(bytes, IOUtils.toByteArray(in));
+                }
+                checkRanges(bytes, binary);
+                // through the decrypted file
+                assertArrayEquals(bytes, Files.readAllBytes(binary.getFile().toPath()));
+                checkRanges(bytes, binary);
+            } finally {
+                binaryManager.close();
+            }
+        }
+    }
+
+    @Test
+    public void testAESBinaryManagerMigration() throws Exception {
+        byte[] bytes = randomBytes(100_000);
+        AESBinaryManager binaryManager = newBinaryManager("repomigration", AESBinaryManager.FILE_VERSION_1);
+        String digest;
+        try {
+            digest = binaryManager.getBinary(new ByteArrayInputStream(bytes)).getDigest();
+            binaryManager.getBinary(new ByteArrayInputStream(CONTENT.getBytes(UTF8)));
+        } finally {
+            binaryManager.close();
+        }
+
+        // reopen with the new format, old files are still readable
+        binaryManager = newBinaryManager("repomigration", AESBinaryManager.FILE_VERSION_2);
+        try {
+            try (InputStream in = binaryManager.getBinary(digest).getStream()) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+            assertEquals(2, binaryManager.migrate());
+            assertEquals(0, binaryManager.migrate());
+            assertFalse(binaryManager.migrate(digest));
+            try (InputStream in = binaryManager.getBinary(digest).getStream()) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+            try (InputStream in = binaryManager.getBinary(CONTENT_MD5).getStream()) {
+                assertEquals(CONTENT, IOUtils.toString(in, UTF8));
+            }
+        } finally {
+            binaryManager.close();
+        }
+    }
+
+    @Test
+    public void testEncryptDecryptBenchmark() throws Exception {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        // size of the benchmarked binary, can be increased for actual measurements
+        long size = Long.getLong("nuxeo.test.binary.benchmark.aessize", 1024 * 1024);
+        AESBinaryManager binaryManager = new AESBinaryManager();
+        binaryManager.digestAlgorithm = binaryManager.getDefaultDigestAlgorithm(); // MD5
+        binaryManager.initializeOptions(String.format("%s=%s", PARAM_PASSWORD, "mypassword"));
+        for (int fileVersion : new int[] { AESBinaryManager.FILE_VERSION_1, AESBinaryManager.FILE_VERSION_2 }) {
+            binaryManager.fileVersion = fileVersion;
+            File file = Framework.createTempFile("nxaesbench", ".tmp");
+            try {
+                long t0 = System.nanoTime();
+                try (OutputStream out = new FileOutputStream(file)) {
+                    binaryManager.storeAndDigest(new NullInputStream(size), out);
+                }
+                long t1 = System.nanoTime();
+                try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                    binaryManager.decrypt(in, new NullOutputStream());
+                }
+                long t2 = System.nanoTime();
+                log.info(String.format("AES file version %d, %d bytes: encrypt %.1f ms, decrypt %.1f ms", fileVersion,
+                        size, (t1 - t0) / 1e6, (t2 - t1) / 1e6));
+            } finally {
+                file.delete();
+            }
+        }
+        binaryManager.close();
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestChunkingBinaryManager extends NXRuntimeTestCase {
+
+    protected ChunkingBinaryManager binaryManager;
+
+    @Before
+    public void initBinaryManager() throws Exception {
+        binaryManager = new ChunkingBinaryManager();
+        // small chunks for the test
+        binaryManager.initialize("repo",
+                Collections.singletonMap(ChunkingBinaryManager.PROP_CHUNK_SIZE, String.valueOf(4 * 1024)));
+    }
+
+    @After
+    public void closeBinaryManager() {
+        binaryManager.close();
+    }
+
+    protected static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(1234).nextBytes(bytes);
+        return bytes;
+    }
+
+    protected static byte[] read(Binary binary) throws Exception {
+        try (InputStream in = binary.getStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testChunking() throws Exception {
+        byte[] bytes = randomBytes(1024 * 1024);
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(bytes));
+        assertTrue(binary instanceof ChunkedBinary);
+        String digest = binary.getDigest();
+        List<String> chunks = binaryManager.getChunkDigests(digest);
+        assertTrue(String.valueOf(chunks.size()), chunks.size() > 100);
+        assertEquals(chunks.size(), TestDefaultBinaryManager.countFiles(binaryManager.getStorageDir()));
+
+        // read back, lazily or through a file
+        binary = binaryManager.getBinary(digest);
+        assertNotNull(binary);
+        assertArrayEquals(bytes, read(binary));
+        assertArrayEquals(bytes, Files.readAllBytes(binary.getFile().toPath()));
+
+        // range reads, within a chunk and across chunks
+        for (int[] range : new int[][] { { 0, 10 }, { 1000, 100 }, { 300_000, 200_000 },
+                { bytes.length - 10, -1 } }) {
+            int offset = range[0];
+            int length = range[1] == -1 ? bytes.length - offset : range[1];
+            byte[] expected = new byte[length];
+            System.arraycopy(bytes, offset, expected, 0, length);
+            try (InputStream in = binary.getStream(offset, range[1])) {
+                assertArrayEquals(expected, IOUtils.toByteArray(in));
+            }
+        }
+
+        // same content is fully deduplicated
+        assertEquals(digest, binaryManager.getBinary(new ByteArrayInputStream(bytes)).getDigest());
+        assertEquals(chunks.size(), TestDefaultBinaryManager.countFiles(binaryManager.getStorageDir()));
+
+        // insert a few bytes in the middle, only the surrounding chunks change
+        byte[] edited = new byte[bytes.length + 3];
+        int pos = bytes.length / 2;
+        System.arraycopy(bytes, 0, edited, 0, pos);
+        edited[pos] = 'a';
+        edited[pos + 1] = 'b';
+        edited[pos + 2] = 'c';
+        System.arraycopy(bytes, pos, edited, pos + 3, bytes.length - pos);
+        Binary binary2 = binaryManager.getBinary(new ByteArrayInputStream(edited));
+        List<String> chunks2 = binaryManager.getChunkDigests(binary2.getDigest());
+        Set<String> newChunks = new HashSet<>(chunks2);
+        newChunks.removeAll(chunks);
+        assertTrue(String.valueOf(newChunks.size()), newChunks.size() <= 2);
+        assertEquals(chunks.size() + newChunks.size(),
+                TestDefaultBinaryManager.countFiles(binaryManager.getStorageDir()));
+        assertArrayEquals(edited, read(binary2));
+
+        // empty binary
+        Binary empty = binaryManager.getBinary(new ByteArrayInputStream(new byte[0]));
+        assertEquals(0, read(binaryManager.getBinary(empty.getDigest())).length);
+    }
+
+    @Test
+    public void testChunkingGarbageCollector() throws Exception {
+        byte[] bytes = randomBytes(256 * 1024);
+        byte[] edited = bytes.clone();
+        edited[bytes.length / 2]++;
+        String digest1 = binaryManager.getBinary(new ByteArrayInputStream(bytes)).getDigest();
+        String digest2 = binaryManager.getBinary(new ByteArrayInputStream(edited)).getDigest();
+        List<String> chunks1 = binaryManager.getChunkDigests(digest1);
+        Set<String> chunks2 = new HashSet<>(binaryManager.getChunkDigests(digest2));
+        int numChunks = TestDefaultBinaryManager.countFiles(binaryManager.getStorageDir());
+
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+
+        // keep only the second binary
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        gc.mark(digest2);
+        gc.stop(true);
+        BinaryManagerStatus status = gc.getStatus();
+        assertEquals(1, status.numBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(edited.length, status.sizeBinaries);
+
+        assertNull(binaryManager.getBinary(digest1));
+        assertArrayEquals(edited, read(binaryManager.getBinary(digest2)));
+        // only the chunks unique to the first binary are gone
+        int unique = 0;
+        for (String chunk : chunks1) {
+            File file = binaryManager.getFileForDigest(chunk, false);
+            if (chunks2.contains(chunk)) {
+                assertTrue(file.exists());
+            } else {
+                unique++;
+            }
+        }
+        assertEquals(numChunks - unique, TestDefaultBinaryManager.countFiles(binaryManager.getStorageDir()));
+    }
+
+}
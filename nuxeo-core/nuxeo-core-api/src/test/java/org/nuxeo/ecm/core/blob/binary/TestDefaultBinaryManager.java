@@ -18,18 +18,29 @@
  */
 package org.nuxeo.ecm.core.blob.binary;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
@@ -37,10 +48,20 @@ import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
 public class TestDefaultBinaryManager extends NXRuntimeTestCase {
 
+    private static final Log log = LogFactory.getLog(TestDefaultBinaryManager.class);
+
+    /** The benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
+    /** Maximum blob size for the benchmark, use -Dnuxeo.test.binary.benchmark.maxsize=2147483648 for a full run. */
+    private static final long BENCHMARK_MAX_SIZE = Long.getLong("nuxeo.test.binary.benchmark.maxsize", 1024 * 1024);
+
     private static final String CONTENT = "this is a file au caf\u00e9";
 
     private static final String CONTENT_MD5 = "d25ea4f4642073b7f218024d397dbaef";
 
+    private static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72";
+
     private static final String CONTENT_SHA1 = "3f3bdf817537faa28483eabc69a4bb3912cf0c6c";
 
     @Test
@@ -71,6 +92,14 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         assertEquals("MD5", binary.getDigestAlgorithm());
         assertEquals(CONTENT_MD5, binary.getDigest());
 
+        // range read
+        try (InputStream in = binary.getStream(5, 4)) {
+            assertEquals(CONTENT.substring(5, 9), IOUtils.toString(in, "UTF-8"));
+        }
+        try (InputStream in = binary.getStream(18, -1)) {
+            assertEquals(CONTENT.substring(18), IOUtils.toString(in, "UTF-8"));
+        }
+
         // check SHA-1 binary
         Binary sha1Binary = new Binary(CONTENT_SHA1, "repo");
         assertEquals("SHA-1", sha1Binary.getDigestAlgorithm());
@@ -124,6 +153,91 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testParallelGarbageCollector() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalBinaryManager.PROP_GC_MODE, LocalBinaryManager.GC_MODE_PARALLEL);
+        properties.put(LocalBinaryManager.PROP_GC_PARALLELISM, "4");
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", properties);
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob("abc"));
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+        // create another binary after time threshold, it won't be GCed
+        binaryManager.getBinary(Blobs.createBlob("defg"));
+        assertEquals(3, countFiles(binaryManager.getStorageDir()));
+
+        // GC in non-delete mode
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        assertTrue(gc instanceof ParallelBinaryGarbageCollector);
+        gc.start();
+        assertTrue(gc.isInProgress());
+        gc.mark(CONTENT_MD5);
+        gc.stop(false);
+        assertFalse(gc.isInProgress());
+        BinaryManagerStatus status = gc.getStatus();
+        assertEquals(2, status.numBinaries);
+        assertEquals(bytes.length + 4, status.sizeBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(3, status.sizeBinariesGC);
+        assertEquals(3, status.numSweepTasks);
+        assertEquals(3, status.numSweepTasksDone);
+        // still there, and marks not recorded on the binaries
+        assertEquals(3, countFiles(binaryManager.getStorageDir()));
+        assertFalse(binaryManager.getGCDir().exists());
+
+        // real GC, with a binary marked twice as during a parallel mark
+        assertTrue(gc.deduplicatesMarks());
+        gc.start();
+        gc.mark(CONTENT_MD5);
+        gc.mark(CONTENT_MD5);
+        gc.stop(true);
+        status = gc.getStatus();
+        assertEquals(2, status.numBinaries);
+        assertEquals(1, status.numBinariesGC);
+        // one file gone
+        assertEquals(2, countFiles(binaryManager.getStorageDir()));
+        assertNull(binaryManager.getBinary(ABC_MD5));
+
+        binaryManager.close();
+    }
+
+    @Test
+    public void testParallelGarbageCollectorResume() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalBinaryManager.PROP_GC_MODE, LocalBinaryManager.GC_MODE_PARALLEL);
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", properties);
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob("abc"));
+        Thread.sleep(3 * 1000);
+
+        // state left by a GC interrupted by a restart, after the directory of "abc" was swept
+        File gcDir = binaryManager.getGCDir();
+        gcDir.mkdirs();
+        long startTime = System.currentTimeMillis();
+        Files.write(new File(gcDir, "state").toPath(), String.valueOf(startTime).getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(gcDir, "done").toPath(),
+                (ABC_MD5.substring(0, 2) + " true 0 0 1 3\n").getBytes(StandardCharsets.UTF_8));
+
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        gc.stop(true);
+        BinaryManagerStatus status = gc.getStatus();
+        // counts of the previous run are kept
+        assertEquals(0, status.numBinaries);
+        assertEquals(2, status.numBinariesGC);
+        assertEquals(2, status.numSweepTasks);
+        // the already swept directory was not swept again
+        assertNotNull(binaryManager.getBinary(ABC_MD5));
+        assertNull(binaryManager.getBinary(CONTENT_MD5));
+        assertFalse(gcDir.exists());
+
+        binaryManager.close();
+    }
+
     @Test
     public void testTemporaryCopies() throws IOException {
         DefaultBinaryManager binaryManager = new DefaultBinaryManager();
@@ -138,6 +252,58 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testStoreSeveralBuffers() throws Exception {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        try {
+            // more than one direct buffer
+            int size = 2 * AbstractBinaryManager.NIO_BUF_SIZE + 123;
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) i;
+            }
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            String expected = AbstractBinaryManager.toHexString(md.digest(bytes));
+
+            Binary binary = binaryManager.getBinary(new ByteArrayInputStream(bytes));
+            assertEquals(expected, binary.getDigest());
+            assertEquals(size, binary.getFile().length());
+            try (InputStream in = binary.getStream()) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+        } finally {
+            binaryManager.close();
+        }
+    }
+
+    @Test
+    public void testStoreAndDigestBenchmark() throws Exception {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        try {
+            for (long size = 1024; size <= BENCHMARK_MAX_SIZE; size *= 32) {
+                // from a stream
+                long t0 = System.nanoTime();
+                binaryManager.getBinary(new NullInputStream(size));
+                long stream = System.nanoTime() - t0;
+
+                // from a temporary file, already on disk
+                FileBlob blob = new FileBlob(new NullInputStream(size + 1), null, null, binaryManager.tmpDir);
+                t0 = System.nanoTime();
+                Binary binary = binaryManager.getBinary(blob);
+                long tmpFile = System.nanoTime() - t0;
+                assertEquals(size + 1, binary.getFile().length());
+
+                log.info(String.format("Store %d bytes: %.1f MB/s from a stream, %.1f MB/s from a temporary file",
+                        size, size / (stream / 1e9) / 1e6, size / (tmpFile / 1e9) / 1e6));
+            }
+        } finally {
+            binaryManager.close();
+        }
+    }
+
     protected static int countFiles(File dir) {
         int n = 0;
         for (File f : dir.listFiles()) {
@@ -0,0 +1,371 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.Progress;
+import org.nuxeo.ecm.core.work.api.Work.State;
+
+/**
+ * Compact {@link WorkCodec}.
+ * <p>
+ * The work classes registered with {@link #register}, usually through the {@code serializers} extension point of the
+ * {@link org.nuxeo.ecm.core.work.api.WorkManager WorkManager}, are written in a binary format by their
+ * {@link WorkSerializer}, preceded by their registered type. Other work classes fall back to Java serialization. Large
+ * payloads are compressed.
+ * <p>
+ * The encoded bytes start with a magic byte, a format version and flags. Bytes written by the Java serialization
+ * alone, as done before this codec existed, are still decoded.
+ *
+ * @since 9.2
+ */
+public class CompactWorkCodec implements WorkCodec {
+
+    /** First byte of the compact format. Java serialization streams start with 0xAC instead. */
+    public static final byte MAGIC = 'W';
+
+    /** Current version of the compact format. */
+    public static final byte VERSION = 1;
+
+    protected static final int FLAG_COMPRESSED = 1;
+
+    protected static final int FLAG_JAVA = 2;
+
+    protected static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+
+    protected static final int HEADER_LENGTH = 3;
+
+    /** Payloads smaller than this are not compressed. */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+
+    public static final int SLEEP_WORK_TYPE = 1;
+
+    /**
+     * Writes and reads the instances of a work class.
+     */
+    public interface WorkSerializer<T extends Work> {
+
+        void write(T work, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    protected static class Registration<T extends Work> {
+
+        protected final int type;
+
+        protected final Class<T> klass;
+
+        protected final WorkSerializer<T> serializer;
+
+        protected Registration(int type, Class<T> klass, WorkSerializer<T> serializer) {
+            this.type = type;
+            this.klass = klass;
+            this.serializer = serializer;
+        }
+    }
+
+    protected static final Map<Integer, Registration<?>> TYPES = new ConcurrentHashMap<>();
+
+    protected static final Map<Class<?>, Registration<?>> CLASSES = new ConcurrentHashMap<>();
+
+    static {
+        register(SLEEP_WORK_TYPE, SleepWork.class, new SleepWorkSerializer());
+    }
+
+    /**
+     * Registers the serializer of a work class.
+     * <p>
+     * The type is stored with the work and must identify the class on all the nodes of a cluster. Only instances of
+     * exactly this class use the serializer, subclasses fall back to Java serialization.
+     *
+     * @param type the type, between 1 and 32767
+     * @param klass the work class
+     * @param serializer the serializer
+     */
+    public static synchronized <T extends Work> void register(int type, Class<T> klass,
+            WorkSerializer<T> serializer) {
+        if (type <= 0 || type > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid work type: " + type);
+        }
+        Registration<?> existing = TYPES.get(type);
+        if (existing != null && existing.klass != klass) {
+            throw new IllegalArgumentException(
+                    "Work type " + type + " already registered for class " + existing.klass.getName());
+        }
+        Registration<T> registration = new Registration<>(type, klass, serializer);
+        TYPES.put(type, registration);
+        CLASSES.put(klass, registration);
+    }
+
+    /**
+     * Unregisters the serializer of a work type. The instances of its class then fall back to Java serialization.
+     */
+    public static synchronized void unregister(int type) {
+        Registration<?> registration = TYPES.remove(type);
+        if (registration != null) {
+            CLASSES.remove(registration.klass);
+        }
+    }
+
+    protected final WorkCodec javaCodec = new JavaWorkCodec();
+
+    protected final int compressionThreshold;
+
+    public CompactWorkCodec() {
+        this(DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * @param compressionThreshold the minimum payload size to compress, or -1 to never compress
+     */
+    public CompactWorkCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] encode(Work work) throws IOException {
+        @SuppressWarnings("unchecked")
+        Registration<Work> registration = (Registration<Work>) CLASSES.get(work.getClass());
+        int flags = 0;
+        byte[] payload;
+        if (registration == null) {
+            flags |= FLAG_JAVA;
+            payload = javaCodec.encode(work);
+        } else {
+            ByteArrayOutputStream baout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baout);
+            out.writeShort(registration.type);
+            registration.serializer.write(work, out);
+            out.flush();
+            payload = baout.toByteArray();
+        }
+        if (compressionThreshold >= 0 && payload.length >= compressionThreshold) {
+            byte[] compressed = compress(payload);
+            if (compressed.length < payload.length) {
+                flags |= FLAG_COMPRESSED;
+                payload = compressed;
+            }
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = (byte) flags;
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    protected static byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream(bytes.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baout, deflater)) {
+            out.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return baout.toByteArray();
+    }
+
+    @Override
+    public Work decode(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length > 0 && bytes[0] == JAVA_SERIALIZATION_MAGIC) {
+            // stored before this codec was used
+            return javaCodec.decode(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            throw new IOException("Unknown work format");
+        }
+        if (bytes[1] > VERSION) {
+            throw new IOException("Unsupported work format version: " + bytes[1]);
+        }
+        int flags = bytes[2];
+        InputStream in = new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            in = new InflaterInputStream(in);
+        }
+        try {
+            if ((flags & FLAG_JAVA) != 0) {
+                try (ObjectInputStream oin = new ObjectInputStream(in)) {
+                    return (Work) oin.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            DataInputStream din = new DataInputStream(in);
+            int type = din.readUnsignedShort();
+            Registration<?> registration = TYPES.get(type);
+            if (registration == null) {
+                throw new IOException("Unknown work type: " + type);
+            }
+            return registration.serializer.read(din);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Base {@link WorkSerializer} for subclasses of {@link AbstractWork}, writing the state they have in common.
+     * <p>
+     * Subclasses write their own fields, and create an instance from them. The state common to all works is then read
+     * into this instance. The schedule path, only kept for debugging, is not written.
+     */
+    public abstract static class AbstractWorkSerializer<T extends AbstractWork> implements WorkSerializer<T> {
+
+        /**
+         * Writes the fields specific to the work class.
+         */
+        protected void writeFields(T work, DataOutput out) throws IOException {
+        }
+
+        /**
+         * Creates a work instance from the fields written by {@link #writeFields}.
+         */
+        protected abstract T readWork(DataInput in) throws IOException;
+
+        @Override
+        public void write(T work, DataOutput out) throws IOException {
+            writeFields(work, out);
+            writeString(out, work.id);
+            writeString(out, work.state == null ? null : work.state.name());
+            writeProgress(out, work.progress);
+            writeString(out, work.repositoryName);
+            writeString(out, work.docId);
+            if (work.docIds == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(work.docIds.size());
+                for (String docId : work.docIds) {
+                    writeString(out, docId);
+                }
+            }
+            out.writeBoolean(work.isTree);
+            writeString(out, work.originatingUsername);
+            writeString(out, work.status);
+            out.writeLong(work.schedulingTime);
+            out.writeLong(work.startTime);
+            out.writeLong(work.completionTime);
+            writeString(out, work.callerThread);
+        }
+
+        @Override
+        public T read(DataInput in) throws IOException {
+            T work = readWork(in);
+            work.id = readString(in);
+            String state = readString(in);
+            work.state = state == null ? null : State.valueOf(state);
+            work.progress = readProgress(in);
+            work.repositoryName = readString(in);
+            work.docId = readString(in);
+            int size = in.readInt();
+            if (size < 0) {
+                work.docIds = null;
+            } else {
+                List<String> docIds = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    docIds.add(readString(in));
+                }
+                work.docIds = docIds;
+            }
+            work.isTree = in.readBoolean();
+            work.originatingUsername = readString(in);
+            work.status = readString(in);
+            work.schedulingTime = in.readLong();
+            work.startTime = in.readLong();
+            work.completionTime = in.readLong();
+            work.callerThread = readString(in);
+            return work;
+        }
+
+        protected static void writeString(DataOutput out, String string) throws IOException {
+            out.writeBoolean(string != null);
+            if (string != null) {
+                out.writeUTF(string);
+            }
+        }
+
+        protected static String readString(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        protected static void writeProgress(DataOutput out, Progress progress) throws IOException {
+            if (progress == null) {
+                out.writeByte(0);
+            } else if (progress.getCurrent() == Progress.CURRENT_INDETERMINATE) {
+                out.writeByte(1);
+                out.writeFloat(progress.getPercent());
+            } else {
+                out.writeByte(2);
+                out.writeLong(progress.getCurrent());
+                out.writeLong(progress.getTotal());
+            }
+        }
+
+        protected static Progress readProgress(DataInput in) throws IOException {
+            switch (in.readByte()) {
+            case 0:
+                return null;
+            case 1:
+                float percent = in.readFloat();
+                return percent == Progress.PERCENT_INDETERMINATE ? Progress.PROGRESS_INDETERMINATE
+                        : new Progress(percent);
+            case 2:
+                return new Progress(in.readLong(), in.readLong());
+            default:
+                throw new IOException("Invalid progress");
+            }
+        }
+    }
+
+    protected static class SleepWorkSerializer extends AbstractWorkSerializer<SleepWork> {
+
+        @Override
+        protected void writeFields(SleepWork work, DataOutput out) throws IOException {
+            out.writeLong(work.durationMillis);
+            writeString(out, work.category);
+        }
+
+        @Override
+        protected SleepWork readWork(DataInput in) throws IOException {
+            long durationMillis = in.readLong();
+            String category = readString(in);
+            return new SleepWork(durationMillis, category, false, null);
+        }
+    }
+
+}
@@ -19,21 +19,34 @@
  */
 package org.nuxeo.ecm.core.work;
 
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 
 /**
  * Memory-based {@link BlockingQueue}.
@@ -45,40 +58,90 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     /**
      * A {@link LinkedBlockingQueue} that blocks on {@link #offer} and prevents starvation deadlocks on reentrant calls.
+     * <p>
+     * Producers blocked on {@link #limitedPut} are woken up when an element is removed, in arrival order.
      */
     private static class ReentrantLinkedBlockingQueue<T> extends LinkedBlockingQueue<T> {
 
         private static final long serialVersionUID = 1L;
 
-        private final ReentrantLock limitedPutLock = new ReentrantLock();
+        // fair, so that blocked producers get the freed capacity in arrival order
+        private final ReentrantLock limitedPutLock = new ReentrantLock(true);
+
+        private final Condition notFull = limitedPutLock.newCondition();
+
+        // producers in limitedPut, incremented before checking the capacity so that removals don't miss them
+        private final AtomicInteger waiting = new AtomicInteger();
 
         private final int limitedCapacity;
 
+        private final transient Timer waitTimer;
+
         /**
          * Creates a {@link LinkedBlockingQueue} with a maximum capacity.
          * <p>
          * If the capacity is -1 then this is treated as a regular unbounded {@link LinkedBlockingQueue}.
          *
          * @param capacity the capacity, or -1 for unbounded
+         * @param waitTimer the timer recording the time spent in {@link #limitedPut}
          */
-        public ReentrantLinkedBlockingQueue(int capacity) {
+        public ReentrantLinkedBlockingQueue(int capacity, Timer waitTimer) {
             // Allocate more space to prevent starvation dead lock
             // because a worker can add a new job to the queue.
             super(capacity < 0 ? Integer.MAX_VALUE : (2 * capacity));
             limitedCapacity = capacity;
+            this.waitTimer = waitTimer;
         }
 
         /**
          * Block until there are enough remaining capacity to put the entry.
          */
         public void limitedPut(T e) throws InterruptedException {
-            limitedPutLock.lockInterruptibly();
+            long start = System.nanoTime();
+            waiting.incrementAndGet();
             try {
-                while (remainingCapacity() < limitedCapacity) {
-                    // TODO replace by wakeup when an element is removed
-                    Thread.sleep(100);
+                limitedPutLock.lockInterruptibly();
+                try {
+                    while (remainingCapacity() <= limitedCapacity) {
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException ie) {
+                            // pass on a signal we may have consumed
+                            notFull.signal();
+                            throw ie;
+                        }
+                    }
+                    put(e);
+                } finally {
+                    limitedPutLock.unlock();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            waitTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Gets the number of producers currently blocked or about to block in {@link #limitedPut}.
+         */
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        /**
+         * Wakes up the producers blocked in {@link #limitedPut} after elements have been removed.
+         */
+        private void signalNotFull(boolean all) {
+            if (waiting.get() == 0) {
+                return;
+            }
+            limitedPutLock.lock();
+            try {
+                if (all) {
+                    notFull.signalAll();
+                } else {
+                    notFull.signal();
                 }
-                put(e);
             } finally {
                 limitedPutLock.unlock();
             }
@@ -107,10 +170,429 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
                 throw new RuntimeException("interrupted", ie);
             }
         }
+
+        @Override
+        public T poll() {
+            T e = super.poll();
+            if (e != null) {
+                signalNotFull(false);
+            }
+            return e;
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            T e = super.poll(timeout, unit);
+            if (e != null) {
+                signalNotFull(false);
+            }
+            return e;
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            T e = super.take();
+            signalNotFull(false);
+            return e;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            boolean removed = super.remove(o);
+            if (removed) {
+                signalNotFull(false);
+            }
+            return removed;
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> c, int maxElements) {
+            int n = super.drainTo(c, maxElements);
+            if (n > 0) {
+                signalNotFull(true);
+            }
+            return n;
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            signalNotFull(true);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> it = super.iterator();
+            return new Iterator<T>() {
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                    signalNotFull(false);
+                }
+            };
+        }
+    }
+
+    /**
+     * A {@link BlockingQueue} with an interactive and a batch lane, that blocks on {@link #offer} and prevents
+     * starvation deadlocks on reentrant calls.
+     * <p>
+     * Interactive elements are taken first, but a batch element is taken after {@value #BATCH_EVERY} consecutive
+     * interactive ones so that batch work still progresses. Producers blocked on the capacity are woken up when an
+     * element is removed, in arrival order.
+     */
+    private static class LaneBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+        private static final int BATCH_EVERY = 8;
+
+        // fair, so that blocked producers get the freed capacity in arrival order
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        private final Condition notEmpty = lock.newCondition();
+
+        // producers waiting for the limited capacity
+        private final Condition notFull = lock.newCondition();
+
+        // work threads waiting for the full capacity
+        private final Condition notFullReentrant = lock.newCondition();
+
+        private final Deque<Runnable> interactive = new ArrayDeque<>();
+
+        private final Deque<Runnable> batch = new ArrayDeque<>();
+
+        // interactive elements taken in a row while batch elements were waiting
+        private int interactiveStreak;
+
+        private final Predicate<Runnable> isBatch;
+
+        private final int limitedCapacity;
+
+        private final int capacity;
+
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private final Timer waitTimer;
+
+        /**
+         * Creates a {@link BlockingQueue} with a maximum capacity.
+         * <p>
+         * If the capacity is -1 then this is treated as an unbounded queue.
+         *
+         * @param capacity the capacity, or -1 for unbounded
+         * @param isBatch tells which elements go to the batch lane
+         * @param waitTimer the timer recording the time spent in {@link #limitedPut}
+         */
+        public LaneBlockingQueue(int capacity, Predicate<Runnable> isBatch, Timer waitTimer) {
+            if (capacity < 0) {
+                limitedCapacity = Integer.MAX_VALUE;
+                this.capacity = Integer.MAX_VALUE;
+            } else {
+                limitedCapacity = capacity;
+                // Allocate more space to prevent starvation dead lock
+                // because a worker can add a new job to the queue.
+                this.capacity = 2 * capacity;
+            }
+            this.isBatch = isBatch;
+            this.waitTimer = waitTimer;
+        }
+
+        // called under lock
+        private int count() {
+            return interactive.size() + batch.size();
+        }
+
+        // called under lock
+        private void enqueue(Runnable e) {
+            (isBatch.test(e) ? batch : interactive).add(e);
+            notEmpty.signal();
+        }
+
+        // called under lock
+        private boolean nextIsInteractive() {
+            return !interactive.isEmpty() && (batch.isEmpty() || interactiveStreak < BATCH_EVERY);
+        }
+
+        // called under lock, when not empty
+        private Runnable dequeue() {
+            Runnable e;
+            if (nextIsInteractive()) {
+                e = interactive.poll();
+                interactiveStreak = batch.isEmpty() ? 0 : interactiveStreak + 1;
+            } else {
+                e = batch.poll();
+                interactiveStreak = 0;
+            }
+            signalNotFull();
+            return e;
+        }
+
+        // called under lock
+        private void signalNotFull() {
+            notFull.signal();
+            notFullReentrant.signal();
+        }
+
+        /**
+         * Block until there are enough remaining capacity to put the entry.
+         */
+        public void limitedPut(Runnable e) throws InterruptedException {
+            Objects.requireNonNull(e);
+            long start = System.nanoTime();
+            waiting.incrementAndGet();
+            try {
+                lock.lockInterruptibly();
+                try {
+                    while (count() >= limitedCapacity) {
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException ie) {
+                            // pass on a signal we may have consumed
+                            notFull.signal();
+                            throw ie;
+                        }
+                    }
+                    enqueue(e);
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            waitTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Gets the number of producers currently blocked or about to block in {@link #limitedPut}.
+         */
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        @Override
+        public void put(Runnable e) throws InterruptedException {
+            Objects.requireNonNull(e);
+            lock.lockInterruptibly();
+            try {
+                while (count() >= capacity) {
+                    notFullReentrant.await();
+                }
+                enqueue(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable e) {
+            // turn non-blocking offer into a blocking put
+            try {
+                if (limitedCapacity == Integer.MAX_VALUE || Thread.currentThread()
+                                                                  .getName()
+                                                                  .startsWith(WorkManagerImpl.THREAD_PREFIX)) {
+                    // use the full queue capacity for reentrant call
+                    put(e);
+                } else {
+                    // put only if there are enough remaining capacity
+                    limitedPut(e);
+                }
+                return true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread()
+                        .interrupt();
+                throw new RuntimeException("interrupted", ie);
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+            // not needed for ThreadPoolExecutor
+            return offer(e);
+        }
+
+        @Override
+        public Runnable poll() {
+            lock.lock();
+            try {
+                return count() == 0 ? null : dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (count() == 0) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (count() == 0) {
+                    notEmpty.await();
+                }
+                return dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable peek() {
+            lock.lock();
+            try {
+                return nextIsInteractive() ? interactive.peek() : batch.peek();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return count();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            lock.lock();
+            try {
+                return capacity - count();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            lock.lock();
+            try {
+                boolean removed = interactive.removeFirstOccurrence(o) || batch.removeFirstOccurrence(o);
+                if (removed) {
+                    signalNotFull();
+                }
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void clear() {
+            lock.lock();
+            try {
+                interactive.clear();
+                batch.clear();
+                notFull.signalAll();
+                notFullReentrant.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            lock.lock();
+            try {
+                int n = 0;
+                while (n < maxElements && count() > 0) {
+                    c.add(dequeue());
+                    n++;
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Iterates over a snapshot of the elements, interactive ones first.
+         */
+        @Override
+        public Iterator<Runnable> iterator() {
+            List<Runnable> snapshot;
+            lock.lock();
+            try {
+                snapshot = new ArrayList<>(count());
+                snapshot.addAll(interactive);
+                snapshot.addAll(batch);
+            } finally {
+                lock.unlock();
+            }
+            Iterator<Runnable> it = snapshot.iterator();
+            return new Iterator<Runnable>() {
+
+                private Runnable last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    last = it.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    LaneBlockingQueue.this.remove(last);
+                    last = null;
+                }
+            };
+        }
     }
 
     protected final BlockingQueue<Runnable> queue;
 
+    /**
+     * Time spent by producers waiting for capacity, reported as {@code nuxeo.works.<queueId>.wait}.
+     *
+     * @since 9.2
+     */
+    protected final Timer waitTimer;
+
     protected final Map<String, Work> works = new HashMap<>();
 
     protected final Set<String> scheduledWorks = new HashSet<>();
@@ -131,12 +613,43 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
      */
     public MemoryBlockingQueue(String id, MemoryWorkQueuing queuing, int capacity) {
         super(id, queuing);
-        queue = new ReentrantLinkedBlockingQueue<>(capacity);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        waitTimer = registry.timer(MetricRegistry.name("nuxeo", "works", id, "wait"));
+        queue = new ReentrantLinkedBlockingQueue<>(capacity, waitTimer);
+    }
+
+    /**
+     * Creates a {@link BlockingQueue} with a maximum capacity, whose batch works are taken after the interactive ones.
+     * <p>
+     * If the capacity is -1 then this is treated as an unbounded queue.
+     *
+     * @param capacity the capacity, or -1 for unbounded
+     * @param isBatch tells which works have a batch priority
+     * @since 9.2
+     */
+    public MemoryBlockingQueue(String id, MemoryWorkQueuing queuing, int capacity, Predicate<Work> isBatch) {
+        super(id, queuing);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        waitTimer = registry.timer(MetricRegistry.name("nuxeo", "works", id, "wait"));
+        queue = new LaneBlockingQueue(capacity, r -> r instanceof WorkHolder && isBatch.test(WorkHolder.getWork(r)),
+                waitTimer);
     }
 
     @Override
     synchronized protected WorkQueueMetrics metrics() {
-        return new WorkQueueMetrics(queueId, scheduledCount, runningCount, completedCount, cancelledCount);
+        // the wait time percentiles are only computed when the wait timer is reported
+        return new WorkQueueMetrics(queueId, scheduledCount, runningCount, completedCount, cancelledCount,
+                getWaiting());
+    }
+
+    /**
+     * Gets the number of producers blocked on the capacity of the queue.
+     */
+    protected int getWaiting() {
+        if (queue instanceof LaneBlockingQueue) {
+            return ((LaneBlockingQueue) queue).getWaiting();
+        }
+        return ((ReentrantLinkedBlockingQueue<Runnable>) queue).getWaiting();
     }
 
     @Override
@@ -146,7 +659,8 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     @Override
     public void putElement(Runnable r) throws InterruptedException {
-        queue.put(r);
+        // blocks on the limited capacity, except for reentrant calls from works
+        queue.offer(r);
     }
 
     @Override
@@ -187,17 +701,29 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         return queue.poll(nanos, TimeUnit.NANOSECONDS);
     }
 
-    synchronized WorkQueueMetrics workSchedule(Work work) {
+    WorkQueueMetrics workSchedule(Work work) {
         String id = work.getId();
-        if (scheduledWorks.contains(id)) {
-            return metrics();
+        synchronized (this) {
+            if (scheduledWorks.contains(id)) {
+                return metrics();
+            }
+            works.put(id, work);
+            scheduledWorks.add(id);
+            scheduledCount += 1;
         }
-        if (!offer(new WorkHolder(work))) {
-            return metrics();
+        // may block until there is enough capacity, don't hold the monitor that workers need to make progress
+        boolean ok = false;
+        try {
+            ok = offer(new WorkHolder(work));
+        } finally {
+            if (!ok) {
+                synchronized (this) {
+                    scheduledWorks.remove(id);
+                    works.remove(id);
+                    scheduledCount -= 1;
+                }
+            }
         }
-        works.put(id, work);
-        scheduledWorks.add(id);
-        scheduledCount += 1;
         return metrics();
     }
 
@@ -50,7 +50,13 @@ public class MemoryWorkQueuing implements WorkQueuing {
         if (capacity <= 0) {
             capacity = -1; // unbounded
         }
-        MemoryBlockingQueue queue = new MemoryBlockingQueue(config.id, this, capacity);
+        MemoryBlockingQueue queue;
+        if (config.batchCategories.isEmpty()) {
+            // no need for the lanes and their single lock
+            queue = new MemoryBlockingQueue(config.id, this, capacity);
+        } else {
+            queue = new MemoryBlockingQueue(config.id, this, capacity, config::isBatch);
+        }
         allQueued.put(queue.queueId, queue);
         return queue;
     }
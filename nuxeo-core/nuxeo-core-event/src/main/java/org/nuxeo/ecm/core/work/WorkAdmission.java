@@ -0,0 +1,294 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
+
+/**
+ * Caps the total number of works running in all the queues, and shares the running slots between the queues.
+ * <p>
+ * A work thread acquires a slot before running a work, and releases it after. When no slot is free, the slots are
+ * granted in this order:
+ * <ul>
+ * <li>interactive works before batch works, except that a batch work is admitted after {@value #BATCH_EVERY}
+ * consecutive interactive ones so that batch works are not starved,</li>
+ * <li>then queues running the fewest works relative to their weight,</li>
+ * <li>then queues with the largest backlog, as seen in their {@link WorkQueueMetrics#scheduled},</li>
+ * <li>then in arrival order.</li>
+ * </ul>
+ * A queue with no work to run holds no slot, so the other queues can use all of them.
+ *
+ * @since 9.2
+ */
+public class WorkAdmission {
+
+    /** Delay after which the backlogs of the queues are read again. */
+    protected static final long BACKLOG_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Number of interactive works admitted in a row after which a waiting batch work is admitted. */
+    protected static final int BATCH_EVERY = 8;
+
+    protected static class QueueShare {
+
+        protected final int weight;
+
+        protected int running;
+
+        protected QueueShare(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    protected class Waiter {
+
+        protected final String queueId;
+
+        protected final boolean batch;
+
+        protected final long sequence;
+
+        protected final Condition granted = lock.newCondition();
+
+        protected boolean admitted;
+
+        protected Waiter(String queueId, boolean batch, long sequence) {
+            this.queueId = queueId;
+            this.batch = batch;
+            this.sequence = sequence;
+        }
+    }
+
+    protected final int maxThreads;
+
+    protected final ToLongFunction<String> backlog;
+
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    // @GuardedBy("lock")
+    protected final Map<String, QueueShare> shares = new HashMap<>();
+
+    // @GuardedBy("lock")
+    protected final List<Waiter> waiters = new ArrayList<>();
+
+    // @GuardedBy("lock")
+    protected int total;
+
+    // @GuardedBy("lock")
+    protected long sequence;
+
+    // interactive works admitted in a row while batch works were waiting
+    // @GuardedBy("lock")
+    protected int interactiveStreak;
+
+    protected final Map<String, Long> backlogs = new ConcurrentHashMap<>();
+
+    protected volatile long backlogsTime = System.nanoTime() - BACKLOG_REFRESH_NANOS;
+
+    // order between waiters of the same priority
+    protected final Comparator<Waiter> order = ((Comparator<Waiter>) this::compareShares).thenComparing(
+            w -> -backlogs.getOrDefault(w.queueId, 0L)).thenComparingLong(w -> w.sequence);
+
+    /**
+     * @param maxThreads the maximum number of works running at the same time, or 0 for no limit
+     * @param backlog gives the number of works scheduled in a queue
+     */
+    public WorkAdmission(int maxThreads, ToLongFunction<String> backlog) {
+        this.maxThreads = maxThreads;
+        this.backlog = backlog;
+    }
+
+    /**
+     * Checks if the number of running works is limited.
+     */
+    public boolean isEnabled() {
+        return maxThreads > 0;
+    }
+
+    /**
+     * Sets the weight of a queue.
+     */
+    public void register(String queueId, int weight) {
+        lock.lock();
+        try {
+            QueueShare previous = shares.put(queueId, new QueueShare(weight));
+            if (previous != null) {
+                shares.get(queueId).running = previous.running;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a slot to run a work of a queue.
+     *
+     * @param queueId the queue id
+     * @param batch {@code true} if the work has a batch priority
+     * @throws InterruptedException if interrupted while waiting, no slot is held then
+     */
+    public void acquire(String queueId, boolean batch) throws InterruptedException {
+        if (!isEnabled()) {
+            return;
+        }
+        refreshBacklogs();
+        lock.lockInterruptibly();
+        try {
+            Waiter waiter = new Waiter(queueId, batch, sequence++);
+            waiters.add(waiter);
+            grant();
+            while (!waiter.admitted) {
+                try {
+                    waiter.granted.await();
+                } catch (InterruptedException e) {
+                    if (waiter.admitted) {
+                        // admitted concurrently, give the slot to another waiter
+                        doRelease(queueId);
+                    } else {
+                        waiters.remove(waiter);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot acquired to run a work of a queue.
+     */
+    public void release(String queueId) {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            doRelease(queueId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called under lock
+    protected void doRelease(String queueId) {
+        total--;
+        QueueShare share = shares.get(queueId);
+        if (share != null) {
+            share.running--;
+        }
+        grant();
+    }
+
+    // called under lock
+    protected void grant() {
+        while (total < maxThreads && !waiters.isEmpty()) {
+            Waiter interactive = null;
+            Waiter batch = null;
+            for (Waiter waiter : waiters) {
+                if (waiter.batch) {
+                    if (batch == null || order.compare(waiter, batch) < 0) {
+                        batch = waiter;
+                    }
+                } else if (interactive == null || order.compare(waiter, interactive) < 0) {
+                    interactive = waiter;
+                }
+            }
+            Waiter next;
+            if (interactive != null && (batch == null || interactiveStreak < BATCH_EVERY)) {
+                next = interactive;
+                interactiveStreak = batch == null ? 0 : interactiveStreak + 1;
+            } else {
+                next = batch;
+                interactiveStreak = 0;
+            }
+            waiters.remove(next);
+            total++;
+            shares.computeIfAbsent(next.queueId, k -> new QueueShare(1)).running++;
+            next.admitted = true;
+            next.granted.signal();
+        }
+    }
+
+    // called under lock
+    protected int compareShares(Waiter w1, Waiter w2) {
+        QueueShare s1 = shares.get(w1.queueId);
+        QueueShare s2 = shares.get(w2.queueId);
+        long r1 = s1 == null ? 0 : s1.running;
+        long r2 = s2 == null ? 0 : s2.running;
+        long weight1 = s1 == null ? 1 : s1.weight;
+        long weight2 = s2 == null ? 1 : s2.weight;
+        // r1 / weight1 vs r2 / weight2
+        return Long.compare(r1 * weight2, r2 * weight1);
+    }
+
+    // outside the lock, as reading the metrics may be slow
+    protected void refreshBacklogs() {
+        long now = System.nanoTime();
+        if (now - backlogsTime < BACKLOG_REFRESH_NANOS) {
+            return;
+        }
+        backlogsTime = now;
+        List<String> queueIds;
+        lock.lock();
+        try {
+            queueIds = new ArrayList<>(shares.keySet());
+        } finally {
+            lock.unlock();
+        }
+        for (String queueId : queueIds) {
+            backlogs.put(queueId, backlog.applyAsLong(queueId));
+        }
+    }
+
+    /**
+     * Gets the number of works currently admitted.
+     */
+    public int getRunning() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of works waiting for a slot.
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
+
+/**
+ * Holds the {@link Work} instances of a queue that have a coalescing key during a time window, merging the ones with
+ * the same key, before releasing them to the queue.
+ *
+ * @see Work#getCoalescingKey
+ * @see Work#merge
+ * @since 9.2
+ */
+public class WorkCoalescer {
+
+    private static final Log log = LogFactory.getLog(WorkCoalescer.class);
+
+    protected final String queueId;
+
+    protected final long window;
+
+    protected final ScheduledExecutorService scheduler;
+
+    protected final Consumer<Work> release;
+
+    // @GuardedBy("itself")
+    protected final Map<String, Work> pending = new LinkedHashMap<>();
+
+    protected final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param queueId the queue id
+     * @param window the coalescing window, in milliseconds
+     * @param scheduler the scheduler used to release the works at the end of their window
+     * @param release what to do with the works at the end of their window
+     */
+    public WorkCoalescer(String queueId, long window, ScheduledExecutorService scheduler, Consumer<Work> release) {
+        this.queueId = queueId;
+        this.window = window;
+        this.scheduler = scheduler;
+        this.release = release;
+    }
+
+    /**
+     * Holds a work until the end of the coalescing window, or merges it into the work with the same key already held.
+     *
+     * @param work the work, with a non-{@code null} coalescing key
+     */
+    public void schedule(Work work) {
+        String key = work.getCoalescingKey();
+        Work previous;
+        synchronized (pending) {
+            previous = pending.get(key);
+            if (previous == null) {
+                pending.put(key, work);
+            } else if (previous.merge(work)) {
+                coalesced.incrementAndGet();
+                work.setWorkInstanceState(State.UNKNOWN);
+                if (log.isDebugEnabled()) {
+                    log.debug("Coalesced " + work + " into " + previous + " in queue " + queueId);
+                }
+                return;
+            } else {
+                // cannot be merged: the previous one runs first, the new one gets a window of its own
+                pending.put(key, work);
+            }
+        }
+        if (previous != null) {
+            release.accept(previous);
+        }
+        scheduler.schedule(() -> release(key, work), window, TimeUnit.MILLISECONDS);
+    }
+
+    protected void release(String key, Work work) {
+        synchronized (pending) {
+            // the work may already have been flushed or replaced
+            if (pending.get(key) != work) {
+                return;
+            }
+            pending.remove(key);
+        }
+        try {
+            release.accept(work);
+        } catch (RuntimeException e) {
+            log.error("Cannot schedule " + work + " in queue " + queueId, e);
+        }
+    }
+
+    /**
+     * Releases immediately all the works held.
+     */
+    public void flush() {
+        List<Work> works;
+        synchronized (pending) {
+            works = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        works.forEach(release);
+    }
+
+    /**
+     * Gets the number of works currently held.
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Gets the number of works merged into another one.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+}
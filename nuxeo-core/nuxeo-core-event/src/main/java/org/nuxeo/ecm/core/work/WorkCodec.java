@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Encodes {@link Work} instances to bytes and back, for queuing implementations that store them outside of memory.
+ *
+ * @since 9.2
+ */
+public interface WorkCodec {
+
+    /**
+     * Encodes a work instance.
+     *
+     * @param work the work
+     * @return the encoded bytes
+     */
+    byte[] encode(Work work) throws IOException;
+
+    /**
+     * Decodes a work instance.
+     *
+     * @param bytes the bytes, which may be {@code null}
+     * @return the work, or {@code null} if the bytes are {@code null}
+     */
+    Work decode(byte[] bytes) throws IOException;
+
+}
@@ -25,8 +25,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -46,7 +49,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.logging.SequenceTracer;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.local.ClientLoginModule;
 import org.nuxeo.ecm.core.event.EventServiceComponent;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.WorkSerializer;
 import org.nuxeo.ecm.core.work.WorkQueuing.Listener;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
@@ -55,6 +60,7 @@ import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
 import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 import org.nuxeo.ecm.core.work.api.WorkQueuingDescriptor;
 import org.nuxeo.ecm.core.work.api.WorkSchedulePath;
+import org.nuxeo.ecm.core.work.api.WorkSerializerDescriptor;
 import org.nuxeo.runtime.RuntimeServiceEvent;
 import org.nuxeo.runtime.RuntimeServiceListener;
 import org.nuxeo.runtime.api.Framework;
@@ -86,12 +92,29 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected static final String IMPL_EP = "implementation";
 
+    /** @since 9.2 */
+    protected static final String SERIALIZERS_EP = "serializers";
+
     public static final String DEFAULT_QUEUE_ID = "default";
 
     public static final String DEFAULT_CATEGORY = "default";
 
     protected static final String THREAD_PREFIX = "Nuxeo-Work-";
 
+    /**
+     * Delay after which the extra threads of an I/O-bound queue stop when idle.
+     *
+     * @since 9.2
+     */
+    protected static final long IO_BOUND_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Delay after which an I/O-bound queue reads the size of its queue again, which may be remote.
+     *
+     * @since 9.2
+     */
+    protected static final long IO_BOUND_QUEUE_SIZE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
 
     // @GuardedBy("itself")
@@ -104,6 +127,30 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected WorkQueuing queuing;
 
+    /**
+     * Coalescers of the queues having a coalescing window.
+     *
+     * @since 9.2
+     */
+    protected final Map<String, WorkCoalescer> coalescers = new ConcurrentHashMap<>();
+
+    /** @since 9.2 */
+    protected ScheduledExecutorService coalescingScheduler;
+
+    /**
+     * Property for the maximum number of works running at the same time in all the queues, 0 for no limit.
+     *
+     * @since 9.2
+     */
+    public static final String TOTAL_MAX_THREADS_PROP = "nuxeo.work.total.maxThreads";
+
+    /**
+     * Shares the work threads between the queues.
+     *
+     * @since 9.2
+     */
+    protected WorkAdmission admission;
+
     /**
      * Simple synchronizer to wake up when an in-JVM work is completed. Does not wake up on work completion from another
      * node in cluster mode.
@@ -141,6 +188,8 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             registerWorkQueueDescriptor((WorkQueueDescriptor) contribution);
         } else if (IMPL_EP.equals(extensionPoint)) {
             registerWorkQueuingDescriptor((WorkQueuingDescriptor) contribution);
+        } else if (SERIALIZERS_EP.equals(extensionPoint)) {
+            registerWorkSerializerDescriptor((WorkSerializerDescriptor) contribution);
         } else {
             throw new RuntimeException("Unknown extension point: " + extensionPoint);
         }
@@ -152,6 +201,8 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             unregisterWorkQueueDescriptor((WorkQueueDescriptor) contribution);
         } else if (IMPL_EP.equals(extensionPoint)) {
             unregisterWorkQueuingDescriptor((WorkQueuingDescriptor) contribution);
+        } else if (SERIALIZERS_EP.equals(extensionPoint)) {
+            CompactWorkCodec.unregister(((WorkSerializerDescriptor) contribution).type);
         } else {
             throw new RuntimeException("Unknown extension point: " + extensionPoint);
         }
@@ -207,12 +258,34 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         NuxeoBlockingQueue queue = queuing.init(config);
         ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
         int maxPoolSize = config.getMaxThreads();
-        WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS,
-                queue, threadFactory);
+        WorkThreadPoolExecutor executor;
+        if (config.isIoBound()) {
+            // maxThreads threads watch the queue, more are started on demand up to maxConcurrency
+            executor = new WorkThreadPoolExecutor(maxPoolSize, Math.max(maxPoolSize, config.getMaxConcurrency()),
+                    IO_BOUND_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, threadFactory, config);
+        } else {
+            executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS, queue,
+                    threadFactory, config);
+        }
         // prestart all core threads so that direct additions to the queue
         // (from another Nuxeo instance) can be seen
         executor.prestartAllCoreThreads();
         executors.put(config.id, executor);
+        admission.register(config.id, config.getWeight());
+        int coalescingWindow = config.getCoalescingWindow();
+        if (coalescingWindow > 0) {
+            if (coalescingScheduler == null) {
+                // named as a work thread, so that bounded queues don't block it on their limited capacity
+                coalescingScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, THREAD_PREFIX + "coalescing");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            String queueId = config.id;
+            coalescers.put(queueId, new WorkCoalescer(queueId, coalescingWindow, coalescingScheduler,
+                    work -> enqueue(queueId, work)));
+        }
         log.info("Initialized work queue " + config.id + " " + config.toEffectiveString());
     }
 
@@ -246,6 +319,8 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         queueMetrics.putGauge(() -> getMetrics(queueId).running, "running");
         queueMetrics.putGauge(() -> getMetrics(queueId).completed, "completed");
         queueMetrics.putGauge(() -> getMetrics(queueId).canceled, "canceled");
+        queueMetrics.putGauge(() -> getMetrics(queueId).waiting, "waiting");
+        queueMetrics.putGauge(() -> getMetrics(queueId).coalesced, "coalesced");
         registry.registerAll(queueMetrics);
     }
 
@@ -262,6 +337,18 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         workQueuingConfig.removeContribution(descr);
     }
 
+    /** @since 9.2 */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected void registerWorkSerializerDescriptor(WorkSerializerDescriptor descriptor) {
+        WorkSerializer serializer;
+        try {
+            serializer = descriptor.klass.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        CompactWorkCodec.register(descriptor.type, (Class) descriptor.work, serializer);
+    }
+
     protected WorkQueuing newWorkQueuing(Class<? extends WorkQueuing> klass) {
         try {
             return klass.getDeclaredConstructor(Listener.class).newInstance(Listener.lookupListener());
@@ -354,6 +441,19 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected volatile boolean shutdownInProgress = false;
 
+    /**
+     * @since 9.2
+     */
+    protected int getTotalMaxThreads() {
+        String value = Framework.getProperty(TOTAL_MAX_THREADS_PROP, "0");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("Invalid value for " + TOTAL_MAX_THREADS_PROP + ": " + value);
+            return 0;
+        }
+    }
+
     @Override
     public void init() {
         if (started) {
@@ -365,6 +465,8 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             }
             queuing = newWorkQueuing(workQueuingConfig.klass);
             completionSynchronizer = new WorkCompletionSynchronizer();
+            admission = new WorkAdmission(getTotalMaxThreads(),
+                    queueId -> queuing.metrics(queueId).scheduled.longValue());
             started = true;
             workQueueConfig.index();
             for (String id : workQueueConfig.getQueueIds()) {
@@ -463,6 +565,13 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 return executors.isEmpty() || shutdownExecutors(new ArrayList<>(executors.values()), timeout, unit);
             } finally {
                 shutdownInProgress = false;
+                // works scheduled during the shutdown
+                coalescers.values().forEach(WorkCoalescer::flush);
+                coalescers.clear();
+                if (coalescingScheduler != null) {
+                    coalescingScheduler.shutdownNow();
+                    coalescingScheduler = null;
+                }
             }
         } finally {
             started = false;
@@ -561,10 +670,47 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        /**
+         * Tells which works have a batch priority, for the admission.
+         *
+         * @since 9.2
+         */
+        protected final WorkQueueDescriptor config;
+
+        /**
+         * Whether threads are started on demand, for an I/O-bound queue.
+         *
+         * @since 9.2
+         */
+        protected final boolean elastic;
+
+        /** @since 9.2 */
+        protected final Object growLock = new Object();
+
+        /**
+         * Works queued that no thread took yet, counted locally and read again from the queue from time to time, for
+         * an I/O-bound queue.
+         *
+         * @since 9.2
+         */
+        protected final AtomicInteger queued = new AtomicInteger();
+
+        /** @since 9.2 */
+        protected volatile long queuedTime = System.nanoTime() - IO_BOUND_QUEUE_SIZE_REFRESH_NANOS;
+
+        /**
+         * Threads running a work, for an I/O-bound queue.
+         *
+         * @since 9.2
+         */
+        protected final AtomicInteger busy = new AtomicInteger();
+
         protected WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
-                NuxeoBlockingQueue queue, ThreadFactory threadFactory) {
+                NuxeoBlockingQueue queue, ThreadFactory threadFactory, WorkQueueDescriptor config) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, threadFactory);
             queueId = queue.queueId;
+            this.config = config;
+            elastic = maximumPoolSize > corePoolSize;
             running = new ConcurrentLinkedQueue<>();
             // init metrics
             scheduledCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "scheduled", "count"));
@@ -602,7 +748,105 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
          * directly
          */
         protected void submit(Work work) throws RuntimeException {
-            queuing.workSchedule(queueId, work);
+            enqueue(queueId, work);
+        }
+
+        /**
+         * Checks if this executor starts threads on demand for an I/O-bound queue.
+         *
+         * @since 9.2
+         */
+        public boolean isElastic() {
+            return elastic;
+        }
+
+        /**
+         * Starts threads for the queued works that no idle thread is about to take, up to the maximum pool size. The
+         * extra threads stop when idle for the keep-alive time.
+         *
+         * @since 9.2
+         */
+        protected void grow() {
+            if (!isElastic() || isShutdown()) {
+                return;
+            }
+            refreshQueued();
+            synchronized (growLock) {
+                int poolSize = getPoolSize();
+                int missing = Math.min(queued.get() - (poolSize - busy.get()), getMaximumPoolSize() - poolSize);
+                if (missing <= 0) {
+                    return;
+                }
+                int coreSize = getCorePoolSize();
+                // raising the core size starts threads for the queued works, restoring it lets them time out
+                setCorePoolSize(poolSize + missing);
+                setCorePoolSize(coreSize);
+            }
+        }
+
+        /**
+         * Reads the size of the queue again when the local count may be stale, as it misses the works queued by other
+         * instances and the works rescheduled.
+         *
+         * @since 9.2
+         */
+        protected void refreshQueued() {
+            long now = System.nanoTime();
+            if (now - queuedTime < IO_BOUND_QUEUE_SIZE_REFRESH_NANOS) {
+                return;
+            }
+            queuedTime = now;
+            queued.set(getQueue().size());
+        }
+
+        /**
+         * Counts a work queued by this instance, and starts a thread for it if needed.
+         *
+         * @since 9.2
+         */
+        protected void workQueued() {
+            if (isElastic()) {
+                queued.incrementAndGet();
+                grow();
+            }
+        }
+
+        /**
+         * Clears what a work left on the thread, as the threads of an I/O-bound queue come and go.
+         *
+         * @since 9.2
+         */
+        protected void clearThreadContext(Work work) {
+            if (TransactionHelper.isTransactionActiveOrMarkedRollback()) {
+                log.error(work + " left a transaction on its thread, rollbacking");
+                TransactionHelper.setTransactionRollbackOnly();
+                TransactionHelper.commitOrRollbackTransaction();
+            }
+            if (!ClientLoginModule.getThreadLocalLogin().isEmpty()) {
+                log.error(work + " left a login on its thread, clearing");
+            }
+            ClientLoginModule.clearThreadLocalLogin();
+        }
+
+        /**
+         * Acquires the admission to run a work. The works of an I/O-bound queue are not limited by the number of
+         * threads shared by all the queues, but by their own concurrency.
+         *
+         * @since 9.2
+         */
+        protected void acquire(Work work) throws InterruptedException {
+            if (!isElastic()) {
+                admission.acquire(queueId, config.isBatch(work));
+            }
+        }
+
+        /**
+         * @since 9.2
+         */
+        protected void release() {
+            if (!isElastic()) {
+                admission.release(queueId);
+            }
         }
 
         @Override
@@ -613,10 +857,39 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 queuing.workReschedule(queueId, work);
                 throw new RejectedExecutionException(queueId + " was shutdown, rescheduled " + work);
             }
-            work.setWorkInstanceState(State.RUNNING);
-            queuing.workRunning(queueId, work);
-            running.add(work);
-            runningCount.inc();
+            try {
+                acquire(work);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                work.setWorkInstanceState(State.SCHEDULED);
+                queuing.workReschedule(queueId, work);
+                throw new RejectedExecutionException(queueId + " was interrupted, rescheduled " + work, e);
+            }
+            // afterExecute is not called if we fail from now on
+            boolean ok = false;
+            try {
+                if (isShutdown()) {
+                    // shut down while waiting for admission
+                    work.setWorkInstanceState(State.SCHEDULED);
+                    queuing.workReschedule(queueId, work);
+                    throw new RejectedExecutionException(queueId + " was shutdown, rescheduled " + work);
+                }
+                work.setWorkInstanceState(State.RUNNING);
+                queuing.workRunning(queueId, work);
+                running.add(work);
+                runningCount.inc();
+                if (isElastic()) {
+                    busy.incrementAndGet();
+                    queued.updateAndGet(n -> n > 0 ? n - 1 : 0);
+                    // another work may be waiting behind this one
+                    grow();
+                }
+                ok = true;
+            } finally {
+                if (!ok) {
+                    release();
+                }
+            }
         }
 
         @Override
@@ -636,8 +909,15 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
                 work.setWorkInstanceState(State.UNKNOWN);
                 queuing.workCompleted(queueId, work);
             } finally {
+                release();
+                if (isElastic()) {
+                    clearThreadContext(work);
+                }
                 running.remove(work);
                 runningCount.dec();
+                if (isElastic()) {
+                    busy.decrementAndGet();
+                }
                 completedCount.inc();
                 workTimer.update(work.getCompletionTime() - work.getStartTime(), TimeUnit.MILLISECONDS);
                 completionSynchronizer.signalCompletedWork();
@@ -651,6 +931,11 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
          */
         public void shutdownAndSuspend() throws InterruptedException {
             try {
+                // queue the works waiting in a coalescing window, so that they're suspended with the others
+                WorkCoalescer coalescer = coalescers.get(queueId);
+                if (coalescer != null) {
+                    coalescer.flush();
+                }
                 // don't consume the queue anymore
                 deactivateQueueMetrics(queueId);
                 queuing.setActive(queueId, false);
@@ -721,7 +1006,25 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             break;
 
         }
+        WorkCoalescer coalescer = coalescers.get(queueId);
+        if (coalescer != null && work.getCoalescingKey() != null) {
+            coalescer.schedule(work);
+            return;
+        }
+        enqueue(queueId, work);
+    }
+
+    /**
+     * Queues a work, and lets the executor of an I/O-bound queue start a thread for it.
+     *
+     * @since 9.2
+     */
+    protected void enqueue(String queueId, Work work) {
         queuing.workSchedule(queueId, work);
+        WorkThreadPoolExecutor executor = executors.get(queueId);
+        if (executor != null) {
+            executor.workQueued();
+        }
     }
 
     /**
@@ -811,7 +1114,9 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     @Override
     public WorkQueueMetrics getMetrics(String queueId) {
-        return queuing.metrics(queueId);
+        WorkQueueMetrics metrics = queuing.metrics(queueId);
+        WorkCoalescer coalescer = coalescers.get(queueId);
+        return coalescer == null ? metrics : metrics.withCoalesced(coalescer.getCoalescedCount());
     }
 
     @Override
@@ -877,6 +1182,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         if (!isProcessingEnabled(queueId)) {
             return getExecutor(queueId).runningCount.getCount() == 0L;
         }
+        WorkCoalescer coalescer = coalescers.get(queueId);
+        if (coalescer != null && coalescer.getPendingCount() > 0) {
+            return false;
+        }
         if (getQueueSize(queueId, null) > 0) {
             if (log.isTraceEnabled()) {
                 log.trace(queueId + " not empty, sched: " + getQueueSize(queueId, State.SCHEDULED) + ", running: "
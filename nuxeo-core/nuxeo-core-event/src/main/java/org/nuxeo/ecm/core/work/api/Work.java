@@ -77,6 +77,22 @@ public interface Work extends Serializable {
         RUNNING,
     }
 
+    /**
+     * The priority of a work instance within its queue.
+     *
+     * @since 9.2
+     */
+    enum Priority {
+        /**
+         * Work instance triggered by a user action, run first.
+         */
+        INTERACTIVE,
+        /**
+         * Background work instance, run when no interactive one is waiting, but never starved.
+         */
+        BATCH,
+    }
+
     /**
      * A progress report about a work instance.
      * <p>
@@ -375,4 +391,46 @@ public interface Work extends Serializable {
      */
     void setSchedulePath(WorkSchedulePath path);
 
+    /**
+     * Gets the coalescing key of this Work instance.
+     * <p>
+     * If the queue of this Work instance has a coalescing window, the Work instances with the same coalescing key
+     * scheduled within the window are merged into the first one, which is queued at the end of the window.
+     *
+     * @return the coalescing key, or {@code null} if this Work instance is never coalesced
+     * @since 9.2
+     */
+    default String getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Merges into this Work instance, waiting in a coalescing window, a Work instance with the same coalescing key
+     * scheduled later.
+     * <p>
+     * The default implementation just drops the later Work instance, as this one will run after the later one was
+     * scheduled anyway.
+     *
+     * @param work the Work instance scheduled later
+     * @return {@code true} if the later Work instance was merged and must not run, or {@code false} if both must run
+     * @since 9.2
+     */
+    default boolean merge(Work work) {
+        return true;
+    }
+
+    /**
+     * Gets the priority of this Work instance.
+     * <p>
+     * Batch Work instances get the work threads shared by all the queues after the interactive ones. A queue declaring
+     * batch categories also runs its batch Work instances after its interactive ones.
+     *
+     * @return the priority
+     * @see org.nuxeo.ecm.core.work.api.WorkQueueDescriptor#isBatch
+     * @since 9.2
+     */
+    default Priority getPriority() {
+        return Priority.INTERACTIVE;
+    }
+
 }
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.ecm.core.work.api.Work.Priority;
 
 /**
  * Descriptor for a {@link WorkManager} queue configuration.
@@ -42,6 +43,15 @@ public class WorkQueueDescriptor {
 
     public static final int DEFAULT_CAPACITY = -1;
 
+    /** @since 9.2 */
+    public static final int DEFAULT_COALESCING_WINDOW = 0;
+
+    /** @since 9.2 */
+    public static final int DEFAULT_WEIGHT = 1;
+
+    /** @since 9.2 */
+    public static final int DEFAULT_MAX_CONCURRENCY = 256;
+
     @XNode("@id")
     public String id;
 
@@ -91,6 +101,88 @@ public class WorkQueueDescriptor {
         return capacity == null ? DEFAULT_CAPACITY : capacity.intValue();
     }
 
+    /**
+     * When specified, the Work instances with the same coalescing key scheduled within this number of milliseconds are
+     * merged before being queued.
+     *
+     * @see org.nuxeo.ecm.core.work.api.Work#getCoalescingKey
+     * @since 9.2
+     */
+    @XNode("coalescingWindow")
+    public Integer coalescingWindow;
+
+    /**
+     * @since 9.2
+     */
+    public int getCoalescingWindow() {
+        return coalescingWindow == null ? DEFAULT_COALESCING_WINDOW : coalescingWindow.intValue();
+    }
+
+    /**
+     * When {@code true}, the Work instances of this queue mostly wait on I/O: instead of a fixed number of threads,
+     * threads are started when Work instances are waiting and stopped when idle, up to {@link #getMaxConcurrency}
+     * Work instances running at the same time.
+     *
+     * @since 9.2
+     */
+    @XNode("ioBound")
+    public Boolean ioBound;
+
+    /**
+     * @since 9.2
+     */
+    public boolean isIoBound() {
+        return Boolean.TRUE.equals(ioBound);
+    }
+
+    /**
+     * When specified, the maximum number of Work instances of an I/O-bound queue running at the same time.
+     *
+     * @since 9.2
+     */
+    @XNode("maxConcurrency")
+    public Integer maxConcurrency;
+
+    /**
+     * @since 9.2
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency == null ? DEFAULT_MAX_CONCURRENCY : maxConcurrency.intValue();
+    }
+
+    /**
+     * When specified, the share of the global number of work threads this queue gets when the queues compete for it,
+     * relative to the other queues.
+     *
+     * @since 9.2
+     */
+    @XNode("weight")
+    public Integer weight;
+
+    /**
+     * @since 9.2
+     */
+    public int getWeight() {
+        return weight == null ? DEFAULT_WEIGHT : Math.max(1, weight.intValue());
+    }
+
+    /**
+     * The categories of the Work instances that have a batch priority in this queue, whatever their own priority.
+     *
+     * @since 9.2
+     */
+    @XNodeList(value = "batchCategory", type = HashSet.class, componentType = String.class)
+    public Set<String> batchCategories = Collections.emptySet();
+
+    /**
+     * Checks if a Work instance has a batch priority in this queue.
+     *
+     * @since 9.2
+     */
+    public boolean isBatch(Work work) {
+        return work.getPriority() == Priority.BATCH || batchCategories.contains(work.getCategory());
+    }
+
     @Override
     public WorkQueueDescriptor clone() {
         WorkQueueDescriptor o = new WorkQueueDescriptor();
@@ -100,7 +192,12 @@ public class WorkQueueDescriptor {
         o.name = name;
         o.maxThreads = maxThreads;
         o.capacity = capacity;
+        o.coalescingWindow = coalescingWindow;
+        o.weight = weight;
+        o.ioBound = ioBound;
+        o.maxConcurrency = maxConcurrency;
         o.categories = new HashSet<String>(categories);
+        o.batchCategories = new HashSet<String>(batchCategories);
         return o;
     }
 
@@ -120,7 +217,20 @@ public class WorkQueueDescriptor {
         if (other.capacity != null) {
             capacity = other.capacity;
         }
+        if (other.coalescingWindow != null) {
+            coalescingWindow = other.coalescingWindow;
+        }
+        if (other.weight != null) {
+            weight = other.weight;
+        }
+        if (other.ioBound != null) {
+            ioBound = other.ioBound;
+        }
+        if (other.maxConcurrency != null) {
+            maxConcurrency = other.maxConcurrency;
+        }
         categories.addAll(other.categories);
+        batchCategories.addAll(other.batchCategories);
     }
 
     @Override
@@ -146,6 +256,26 @@ public class WorkQueueDescriptor {
             buf.append(" capacity=");
             buf.append(capacity);
         }
+        if (coalescingWindow != null) {
+            buf.append(" coalescingWindow=");
+            buf.append(coalescingWindow);
+        }
+        if (weight != null) {
+            buf.append(" weight=");
+            buf.append(weight);
+        }
+        if (ioBound != null) {
+            buf.append(" ioBound=");
+            buf.append(ioBound);
+        }
+        if (maxConcurrency != null) {
+            buf.append(" maxConcurrency=");
+            buf.append(maxConcurrency);
+        }
+        if (!batchCategories.isEmpty()) {
+            buf.append(" batchCategories=");
+            buf.append(batchCategories);
+        }
         buf.append("]");
         return buf.toString();
     }
@@ -164,6 +294,18 @@ public class WorkQueueDescriptor {
         buf.append(getMaxThreads());
         buf.append(" capacity=");
         buf.append(getCapacity());
+        buf.append(" coalescingWindow=");
+        buf.append(getCoalescingWindow());
+        buf.append(" weight=");
+        buf.append(getWeight());
+        buf.append(" ioBound=");
+        buf.append(isIoBound());
+        if (isIoBound()) {
+            buf.append(" maxConcurrency=");
+            buf.append(getMaxConcurrency());
+        }
+        buf.append(" batchCategories=");
+        buf.append(batchCategories);
         buf.append(" clearCompletedAfterSeconds=");
         buf.append(")");
         return buf.toString();
@@ -37,12 +37,53 @@ public class WorkQueueMetrics implements Serializable {
 
     public final Number canceled;
 
+    /**
+     * Number of producers waiting for capacity to schedule a work.
+     *
+     * @since 9.2
+     */
+    public final Number waiting;
+
+    /**
+     * Number of Work instances merged into another one during a coalescing window, not part of the equality.
+     *
+     * @since 9.2
+     */
+    public final Number coalesced;
+
     public WorkQueueMetrics(String queueId, Number scheduled, Number running, Number completed, Number canceled) {
+        this(queueId, scheduled, running, completed, canceled, 0, 0);
+    }
+
+    /**
+     * @since 9.2
+     */
+    public WorkQueueMetrics(String queueId, Number scheduled, Number running, Number completed, Number canceled,
+            Number waiting) {
+        this(queueId, scheduled, running, completed, canceled, waiting, 0);
+    }
+
+    /**
+     * @since 9.2
+     */
+    public WorkQueueMetrics(String queueId, Number scheduled, Number running, Number completed, Number canceled,
+            Number waiting, Number coalesced) {
         this.queueId = queueId;
         this.scheduled = scheduled;
         this.running = running;
         this.completed = completed;
         this.canceled = canceled;
+        this.waiting = waiting;
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * Returns a copy of these metrics with the given number of coalesced Work instances.
+     *
+     * @since 9.2
+     */
+    public WorkQueueMetrics withCoalesced(Number coalesced) {
+        return new WorkQueueMetrics(queueId, scheduled, running, completed, canceled, waiting, coalesced);
     }
 
     @Override
@@ -100,6 +141,8 @@ public class WorkQueueMetrics implements Serializable {
                 .append(completed)
                 .append(", ")
                 .append(canceled)
+                .append(", ")
+                .append(waiting)
                 .append("]");
         return builder.toString();
     }
@@ -123,4 +166,14 @@ public class WorkQueueMetrics implements Serializable {
     public Number getCanceled() {
         return canceled;
     }
+
+    /** @since 9.2 */
+    public Number getWaiting() {
+        return waiting;
+    }
+
+    /** @since 9.2 */
+    public Number getCoalesced() {
+        return coalesced;
+    }
 }
\ No newline at end of file
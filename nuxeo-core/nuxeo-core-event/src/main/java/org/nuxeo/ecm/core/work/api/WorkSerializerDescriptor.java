@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work.api;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.ecm.core.work.CompactWorkCodec;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.WorkSerializer;
+
+/**
+ * Descriptor for the serializer of a work class in the compact encoding of the stored works.
+ *
+ * @see CompactWorkCodec
+ * @since 9.2
+ */
+@XObject("serializer")
+public class WorkSerializerDescriptor {
+
+    @XNode("@type")
+    public int type;
+
+    @XNode("@work")
+    public Class<? extends Work> work;
+
+    @XNode("@class")
+    public Class<? extends WorkSerializer<?>> klass;
+
+}
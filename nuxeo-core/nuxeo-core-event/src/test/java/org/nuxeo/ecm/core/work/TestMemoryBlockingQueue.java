@@ -0,0 +1,218 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
+
+import com.codahale.metrics.Snapshot;
+
+public class TestMemoryBlockingQueue {
+
+    private static final Log log = LogFactory.getLog(TestMemoryBlockingQueue.class);
+
+    /** The throughput benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
+    protected static final Runnable NOOP = () -> {
+    };
+
+    protected ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    protected static MemoryBlockingQueue newQueue(String id, int capacity) {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue(id, null, capacity);
+        queue.setActive(true);
+        return queue;
+    }
+
+    @Test
+    public void testProducerWokenUpOnRemoval() throws Exception {
+        MemoryBlockingQueue queue = newQueue("testWakeup", 2);
+        queue.putElement(NOOP);
+        queue.putElement(NOOP);
+
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> producer = executor.submit(() -> {
+            started.countDown();
+            queue.putElement(NOOP);
+            return null;
+        });
+        started.await();
+        // the producer is blocked on the capacity
+        Thread.sleep(200);
+        assertFalse(producer.isDone());
+        assertEquals(1, queue.metrics().waiting.intValue());
+
+        // removing an element wakes it up
+        assertNotNull(queue.pollElement());
+        producer.get(5, TimeUnit.SECONDS);
+
+        WorkQueueMetrics metrics = queue.metrics();
+        assertEquals(0, metrics.waiting.intValue());
+        long waitTimeMax = queue.waitTimer.getSnapshot().getMax();
+        assertTrue(String.valueOf(waitTimeMax), waitTimeMax >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(2, queue.getQueueSize());
+    }
+
+    @Test
+    public void testProducersWokenUpInOrder() throws Exception {
+        MemoryBlockingQueue queue = newQueue("testOrder", 1);
+        queue.putElement(NOOP);
+
+        int n = 5;
+        List<Runnable> elements = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Runnable r = () -> {
+            };
+            elements.add(r);
+            executor.submit(() -> {
+                queue.putElement(r);
+                return null;
+            });
+            // let each producer block before the next one arrives
+            while (queue.metrics().waiting.intValue() < i + 1) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(10);
+        }
+
+        assertNotNull(queue.pollElement());
+        for (int i = 0; i < n; i++) {
+            Runnable r = null;
+            for (long end = System.currentTimeMillis() + 5000; r == null && System.currentTimeMillis() < end;) {
+                r = queue.pollElement();
+                if (r == null) {
+                    Thread.sleep(1);
+                }
+            }
+            assertTrue("element " + i, elements.get(i) == r);
+        }
+        assertNull(queue.pollElement());
+    }
+
+    @Test
+    public void testBatchAfterInteractive() throws Exception {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("testLanes", null, -1,
+                work -> "batch".equals(work.getCategory()));
+        queue.setActive(true);
+        List<Runnable> batch = new ArrayList<>();
+        List<Runnable> interactive = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Runnable r = new WorkHolder(new SleepWork(1, "batch", false, "batch-" + i));
+            batch.add(r);
+            queue.putElement(r);
+        }
+        for (int i = 0; i < 20; i++) {
+            Runnable r = new WorkHolder(new SleepWork(1, "interactive", false, "interactive-" + i));
+            interactive.add(r);
+            queue.putElement(r);
+        }
+        assertEquals(40, queue.getQueueSize());
+
+        // interactive elements first, with a batch one from time to time so that batch elements are not starved
+        List<Runnable> expected = new ArrayList<>();
+        expected.addAll(interactive.subList(0, 8));
+        expected.add(batch.get(0));
+        expected.addAll(interactive.subList(8, 16));
+        expected.add(batch.get(1));
+        expected.addAll(interactive.subList(16, 20));
+        expected.addAll(batch.subList(2, 20));
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("element " + i, expected.get(i) == queue.pollElement());
+        }
+        assertNull(queue.pollElement());
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        // number of elements per run, can be increased for actual measurements
+        int count = Integer.getInteger("nuxeo.test.work.benchmark.elements", 20_000);
+        int capacity = 100;
+        for (int producers : new int[] { 1, 4 }) {
+            for (int consumers : new int[] { 1, 4 }) {
+                MemoryBlockingQueue queue = newQueue("testThroughput-" + producers + "-" + consumers, capacity);
+                AtomicInteger consumed = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                long t0 = System.nanoTime();
+                for (int i = 0; i < producers; i++) {
+                    int share = count / producers;
+                    futures.add(executor.submit(() -> {
+                        for (int j = 0; j < share; j++) {
+                            queue.putElement(NOOP);
+                        }
+                        return null;
+                    }));
+                }
+                int total = (count / producers) * producers;
+                for (int i = 0; i < consumers; i++) {
+                    futures.add(executor.submit(() -> {
+                        while (consumed.get() < total) {
+                            if (queue.poll(10, TimeUnit.MILLISECONDS) != null) {
+                                consumed.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+                long t1 = System.nanoTime();
+                assertEquals(total, consumed.get());
+                Snapshot snapshot = queue.waitTimer.getSnapshot();
+                log.info(String.format(
+                        "%d producers, %d consumers, %d elements: %.0f elements/s, wait median %.3f ms, 99%% %.3f ms",
+                        producers, consumers, total, total / ((t1 - t0) / 1e9), snapshot.getMedian() / 1e6,
+                        snapshot.get99thPercentile() / 1e6));
+            }
+        }
+    }
+
+}
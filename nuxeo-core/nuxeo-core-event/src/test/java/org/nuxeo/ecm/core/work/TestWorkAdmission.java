@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWorkAdmission {
+
+    protected ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a thread acquiring a slot, and waits until it is blocked.
+     */
+    protected Future<?> acquireLater(WorkAdmission admission, String queueId, boolean batch, List<String> admitted)
+            throws InterruptedException {
+        int waiting = admission.getWaiting();
+        Future<?> future = executor.submit(() -> {
+            admission.acquire(queueId, batch);
+            admitted.add(queueId + (batch ? "-batch" : ""));
+            return null;
+        });
+        for (long end = System.currentTimeMillis() + 5000; admission.getWaiting() == waiting;) {
+            if (System.currentTimeMillis() > end) {
+                fail("not waiting");
+            }
+            Thread.sleep(1);
+        }
+        return future;
+    }
+
+    protected static void awaitAdmitted(List<String> admitted, int size) throws InterruptedException {
+        for (long end = System.currentTimeMillis() + 5000; admitted.size() < size;) {
+            assertTrue("not admitted", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        WorkAdmission admission = new WorkAdmission(0, queueId -> 0);
+        assertFalse(admission.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            admission.acquire("q", false);
+        }
+        assertEquals(0, admission.getRunning());
+    }
+
+    @Test
+    public void testCapAndInteractiveFirst() throws Exception {
+        WorkAdmission admission = new WorkAdmission(2, queueId -> 0);
+        admission.register("q", 1);
+        admission.acquire("q", true);
+        admission.acquire("q", true);
+        assertEquals(2, admission.getRunning());
+
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        Future<?> batch = acquireLater(admission, "q", true, admitted);
+        Future<?> interactive = acquireLater(admission, "q", false, admitted);
+        assertEquals(2, admission.getWaiting());
+
+        admission.release("q");
+        interactive.get(5, TimeUnit.SECONDS);
+        assertFalse(batch.isDone());
+        admission.release("q");
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("q", "q-batch"), admitted);
+        assertEquals(2, admission.getRunning());
+    }
+
+    @Test
+    public void testBatchNotStarved() throws Exception {
+        WorkAdmission admission = new WorkAdmission(1, queueId -> 0);
+        admission.register("q", 1);
+        admission.acquire("q", false);
+
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        acquireLater(admission, "q", true, admitted);
+        for (int i = 0; i < 10; i++) {
+            acquireLater(admission, "q", false, admitted);
+        }
+        for (int i = 0; i < 10; i++) {
+            admission.release("q");
+            awaitAdmitted(admitted, i + 1);
+        }
+        // a batch work is admitted after 8 interactive ones
+        List<String> expected = new ArrayList<>(Collections.nCopies(8, "q"));
+        expected.add("q-batch");
+        expected.add("q");
+        assertEquals(expected, admitted);
+        assertEquals(1, admission.getWaiting());
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        WorkAdmission admission = new WorkAdmission(3, queueId -> 0);
+        admission.register("other", 1);
+        admission.register("light", 1);
+        admission.register("heavy", 2);
+        for (int i = 0; i < 3; i++) {
+            admission.acquire("other", false);
+        }
+
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        for (String queueId : Arrays.asList("light", "light", "light", "heavy", "heavy", "heavy")) {
+            acquireLater(admission, queueId, false, admitted);
+        }
+        for (int i = 0; i < 3; i++) {
+            admission.release("other");
+            awaitAdmitted(admitted, i + 1);
+        }
+        // light arrived first, then heavy gets two slots for one as it has twice the weight
+        assertEquals(Arrays.asList("light", "heavy", "heavy"), admitted);
+        assertEquals(3, admission.getWaiting());
+    }
+
+    @Test
+    public void testLargestBacklogFirst() throws Exception {
+        WorkAdmission admission = new WorkAdmission(1, queueId -> "busy".equals(queueId) ? 1000 : 1);
+        admission.register("quiet", 1);
+        admission.register("busy", 1);
+        admission.acquire("quiet", false);
+
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        Future<?> quiet = acquireLater(admission, "quiet", false, admitted);
+        Future<?> busy = acquireLater(admission, "busy", false, admitted);
+
+        // neither runs anything: busy first
+        admission.release("quiet");
+        busy.get(5, TimeUnit.SECONDS);
+        assertFalse(quiet.isDone());
+        admission.release("busy");
+        quiet.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("busy", "quiet"), admitted);
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        WorkAdmission admission = new WorkAdmission(1, queueId -> 0);
+        admission.register("q", 1);
+        admission.acquire("q", false);
+        Future<?> future = acquireLater(admission, "q", false, new ArrayList<>());
+        future.cancel(true);
+        for (long end = System.currentTimeMillis() + 5000; admission.getWaiting() > 0;) {
+            assertTrue("still waiting", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+        admission.release("q");
+        assertEquals(0, admission.getRunning());
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.AbstractWorkSerializer;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.Progress;
+
+public class TestWorkCodec {
+
+    private static final Log log = LogFactory.getLog(TestWorkCodec.class);
+
+    /** The benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
+    protected static final int UNREGISTERED_WORK_TYPE = 100;
+
+    /**
+     * Work not registered with the compact codec.
+     */
+    protected static class UnregisteredWork extends AbstractWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String payload;
+
+        protected UnregisteredWork(String payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public String getTitle() {
+            return "unregistered";
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+    protected static class UnregisteredWorkSerializer extends AbstractWorkSerializer<UnregisteredWork> {
+
+        @Override
+        protected void writeFields(UnregisteredWork work, DataOutput out) throws IOException {
+            writeString(out, work.payload);
+        }
+
+        @Override
+        protected UnregisteredWork readWork(DataInput in) throws IOException {
+            return new UnregisteredWork(readString(in));
+        }
+    }
+
+    protected static SleepWork newSleepWork(int i) {
+        SleepWork work = new SleepWork(1000 + i, "someCategory", false, "work-" + i);
+        work.setDocuments("default", Arrays.asList("doc-" + i, "doc-" + (i + 1)));
+        work.setOriginatingUsername("bob");
+        work.setProgress(new Progress(3, 10));
+        return work;
+    }
+
+    protected static void assertSleepWork(SleepWork expected, Work actual) {
+        assertTrue(actual.getClass().getName(), actual instanceof SleepWork);
+        SleepWork work = (SleepWork) actual;
+        assertEquals(expected.getId(), work.getId());
+        assertEquals(expected.durationMillis, work.durationMillis);
+        assertEquals(expected.getCategory(), work.getCategory());
+        assertEquals(expected.repositoryName, work.repositoryName);
+        assertNull(work.docId);
+        assertEquals(expected.docIds, work.docIds);
+        assertEquals(expected.getOriginatingUsername(), work.getOriginatingUsername());
+        assertEquals(expected.getProgress().getCurrent(), work.getProgress().getCurrent());
+        assertEquals(expected.getProgress().getTotal(), work.getProgress().getTotal());
+        assertEquals(expected.getSchedulingTime(), work.getSchedulingTime());
+    }
+
+    @Test
+    public void testCompactRegistered() throws Exception {
+        WorkCodec codec = new CompactWorkCodec();
+        SleepWork work = newSleepWork(1);
+        byte[] bytes = codec.encode(work);
+        assertEquals(CompactWorkCodec.MAGIC, bytes[0]);
+        assertSleepWork(work, codec.decode(bytes));
+
+        // much smaller than Java serialization
+        byte[] javaBytes = new JavaWorkCodec().encode(work);
+        assertTrue(bytes.length + " vs " + javaBytes.length, bytes.length * 3 < javaBytes.length);
+
+        assertNull(codec.decode(null));
+    }
+
+    @Test
+    public void testCompactFallback() throws Exception {
+        WorkCodec codec = new CompactWorkCodec();
+        UnregisteredWork work = new UnregisteredWork(StringUtils.repeat("abc", 1000));
+        byte[] bytes = codec.encode(work);
+        // Java serialization, compressed
+        assertTrue(String.valueOf(bytes.length), bytes.length < 1000);
+        Work decoded = codec.decode(bytes);
+        assertTrue(decoded instanceof UnregisteredWork);
+        assertEquals(work.getId(), decoded.getId());
+        assertEquals(work.payload, ((UnregisteredWork) decoded).payload);
+    }
+
+    @Test
+    public void testCompactRegisterAndUnregister() throws Exception {
+        WorkCodec codec = new CompactWorkCodec();
+        UnregisteredWork work = new UnregisteredWork("payload");
+        CompactWorkCodec.register(UNREGISTERED_WORK_TYPE, UnregisteredWork.class, new UnregisteredWorkSerializer());
+        byte[] bytes;
+        try {
+            bytes = codec.encode(work);
+            assertEquals(0, bytes[2] & CompactWorkCodec.FLAG_JAVA);
+            Work decoded = codec.decode(bytes);
+            assertEquals(work.getId(), decoded.getId());
+            assertEquals(work.payload, ((UnregisteredWork) decoded).payload);
+        } finally {
+            CompactWorkCodec.unregister(UNREGISTERED_WORK_TYPE);
+        }
+        // Java serialization again
+        bytes = codec.encode(work);
+        assertEquals(CompactWorkCodec.FLAG_JAVA, bytes[2] & CompactWorkCodec.FLAG_JAVA);
+        assertEquals(work.payload, ((UnregisteredWork) codec.decode(bytes)).payload);
+    }
+
+    @Test
+    public void testCompactReadsJavaSerialization() throws Exception {
+        SleepWork work = newSleepWork(2);
+        // as stored before the compact codec was used
+        byte[] bytes = new JavaWorkCodec().encode(work);
+        assertSleepWork(work, new CompactWorkCodec().decode(bytes));
+    }
+
+    @Test
+    public void testCompactUnsupportedVersion() throws Exception {
+        byte[] bytes = new CompactWorkCodec().encode(newSleepWork(3));
+        bytes[1] = CompactWorkCodec.VERSION + 1;
+        try {
+            new CompactWorkCodec().decode(bytes);
+            fail("should fail on unknown version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unsupported work format version"));
+        }
+    }
+
+    @Test
+    public void testCodecCost() throws Exception {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        // number of works per run, can be increased for actual measurements
+        int count = Integer.getInteger("nuxeo.test.work.benchmark.codec", 1000);
+        SleepWork[] works = new SleepWork[count];
+        for (int i = 0; i < count; i++) {
+            works[i] = newSleepWork(i);
+        }
+        for (WorkCodec codec : new WorkCodec[] { new JavaWorkCodec(), new CompactWorkCodec() }) {
+            byte[][] encoded = new byte[count][];
+            long size = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                encoded[i] = codec.encode(works[i]);
+                size += encoded[i].length;
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                codec.decode(encoded[i]);
+            }
+            long t2 = System.nanoTime();
+            log.info(String.format("%s: %d bytes/work, %.0f MB per 1M works, encode %.2f us/work, decode %.2f us/work",
+                    codec.getClass().getSimpleName(), size / count, size * (1_000_000.0 / count) / (1024 * 1024),
+                    (t1 - t0) / 1e3 / count, (t2 - t1) / 1e3 / count));
+        }
+    }
+
+}
@@ -37,6 +37,8 @@ import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -55,6 +57,11 @@ import org.nuxeo.runtime.trackers.files.FileEvent;
 @Features(FileEventsTrackingFeature.class)
 public class WorkManagerTest extends NXRuntimeTestCase {
 
+    private static final Log log = LogFactory.getLog(WorkManagerTest.class);
+
+    /** The benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
     protected static class CreateFile extends AbstractWork implements Serializable {
         private final File file;
 
@@ -90,10 +97,30 @@ public class WorkManagerTest extends NXRuntimeTestCase {
         }
     }
 
+    protected static class CoalescedSleepWork extends SleepWork {
+        private static final long serialVersionUID = 1L;
+
+        protected final String key;
+
+        public CoalescedSleepWork(long durationMillis, String key) {
+            super(durationMillis, COALESCED_QUEUE, false);
+            this.key = key;
+        }
+
+        @Override
+        public String getCoalescingKey() {
+            return key;
+        }
+    }
+
     protected static final String CATEGORY = "SleepWork";
 
     protected static final String QUEUE = "SleepWork";
 
+    protected static final String COALESCED_QUEUE = "CoalescedSleepWork";
+
+    protected static final String IO_BOUND_QUEUE = "IoBoundSleepWork";
+
     protected WorkManagerImpl service;
 
     protected boolean dontClearCompletedWork;
@@ -223,6 +250,68 @@ public class WorkManagerTest extends NXRuntimeTestCase {
         assertEquals(Collections.emptyList(), service.listWorkIds(QUEUE, null));
     }
 
+    @Test
+    public void testWorkCoalescing() throws Exception {
+        deployAndStart();
+        assertEquals(1000, service.getWorkQueueDescriptor(COALESCED_QUEUE).getCoalescingWindow());
+
+        // works for two keys, scheduled within the window
+        for (int i = 0; i < 10; i++) {
+            service.schedule(new CoalescedSleepWork(1, "doc" + (i % 2)));
+        }
+        // nothing queued before the end of the window
+        assertEquals(0, service.getQueueSize(COALESCED_QUEUE, null));
+
+        assertTrue(service.awaitCompletion(COALESCED_QUEUE, 10, TimeUnit.SECONDS));
+        WorkQueueMetrics metrics = service.getMetrics(COALESCED_QUEUE);
+        assertEquals(2, metrics.completed.intValue());
+        assertEquals(8, metrics.coalesced.intValue());
+    }
+
+    protected long scheduleIoBound(int count, int duration) throws InterruptedException {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            service.schedule(new SleepWork(duration, IO_BOUND_QUEUE, false));
+        }
+        assertTrue(service.awaitCompletion(IO_BOUND_QUEUE, 60, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        assertEquals(count, service.getMetrics(IO_BOUND_QUEUE).completed.intValue());
+        return elapsed;
+    }
+
+    @Test
+    public void testIoBoundQueue() throws Exception {
+        deployAndStart();
+        WorkQueueDescriptor qd = service.getWorkQueueDescriptor(IO_BOUND_QUEUE);
+        assertTrue(qd.isIoBound());
+        assertEquals(1000, qd.getMaxConcurrency());
+
+        scheduleIoBound(20, 200);
+        // threads were started beyond maxThreads
+        int threads = service.getExecutor(IO_BOUND_QUEUE).getLargestPoolSize();
+        assertTrue(String.valueOf(threads), threads > qd.getMaxThreads());
+    }
+
+    @Test
+    public void testIoBoundQueueThroughput() throws Exception {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        deployAndStart();
+        WorkQueueDescriptor qd = service.getWorkQueueDescriptor(IO_BOUND_QUEUE);
+
+        // number of concurrent works, can be increased for actual measurements
+        int count = Integer.getInteger("nuxeo.test.work.benchmark.io", 1000);
+        int duration = 200;
+        long elapsed = scheduleIoBound(count, duration);
+
+        int threads = service.getExecutor(IO_BOUND_QUEUE).getLargestPoolSize();
+        log.info(String.format("%d works of %d ms: %d ms, %.0f works/s, %d threads (%d ms with maxThreads only)",
+                count, duration, elapsed, count * 1000.0 / elapsed, threads,
+                (long) count * duration / qd.getMaxThreads()));
+        assertTrue(String.valueOf(threads), threads > qd.getMaxThreads());
+        // much faster than with maxThreads threads only
+        assertTrue(String.valueOf(elapsed), elapsed < (long) count * duration / qd.getMaxThreads() / 4);
+    }
+
     public void testDuplicatedWorks() throws Exception {
         deployAndStart();
         int duration = 2000; // 2s
@@ -67,6 +67,7 @@ import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.local.ClientLoginModule;
 import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.blob.BlobManager.UsageHint;
+import org.nuxeo.ecm.core.blob.binary.BinaryBlob;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.EventService;
@@ -553,11 +554,14 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier)
             throws UncheckedIOException {
-        try (InputStream in = blob.getStream()) {
+        // binaries can read a range directly, without reading or fetching the whole blob
+        boolean binaryRange = byteRange != null && blob instanceof BinaryBlob;
+        try (InputStream in = binaryRange
+                ? ((BinaryBlob) blob).getStream(byteRange.getStart(), byteRange.getLength()) : blob.getStream()) {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
             BufferingServletOutputStream.stopBuffering(out);
-            if (byteRange == null) {
+            if (byteRange == null || binaryRange) {
                 IOUtils.copy(in, out);
             } else {
                 IOUtils.copyLarge(in, out, byteRange.getStart(), byteRange.getLength());
@@ -34,6 +34,8 @@ import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
  * transformers.
  * <p>
  * You can also include a limit and offset, to get a subset of the total.
+ * <p>
+ * A fetch size can be specified to stream the results from the storage instead of making them all available at once.
  *
  * @author Florent Guillaume
  */
@@ -59,6 +61,9 @@ public class QueryFilter implements Serializable {
 
     protected final long offset;
 
+    /** @since 9.2 */
+    protected final int fetchSize;
+
     /**
      * Constructs a query filter.
      * <p>
@@ -66,6 +71,18 @@ public class QueryFilter implements Serializable {
      */
     public QueryFilter(Principal principal, String[] principals, String[] permissions, FacetFilter facetFilter,
             Collection<SQLQuery.Transformer> queryTransformers, long limit, long offset) {
+        this(principal, principals, permissions, facetFilter, queryTransformers, limit, offset, 0);
+    }
+
+    /**
+     * Constructs a query filter with a fetch size.
+     * <p>
+     * Note that the principal MUST be {@link Serializable}.
+     *
+     * @since 9.2
+     */
+    public QueryFilter(Principal principal, String[] principals, String[] permissions, FacetFilter facetFilter,
+            Collection<SQLQuery.Transformer> queryTransformers, long limit, long offset, int fetchSize) {
         this.principal = principal;
         this.principals = principals;
         this.permissions = permissions;
@@ -73,6 +90,7 @@ public class QueryFilter implements Serializable {
         this.queryTransformers = queryTransformers;
         this.limit = limit;
         this.offset = offset;
+        this.fetchSize = fetchSize;
     }
 
     public static QueryFilter withoutLimitOffset(QueryFilter other) {
@@ -82,7 +100,8 @@ public class QueryFilter implements Serializable {
                 other.permissions, //
                 other.facetFilter, //
                 other.queryTransformers, //
-                0, 0);
+                0, 0, //
+                other.fetchSize);
     }
 
     public Principal getPrincipal() {
@@ -113,6 +132,16 @@ public class QueryFilter implements Serializable {
         return offset;
     }
 
+    /**
+     * Gets the number of results to fetch at a time when streaming them.
+     *
+     * @return the fetch size, or {@code 0} if the results are not streamed
+     * @since 9.2
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
     @Override
     public String toString() {
         return String.format("QueryFilter(principal=%s, limit=%d, offset=%d)", principal, limit, offset);
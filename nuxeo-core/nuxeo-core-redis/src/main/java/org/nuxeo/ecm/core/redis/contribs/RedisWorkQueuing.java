@@ -18,12 +18,7 @@
  */
 package org.nuxeo.ecm.core.redis.contribs;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,7 +36,10 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.redis.RedisAdmin;
 import org.nuxeo.ecm.core.redis.RedisCallable;
 import org.nuxeo.ecm.core.redis.RedisExecutor;
+import org.nuxeo.ecm.core.work.CompactWorkCodec;
+import org.nuxeo.ecm.core.work.JavaWorkCodec;
 import org.nuxeo.ecm.core.work.NuxeoBlockingQueue;
+import org.nuxeo.ecm.core.work.WorkCodec;
 import org.nuxeo.ecm.core.work.WorkHolder;
 import org.nuxeo.ecm.core.work.WorkQueuing;
 import org.nuxeo.ecm.core.work.api.Work;
@@ -68,6 +66,23 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected static final String UTF_8 = "UTF-8";
 
+    /**
+     * Configuration property for the encoding of the stored works: {@value #CODEC_JAVA} (the default) or
+     * {@value #CODEC_COMPACT}. Works stored with either encoding can be read in both cases.
+     * <p>
+     * Nodes that do not know the compact encoding cannot read the works stored with it, so it must only be enabled
+     * once all the nodes of the cluster have been upgraded.
+     *
+     * @since 9.2
+     */
+    public static final String CODEC_PROP = "nuxeo.work.redis.codec";
+
+    /** @since 9.2 */
+    public static final String CODEC_COMPACT = "compact";
+
+    /** @since 9.2 */
+    public static final String CODEC_JAVA = "java";
+
     /**
      * Global hash of Work instance id -> serialoized Work instance.
      */
@@ -138,6 +153,8 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected String redisNamespace;
 
+    protected WorkCodec codec;
+
     // lua scripts
     protected byte[] initWorkQueueSha;
 
@@ -163,6 +180,7 @@ public class RedisWorkQueuing implements WorkQueuing {
     void loadConfig() {
         RedisAdmin admin = Framework.getService(RedisAdmin.class);
         redisNamespace = admin.namespace("work");
+        codec = newCodec(Framework.getProperty(CODEC_PROP, CODEC_JAVA));
         try {
             initWorkQueueSha = admin.load("org.nuxeo.ecm.core.redis", "init-work-queue")
                     .getBytes();
@@ -446,28 +464,41 @@ public class RedisWorkQueuing implements WorkQueuing {
     }
 
     protected byte[] serializeWork(Work work) throws IOException {
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(baout);
-        out.writeObject(work);
-        out.flush();
-        out.close();
-        return baout.toByteArray();
+        return codec.encode(work);
     }
 
     protected Work deserializeWork(byte[] workBytes) {
-        if (workBytes == null) {
-            return null;
-        }
-        InputStream bain = new ByteArrayInputStream(workBytes);
-        try (ObjectInputStream in = new ObjectInputStream(bain)) {
-            return (Work) in.readObject();
-        } catch (RuntimeException cause) {
-            throw cause;
-        } catch (IOException | ClassNotFoundException cause) {
+        try {
+            return codec.decode(workBytes);
+        } catch (IOException cause) {
             throw new RuntimeException("Cannot deserialize work", cause);
         }
     }
 
+    /**
+     * Creates the codec for the stored works.
+     *
+     * @since 9.2
+     */
+    protected static WorkCodec newCodec(String name) {
+        switch (name) {
+        case CODEC_COMPACT:
+            return new CompactWorkCodec();
+        case CODEC_JAVA:
+            // still reads the compact format, for a rollback after works were stored with it
+            return new JavaWorkCodec() {
+                protected final WorkCodec compact = new CompactWorkCodec();
+
+                @Override
+                public Work decode(byte[] bytes) throws IOException {
+                    return compact.decode(bytes);
+                }
+            };
+        default:
+            throw new NuxeoException("Unknown work codec: " + name + " for property: " + CODEC_PROP);
+        }
+    }
+
     /**
      * Finds which queues have suspended work.
      *
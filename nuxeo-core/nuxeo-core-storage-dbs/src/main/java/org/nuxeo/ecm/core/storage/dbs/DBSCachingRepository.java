@@ -38,6 +38,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Lock;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.ScrollResult;
 import org.nuxeo.ecm.core.blob.BlobManager;
@@ -48,6 +49,7 @@ import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.metrics.MetricsService;
 
 import com.codahale.metrics.MetricRegistry;
@@ -219,6 +221,20 @@ public class DBSCachingRepository implements DBSRepository {
         invalidate(id);
     }
 
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        List<String> ids = new ArrayList<>(updates.size());
+        for (StateUpdate update : updates) {
+            ids.add(update.id);
+        }
+        try {
+            repository.updateStates(updates);
+        } finally {
+            // some updates may have been done even on failure
+            invalidateAll(ids);
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         repository.deleteStates(ids);
@@ -362,6 +378,12 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    @Override
+    public IterableQueryResult queryAndFetchStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
+            boolean distinctDocuments, int fetchSize) {
+        return repository.queryAndFetchStream(evaluator, orderByClause, distinctDocuments, fetchSize);
+    }
+
     @Override
     public LockManager getLockManager() {
         return repository.getLockManager();
@@ -425,4 +447,14 @@ public class DBSCachingRepository implements DBSRepository {
         repository.markReferencedBinaries();
     }
 
+    @Override
+    public List<String> getBinariesMarkPartitions(int max) {
+        return repository.getBinariesMarkPartitions(max);
+    }
+
+    @Override
+    public void markReferencedBinaries(String partition) {
+        repository.markReferencedBinaries(partition);
+    }
+
 }
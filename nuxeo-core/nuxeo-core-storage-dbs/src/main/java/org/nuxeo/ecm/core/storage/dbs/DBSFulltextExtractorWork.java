@@ -19,10 +19,13 @@
  */
 package org.nuxeo.ecm.core.storage.dbs;
 
+import java.io.DataInput;
+
 import org.nuxeo.ecm.core.repository.RepositoryService;
 import org.nuxeo.ecm.core.storage.DefaultFulltextParser;
 import org.nuxeo.ecm.core.storage.FulltextExtractorWork;
 import org.nuxeo.ecm.core.storage.FulltextUpdaterWork;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.AbstractWorkSerializer;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -48,4 +51,18 @@ public class DBSFulltextExtractorWork extends FulltextExtractorWork {
         fulltextParser = new DefaultFulltextParser();
     }
 
+    /**
+     * Serializer for the compact encoding of the stored works.
+     *
+     * @since 9.2
+     */
+    public static class Serializer extends AbstractWorkSerializer<DBSFulltextExtractorWork> {
+
+        @Override
+        protected DBSFulltextExtractorWork readWork(DataInput in) {
+            // the repository name and document id are part of the common state
+            return new DBSFulltextExtractorWork(null, null);
+        }
+    }
+
 }
@@ -23,6 +23,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.ScrollResult;
 import org.nuxeo.ecm.core.blob.BlobManager;
@@ -33,6 +35,7 @@ import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 
 /**
  * Interface for a {@link Repository} for Document-Based Storage.
@@ -129,6 +132,22 @@ public interface DBSRepository extends Repository, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates documents.
+     * <p>
+     * The updates are for distinct documents and may be sent to the database in bulk and in any order. If a change
+     * token condition doesn't match for a document, a {@link ConcurrentUpdateException} is thrown for that document; the
+     * other updates may or may not have been done, the transaction is expected to be rolled back.
+     *
+     * @param updates the document updates
+     * @since 9.2
+     */
+    default void updateStates(List<StateUpdate> updates) {
+        for (StateUpdate update : updates) {
+            updateState(update.id, update.diff, update.changeTokenUpdater);
+        }
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -218,6 +237,21 @@ public interface DBSRepository extends Repository, LockManager {
     PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
             boolean distinctDocuments, int limit, int offset, int countUpTo);
 
+    /**
+     * Queries the repository for documents matching a NXQL query, and streams a projection of the documents.
+     * <p>
+     * Repositories that cannot stream the results may return them all at once.
+     *
+     * @param evaluator the map-based evaluator for the query
+     * @param orderByClause an ORDER BY clause
+     * @param distinctDocuments {@code true} if the projection should return a maximum of one row per document
+     * @param fetchSize the number of documents to fetch at a time
+     * @return an iterable query result, which must be closed after use
+     * @since 9.2
+     */
+    IterableQueryResult queryAndFetchStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
+            boolean distinctDocuments, int fetchSize);
+
     /**
      * Gets the lock manager for this repository.
      *
@@ -46,7 +46,9 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.ExceptionUtils;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.security.ACE;
 import org.nuxeo.ecm.core.api.security.SecurityConstants;
 import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
@@ -55,6 +57,7 @@ import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.LockManager;
 import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.TypeConstants;
@@ -334,6 +337,19 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         return transactionContexts.size();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default implementation fetches all the results at once.
+     */
+    @Override
+    public IterableQueryResult queryAndFetchStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
+            boolean distinctDocuments, int fetchSize) {
+        PartialList<Map<String, Serializable>> pl = queryAndFetch(evaluator, orderByClause, distinctDocuments, 0, 0,
+                -1);
+        return new DBSSession.DBSQueryResult(pl);
+    }
+
     @Override
     public Session getSession() {
         return getSession(this);
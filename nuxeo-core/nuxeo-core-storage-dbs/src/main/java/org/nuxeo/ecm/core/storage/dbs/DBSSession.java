@@ -85,6 +85,7 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -212,6 +213,16 @@ public class DBSSession implements Session {
         }
     }
 
+    @Override
+    public void reserveIds(int count) {
+        // ids are generated by the repository, which allocates sequences in blocks itself
+    }
+
+    @Override
+    public void prefetchSchema(List<Document> docs, String schema) {
+        // the whole state of a document is read at once, nothing to prefetch
+    }
+
     public void begin() {
         transaction.begin();
     }
@@ -1453,39 +1464,11 @@ public class DBSSession implements Session {
             throw new NuxeoException("No QueryMaker accepts query type: " + queryType);
         }
 
-        // transform the query according to the transformers defined by the
-        // security policies
-        SQLQuery sqlQuery = SQLQueryParser.parse(query);
-        for (SQLQuery.Transformer transformer : queryFilter.getQueryTransformers()) {
-            sqlQuery = transformer.transform(queryFilter.getPrincipal(), sqlQuery);
-        }
-
-        SelectClause selectClause = sqlQuery.select;
-        if (selectClause.isEmpty()) {
-            // turned into SELECT ecm:uuid
-            selectClause.add(new Reference(NXQL.ECM_UUID));
-        }
-        boolean selectStar = selectClause.count() == 1 && (selectClause.containsOperand(new Reference(NXQL.ECM_UUID)));
-        if (selectStar) {
-            distinctDocuments = true;
-        } else if (selectClause.isDistinct()) {
-            throw new QueryParseException("SELECT DISTINCT not supported on DBS");
-        }
-        if (idKeyHolder != null) {
-            Operand operand = selectClause.operands().iterator().next();
-            String idKey = operand instanceof Reference ? ((Reference) operand).name : NXQL.ECM_UUID;
-            idKeyHolder.setValue(idKey);
-        }
-        // Add useful select clauses, used for order by path
-        selectClause.elements.putIfAbsent(NXQL.ECM_UUID, new Reference(NXQL.ECM_UUID));
-        selectClause.elements.putIfAbsent(NXQL.ECM_PARENTID, new Reference(NXQL.ECM_PARENTID));
-        selectClause.elements.putIfAbsent(NXQL.ECM_NAME, new Reference(NXQL.ECM_NAME));
-
-        QueryOptimizer optimizer = new QueryOptimizer();
-        MultiExpression expression = optimizer.getOptimizedQuery(sqlQuery, queryFilter.getFacetFilter());
-        OrderByClause orderByClause = sqlQuery.orderBy;
-        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, selectClause, expression, orderByClause,
-                queryFilter.getPrincipals(), fulltextSearchDisabled);
+        MutableBoolean distinctHolder = new MutableBoolean(distinctDocuments);
+        DBSExpressionEvaluator evaluator = getQueryAndFetchEvaluator(query, queryFilter, distinctHolder,
+                idKeyHolder);
+        distinctDocuments = distinctHolder.booleanValue();
+        OrderByClause orderByClause = evaluator.getOrderByClause();
 
         int limit = (int) queryFilter.getLimit();
         int offset = (int) queryFilter.getOffset();
@@ -1552,6 +1535,68 @@ public class DBSSession implements Session {
         return new PartialList<>(projections, totalSize);
     }
 
+    /**
+     * Does a query and streams the results from the repository, when no post-filtering in memory is needed.
+     *
+     * @since 9.2
+     */
+    protected IterableQueryResult doQueryAndFetchStream(String query, String queryType, QueryFilter queryFilter,
+            boolean distinctDocuments) {
+        if (!NXQL.NXQL.equals(queryType)) {
+            return null;
+        }
+        MutableBoolean distinctHolder = new MutableBoolean(distinctDocuments);
+        DBSExpressionEvaluator evaluator = getQueryAndFetchEvaluator(query, queryFilter, distinctHolder, null);
+        OrderByClause orderByClause = evaluator.getOrderByClause();
+        if (isOrderByPath(orderByClause)) {
+            return null;
+        }
+        return repository.queryAndFetchStream(evaluator, orderByClause, distinctHolder.booleanValue(),
+                queryFilter.getFetchSize());
+    }
+
+    /**
+     * Parses a NXQL query and builds the evaluator used to execute it.
+     *
+     * @param distinctDocuments holder for the distinct documents flag, set if the query implies it
+     * @since 9.2
+     */
+    protected DBSExpressionEvaluator getQueryAndFetchEvaluator(String query, QueryFilter queryFilter,
+            MutableBoolean distinctDocuments, Mutable<String> idKeyHolder) {
+        // transform the query according to the transformers defined by the
+        // security policies
+        SQLQuery sqlQuery = SQLQueryParser.parse(query);
+        for (SQLQuery.Transformer transformer : queryFilter.getQueryTransformers()) {
+            sqlQuery = transformer.transform(queryFilter.getPrincipal(), sqlQuery);
+        }
+
+        SelectClause selectClause = sqlQuery.select;
+        if (selectClause.isEmpty()) {
+            // turned into SELECT ecm:uuid
+            selectClause.add(new Reference(NXQL.ECM_UUID));
+        }
+        boolean selectStar = selectClause.count() == 1 && (selectClause.containsOperand(new Reference(NXQL.ECM_UUID)));
+        if (selectStar) {
+            distinctDocuments.setValue(true);
+        } else if (selectClause.isDistinct()) {
+            throw new QueryParseException("SELECT DISTINCT not supported on DBS");
+        }
+        if (idKeyHolder != null) {
+            Operand operand = selectClause.operands().iterator().next();
+            String idKey = operand instanceof Reference ? ((Reference) operand).name : NXQL.ECM_UUID;
+            idKeyHolder.setValue(idKey);
+        }
+        // Add useful select clauses, used for order by path
+        selectClause.elements.putIfAbsent(NXQL.ECM_UUID, new Reference(NXQL.ECM_UUID));
+        selectClause.elements.putIfAbsent(NXQL.ECM_PARENTID, new Reference(NXQL.ECM_PARENTID));
+        selectClause.elements.putIfAbsent(NXQL.ECM_NAME, new Reference(NXQL.ECM_NAME));
+
+        QueryOptimizer optimizer = new QueryOptimizer();
+        MultiExpression expression = optimizer.getOptimizedQuery(sqlQuery, queryFilter.getFacetFilter());
+        return new DBSExpressionEvaluator(this, selectClause, expression, sqlQuery.orderBy,
+                queryFilter.getPrincipals(), fulltextSearchDisabled);
+    }
+
     /** Does an ORDER BY clause include ecm:path */
     protected boolean isOrderByPath(OrderByClause orderByClause) {
         if (orderByClause == null) {
@@ -1653,6 +1698,13 @@ public class DBSSession implements Session {
             boolean distinctDocuments, Object[] params) {
         final Timer.Context timerContext = queryTimer.time();
         try {
+            if (queryFilter.getFetchSize() > 0) {
+                IterableQueryResult result = doQueryAndFetchStream(query, queryType, queryFilter,
+                        distinctDocuments);
+                if (result != null) {
+                    return result;
+                }
+            }
             PartialList<Map<String, Serializable>> pl = doQueryAndFetch(query, queryType, queryFilter,
                     distinctDocuments, -1, null);
             return new DBSQueryResult(pl);
@@ -584,6 +584,7 @@ public class DBSTransactionState {
         if (!statesToCreate.isEmpty()) {
             repository.createStates(statesToCreate);
         }
+        List<StateUpdate> stateUpdates = new ArrayList<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -603,10 +604,13 @@ public class DBSTransactionState {
                 } else {
                     changeTokenUpdater = null;
                 }
-                repository.updateState(id, diff, changeTokenUpdater);
+                stateUpdates.add(new StateUpdate(id, diff, changeTokenUpdater));
             }
             docState.setNotDirty();
         }
+        if (!stateUpdates.isEmpty()) {
+            repository.updateStates(stateUpdates);
+        }
         transientCreated.clear();
         scheduleWork(works);
     }
@@ -660,6 +664,27 @@ public class DBSTransactionState {
         }
     }
 
+    /**
+     * A document update to write to the database, as part of a bulk of updates.
+     *
+     * @since 9.2
+     */
+    public static class StateUpdate {
+
+        public final String id;
+
+        public final StateDiff diff;
+
+        /** How to get and update the change token, may be {@code null}. */
+        public final ChangeTokenUpdater changeTokenUpdater;
+
+        public StateUpdate(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+            this.id = id;
+            this.diff = diff;
+            this.changeTokenUpdater = changeTokenUpdater;
+        }
+    }
+
     protected void applyUndoLog() {
         Set<String> deletes = new HashSet<>();
         for (Entry<String, State> es : undoLog.entrySet()) {
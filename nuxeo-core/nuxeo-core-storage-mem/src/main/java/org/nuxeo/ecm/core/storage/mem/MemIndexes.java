@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nuxeo.ecm.core.storage.State;
+
+/**
+ * Secondary indexes for the {@link MemRepository}.
+ * <p>
+ * For each indexed top-level key, maps a value to the ids of the documents having this value. Array and list values
+ * are indexed by element. Complex values are not indexed.
+ * <p>
+ * The indexes are only used to find candidate documents, which are then checked against the actual query, so it's
+ * acceptable for them to be temporarily larger than needed during concurrent updates.
+ *
+ * @since 9.2
+ */
+public class MemIndexes {
+
+    /** Index by key, the set of keys is fixed at construction. */
+    protected final Map<String, Map<Object, Set<String>>> indexes;
+
+    public MemIndexes(Collection<String> keys) {
+        indexes = new HashMap<>();
+        for (String key : keys) {
+            indexes.put(key, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Gets the indexed keys.
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /**
+     * Checks if a key is indexed.
+     */
+    public boolean isIndexed(String key) {
+        return indexes.containsKey(key);
+    }
+
+    /**
+     * Gets the ids of the documents having the given value for the given indexed key.
+     * <p>
+     * The returned set is live and must not be modified.
+     *
+     * @return the ids, or {@code null} if the key is not indexed
+     */
+    public Set<String> get(String key, Object value) {
+        Map<Object, Set<String>> index = indexes.get(key);
+        if (index == null) {
+            return null;
+        }
+        Set<String> ids = index.get(value);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * Indexes a new document.
+     */
+    public void add(String id, State state) {
+        for (Map.Entry<String, Map<Object, Set<String>>> es : indexes.entrySet()) {
+            for (Object value : getValues(state.get(es.getKey()))) {
+                add(es.getValue(), value, id);
+            }
+        }
+    }
+
+    /**
+     * Unindexes a removed document.
+     */
+    public void remove(String id, State state) {
+        for (Map.Entry<String, Map<Object, Set<String>>> es : indexes.entrySet()) {
+            for (Object value : getValues(state.get(es.getKey()))) {
+                remove(es.getValue(), value, id);
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the indexed values of a document, to be passed to {@link #update} after the document is
+     * modified.
+     */
+    public Map<String, List<Object>> getIndexedValues(State state) {
+        Map<String, List<Object>> values = new HashMap<>();
+        for (String key : indexes.keySet()) {
+            values.put(key, getValues(state.get(key)));
+        }
+        return values;
+    }
+
+    /**
+     * Reindexes a modified document.
+     *
+     * @param id the document id
+     * @param oldValues the indexed values before the modification, from {@link #getIndexedValues}
+     * @param state the modified document
+     */
+    public void update(String id, Map<String, List<Object>> oldValues, State state) {
+        for (Map.Entry<String, Map<Object, Set<String>>> es : indexes.entrySet()) {
+            String key = es.getKey();
+            Map<Object, Set<String>> index = es.getValue();
+            List<Object> oldVals = oldValues.get(key);
+            List<Object> newVals = getValues(state.get(key));
+            if (newVals.equals(oldVals)) {
+                continue;
+            }
+            // add before remove so that a concurrent lookup never misses the document
+            for (Object value : newVals) {
+                add(index, value, id);
+            }
+            Set<Object> keep = new HashSet<>(newVals);
+            for (Object value : oldVals) {
+                if (!keep.contains(value)) {
+                    remove(index, value, id);
+                }
+            }
+        }
+    }
+
+    protected static void add(Map<Object, Set<String>> index, Object value, String id) {
+        index.compute(value, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    protected static void remove(Map<Object, Set<String>> index, Object value, String id) {
+        index.computeIfPresent(value, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Gets the indexable values of a document value, as a new list.
+     */
+    protected static List<Object> getValues(Serializable value) {
+        List<Object> values = new ArrayList<>(1);
+        if (value instanceof Object[]) {
+            addValues(values, Arrays.asList((Object[]) value));
+        } else if (value instanceof List) {
+            addValues(values, (List<?>) value);
+        } else if (value != null && !(value instanceof State)) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    protected static void addValues(List<Object> values, List<?> list) {
+        for (Object v : list) {
+            if (v != null && !(v instanceof State)) {
+                values.add(v);
+            }
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.storage.mem;
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.query.sql.NXQL.ECM_UUID;
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
@@ -28,6 +29,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_CREATED;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_OWNER;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
 
@@ -36,7 +38,10 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -62,7 +67,18 @@ import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.blob.DocumentBlobManager;
 import org.nuxeo.ecm.core.model.LockManager;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.storage.ExpressionEvaluator.PathResolver;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
@@ -70,8 +86,10 @@ import org.nuxeo.ecm.core.storage.StateHelper;
 import org.nuxeo.ecm.core.storage.dbs.DBSDocument;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
+import org.nuxeo.ecm.core.storage.dbs.DBSSession;
 import org.nuxeo.ecm.core.storage.dbs.DBSSession.OrderByComparator;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -98,11 +116,47 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * The keys for which secondary indexes are maintained.
+     *
+     * @since 9.2
+     */
+    protected final Set<String> indexedKeys;
+
+    /**
+     * Secondary indexes on the content of the repository.
+     *
+     * @since 9.2
+     */
+    protected MemIndexes indexes;
+
     public MemRepository(ConnectionManager cm, MemRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor);
+        indexedKeys = getIndexedKeys(descriptor.indexes);
         initRepository();
     }
 
+    protected static Set<String> getIndexedKeys(List<String> properties) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(KEY_PARENT_ID);
+        keys.add(KEY_ANCESTOR_IDS);
+        keys.add(KEY_PRIMARY_TYPE);
+        for (String prop : properties) {
+            keys.add(getIndexKey(prop));
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the internal key corresponding to an NXQL property name.
+     */
+    protected static String getIndexKey(String name) {
+        if (name.startsWith(NXQL.ECM_PREFIX)) {
+            return DBSSession.convToInternal(name);
+        }
+        return name;
+    }
+
     @Override
     public List<IdType> getAllowedIdTypes() {
         return Collections.singletonList(IdType.varchar);
@@ -112,10 +166,12 @@ public class MemRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         states = null;
+        indexes = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        indexes = new MemIndexes(indexedKeys);
         initRoot();
     }
 
@@ -160,6 +216,7 @@ public class MemRepository extends DBSRepositoryBase {
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
         states.put(id, state);
+        indexes.add(id, state);
     }
 
     @Override
@@ -173,6 +230,7 @@ public class MemRepository extends DBSRepositoryBase {
         }
         synchronized (state) {
             // synchronization needed for atomic change token
+            Map<String, List<Object>> oldIndexedValues = indexes.getIndexedValues(state);
             if (changeTokenUpdater != null) {
                 for (Entry<String, Serializable> en : changeTokenUpdater.getConditions().entrySet()) {
                     if (!Objects.equals(state.get(en.getKey()), en.getValue())) {
@@ -184,6 +242,28 @@ public class MemRepository extends DBSRepositoryBase {
                 }
             }
             applyDiff(state, diff);
+            indexes.update(id, oldIndexedValues, state);
+        }
+    }
+
+    /**
+     * Updates the documents like an unordered bulk write: all the updates are attempted, and the first concurrent
+     * update, if any, is reported at the end.
+     */
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        ConcurrentUpdateException concurrentUpdate = null;
+        for (StateUpdate update : updates) {
+            try {
+                updateState(update.id, update.diff, update.changeTokenUpdater);
+            } catch (ConcurrentUpdateException e) {
+                if (concurrentUpdate == null) {
+                    concurrentUpdate = e;
+                }
+            }
+        }
+        if (concurrentUpdate != null) {
+            throw concurrentUpdate;
         }
     }
 
@@ -193,16 +273,18 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: REMOVE " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
+            State state = states.remove(id);
+            if (state == null) {
                 log.debug("Missing on remove: " + id);
+            } else {
+                indexes.remove(id, state);
             }
         }
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(KEY_PARENT_ID, parentId)) {
             if (ignored.contains(state.get(KEY_ID))) {
                 continue;
             }
@@ -228,7 +310,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -250,7 +332,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key1 + " = " + value1 + " AND " + key2 + " = " + value2);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key1, value1)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -272,7 +354,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        STATE: for (State state : states.values()) {
+        STATE: for (State state : getCandidateStates(key, value)) {
             Object[] array = (Object[]) state.get(key);
             String id = (String) state.get(KEY_ID);
             if (array != null) {
@@ -304,7 +386,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -330,7 +412,7 @@ public class MemRepository extends DBSRepositoryBase {
         }
         evaluator.parse();
         List<Map<String, Serializable>> projections = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(evaluator)) {
             List<Map<String, Serializable>> matches = evaluator.matches(state);
             if (!matches.isEmpty()) {
                 if (distinctDocuments) {
@@ -381,7 +463,7 @@ public class MemRepository extends DBSRepositoryBase {
         }
         evaluator.parse();
         List<String> ids = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(evaluator)) {
             List<Map<String, Serializable>> matches = evaluator.matches(state);
             if (!matches.isEmpty()) {
                 String id = matches.get(0).get(ECM_UUID).toString();
@@ -400,6 +482,177 @@ public class MemRepository extends DBSRepositoryBase {
         throw new NuxeoException("Unknown or timed out scrollId");
     }
 
+    /**
+     * Gets the states that may have the given value for the given key, using an index if possible.
+     * <p>
+     * The caller must still check the value.
+     *
+     * @since 9.2
+     */
+    protected Iterable<State> getCandidateStates(String key, Object value) {
+        Set<String> ids = indexes.get(key, value);
+        if (ids == null) {
+            return states.values();
+        }
+        return getStates(new ArrayList<>(ids));
+    }
+
+    /**
+     * Gets the states that may match the query, using an index if possible.
+     * <p>
+     * The caller must still check each state against the query.
+     *
+     * @since 9.2
+     */
+    protected Iterable<State> getCandidateStates(DBSExpressionEvaluator evaluator) {
+        Collection<String> ids = getCandidateIds(evaluator);
+        if (ids == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("Mem:    -> full scan");
+            }
+            return states.values();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Mem:    -> index scan: " + ids.size());
+        }
+        return getStates(ids);
+    }
+
+    protected List<State> getStates(Collection<String> ids) {
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Plans the query: among the toplevel AND-ed predicates that can use an index, finds the most selective one, and
+     * returns the ids it matches.
+     *
+     * @return the candidate ids, or {@code null} if a full scan is needed
+     * @since 9.2
+     */
+    protected Collection<String> getCandidateIds(DBSExpressionEvaluator evaluator) {
+        List<Expression> predicates = new ArrayList<>();
+        collectAndedPredicates(evaluator.getExpression(), predicates);
+        List<Set<String>> best = null;
+        long bestSize = Long.MAX_VALUE;
+        for (Expression predicate : predicates) {
+            List<Set<String>> sets = getIndexedIds(predicate, evaluator.pathResolver);
+            if (sets == null) {
+                continue;
+            }
+            long size = sets.stream().mapToLong(Set::size).sum();
+            if (size < bestSize) {
+                best = sets;
+                bestSize = size;
+                if (size == 0) {
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        if (best.size() == 1) {
+            return new ArrayList<>(best.get(0));
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        best.forEach(ids::addAll);
+        return ids;
+    }
+
+    protected static void collectAndedPredicates(Expression expr, List<Expression> predicates) {
+        if (expr instanceof MultiExpression) {
+            if (expr.operator == Operator.AND) {
+                for (Operand operand : ((MultiExpression) expr).values) {
+                    if (operand instanceof Expression) {
+                        collectAndedPredicates((Expression) operand, predicates);
+                    }
+                }
+            }
+        } else if (expr.operator == Operator.AND) {
+            if (expr.lvalue instanceof Expression) {
+                collectAndedPredicates((Expression) expr.lvalue, predicates);
+            }
+            if (expr.rvalue instanceof Expression) {
+                collectAndedPredicates((Expression) expr.rvalue, predicates);
+            }
+        } else {
+            predicates.add(expr);
+        }
+    }
+
+    /**
+     * Gets the sets of ids matching a predicate according to the indexes.
+     * <p>
+     * Only equality or IN on string literals, and STARTSWITH on the path, can use an index.
+     *
+     * @return the sets of ids, or {@code null} if the predicate cannot use an index
+     */
+    protected List<Set<String>> getIndexedIds(Expression expr, PathResolver pathResolver) {
+        if (!(expr.lvalue instanceof Reference)) {
+            return null;
+        }
+        Reference ref = (Reference) expr.lvalue;
+        if (ref.cast != null) {
+            return null;
+        }
+        String name = ref.name;
+        Operator op = expr.operator;
+        if (op == Operator.STARTSWITH) {
+            if (!NXQL.ECM_PATH.equals(name) || !(expr.rvalue instanceof StringLiteral)) {
+                return null;
+            }
+            String path = ((StringLiteral) expr.rvalue).value;
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String ancestorId = pathResolver.getIdForPath(path);
+            if (ancestorId == null) {
+                return Collections.singletonList(Collections.emptySet());
+            }
+            return Collections.singletonList(indexes.get(KEY_ANCESTOR_IDS, ancestorId));
+        }
+        List<String> values = new ArrayList<>();
+        if (op == Operator.EQ && expr.rvalue instanceof StringLiteral) {
+            values.add(((StringLiteral) expr.rvalue).value);
+        } else if (op == Operator.IN && expr.rvalue instanceof LiteralList) {
+            for (Literal literal : (LiteralList) expr.rvalue) {
+                if (!(literal instanceof StringLiteral)) {
+                    return null;
+                }
+                values.add(((StringLiteral) literal).value);
+            }
+        } else {
+            return null;
+        }
+        if (ECM_UUID.equals(name)) {
+            // the primary index
+            Set<String> ids = new HashSet<>(values);
+            ids.retainAll(states.keySet());
+            return Collections.singletonList(ids);
+        }
+        String key;
+        try {
+            key = getIndexKey(name);
+        } catch (QueryParseException | UnsupportedOperationException e) {
+            return null;
+        }
+        if (!indexes.isIndexed(key)) {
+            return null;
+        }
+        List<Set<String>> sets = new ArrayList<>(values.size());
+        for (String value : values) {
+            sets.add(indexes.get(key, value));
+        }
+        return sets;
+    }
+
     /**
      * Applies a {@link StateDiff} in-place onto a base {@link State}.
      * <p>
@@ -531,8 +784,10 @@ public class MemRepository extends DBSRepositoryBase {
             Calendar created = (Calendar) state.get(KEY_LOCK_CREATED);
             return new Lock(owner, created);
         }
+        Map<String, List<Object>> oldIndexedValues = indexes.getIndexedValues(state);
         state.put(KEY_LOCK_OWNER, lock.getOwner());
         state.put(KEY_LOCK_CREATED, lock.getCreated());
+        indexes.update(id, oldIndexedValues, state);
         return null;
     }
 
@@ -555,8 +810,10 @@ public class MemRepository extends DBSRepositoryBase {
             return new Lock(oldOwner, oldCreated, true);
         }
         // remove lock
+        Map<String, List<Object>> oldIndexedValues = indexes.getIndexedValues(state);
         state.put(KEY_LOCK_OWNER, null);
         state.put(KEY_LOCK_CREATED, null);
+        indexes.update(id, oldIndexedValues, state);
         // return old lock
         return new Lock(oldOwner, oldCreated);
     }
@@ -589,10 +846,41 @@ public class MemRepository extends DBSRepositoryBase {
 
     @Override
     public void markReferencedBinaries() {
+        markReferencedBinaries(0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The partitions are based on a hash of the document ids, and have the form {@code i/n}.
+     */
+    @Override
+    public List<String> getBinariesMarkPartitions(int max) {
+        List<String> partitions = new ArrayList<>(max);
+        for (int i = 0; i < max; i++) {
+            partitions.add(i + "/" + max);
+        }
+        return partitions;
+    }
+
+    @Override
+    public void markReferencedBinaries(String partition) {
+        if (partition.isEmpty()) {
+            markReferencedBinaries();
+            return;
+        }
+        String[] parts = partition.split("/");
+        markReferencedBinaries(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    protected void markReferencedBinaries(int partition, int numPartitions) {
         DocumentBlobManager blobManager = Framework.getService(DocumentBlobManager.class);
-        for (State state : states.values()) {
+        for (Entry<String, State> en : states.entrySet()) {
+            if (Math.floorMod(en.getKey().hashCode(), numPartitions) != partition) {
+                continue;
+            }
             for (List<String> path : binaryPaths) {
-                markReferencedBinaries(state, path, 0, blobManager);
+                markReferencedBinaries(en.getValue(), path, 0, blobManager);
             }
         }
     }
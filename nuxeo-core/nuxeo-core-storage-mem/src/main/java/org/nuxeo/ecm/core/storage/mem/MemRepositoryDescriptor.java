@@ -18,6 +18,10 @@
  */
 package org.nuxeo.ecm.core.storage.mem;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryDescriptor;
 
@@ -32,13 +36,29 @@ public class MemRepositoryDescriptor extends DBSRepositoryDescriptor {
     public MemRepositoryDescriptor() {
     }
 
+    /**
+     * Additional properties to index, in addition to the parent id, ancestor ids and primary type which are always
+     * indexed.
+     *
+     * @since 9.2
+     */
+    @XNodeList(value = "indexes/index", type = ArrayList.class, componentType = String.class)
+    public List<String> indexes = new ArrayList<>();
+
     @Override
     public MemRepositoryDescriptor clone() {
-        return (MemRepositoryDescriptor) super.clone();
+        MemRepositoryDescriptor clone = (MemRepositoryDescriptor) super.clone();
+        clone.indexes = new ArrayList<>(indexes);
+        return clone;
     }
 
     public void merge(MemRepositoryDescriptor other) {
         super.merge(other);
+        for (String index : other.indexes) {
+            if (!indexes.contains(index)) {
+                indexes.add(index);
+            }
+        }
     }
 
 }
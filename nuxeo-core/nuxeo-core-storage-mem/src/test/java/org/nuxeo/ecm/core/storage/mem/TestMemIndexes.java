@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+
+public class TestMemIndexes {
+
+    private static final Log log = LogFactory.getLog(TestMemIndexes.class);
+
+    /** The benchmark only runs with -Dnuxeo.test.benchmark=true. */
+    private static final boolean BENCHMARK = Boolean.getBoolean("nuxeo.test.benchmark");
+
+    /** Number of states for the benchmark, use -Dnuxeo.test.mem.benchmark.size=1000000 for a full-size run. */
+    private static final int BENCHMARK_SIZE = Integer.getInteger("nuxeo.test.mem.benchmark.size", 10_000);
+
+    private static MemIndexes newIndexes() {
+        return new MemIndexes(Arrays.asList(KEY_PARENT_ID, KEY_ANCESTOR_IDS, KEY_PRIMARY_TYPE, "dc:subjects"));
+    }
+
+    private static State state(String parentId, String type, Object[] ancestorIds) {
+        State state = new State();
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_PRIMARY_TYPE, type);
+        state.put(KEY_ANCESTOR_IDS, ancestorIds);
+        return state;
+    }
+
+    private static Set<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void testIndexes() {
+        MemIndexes indexes = newIndexes();
+        State s1 = state("root", "Folder", new Object[] { "root" });
+        State s2 = state("id1", "File", new Object[] { "root", "id1" });
+        s2.put("dc:subjects", new String[] { "foo", "bar" });
+        indexes.add("id1", s1);
+        indexes.add("id2", s2);
+
+        assertEquals(set("id1"), indexes.get(KEY_PARENT_ID, "root"));
+        assertEquals(set("id2"), indexes.get(KEY_PARENT_ID, "id1"));
+        assertEquals(set("id1", "id2"), indexes.get(KEY_ANCESTOR_IDS, "root"));
+        assertEquals(set("id2"), indexes.get(KEY_PRIMARY_TYPE, "File"));
+        assertEquals(set("id2"), indexes.get("dc:subjects", "bar"));
+        assertEquals(Collections.emptySet(), indexes.get(KEY_PRIMARY_TYPE, "Note"));
+        assertNull(indexes.get(KEY_NAME, "foo"));
+        assertTrue(indexes.isIndexed("dc:subjects"));
+        assertFalse(indexes.isIndexed(KEY_NAME));
+
+        // move id2 under root and change its subjects
+        Map<String, List<Object>> old = indexes.getIndexedValues(s2);
+        s2.put(KEY_PARENT_ID, "root");
+        s2.put(KEY_ANCESTOR_IDS, new Object[] { "root" });
+        s2.put("dc:subjects", new String[] { "foo", "gee" });
+        indexes.update("id2", old, s2);
+        assertEquals(set("id1", "id2"), indexes.get(KEY_PARENT_ID, "root"));
+        assertEquals(Collections.emptySet(), indexes.get(KEY_PARENT_ID, "id1"));
+        assertEquals(set("id1", "id2"), indexes.get(KEY_ANCESTOR_IDS, "root"));
+        assertEquals(Collections.emptySet(), indexes.get(KEY_ANCESTOR_IDS, "id1"));
+        assertEquals(set("id2"), indexes.get("dc:subjects", "foo"));
+        assertEquals(Collections.emptySet(), indexes.get("dc:subjects", "bar"));
+        assertEquals(set("id2"), indexes.get("dc:subjects", "gee"));
+
+        indexes.remove("id2", s2);
+        assertEquals(set("id1"), indexes.get(KEY_PARENT_ID, "root"));
+        assertEquals(Collections.emptySet(), indexes.get(KEY_PRIMARY_TYPE, "File"));
+        assertEquals(Collections.emptySet(), indexes.get("dc:subjects", "foo"));
+    }
+
+    @Test
+    public void testIndexesBenchmark() {
+        assumeTrue("benchmark not enabled", BENCHMARK);
+        int n = BENCHMARK_SIZE;
+        int folders = n / 100;
+        Map<String, State> states = new HashMap<>(n * 2);
+        MemIndexes indexes = newIndexes();
+        for (int i = 0; i < n; i++) {
+            String id = "id" + i;
+            String parentId = "folder" + (i % folders);
+            State state = state(parentId, i % 3 == 0 ? "Note" : "File", new Object[] { "root", parentId });
+            states.put(id, state);
+            indexes.add(id, state);
+        }
+        String parentId = "folder" + (folders / 2);
+        int rounds = 20;
+
+        long t0 = System.nanoTime();
+        int scanned = 0;
+        for (int r = 0; r < rounds; r++) {
+            scanned = 0;
+            for (State state : states.values()) {
+                if (parentId.equals(state.get(KEY_PARENT_ID))) {
+                    scanned++;
+                }
+            }
+        }
+        long scan = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        int indexed = 0;
+        for (int r = 0; r < rounds; r++) {
+            indexed = 0;
+            for (String id : indexes.get(KEY_PARENT_ID, parentId)) {
+                if (parentId.equals(states.get(id).get(KEY_PARENT_ID))) {
+                    indexed++;
+                }
+            }
+        }
+        long index = System.nanoTime() - t0;
+
+        assertEquals(100, scanned);
+        assertEquals(scanned, indexed);
+        log.info(String.format("Children of one folder among %d states: %.3f ms with full scan, %.3f ms with index", n,
+                scan / 1e6 / rounds, index / 1e6 / rounds));
+    }
+
+}
@@ -27,11 +27,31 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.bson.types.ObjectId;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
@@ -45,6 +65,7 @@ import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
@@ -58,6 +79,9 @@ import com.mongodb.gridfs.GridFSInputFile;
  * <p>
  * This implementation does not use local caching.
  * <p>
+ * Large binaries are read with a read-ahead of several chunks fetched in parallel, see {@link #READ_AHEAD_PROPERTY},
+ * and written by uploading several chunks concurrently, see {@link #WRITE_PARALLELISM_PROPERTY}.
+ * <p>
  * This implementation may not always be ideal regarding streaming because of the usage of {@link Binary} interface that
  * exposes a {@link File}.
  *
@@ -71,8 +95,57 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
 
     public static final String BUCKET_PROPERTY = "bucket";
 
+    /**
+     * The number of chunks fetched in advance when reading a binary, 0 to read chunks one at a time.
+     *
+     * @since 9.2
+     */
+    public static final String READ_AHEAD_PROPERTY = "readAhead";
+
+    /**
+     * The number of chunks uploaded concurrently when writing a binary, 1 to upload chunks one at a time.
+     *
+     * @since 9.2
+     */
+    public static final String WRITE_PARALLELISM_PROPERTY = "writeParallelism";
+
+    /**
+     * The number of binaries read or written concurrently with parallel chunk transfers. Other streams fall back to
+     * sequential chunk transfers while this many are in progress.
+     *
+     * @since 9.2
+     */
+    public static final String MAX_CONCURRENT_STREAMS_PROPERTY = "maxConcurrentStreams";
+
+    /** @since 9.2 */
+    public static final int DEFAULT_READ_AHEAD = 4;
+
+    /** @since 9.2 */
+    public static final int DEFAULT_WRITE_PARALLELISM = 4;
+
+    /** @since 9.2 */
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 8;
+
     protected Map<String, String> properties;
 
+    /** @since 9.2 */
+    protected int readAhead;
+
+    /** @since 9.2 */
+    protected int writeParallelism;
+
+    /** Executor for chunk reads and writes, with enough threads for {@link #streams} concurrent streams. */
+    protected ExecutorService executor;
+
+    /** Permits for the streams using the {@link #executor}. */
+    protected Semaphore streams;
+
+    /** The permits held by read-ahead streams, kept reachable until released. */
+    protected final Set<StreamPermit> streamPermits = ConcurrentHashMap.newKeySet();
+
+    /** The read-ahead streams garbage collected before being fully read or closed. */
+    protected final ReferenceQueue<InputStream> abandonedStreams = new ReferenceQueue<>();
+
     protected MongoClient client;
 
     protected GridFS gridFS;
@@ -100,10 +173,42 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
         }
         gridFS = new GridFS(client.getDB(dbname), bucket);
         garbageCollector = new GridFSBinaryGarbageCollector();
+        readAhead = getIntProperty(READ_AHEAD_PROPERTY, DEFAULT_READ_AHEAD);
+        writeParallelism = getIntProperty(WRITE_PARALLELISM_PROPERTY, DEFAULT_WRITE_PARALLELISM);
+        int threadsPerStream = Math.max(readAhead, writeParallelism);
+        int maxConcurrentStreams = getIntProperty(MAX_CONCURRENT_STREAMS_PROPERTY, DEFAULT_MAX_CONCURRENT_STREAMS);
+        if (threadsPerStream > 1 && maxConcurrentStreams > 0) {
+            // each stream holding a permit has its own share of the threads, so it never waits for another stream
+            streams = new Semaphore(maxConcurrentStreams);
+            int threads = threadsPerStream * maxConcurrentStreams;
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Nuxeo-GridFS-" + blobProviderId + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    protected int getIntProperty(String name, int defaultValue) {
+        String value = properties.get(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new NuxeoException("Invalid " + name + " property in GridFS Binary Manager descriptor: "
+                    + blobProviderId, e);
+        }
     }
 
     @Override
     public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
         if (client != null) {
             client.close();
             client = null;
@@ -119,6 +224,133 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
         return gridFS;
     }
 
+    /**
+     * Gets the collection holding the chunks of the GridFS files.
+     *
+     * @since 9.2
+     */
+    protected DBCollection getChunksCollection() {
+        return gridFS.getDB().getCollection(gridFS.getBucketName() + ".chunks");
+    }
+
+    /**
+     * Tries to get a permit to transfer the chunks of a stream in parallel.
+     *
+     * @return {@code false} if the chunks must be transferred sequentially
+     * @since 9.2
+     */
+    protected boolean acquireStream() {
+        if (executor == null) {
+            return false;
+        }
+        releaseAbandonedStreams();
+        return streams.tryAcquire();
+    }
+
+    /**
+     * Gives back the permits of the read-ahead streams that were dropped without being fully read or closed.
+     *
+     * @since 9.2
+     */
+    protected void releaseAbandonedStreams() {
+        Reference<? extends InputStream> ref;
+        while ((ref = abandonedStreams.poll()) != null) {
+            ((StreamPermit) ref).release();
+        }
+    }
+
+    /** @since 9.2 */
+    protected void releaseStream() {
+        streams.release();
+    }
+
+    /**
+     * Gets a stream on a GridFS file starting at the given chunk, reading the next chunks in parallel if configured
+     * and if not too many streams already do so.
+     *
+     * @since 9.2
+     */
+    protected InputStream getStream(GridFSDBFile dbFile, int firstChunk) throws IOException {
+        int numChunks = dbFile.numChunks();
+        if (readAhead <= 1 || numChunks - firstChunk <= 1 || !acquireStream()) {
+            InputStream in = dbFile.getInputStream();
+            IOUtils.skipFully(in, firstChunk * dbFile.getChunkSize());
+            return in;
+        }
+        Object id = dbFile.getId();
+        DBCollection chunks = getChunksCollection();
+        try {
+            return new StreamReadAheadInputStream(n -> {
+                DBObject chunk = chunks.findOne(new BasicDBObject("files_id", id).append("n", n));
+                if (chunk == null) {
+                    throw new IOException("Missing chunk " + n + " for: " + dbFile.getFilename());
+                }
+                return (byte[]) chunk.get("data");
+            }, numChunks, firstChunk, executor, readAhead);
+        } catch (RuntimeException e) {
+            releaseStream();
+            throw e;
+        }
+    }
+
+    /**
+     * A stream permit held by a read-ahead stream. It is released when the stream is fully read or closed, or after the
+     * stream is garbage collected if it was abandoned before that.
+     *
+     * @since 9.2
+     */
+    protected class StreamPermit extends PhantomReference<InputStream> {
+
+        protected final AtomicBoolean released = new AtomicBoolean();
+
+        protected StreamPermit(InputStream stream) {
+            super(stream, abandonedStreams);
+            streamPermits.add(this);
+        }
+
+        protected void release() {
+            if (released.compareAndSet(false, true)) {
+                streamPermits.remove(this);
+                releaseStream();
+            }
+        }
+    }
+
+    /**
+     * A read-ahead stream holding a stream permit until it is fully read, closed or garbage collected.
+     *
+     * @since 9.2
+     */
+    protected class StreamReadAheadInputStream extends ReadAheadInputStream {
+
+        protected final StreamPermit permit;
+
+        protected StreamReadAheadInputStream(ChunkReader reader, int numChunks, int first, Executor executor,
+                int readAhead) {
+            super(reader, numChunks, first, executor, readAhead);
+            permit = new StreamPermit(this);
+        }
+
+        protected void release() {
+            permit.release();
+        }
+
+        @Override
+        protected boolean nextChunk() throws IOException {
+            boolean more = super.nextChunk();
+            if (!more) {
+                release();
+            }
+            return more;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            release();
+        }
+    }
+
     /**
      * A binary backed by GridFS.
      */
@@ -131,9 +363,28 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
         }
 
         @Override
-        public InputStream getStream() {
+        public InputStream getStream() throws IOException {
+            GridFSDBFile dbFile = gridFS.findOne(digest);
+            return dbFile == null ? null : GridFSBinaryManager.this.getStream(dbFile, 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The stream starts directly at the chunk containing the offset, so the previous chunks are not fetched.
+         *
+         * @since 9.2
+         */
+        @Override
+        public InputStream getStream(long offset, long length) throws IOException {
             GridFSDBFile dbFile = gridFS.findOne(digest);
-            return dbFile == null ? null : dbFile.getInputStream();
+            if (dbFile == null) {
+                return null;
+            }
+            long chunkSize = dbFile.getChunkSize();
+            InputStream in = GridFSBinaryManager.this.getStream(dbFile, (int) (offset / chunkSize));
+            IOUtils.skipFully(in, offset % chunkSize);
+            return getBoundedStream(in, length);
         }
     }
 
@@ -152,8 +403,16 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
         GridFSDBFile dbFile = gridFS.findOne(digest);
         if (dbFile == null) {
             try (InputStream in = new FileInputStream(file)) {
-                GridFSInputFile inputFile = gridFS.createFile(in, digest);
-                inputFile.save();
+                if (writeParallelism > 1 && acquireStream()) {
+                    try {
+                        saveConcurrently(in);
+                    } finally {
+                        releaseStream();
+                    }
+                } else {
+                    GridFSInputFile inputFile = gridFS.createFile(in, digest);
+                    inputFile.save();
+                }
             }
         }
         return new GridFSBinary(digest, blobProviderId);
@@ -161,6 +420,16 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
 
     @Override
     protected Binary getBinary(InputStream in) throws IOException {
+        if (writeParallelism > 1 && acquireStream()) {
+            String digest;
+            try {
+                digest = saveConcurrently(in);
+            } finally {
+                releaseStream();
+                in.close();
+            }
+            return new GridFSBinary(digest, blobProviderId);
+        }
         // save the file to GridFS
         GridFSInputFile inputFile = gridFS.createFile(in, true);
         inputFile.save();
@@ -179,6 +448,89 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
         return new GridFSBinary(digest, blobProviderId);
     }
 
+    /**
+     * Saves a stream to GridFS, uploading up to {@link #writeParallelism} chunks concurrently.
+     * <p>
+     * The chunks are written first, and the file entry is only created at the end when the digest is known, so an
+     * interrupted upload never leaves a visible file. If a file with the same digest already exists, the uploaded
+     * chunks are removed instead.
+     * <p>
+     * The caller must hold a stream permit, see {@link #acquireStream}.
+     *
+     * @return the digest of the stream
+     * @since 9.2
+     */
+    protected String saveConcurrently(InputStream in) throws IOException {
+        ObjectId id = new ObjectId();
+        DBCollection chunks = getChunksCollection();
+        MessageDigest md5 = DigestUtils.getMd5Digest();
+        int chunkSize = GridFS.DEFAULT_CHUNKSIZE;
+        Deque<Future<?>> inflight = new ArrayDeque<>();
+        long length = 0;
+        boolean done = false;
+        try {
+            for (int n = 0;; n++) {
+                byte[] buf = new byte[chunkSize];
+                int len = IOUtils.read(in, buf);
+                if (len == 0) {
+                    break;
+                }
+                md5.update(buf, 0, len);
+                length += len;
+                byte[] data = len == chunkSize ? buf : Arrays.copyOf(buf, len);
+                DBObject chunk = new BasicDBObject("files_id", id).append("n", n).append("data", data);
+                inflight.add(executor.submit(() -> chunks.insert(chunk)));
+                if (inflight.size() >= writeParallelism) {
+                    await(inflight.poll());
+                }
+                if (len < chunkSize) {
+                    break;
+                }
+            }
+            while (!inflight.isEmpty()) {
+                await(inflight.poll());
+            }
+            String digest = toHexString(md5.digest());
+            if (gridFS.findOne(digest) == null) {
+                // same fields as a file saved by GridFSInputFile
+                DBObject file = new BasicDBObject("_id", id);
+                file.put("filename", digest);
+                file.put("length", length);
+                file.put("chunkSize", (long) chunkSize);
+                file.put("uploadDate", new Date());
+                file.put("md5", digest);
+                gridFS.getFilesCollection().insert(file);
+                done = true;
+            }
+            return digest;
+        } finally {
+            if (!done) {
+                // failure or already existing file, remove our chunks once all uploads are finished
+                for (Future<?> future : inflight) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        // ignore, already failing
+                    }
+                }
+                chunks.remove(new BasicDBObject("files_id", id));
+            }
+        }
+    }
+
+    protected static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
     @Override
     public Binary getBinary(String digest) {
         GridFSDBFile dbFile = gridFS.findOne(digest);
@@ -236,8 +588,11 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
             if (dbFile != null) {
                 dbFile.setMetaData(new BasicDBObject(msKey, TRUE));
                 dbFile.save();
-                status.numBinaries += 1;
-                status.sizeBinaries += dbFile.getLength();
+                // marks may be done concurrently
+                synchronized (status) {
+                    status.numBinaries += 1;
+                    status.sizeBinaries += dbFile.getLength();
+                }
             }
         }
 
@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * Iterable query result streamed from a MongoDB cursor.
+ * <p>
+ * The documents are fetched from the server in batches of the cursor batch size. The size is unknown, and it is only
+ * possible to skip forward.
+ *
+ * @since 9.2
+ */
+public class MongoDBQueryResult implements IterableQueryResult, Iterator<Map<String, Serializable>> {
+
+    protected DBCursor cursor;
+
+    /** Computes the projections of a document, there may be several when the projection has wildcards. */
+    protected final Function<DBObject, List<Map<String, Serializable>>> projector;
+
+    protected final Deque<Map<String, Serializable>> projections = new ArrayDeque<>();
+
+    protected long pos;
+
+    public MongoDBQueryResult(DBCursor cursor, Function<DBObject, List<Map<String, Serializable>>> projector) {
+        this.cursor = cursor;
+        this.projector = projector;
+    }
+
+    @Override
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+            projections.clear();
+            pos = -1;
+        }
+    }
+
+    @Override
+    public boolean isLife() {
+        return cursor != null;
+    }
+
+    @Override
+    public boolean mustBeClosed() {
+        return cursor != null;
+    }
+
+    @Override
+    public long size() {
+        return -1;
+    }
+
+    @Override
+    public long pos() {
+        return pos;
+    }
+
+    @Override
+    public void skipTo(long pos) {
+        if (pos < this.pos) {
+            throw new IllegalArgumentException("Cannot skip backward in a streamed result, from " + this.pos
+                    + " to " + pos);
+        }
+        while (this.pos < pos && hasNext()) {
+            projections.removeFirst();
+            this.pos++;
+        }
+    }
+
+    @Override
+    public Iterator<Map<String, Serializable>> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cursor == null) {
+            return false;
+        }
+        while (projections.isEmpty() && cursor.hasNext()) {
+            projections.addAll(projector.apply(cursor.next()));
+        }
+        return !projections.isEmpty();
+    }
+
+    @Override
+    public Map<String, Serializable> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pos++;
+        return projections.removeFirst();
+    }
+
+}
@@ -47,9 +47,13 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -62,6 +66,7 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
 import org.nuxeo.ecm.core.api.CursorService;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.Lock;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.PartialList;
@@ -78,9 +83,12 @@ import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 import org.nuxeo.ecm.core.storage.dbs.DBSStateFlattener;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.api.Framework;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -91,6 +99,7 @@ import com.mongodb.MongoClientURI;
 import com.mongodb.QueryOperators;
 import com.mongodb.ServerAddress;
 import com.mongodb.WriteResult;
+import com.mongodb.util.JSON;
 
 /**
  * MongoDB implementation of a {@link Repository}.
@@ -370,28 +379,7 @@ public class MongoDBRepository extends DBSRepositoryBase {
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
         List<DBObject> updates = converter.diffToBson(diff);
         for (DBObject update : updates) {
-            DBObject query = new BasicDBObject(idKey, id);
-            if (changeTokenUpdater == null) {
-                if (log.isTraceEnabled()) {
-                    log.trace("MongoDB: UPDATE " + id + ": " + update);
-                }
-            } else {
-                // assume bson is identical to dbs internals
-                // condition works even if value is null
-                Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
-                Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
-                if (update.containsField(MONGODB_SET)) {
-                    ((DBObject) update.get(MONGODB_SET)).putAll(tokenUpdates);
-                } else {
-                    DBObject set = new BasicDBObject();
-                    set.putAll(tokenUpdates);
-                    update.put(MONGODB_SET, set);
-                }
-                if (log.isTraceEnabled()) {
-                    log.trace("MongoDB: UPDATE " + id + ": IF " + conditions + " THEN " + update);
-                }
-                query.putAll(conditions);
-            }
+            DBObject query = getUpdateQuery(id, update, changeTokenUpdater);
             WriteResult w = coll.update(query, update);
             if (w.getN() != 1) {
                 log.trace("MongoDB:    -> CONCURRENT UPDATE: " + id);
@@ -402,6 +390,120 @@ public class MongoDBRepository extends DBSRepositoryBase {
         }
     }
 
+    /**
+     * Gets the query matching the document to update, adding the change token condition to it and the change token
+     * update to the update if needed.
+     *
+     * @return the query
+     * @since 9.2
+     */
+    protected DBObject getUpdateQuery(String id, DBObject update, ChangeTokenUpdater changeTokenUpdater) {
+        DBObject query = new BasicDBObject(idKey, id);
+        if (changeTokenUpdater == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("MongoDB: UPDATE " + id + ": " + update);
+            }
+        } else {
+            // assume bson is identical to dbs internals
+            // condition works even if value is null
+            Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+            Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+            if (update.containsField(MONGODB_SET)) {
+                ((DBObject) update.get(MONGODB_SET)).putAll(tokenUpdates);
+            } else {
+                DBObject set = new BasicDBObject();
+                set.putAll(tokenUpdates);
+                update.put(MONGODB_SET, set);
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("MongoDB: UPDATE " + id + ": IF " + conditions + " THEN " + update);
+            }
+            query.putAll(conditions);
+        }
+        return query;
+    }
+
+    /**
+     * Updates the documents using unordered bulk writes.
+     * <p>
+     * A single document diff may translate to several MongoDB updates that must be applied in sequence, so the updates
+     * are sent in successive rounds, the n-th round containing the n-th update of each document. Usually there is only
+     * one round.
+     */
+    @Override
+    public void updateStates(List<StateUpdate> stateUpdates) {
+        if (stateUpdates.size() == 1) {
+            StateUpdate stateUpdate = stateUpdates.get(0);
+            updateState(stateUpdate.id, stateUpdate.diff, stateUpdate.changeTokenUpdater);
+            return;
+        }
+        List<List<DBObject>> allUpdates = new ArrayList<>(stateUpdates.size());
+        int rounds = 0;
+        for (StateUpdate stateUpdate : stateUpdates) {
+            List<DBObject> updates = converter.diffToBson(stateUpdate.diff);
+            allUpdates.add(updates);
+            rounds = Math.max(rounds, updates.size());
+        }
+        for (int round = 0; round < rounds; round++) {
+            BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+            // expected values of the change tokens after the update, to find the failed documents
+            Map<String, Map<String, Serializable>> expected = new LinkedHashMap<>();
+            for (int i = 0; i < stateUpdates.size(); i++) {
+                List<DBObject> updates = allUpdates.get(i);
+                if (round >= updates.size()) {
+                    continue;
+                }
+                StateUpdate stateUpdate = stateUpdates.get(i);
+                DBObject update = updates.get(round);
+                DBObject query = getUpdateQuery(stateUpdate.id, update, stateUpdate.changeTokenUpdater);
+                bulk.find(query).updateOne(update);
+                Map<String, Serializable> tokens;
+                if (stateUpdate.changeTokenUpdater == null) {
+                    tokens = Collections.emptyMap();
+                } else {
+                    // the updater now returns the new token as condition
+                    tokens = stateUpdate.changeTokenUpdater.getConditions();
+                }
+                expected.put(stateUpdate.id, tokens);
+            }
+            BulkWriteResult result = bulk.execute();
+            if (result.getMatchedCount() != expected.size()) {
+                String id = findConcurrentUpdate(expected);
+                log.trace("MongoDB:    -> CONCURRENT UPDATE: " + id);
+                throw new ConcurrentUpdateException(id);
+            }
+        }
+    }
+
+    /**
+     * Finds which document of a bulk update was not updated, either because it's missing or because its change token
+     * doesn't have the expected value.
+     *
+     * @param expected the expected change tokens after update, keyed by document id
+     * @return the id of a document that was not updated
+     */
+    protected String findConcurrentUpdate(Map<String, Map<String, Serializable>> expected) {
+        Set<String> failed = new LinkedHashSet<>(expected.keySet());
+        DBObject query = new BasicDBObject(idKey, new BasicDBObject(QueryOperators.IN, expected.keySet()));
+        DBObject fields = new BasicDBObject(idKey, ONE);
+        expected.values().forEach(tokens -> tokens.keySet().forEach(key -> fields.put(key, ONE)));
+        try (DBCursor cursor = coll.find(query, fields)) {
+            for (DBObject ob : cursor) {
+                String id = (String) ob.get(idKey);
+                Map<String, Serializable> tokens = expected.get(id);
+                if (tokens != null && tokens.entrySet().stream().allMatch(
+                        es -> Objects.equals(es.getValue(), ob.get(es.getKey())))) {
+                    failed.remove(id);
+                }
+            }
+        }
+        if (failed.isEmpty()) {
+            // updated concurrently after our own update, we can't tell which one failed
+            return StringUtils.join(expected.keySet(), ", ");
+        }
+        return failed.iterator().next();
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         DBObject query = new BasicDBObject(idKey, new BasicDBObject(QueryOperators.IN, ids));
@@ -549,48 +651,79 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return new BasicDBObject(MONGODB_ID, ONE);
     }
 
-    @Override
-    public PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator,
-            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int countUpTo) {
-        // orderByClause may be null and different from evaluator.getOrderByClause() in case we want to post-filter
-        MongoDBQueryBuilder builder = new MongoDBQueryBuilder(this, evaluator.getExpression(),
-                evaluator.getSelectClause(), orderByClause, evaluator.pathResolver, evaluator.fulltextSearchDisabled);
-        builder.walk();
-        if (builder.hasFulltext && isFulltextDisabled()) {
-            throw new QueryParseException("Fulltext search disabled by configuration");
+    /**
+     * A query with projection, as used by {@link #queryAndFetch} and {@link #queryAndFetchStream}.
+     */
+    protected class ProjectionQuery {
+
+        protected final DBSExpressionEvaluator evaluator;
+
+        protected final DBObject query;
+
+        protected final DBObject keys;
+
+        protected final DBObject orderBy;
+
+        protected final boolean manualProjection;
+
+        protected ProjectionQuery(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
+                boolean distinctDocuments) {
+            this.evaluator = evaluator;
+            // orderByClause may be null and different from evaluator.getOrderByClause() in case we want to post-filter
+            MongoDBQueryBuilder builder = new MongoDBQueryBuilder(MongoDBRepository.this, evaluator.getExpression(),
+                    evaluator.getSelectClause(), orderByClause, evaluator.pathResolver,
+                    evaluator.fulltextSearchDisabled);
+            builder.walk();
+            if (builder.hasFulltext && isFulltextDisabled()) {
+                throw new QueryParseException("Fulltext search disabled by configuration");
+            }
+            query = builder.getQuery();
+            addPrincipals(query, evaluator.principals);
+            orderBy = builder.getOrderBy();
+            // Don't do manual projection if there are no projection wildcards, as this brings no new
+            // information and is costly. The only difference is several identical rows instead of one.
+            manualProjection = !distinctDocuments && builder.hasProjectionWildcard();
+            if (manualProjection) {
+                // we'll do post-treatment to re-evaluate the query to get proper wildcard projections
+                // so we need the full state from the database
+                keys = new BasicDBObject();
+                evaluator.parse();
+            } else {
+                keys = builder.getProjection();
+            }
         }
-        DBObject query = builder.getQuery();
-        addPrincipals(query, evaluator.principals);
-        DBObject orderBy = builder.getOrderBy();
-        DBObject keys = builder.getProjection();
-        // Don't do manual projection if there are no projection wildcards, as this brings no new
-        // information and is costly. The only difference is several identical rows instead of one.
-        boolean manualProjection = !distinctDocuments && builder.hasProjectionWildcard();
-        if (manualProjection) {
-            // we'll do post-treatment to re-evaluate the query to get proper wildcard projections
-            // so we need the full state from the database
-            keys = new BasicDBObject();
-            evaluator.parse();
+
+        protected DBCursor find(int limit, int offset) {
+            if (log.isTraceEnabled()) {
+                logQuery(query, keys, orderBy, limit, offset);
+            }
+            DBCursor cursor = coll.find(query, keys).skip(offset).limit(limit);
+            if (orderBy != null) {
+                cursor.sort(orderBy);
+            }
+            return cursor;
         }
 
-        if (log.isTraceEnabled()) {
-            logQuery(query, keys, orderBy, limit, offset);
+        protected List<Map<String, Serializable>> project(DBObject ob) {
+            State state = converter.bsonToState(ob);
+            if (manualProjection) {
+                return evaluator.matches(state);
+            } else {
+                return Collections.singletonList(DBSStateFlattener.flatten(state));
+            }
         }
+    }
 
+    @Override
+    public PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int countUpTo) {
+        ProjectionQuery projectionQuery = new ProjectionQuery(evaluator, orderByClause, distinctDocuments);
         List<Map<String, Serializable>> projections;
         long totalSize;
-        try (DBCursor cursor = coll.find(query, keys).skip(offset).limit(limit)) {
-            if (orderBy != null) {
-                cursor.sort(orderBy);
-            }
+        try (DBCursor cursor = projectionQuery.find(limit, offset)) {
             projections = new ArrayList<>();
             for (DBObject ob : cursor) {
-                State state = converter.bsonToState(ob);
-                if (manualProjection) {
-                    projections.addAll(evaluator.matches(state));
-                } else {
-                    projections.add(DBSStateFlattener.flatten(state));
-                }
+                projections.addAll(projectionQuery.project(ob));
             }
             if (countUpTo == -1) {
                 // count full size
@@ -620,6 +753,14 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public IterableQueryResult queryAndFetchStream(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
+            boolean distinctDocuments, int fetchSize) {
+        ProjectionQuery projectionQuery = new ProjectionQuery(evaluator, orderByClause, distinctDocuments);
+        DBCursor cursor = projectionQuery.find(0, 0).batchSize(fetchSize);
+        return new MongoDBQueryResult(cursor, projectionQuery::project);
+    }
+
     @Override
     public ScrollResult scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         cursorService.checkForTimedOutScroll();
@@ -675,12 +816,74 @@ public class MongoDBRepository extends DBSRepositoryBase {
 
     @Override
     public void markReferencedBinaries() {
+        markReferencedBinariesMatching(new BasicDBObject());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The partitions are ranges of ids of roughly equal sizes, found by sampling the id index.
+     */
+    @Override
+    public List<String> getBinariesMarkPartitions(int max) {
+        long count = coll.count();
+        int n = (int) Math.max(1, Math.min(max, count));
+        DBObject projection = new BasicDBObject(idKey, ONE);
+        DBObject sort = new BasicDBObject(idKey, ONE);
+        List<Object> bounds = new ArrayList<>();
+        for (int i = 1; i < n; i++) {
+            try (DBCursor cursor = coll.find(new BasicDBObject(), projection)
+                                       .sort(sort)
+                                       .skip((int) (count * i / n))
+                                       .limit(1)) {
+                if (cursor.hasNext()) {
+                    Object id = cursor.next().get(idKey);
+                    if (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(id)) {
+                        bounds.add(id);
+                    }
+                }
+            }
+        }
+        List<String> partitions = new ArrayList<>(bounds.size() + 1);
+        Object lower = null;
+        for (Object upper : bounds) {
+            partitions.add(getIdRange(lower, upper));
+            lower = upper;
+        }
+        partitions.add(getIdRange(lower, null));
+        return partitions;
+    }
+
+    protected static String getIdRange(Object lower, Object upper) {
+        DBObject range = new BasicDBObject();
+        if (lower != null) {
+            range.put(QueryOperators.GTE, lower);
+        }
+        if (upper != null) {
+            range.put(QueryOperators.LT, upper);
+        }
+        return JSON.serialize(range);
+    }
+
+    @Override
+    public void markReferencedBinaries(String partition) {
+        DBObject query = new BasicDBObject();
+        if (StringUtils.isNotEmpty(partition)) {
+            DBObject range = (DBObject) JSON.parse(partition);
+            if (!range.keySet().isEmpty()) {
+                query.put(idKey, range);
+            }
+        }
+        markReferencedBinariesMatching(query);
+    }
+
+    protected void markReferencedBinariesMatching(DBObject query) {
         DocumentBlobManager blobManager = Framework.getService(DocumentBlobManager.class);
         // TODO add a query to not scan all documents
         if (log.isTraceEnabled()) {
-            logQuery(new BasicDBObject(), binaryKeys);
+            logQuery(query, binaryKeys);
         }
-        try (DBCursor cursor = coll.find(new BasicDBObject(), binaryKeys)) {
+        try (DBCursor cursor = coll.find(query, binaryKeys)) {
             for (DBObject ob : cursor) {
                 markReferencedBinaries(ob, blobManager);
             }
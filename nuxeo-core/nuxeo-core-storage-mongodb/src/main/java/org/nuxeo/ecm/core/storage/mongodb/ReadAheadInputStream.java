@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream over a sequence of chunks that fetches the next chunks in the background while the current one is
+ * being read.
+ * <p>
+ * At most {@code readAhead} chunks are being fetched or waiting to be read at any time, in addition to the chunk
+ * currently being read, which bounds the memory and the fetching threads used per stream.
+ *
+ * @since 9.2
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Reads a chunk given its index.
+     */
+    @FunctionalInterface
+    public interface ChunkReader {
+
+        byte[] read(int n) throws IOException;
+    }
+
+    protected final ChunkReader reader;
+
+    protected final int numChunks;
+
+    protected final Executor executor;
+
+    protected final int readAhead;
+
+    /** The chunks being fetched, in order. */
+    protected final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /** The next chunk to schedule. */
+    protected int next;
+
+    protected byte[] chunk;
+
+    protected int pos;
+
+    protected boolean closed;
+
+    /**
+     * Constructs a stream over the chunks, starting at chunk {@code first}.
+     *
+     * @param reader the chunk reader
+     * @param numChunks the total number of chunks
+     * @param first the index of the first chunk to read
+     * @param executor the executor used to fetch the chunks
+     * @param readAhead the maximum number of chunks fetched in advance
+     */
+    public ReadAheadInputStream(ChunkReader reader, int numChunks, int first, Executor executor, int readAhead) {
+        this.reader = reader;
+        this.numChunks = numChunks;
+        this.executor = executor;
+        this.readAhead = Math.max(1, readAhead);
+        next = first;
+        fill();
+    }
+
+    /**
+     * Schedules fetches until the read-ahead window is full or all the chunks are scheduled.
+     */
+    protected void fill() {
+        while (pending.size() < readAhead && next < numChunks) {
+            int n = next++;
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.read(n);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+    }
+
+    /**
+     * Makes sure there is data available in the current chunk.
+     *
+     * @return {@code false} if there is no more data
+     */
+    protected boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (chunk == null || pos == chunk.length) {
+            Future<byte[]> future = pending.poll();
+            if (future == null) {
+                return false;
+            }
+            try {
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IOException(cause);
+            }
+            pos = 0;
+            // the fetched chunk left the window, schedule the next one
+            fill();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return chunk[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk == null ? 0 : chunk.length - pos;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        chunk = null;
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+}
@@ -19,11 +19,13 @@
  */
 package org.nuxeo.ecm.core.storage.mongodb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
@@ -31,6 +33,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
@@ -220,6 +223,75 @@ public class TestGridFSBinaryManager {
         assertEquals(Collections.singleton(CONTENT_MD5), listObjects());
     }
 
+    @Test
+    public void testStoreAndReadLargeBinary() throws Exception {
+        GridFSBinaryManager binaryManager = getBinaryManager();
+
+        // several chunks, uploaded concurrently
+        byte[] bytes = new byte[2 * 1024 * 1024 + 123];
+        new Random(1234).nextBytes(bytes);
+        Binary binary = binaryManager.getBinary(Blobs.createBlob(bytes));
+        assertEquals(1, listObjects().size());
+        // again from a file blob, still only one entry
+        binaryManager.getBinary(Blobs.createBlob(new ByteArrayInputStream(bytes)));
+        assertEquals(1, listObjects().size());
+
+        // read with read-ahead
+        binary = binaryManager.getBinary(binary.getDigest());
+        try (InputStream in = binary.getStream()) {
+            assertArrayEquals(bytes, IOUtils.toByteArray(in));
+        }
+        int offset = 1024 * 1024 + 17;
+        int length = 300 * 1024;
+        try (InputStream in = binary.getStream(offset, length)) {
+            byte[] expected = new byte[length];
+            System.arraycopy(bytes, offset, expected, 0, length);
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testStoreAndReadLargeBinaryWhenStreamsSaturated() throws Exception {
+        GridFSBinaryManager binaryManager = getBinaryManager();
+        byte[] bytes = new byte[2 * 1024 * 1024 + 123];
+        new Random(1234).nextBytes(bytes);
+        Binary binary = binaryManager.getBinary(Blobs.createBlob(bytes));
+
+        // one stream in progress keeps its permit until fully read or closed
+        int permits = binaryManager.streams.availablePermits();
+        try (InputStream in = binary.getStream()) {
+            in.read();
+            assertEquals(permits - 1, binaryManager.streams.availablePermits());
+        }
+        assertEquals(permits, binaryManager.streams.availablePermits());
+
+        // an abandoned stream gives back its permit once garbage collected
+        binary.getStream().read();
+        assertEquals(permits - 1, binaryManager.streams.availablePermits());
+        for (int i = 0; i < 50 && binaryManager.streams.availablePermits() < permits; i++) {
+            System.gc();
+            Thread.sleep(100);
+            binaryManager.releaseAbandonedStreams();
+        }
+        assertEquals(permits, binaryManager.streams.availablePermits());
+
+        // all permits taken, streams fall back to sequential transfers
+        binaryManager.streams.acquire(permits);
+        try {
+            byte[] bytes2 = Arrays.copyOf(bytes, bytes.length + 1);
+            Binary binary2 = binaryManager.getBinary(Blobs.createBlob(bytes2));
+            assertEquals(2, listObjects().size());
+            try (InputStream in = binary2.getStream()) {
+                assertArrayEquals(bytes2, IOUtils.toByteArray(in));
+            }
+            try (InputStream in = binary.getStream()) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+        } finally {
+            binaryManager.streams.release(permits);
+        }
+    }
+
     protected static String toString(InputStream stream) throws IOException {
         return IOUtils.toString(stream, "UTF-8");
     }
@@ -0,0 +1,181 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.mongodb.ReadAheadInputStream.ChunkReader;
+
+public class TestReadAheadInputStream {
+
+    private static final Log log = LogFactory.getLog(TestReadAheadInputStream.class);
+
+    protected static final int CHUNK_SIZE = 1000;
+
+    protected ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    protected static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(1234).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Stands in for the GridFS chunks collection, with a fixed latency per chunk fetch.
+     */
+    protected static class FakeChunks implements ChunkReader {
+
+        protected final byte[] bytes;
+
+        protected final long latency;
+
+        protected final AtomicInteger reads = new AtomicInteger();
+
+        protected final AtomicInteger inFlight = new AtomicInteger();
+
+        protected final AtomicInteger maxInFlight = new AtomicInteger();
+
+        protected FakeChunks(byte[] bytes, long latency) {
+            this.bytes = bytes;
+            this.latency = latency;
+        }
+
+        protected int numChunks() {
+            return (bytes.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        @Override
+        public byte[] read(int n) throws IOException {
+            reads.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            int start = n * CHUNK_SIZE;
+            return Arrays.copyOfRange(bytes, start, Math.min(start + CHUNK_SIZE, bytes.length));
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        byte[] bytes = randomBytes(10 * CHUNK_SIZE + 123);
+        FakeChunks chunks = new FakeChunks(bytes, 0);
+        for (int readAhead : new int[] { 1, 3, 20 }) {
+            try (InputStream in = new ReadAheadInputStream(chunks, chunks.numChunks(), 0, executor, readAhead)) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+        }
+
+        // start at a chunk
+        try (InputStream in = new ReadAheadInputStream(chunks, chunks.numChunks(), 3, executor, 4)) {
+            assertArrayEquals(Arrays.copyOfRange(bytes, 3 * CHUNK_SIZE, bytes.length), IOUtils.toByteArray(in));
+        }
+
+        // empty
+        try (InputStream in = new ReadAheadInputStream(chunks, 0, 0, executor, 4)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws Exception {
+        byte[] bytes = randomBytes(100 * CHUNK_SIZE);
+        FakeChunks chunks = new FakeChunks(bytes, 0);
+        try (InputStream in = new ReadAheadInputStream(chunks, chunks.numChunks(), 0, executor, 4)) {
+            in.read();
+            Thread.sleep(100);
+            // the current chunk and the read-ahead window
+            assertTrue(String.valueOf(chunks.reads.get()), chunks.reads.get() <= 5);
+        }
+
+        // never more fetches in progress than the read-ahead window
+        chunks = new FakeChunks(bytes, 5);
+        try (InputStream in = new ReadAheadInputStream(chunks, chunks.numChunks(), 0, executor, 4)) {
+            assertArrayEquals(bytes, IOUtils.toByteArray(in));
+        }
+        assertTrue(String.valueOf(chunks.maxInFlight.get()), chunks.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testReadAheadError() throws Exception {
+        ChunkReader reader = n -> {
+            if (n == 2) {
+                throw new IOException("boom");
+            }
+            return new byte[CHUNK_SIZE];
+        };
+        try (InputStream in = new ReadAheadInputStream(reader, 5, 0, executor, 4)) {
+            IOUtils.toByteArray(in);
+            fail("should have failed");
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReadAheadThroughput() throws Exception {
+        // number of chunks of the benchmarked binary, can be increased for actual measurements
+        int numChunks = Integer.getInteger("nuxeo.test.gridfs.benchmark.chunks", 50);
+        byte[] bytes = randomBytes(numChunks * CHUNK_SIZE);
+        FakeChunks chunks = new FakeChunks(bytes, 5); // 5ms per round-trip
+        for (int readAhead : new int[] { 1, 4, 8 }) {
+            long t0 = System.nanoTime();
+            try (InputStream in = new ReadAheadInputStream(chunks, numChunks, 0, executor, readAhead)) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(in));
+            }
+            long t1 = System.nanoTime();
+            log.info(String.format("Read-ahead %d, %d chunks: %.1f ms", readAhead, numChunks, (t1 - t0) / 1e6));
+        }
+    }
+
+}
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -87,13 +88,20 @@ import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
 import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapper;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapperConnector;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryMaker;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.test.runner.ConditionalIgnoreRule;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.nuxeo.runtime.transaction.TransactionRuntimeException;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 public class TestSQLBackend extends SQLBackendTestCase {
 
     private static final Log log = LogFactory.getLog(TestSQLBackend.class);
@@ -870,6 +878,163 @@ public class TestSQLBackend extends SQLBackendTestCase {
         session.close();
     }
 
+    @Test
+    public void testUpdateReadAclsIncremental() throws Exception {
+        if (!(DatabaseHelper.DATABASE instanceof DatabasePostgreSQL)) {
+            return;
+        }
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node folder = session.addChildNode(root, "folder", null, "TestDoc", false);
+        for (int i = 0; i < 5; i++) {
+            Node child = session.addChildNode(folder, "child" + i, null, "TestDoc", false);
+            session.addChildNode(child, "sub", null, "TestDoc", false);
+        }
+        session.save();
+        session.updateReadAcls();
+
+        folder.getCollectionProperty(Model.ACL_PROP).setValue(
+                new ACLRow[] { new ACLRow(0, "test", true, "Read", "bob", null) });
+        session.save();
+        Mapper mapper = ((SessionImpl) session).getMapper();
+        int pending = mapper.prepareReadAclsUpdate();
+        assertEquals(5, pending);
+
+        // queued descendants keep their previous read acl until updated
+        QueryFilter qf = new QueryFilter(null, new String[] { "bob" }, new String[] { "Read" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        PartialList<Serializable> res = session.query("SELECT * FROM TestDoc", qf, false);
+        assertEquals(1, res.list.size());
+
+        int chunks = 0;
+        int processed = 0;
+        while (pending > 0) {
+            Mapper.ReadAclsChunk chunk = mapper.updateReadAclsChunk(2);
+            processed += chunk.processed;
+            pending = chunk.pending;
+            chunks++;
+        }
+        // 5 children queuing 5 grandchildren, by chunks of 2
+        assertEquals(5, chunks);
+        assertEquals(10, processed);
+
+        res = session.query("SELECT * FROM TestDoc", qf, false);
+        assertEquals(11, res.list.size());
+
+        // an ACL change not affecting read acls: the grandchildren are not computed
+        folder.getCollectionProperty(Model.ACL_PROP).setValue(new ACLRow[] {
+                new ACLRow(0, "test", true, "Read", "bob", null), new ACLRow(1, "test", true, "Write", "bob", null) });
+        session.save();
+        assertEquals(5, mapper.prepareReadAclsUpdate());
+        Mapper.ReadAclsChunk chunk = mapper.updateReadAclsChunk(5);
+        assertEquals(5, chunk.processed);
+        assertEquals(0, chunk.pending);
+        res = session.query("SELECT * FROM TestDoc", qf, false);
+        assertEquals(11, res.list.size());
+        session.close();
+    }
+
+    @Test
+    public void testQueryPlannerAncestorsProbe() throws Exception {
+        if (!(DatabaseHelper.DATABASE instanceof DatabasePostgreSQL)) {
+            return;
+        }
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node folder = session.addChildNode(root, "folder", null, "TestDoc", false);
+        for (int i = 0; i < 20; i++) {
+            session.addChildNode(folder, "doc" + i, null, "TestDoc", false);
+        }
+        for (int i = 0; i < 2; i++) {
+            session.addChildNode(folder, "rare" + i, null, "TestDoc2", false);
+        }
+        session.save();
+        String rareQuery = "SELECT * FROM TestDoc2 WHERE ecm:ancestorId = '" + folder.getId() + "'";
+        String commonQuery = "SELECT * FROM TestDoc WHERE ecm:ancestorId = '" + folder.getId() + "'";
+
+        Framework.getProperties().setProperty(NXQLQueryMaker.PLANNER_ENABLED_PROP, "true");
+        Framework.getProperties().setProperty(NXQLQueryMaker.PLANNER_PROBE_THRESHOLD_PROP, "5");
+        try {
+            JDBCMapper mapper = (JDBCMapper) JDBCMapperConnector.unwrap(
+                    ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper);
+            List<String> rarePlan;
+            List<String> commonPlan;
+            mapper.connect(false);
+            try {
+                // the row counts per type are estimated from the planner statistics
+                try (Statement st = mapper.connection.createStatement()) {
+                    st.execute("ANALYZE hierarchy");
+                }
+                rarePlan = mapper.explainQuery(rareQuery, "NXQL", QueryFilter.EMPTY);
+                commonPlan = mapper.explainQuery(commonQuery, "NXQL", QueryFilter.EMPTY);
+            } finally {
+                mapper.disconnect();
+            }
+            // few candidate rows, the ancestors of each one are probed
+            assertTrue(rarePlan.toString(), rarePlan.toString().contains("SubPlan"));
+            // many candidate rows, the descendants are joined
+            assertFalse(commonPlan.toString(), commonPlan.toString().contains("SubPlan"));
+
+            // same results with both plans
+            assertEquals(2, session.query(rareQuery, QueryFilter.EMPTY, false).list.size());
+            assertEquals(20, session.query(commonQuery, QueryFilter.EMPTY, false).list.size());
+        } finally {
+            Framework.getProperties().remove(NXQLQueryMaker.PLANNER_ENABLED_PROP);
+            Framework.getProperties().remove(NXQLQueryMaker.PLANNER_PROBE_THRESHOLD_PROP);
+        }
+        session.close();
+    }
+
+    @Test
+    public void testStatementCacheBenchmark() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        List<RowId> rowIds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Node node = session.addChildNode(root, "doc" + i, null, "TestDoc", false);
+            rowIds.add(new RowId(Model.HIER_TABLE_NAME, node.getId()));
+        }
+        session.save();
+        session.close();
+
+        Counter hits = SharedMetricRegistries.getOrCreate(MetricsService.class.getName()).counter(
+                MetricRegistry.name("nuxeo", "repositories", repository.getName(), "statements", "cache-hits"));
+        long hits0 = hits.getCount();
+        double without = readRowsThroughput(0, rowIds);
+        assertEquals(hits0, hits.getCount());
+        double with = readRowsThroughput(100, rowIds);
+        assertTrue(hits.getCount() > hits0);
+        log.info(String.format("Statement cache: %.0f reads/s without, %.0f reads/s with", without, with));
+    }
+
+    protected double readRowsThroughput(int statementCacheSize, List<RowId> rowIds) throws Exception {
+        Framework.getProperties().setProperty(JDBCConnection.STATEMENT_CACHE_SIZE_PROP,
+                String.valueOf(statementCacheSize));
+        try {
+            Session session = repository.getConnection();
+            JDBCMapper mapper = (JDBCMapper) JDBCMapperConnector.unwrap(
+                    ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper);
+            int reads = 0;
+            long t0 = System.nanoTime();
+            mapper.connect(false);
+            try {
+                for (int n = 0; n < 20; n++) {
+                    for (RowId rowId : rowIds) {
+                        assertNotNull(mapper.readSimpleRow(rowId));
+                        reads++;
+                    }
+                }
+            } finally {
+                mapper.disconnect();
+            }
+            long t1 = System.nanoTime();
+            session.close();
+            return reads * 1000000000.0 / (t1 - t0);
+        } finally {
+            Framework.getProperties().remove(JDBCConnection.STATEMENT_CACHE_SIZE_PROP);
+        }
+    }
+
     @Test
     public void testUpdateReadAclsDeadlock() throws Exception {
         repository.getConnection().close(); // create repo
@@ -2797,6 +2962,48 @@ public class TestSQLBackend extends SQLBackendTestCase {
         }
     }
 
+    @Test
+    public void testBulkFetchRoundTrips() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        List<Serializable> ids = new ArrayList<>();
+        int size = 200; // a page of documents
+        for (int i = 0; i < size; i++) {
+            Node node = session.addChildNode(root, "n" + i, null, "TestDoc", false);
+            node.setSimpleProperty("tst:title", "title" + i);
+            node.setCollectionProperty("tst:subjects", new String[] { "a" + i, "b" + i });
+            ids.add(node.getId());
+        }
+        session.save();
+        session.close();
+        session = repository.getConnection();
+
+        // make sure nothing is cached
+        ((SessionImpl) session).context.pristine.clear();
+        ((SessionImpl) session).getMapper().clearCache();
+        JDBCConnection jdbc = (JDBCConnection) JDBCMapperConnector.unwrap(
+                ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper);
+        jdbc.countExecutes = true;
+        jdbc.executeCount = 0;
+
+        long t0 = System.nanoTime();
+        List<Node> nodes = session.getNodesByIds(ids);
+        long t1 = System.nanoTime();
+        int roundTrips = jdbc.executeCount;
+        log.info(String.format("Fetched %d documents in %d round-trips (%.1f ms)", size, roundTrips,
+                (t1 - t0) / 1000000.0));
+        assertEquals(size, nodes.size());
+        assertEquals("title0", nodes.get(0).getSimpleProperty("tst:title").getString());
+        assertEquals(Arrays.asList("a0", "b0"),
+                Arrays.asList(nodes.get(0).getCollectionProperty("tst:subjects").getStrings()));
+        if (DatabaseHelper.DATABASE instanceof DatabasePostgreSQL
+                || DatabaseHelper.DATABASE instanceof DatabaseSQLServer) {
+            // hierarchy fragments, parent for the paths, then all the prefetched fragments at once
+            assertTrue(String.valueOf(roundTrips), roundTrips <= 3);
+        }
+        session.close();
+    }
+
     private Serializable generateMissingId(Node root, int i) {
         if (root.getId() instanceof String) {
             if (Dialect.DEBUG_UUIDS) {
@@ -18,11 +18,18 @@
  */
 package org.nuxeo.ecm.core.storage.sql;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
+import java.util.List;
+
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapper;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapperConnector;
 
 /**
  * All the tests of TestSQLBackend with storage of collections as array columns activated.
@@ -56,6 +63,42 @@ public class TestSQLBackendArrayColumns extends TestSQLBackend {
         super.testParallelArrayUpdate();
     }
 
+    @Test
+    public void testQueryArrayColumnContains() throws Exception {
+        if (!(DatabaseHelper.DATABASE instanceof DatabasePostgreSQL)) {
+            return;
+        }
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node1 = session.addChildNode(root, "foo", null, "TestDoc", false);
+        node1.setCollectionProperty("tst:subjects", new String[] { "a", "b" });
+        Node node2 = session.addChildNode(root, "bar", null, "TestDoc", false);
+        node2.setCollectionProperty("tst:subjects", new String[] { "b", "c" });
+        session.save();
+
+        String query = "SELECT * FROM TestDoc WHERE tst:subjects = 'a'";
+        JDBCMapper mapper = (JDBCMapper) JDBCMapperConnector.unwrap(
+                ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper);
+        List<String> plan;
+        mapper.connect(false);
+        try {
+            plan = mapper.explainQuery(query, "NXQL", QueryFilter.EMPTY);
+        } finally {
+            mapper.disconnect();
+        }
+        // containment operator, usable by the GIN index
+        assertTrue(plan.toString(), plan.toString().contains("@>"));
+
+        assertEquals(1, session.query(query, QueryFilter.EMPTY, false).list.size());
+        assertEquals(2, session.query("SELECT * FROM TestDoc WHERE tst:subjects = 'b'", QueryFilter.EMPTY,
+                false).list.size());
+        assertEquals(2, session.query("SELECT * FROM TestDoc WHERE tst:subjects IN ('a', 'c')", QueryFilter.EMPTY,
+                false).list.size());
+        assertEquals(1, session.query("SELECT * FROM TestDoc WHERE tst:subjects <> 'a'", QueryFilter.EMPTY,
+                false).list.size());
+        session.close();
+    }
+
     // TODO add to TestSQLBackend these tests that exercise arrays:
     // TestSQLRepositoryQuery.testQueryMultiple
     // TestSQLRepositoryQuery.testQueryNegativeMultiple
@@ -205,6 +205,52 @@ public interface Mapper extends RowMapper, XAResource {
 
     void rebuildReadAcls();
 
+    /**
+     * Updates the read acls of the new documents and of the documents whose ACL changed, and queues their descendants
+     * for a later update through {@link #updateReadAclsChunk}.
+     * <p>
+     * Until they are updated, the queued documents keep their previous read acls.
+     *
+     * @return the number of documents queued for a read acls update
+     * @since 9.2
+     */
+    int prepareReadAclsUpdate();
+
+    /**
+     * Result of {@link #updateReadAclsChunk}.
+     *
+     * @since 9.2
+     */
+    final class ReadAclsChunk {
+
+        /** The number of documents updated. */
+        public final int processed;
+
+        /** The number of documents still queued for a read acls update. */
+        public final int pending;
+
+        public ReadAclsChunk(int processed, int pending) {
+            this.processed = processed;
+            this.pending = pending;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + '(' + processed + ',' + pending + ')';
+        }
+
+    }
+
+    /**
+     * Updates the read acls of a chunk of the queued documents, and queues the children of those whose read acl
+     * changed.
+     *
+     * @param max the maximum number of documents to compute a read acl for
+     * @return the number of documents updated and still queued
+     * @since 9.2
+     */
+    ReadAclsChunk updateReadAclsChunk(int max);
+
     /*
      * ----- Clustering -----
      */
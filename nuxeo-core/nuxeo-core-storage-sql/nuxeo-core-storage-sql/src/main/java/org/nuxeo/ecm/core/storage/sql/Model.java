@@ -382,6 +382,12 @@ public class Model {
     /** Column ordering for collections. */
     private final Map<String, String> collectionOrderBy;
 
+    /**
+     * Map of fragment to key to the collection fragment that would be used instead of the array column if array
+     * columns were not enabled.
+     */
+    private final Map<String, Map<String, String>> arrayColumnCollectionFragments;
+
     // -------------------------------------------------------
 
     /**
@@ -476,6 +482,7 @@ public class Model {
 
         collectionTables = new HashMap<String, PropertyType>();
         collectionOrderBy = new HashMap<String, String>();
+        arrayColumnCollectionFragments = new HashMap<>();
 
         schemaFragments = new HashMap<String, Set<String>>();
         typeFragments = new HashMap<String, Set<String>>();
@@ -965,6 +972,15 @@ public class Model {
         return specialPropertyTypes.get(propertyName);
     }
 
+    /**
+     * Gets the simple and collection fragments holding the data of a schema.
+     *
+     * @since 9.2
+     */
+    public Set<String> getSchemaFragments(String schema) {
+        return schemaFragments.get(schema);
+    }
+
     public PropertyType getCollectionFragmentType(String fragmentName) {
         return collectionTables.get(fragmentName);
     }
@@ -973,6 +989,19 @@ public class Model {
         return collectionTables.containsKey(fragmentName);
     }
 
+    /**
+     * Gets the collection fragment that would hold the values of an array column if array columns were not enabled.
+     *
+     * @param fragmentName the fragment of the array column
+     * @param fragmentKey the key of the array column
+     * @return the collection fragment name, or {@code null} if the column is not an array column for a list property
+     * @since 9.2
+     */
+    public String getArrayColumnCollectionFragment(String fragmentName, String fragmentKey) {
+        Map<String, String> map = arrayColumnCollectionFragments.get(fragmentName);
+        return map == null ? null : map.get(fragmentKey);
+    }
+
     public String getCollectionOrderBy(String fragmentName) {
         return collectionOrderBy.get(fragmentName);
     }
@@ -1527,6 +1556,9 @@ public class Model {
                             addPropertyInfo(complexType, propertyName, propertyType, fragmentName, fragmentKey, false,
                                     null, columnType);
                             addFieldFragment(field, fragmentName);
+                            Map<String, String> collectionFragments = arrayColumnCollectionFragments.computeIfAbsent(
+                                    fragmentName, k -> new HashMap<>());
+                            collectionFragments.put(fragmentKey, collectionFragmentName(propertyName));
                         } else {
                             /*
                              * Array: use a collection table.
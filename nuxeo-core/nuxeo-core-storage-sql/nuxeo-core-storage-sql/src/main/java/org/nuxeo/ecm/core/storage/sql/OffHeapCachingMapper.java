@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.nuxeo.common.utils.SizeUtils;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link SoftRefCachingMapper} whose cache stores serialized {@link Row}s outside the Java heap, in a cache bounded
+ * by a number of bytes and using a W-TinyLFU eviction policy.
+ * <p>
+ * The maximum size of the cache of each mapper is configured through the {@value #MAX_SIZE_PROP} caching mapper
+ * property (for instance {@code 64MB}).
+ *
+ * @see OffHeapRowCache
+ * @since 9.2
+ */
+public class OffHeapCachingMapper extends SoftRefCachingMapper {
+
+    public static final String MAX_SIZE_PROP = "maxSize";
+
+    public static final String DEFAULT_MAX_SIZE = "16MB";
+
+    /** Returned for rows known to be absent, never modified by callers. */
+    protected static final Row ABSENT_ROW = new Row(ABSENT, (Serializable) null);
+
+    protected OffHeapRowCache offHeapCache;
+
+    protected Counter cacheMissCount;
+
+    protected Counter cacheEvictionCount;
+
+    protected Counter cacheBytes;
+
+    @Override
+    public void initialize(String repositoryName, Model model, Mapper mapper, InvalidationsPropagator cachePropagator,
+            Map<String, String> properties) {
+        String maxSize = properties.get(MAX_SIZE_PROP);
+        if (StringUtils.isBlank(maxSize)) {
+            maxSize = DEFAULT_MAX_SIZE;
+        }
+        offHeapCache = new OffHeapRowCache(SizeUtils.parseSizeInBytes(maxSize));
+        super.initialize(repositoryName, model, mapper, cachePropagator, properties);
+        offHeapCache.setListener(new OffHeapRowCache.Listener() {
+            @Override
+            public void evicted(long weight) {
+                cacheEvictionCount.inc();
+                cacheBytes.dec(weight);
+            }
+
+            @Override
+            public void added(long weight) {
+                cacheBytes.inc(weight);
+            }
+
+            @Override
+            public void removed(long weight) {
+                cacheBytes.dec(weight);
+            }
+        });
+    }
+
+    @Override
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "hits"));
+        cacheMissCount = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "misses"));
+        cacheEvictionCount = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "evictions"));
+        cacheBytes = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "bytes"));
+        cacheGetTimer = registry.timer(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "get"));
+        sorRows = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "sor", "rows"));
+        sorGetTimer = registry.timer(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", "sor", "get"));
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    @Override
+    protected void cachePut(Row row) {
+        // for ACL collections, make sure the order is correct
+        // (see SoftRefCachingRowMapper#cachePut)
+        if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
+            row = row.clone();
+            row.values = sortACLRows((ACLRow[]) row.values);
+        }
+        offHeapCache.put(row);
+    }
+
+    @Override
+    protected void cachePutAbsent(RowId rowId) {
+        offHeapCache.putAbsent(rowId);
+    }
+
+    @Override
+    protected Row cacheGet(RowId rowId) {
+        final Timer.Context context = cacheGetTimer.time();
+        try {
+            Row row = offHeapCache.get(rowId, ABSENT_ROW);
+            if (row == null) {
+                cacheMissCount.inc();
+            } else {
+                cacheHitCount.inc();
+            }
+            return row;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    protected void cacheRemove(RowId rowId) {
+        offHeapCache.remove(rowId);
+    }
+
+    @Override
+    public void clearCache() {
+        offHeapCache.clear();
+        super.clearCache();
+    }
+
+    @Override
+    public long getCacheSize() {
+        return offHeapCache.size();
+    }
+
+}
@@ -0,0 +1,510 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of {@link Row}s stored in serialized form in direct (off-heap) memory, bounded by a number of bytes.
+ * <p>
+ * The serialized rows are stored in fixed-size blocks carved from a few large direct buffers (slabs), allocated once
+ * and reused, so that caching a row does not allocate a direct buffer of its own.
+ * <p>
+ * Eviction uses the W-TinyLFU policy: new entries go to a small LRU admission window, entries evicted from the window
+ * compete with the eviction victim of the main segmented LRU (probation and protected segments), and the one with the
+ * higher estimated access frequency is kept. Frequencies are estimated with a count-min sketch that is periodically
+ * aged.
+ * <p>
+ * Absent rows are stored as markers without a buffer.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @since 9.2
+ */
+public class OffHeapRowCache {
+
+    /** Estimated bytes of bookkeeping per entry, counted in addition to the serialized row. */
+    protected static final int ENTRY_OVERHEAD = 64;
+
+    /** Estimated average entry size, used to size the frequency sketch. */
+    protected static final int AVERAGE_ENTRY_SIZE = 512;
+
+    /** Percentage of the capacity used by the admission window. */
+    protected static final int WINDOW_PERCENT = 1;
+
+    /** Percentage of the main capacity used by the protected segment. */
+    protected static final int PROTECTED_PERCENT = 80;
+
+    protected enum Segment {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    protected static class Entry {
+
+        protected final RowId key;
+
+        /** The blocks holding the serialized row, or {@code null} for an absent row. */
+        protected final int[] blocks;
+
+        /** The length of the serialized row. */
+        protected final int length;
+
+        protected final int weight;
+
+        protected Segment segment;
+
+        protected Entry(RowId key, int[] blocks, int length) {
+            this.key = key;
+            this.blocks = blocks;
+            this.length = length;
+            weight = ENTRY_OVERHEAD + (blocks == null ? 0 : blocks.length * SlabAllocator.BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * Listener notified of cache events, used for metrics.
+     */
+    public interface Listener {
+
+        void evicted(long weight);
+
+        void added(long weight);
+
+        void removed(long weight);
+    }
+
+    protected static final Listener NULL_LISTENER = new Listener() {
+        @Override
+        public void evicted(long weight) {
+        }
+
+        @Override
+        public void added(long weight) {
+        }
+
+        @Override
+        public void removed(long weight) {
+        }
+    };
+
+    protected final long maxBytes;
+
+    protected final long windowMaxBytes;
+
+    protected final long protectedMaxBytes;
+
+    protected final Map<RowId, Entry> entries = new HashMap<>();
+
+    // insertion-ordered, the head is the least recently used
+    protected final LinkedHashMap<RowId, Entry> window = new LinkedHashMap<>();
+
+    protected final LinkedHashMap<RowId, Entry> probation = new LinkedHashMap<>();
+
+    protected final LinkedHashMap<RowId, Entry> protectedSegment = new LinkedHashMap<>();
+
+    protected long windowBytes;
+
+    protected long probationBytes;
+
+    protected long protectedBytes;
+
+    protected final FrequencySketch sketch;
+
+    protected final RowCodec codec = new RowCodec();
+
+    protected final SlabAllocator allocator = new SlabAllocator();
+
+    // heap buffer into which a serialized row is gathered from its blocks before decoding
+    protected byte[] scratch = new byte[1024];
+
+    protected Listener listener = NULL_LISTENER;
+
+    public OffHeapRowCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        windowMaxBytes = Math.max(maxBytes * WINDOW_PERCENT / 100, 1);
+        protectedMaxBytes = (maxBytes - windowMaxBytes) * PROTECTED_PERCENT / 100;
+        sketch = new FrequencySketch((int) Math.min(maxBytes / AVERAGE_ENTRY_SIZE, 1 << 24));
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener == null ? NULL_LISTENER : listener;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of bytes accounted for the cached entries.
+     */
+    public long getBytes() {
+        return windowBytes + probationBytes + protectedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets a row from the cache.
+     *
+     * @param rowId the row id
+     * @param absent the row to return if the row is known to be absent
+     * @return a new deserialized row, {@code absent} for an absent row, or {@code null} if not in the cache
+     */
+    public Row get(RowId rowId, Row absent) {
+        sketch.increment(rowId);
+        Entry entry = entries.get(rowId);
+        if (entry == null) {
+            return null;
+        }
+        touch(entry);
+        if (entry.blocks == null) {
+            return absent;
+        }
+        if (scratch.length < entry.length) {
+            scratch = new byte[Math.max(scratch.length * 2, entry.length)];
+        }
+        allocator.read(entry.blocks, scratch, entry.length);
+        return codec.decode(ByteBuffer.wrap(scratch, 0, entry.length));
+    }
+
+    /**
+     * Puts a row in the cache.
+     */
+    public void put(Row row) {
+        ByteBuffer encoded = codec.encode(row);
+        if (ENTRY_OVERHEAD + encoded.remaining() > windowMaxBytes) {
+            // too big to ever be admitted
+            remove(row);
+            return;
+        }
+        int length = encoded.remaining();
+        int[] blocks = allocator.allocate(length);
+        allocator.write(blocks, encoded);
+        put(new Entry(new RowId(row), blocks, length));
+    }
+
+    /**
+     * Puts an absent row marker in the cache.
+     */
+    public void putAbsent(RowId rowId) {
+        put(new Entry(new RowId(rowId), null, 0));
+    }
+
+    protected void put(Entry entry) {
+        remove(entry.key);
+        entries.put(entry.key, entry);
+        entry.segment = Segment.WINDOW;
+        window.put(entry.key, entry);
+        windowBytes += entry.weight;
+        listener.added(entry.weight);
+        evict();
+    }
+
+    public void remove(RowId rowId) {
+        Entry entry = entries.remove(rowId);
+        if (entry != null) {
+            unlink(entry);
+            free(entry);
+            listener.removed(entry.weight);
+        }
+    }
+
+    protected void free(Entry entry) {
+        if (entry.blocks != null) {
+            allocator.free(entry.blocks);
+        }
+    }
+
+    public void clear() {
+        long bytes = getBytes();
+        entries.values().forEach(this::free);
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        windowBytes = 0;
+        probationBytes = 0;
+        protectedBytes = 0;
+        if (bytes != 0) {
+            listener.removed(bytes);
+        }
+    }
+
+    protected void unlink(Entry entry) {
+        switch (entry.segment) {
+        case WINDOW:
+            window.remove(entry.key);
+            windowBytes -= entry.weight;
+            break;
+        case PROBATION:
+            probation.remove(entry.key);
+            probationBytes -= entry.weight;
+            break;
+        case PROTECTED:
+            protectedSegment.remove(entry.key);
+            protectedBytes -= entry.weight;
+            break;
+        }
+    }
+
+    /**
+     * Records an access: moves to the most recently used position of its segment, or promotes from probation to
+     * protected.
+     */
+    protected void touch(Entry entry) {
+        switch (entry.segment) {
+        case WINDOW:
+            window.remove(entry.key);
+            window.put(entry.key, entry);
+            break;
+        case PROBATION:
+            probation.remove(entry.key);
+            probationBytes -= entry.weight;
+            entry.segment = Segment.PROTECTED;
+            protectedSegment.put(entry.key, entry);
+            protectedBytes += entry.weight;
+            // demote least recently used protected entries to probation
+            while (protectedBytes > protectedMaxBytes) {
+                Entry demoted = head(protectedSegment);
+                protectedSegment.remove(demoted.key);
+                protectedBytes -= demoted.weight;
+                demoted.segment = Segment.PROBATION;
+                probation.put(demoted.key, demoted);
+                probationBytes += demoted.weight;
+            }
+            break;
+        case PROTECTED:
+            protectedSegment.remove(entry.key);
+            protectedSegment.put(entry.key, entry);
+            break;
+        }
+    }
+
+    protected static Entry head(LinkedHashMap<RowId, Entry> segment) {
+        Iterator<Entry> it = segment.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * Moves overflowing window entries to the main segments, admitting them only if they are estimated to be more
+     * frequently used than the main victims.
+     */
+    protected void evict() {
+        while (windowBytes > windowMaxBytes) {
+            Entry candidate = head(window);
+            window.remove(candidate.key);
+            windowBytes -= candidate.weight;
+            admit(candidate);
+        }
+    }
+
+    protected void admit(Entry candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        while (getBytes() + candidate.weight > maxBytes) {
+            Entry victim = head(probation);
+            if (victim == null) {
+                victim = head(protectedSegment);
+            }
+            if (victim == null || sketch.frequency(victim.key) >= candidateFrequency) {
+                // candidate rejected
+                entries.remove(candidate.key);
+                free(candidate);
+                listener.evicted(candidate.weight);
+                return;
+            }
+            entries.remove(victim.key);
+            unlink(victim);
+            free(victim);
+            listener.evicted(victim.weight);
+        }
+        candidate.segment = Segment.PROBATION;
+        probation.put(candidate.key, candidate);
+        probationBytes += candidate.weight;
+    }
+
+    /**
+     * Allocates fixed-size blocks from direct buffers of {@link #SLAB_SIZE} bytes. Slabs are added when no block is
+     * free, and are never released, the cache accounting bounding how many blocks are in use.
+     */
+    protected static class SlabAllocator {
+
+        protected static final int BLOCK_SIZE = 128;
+
+        protected static final int SLAB_SIZE = 1024 * 1024;
+
+        protected static final int BLOCKS_PER_SLAB = SLAB_SIZE / BLOCK_SIZE;
+
+        protected final List<ByteBuffer> slabs = new ArrayList<>();
+
+        // stack of free block numbers
+        protected int[] free = new int[0];
+
+        protected int freeCount;
+
+        /**
+         * Allocates enough blocks for the given number of bytes.
+         */
+        public int[] allocate(int length) {
+            int n = Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            while (freeCount < n) {
+                addSlab();
+            }
+            int[] blocks = new int[n];
+            for (int i = 0; i < n; i++) {
+                blocks[i] = free[--freeCount];
+            }
+            return blocks;
+        }
+
+        public void free(int[] blocks) {
+            for (int block : blocks) {
+                free[freeCount++] = block;
+            }
+        }
+
+        protected void addSlab() {
+            int first = slabs.size() * BLOCKS_PER_SLAB;
+            slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+            free = Arrays.copyOf(free, free.length + BLOCKS_PER_SLAB);
+            // pushed in reverse so that blocks are allocated in address order
+            for (int i = BLOCKS_PER_SLAB - 1; i >= 0; i--) {
+                free[freeCount++] = first + i;
+            }
+        }
+
+        protected ByteBuffer block(int block) {
+            ByteBuffer slab = slabs.get(block / BLOCKS_PER_SLAB).duplicate();
+            int offset = (block % BLOCKS_PER_SLAB) * BLOCK_SIZE;
+            slab.limit(offset + BLOCK_SIZE).position(offset);
+            return slab;
+        }
+
+        /**
+         * Writes the remaining bytes of the source into the blocks.
+         */
+        public void write(int[] blocks, ByteBuffer src) {
+            ByteBuffer source = src.duplicate();
+            for (int block : blocks) {
+                int n = Math.min(BLOCK_SIZE, source.remaining());
+                ByteBuffer chunk = source.duplicate();
+                chunk.limit(chunk.position() + n);
+                block(block).put(chunk);
+                source.position(source.position() + n);
+            }
+        }
+
+        /**
+         * Reads the given number of bytes from the blocks.
+         */
+        public void read(int[] blocks, byte[] dst, int length) {
+            int offset = 0;
+            for (int block : blocks) {
+                int n = Math.min(BLOCK_SIZE, length - offset);
+                block(block).get(dst, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Gets the number of bytes of direct memory allocated.
+         */
+        public long getAllocatedBytes() {
+            return (long) slabs.size() * SLAB_SIZE;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 rows of saturating counters, halved when the number of increments reaches ten times the
+     * width, so that old accesses are progressively forgotten.
+     */
+    protected static class FrequencySketch {
+
+        protected static final int DEPTH = 4;
+
+        protected static final int MAX_COUNT = 15;
+
+        protected static final int[] SEEDS = { 0x97cb3127, 0x9e3779b9, 0x7f4a7c15, 0x2545f491 };
+
+        protected final byte[][] table;
+
+        protected final int mask;
+
+        protected final int sampleSize;
+
+        protected int additions;
+
+        protected FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+            table = new byte[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        protected int index(int hash, int i) {
+            int h = (hash ^ SEEDS[i]) * 0x9e3779b1;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        public void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int j = index(hash, i);
+                if (table[i][j] < MAX_COUNT) {
+                    table[i][j]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        public int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, table[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        protected void reset() {
+            for (byte[] row : table) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -143,6 +144,13 @@ public class PersistenceContext {
      */
     private final Set<Serializable> createdIds;
 
+    /**
+     * Ids allocated in advance by {@link #reserveIds}, not yet used.
+     *
+     * @since 9.2
+     */
+    protected final Deque<Serializable> reservedIds = new ArrayDeque<>();
+
     /**
      * Cache statistics
      *
@@ -244,12 +252,27 @@ public class PersistenceContext {
      */
     protected Serializable generateNewId(Serializable id) {
         if (id == null) {
-            id = mapper.generateNewId();
+            id = reservedIds.poll();
+            if (id == null) {
+                id = mapper.generateNewId();
+            }
         }
         createdIds.add(id);
         return id;
     }
 
+    /**
+     * Allocates in one block the ids of nodes about to be created.
+     *
+     * @since 9.2
+     */
+    protected void reserveIds(int count) {
+        int n = count - reservedIds.size();
+        if (n > 1) {
+            reservedIds.addAll(mapper.generateNewIds(n));
+        }
+    }
+
     protected boolean isIdNew(Serializable id) {
         return createdIds.contains(id);
     }
@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Work updating, chunk by chunk, the read acls of the documents queued by an asynchronous read acls update.
+ * <p>
+ * The queue is persistent, so a suspended or interrupted work is resumed by the next one scheduled. Concurrent works
+ * skip the documents being updated by each other.
+ *
+ * @since 9.2
+ */
+public class ReadAclsUpdateWork extends AbstractWork {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CATEGORY = "readAclsUpdate";
+
+    public static final String CHUNK_SIZE_PROP = "org.nuxeo.vcs.readAclsUpdate.chunkSize";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    public ReadAclsUpdateWork(String repositoryName) {
+        super(CATEGORY + "-" + repositoryName);
+        this.repositoryName = repositoryName;
+    }
+
+    @Override
+    public void work() {
+        setStatus("Updating read acls");
+        RepositoryImpl repository = Framework.getService(SQLRepositoryService.class).getRepositoryImpl(
+                repositoryName);
+        int chunkSize = Integer.parseInt(Framework.getProperty(CHUNK_SIZE_PROP, String.valueOf(DEFAULT_CHUNK_SIZE)));
+        long done = 0;
+        for (;;) {
+            Mapper.ReadAclsChunk chunk = repository.updateReadAclsChunk(chunkSize);
+            commitOrRollbackTransaction();
+            if (chunk.processed == 0) {
+                // nothing left, or only documents locked by a concurrent work
+                break;
+            }
+            done += chunk.processed;
+            setProgress(new Progress(done, done + chunk.pending));
+            if (isSuspending()) {
+                suspended();
+                return;
+            }
+            startTransaction();
+        }
+        setStatus(null);
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public String getTitle() {
+        return "Read acls update: " + repositoryName;
+    }
+
+}
@@ -387,6 +387,20 @@ public class RepositoryDescriptor {
         return readAclMaxSize == null ? DEFAULT_READ_ACL_MAX_SIZE : readAclMaxSize.intValue();
     }
 
+    /** @since 9.2 */
+    @XNode("aclOptimizations@async")
+    private Boolean aclOptimizationsAsync;
+
+    /**
+     * Whether the read acls of the descendants of a document whose ACL changed are updated asynchronously, in chunks,
+     * instead of during the commit.
+     *
+     * @since 9.2
+     */
+    public boolean getAclOptimizationsAsync() {
+        return defaultFalse(aclOptimizationsAsync);
+    }
+
     @XNode("usersSeparator@key")
     public String usersSeparatorKey;
 
@@ -437,6 +451,7 @@ public class RepositoryDescriptor {
         pathOptimizationsVersion = other.pathOptimizationsVersion;
         aclOptimizationsEnabled = other.aclOptimizationsEnabled;
         readAclMaxSize = other.readAclMaxSize;
+        aclOptimizationsAsync = other.aclOptimizationsAsync;
         usersSeparatorKey = other.usersSeparatorKey;
         changeTokenEnabled = other.changeTokenEnabled;
     }
@@ -532,6 +547,9 @@ public class RepositoryDescriptor {
         if (other.readAclMaxSize != null) {
             readAclMaxSize = other.readAclMaxSize;
         }
+        if (other.aclOptimizationsAsync != null) {
+            aclOptimizationsAsync = other.aclOptimizationsAsync;
+        }
         if (other.usersSeparatorKey != null) {
             usersSeparatorKey = other.usersSeparatorKey;
         }
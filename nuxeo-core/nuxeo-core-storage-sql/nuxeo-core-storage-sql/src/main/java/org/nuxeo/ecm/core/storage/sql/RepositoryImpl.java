@@ -24,6 +24,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.Reference;
 import javax.resource.ResourceException;
@@ -77,6 +78,13 @@ public class RepositoryImpl implements Repository {
 
     protected final Counter sessionCount;
 
+    /**
+     * Number of documents waiting for an asynchronous read acls update, as last seen by a session.
+     *
+     * @since 9.2
+     */
+    protected final AtomicLong readAclsPending = new AtomicLong();
+
     private LockManager lockManager;
 
     /**
@@ -156,6 +164,14 @@ public class RepositoryImpl implements Repository {
                 return getCacheMapperSize();
             }
         });
+        gaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryDescriptor.name, "read-acls", "pending");
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return readAclsPending.get();
+            }
+        });
     }
 
     protected RepositoryBackend createBackend() {
@@ -527,6 +543,33 @@ public class RepositoryImpl implements Repository {
         }
     }
 
+    /**
+     * Updates the read acls of a chunk of the documents queued by an asynchronous read acls update.
+     *
+     * @param max the maximum number of documents to compute a read acl for
+     * @return the number of documents updated and still queued
+     * @since 9.2
+     */
+    public Mapper.ReadAclsChunk updateReadAclsChunk(int max) {
+        try {
+            SessionImpl conn = getConnection();
+            try {
+                return conn.updateReadAclsChunk(max);
+            } finally {
+                conn.close();
+            }
+        } catch (ResourceException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @since 9.2
+     */
+    protected void setReadAclsPending(long pending) {
+        readAclsPending.set(pending);
+    }
+
     /*
      * ----- -----
      */
@@ -0,0 +1,318 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Compact binary encoding of {@link Row}s, used to store rows outside the Java heap.
+ * <p>
+ * The common column types (strings, numbers, booleans, calendars, ACLs and arrays of those) have a dedicated encoding,
+ * other values fall back to Java serialization.
+ * <p>
+ * This class is not thread-safe, the encoding buffer is reused between calls.
+ *
+ * @since 9.2
+ */
+public class RowCodec {
+
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte LONG = 2;
+
+    private static final byte INTEGER = 3;
+
+    private static final byte BOOLEAN = 4;
+
+    private static final byte DOUBLE = 5;
+
+    private static final byte CALENDAR = 6;
+
+    private static final byte OPAQUE = 7;
+
+    private static final byte ACLROW = 8;
+
+    private static final byte ARRAY = 9;
+
+    private static final byte SERIALIZED = 10;
+
+    private static final byte ROW_SIMPLE = 0;
+
+    private static final byte ROW_COLLECTION = 1;
+
+    /** Array component types having a dedicated encoding, indexed by their code. */
+    private static final Class<?>[] COMPONENT_TYPES = { Serializable.class, String.class, Long.class, Integer.class,
+            Boolean.class, Double.class, Calendar.class, ACLRow.class, Object.class };
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    protected ByteBuffer buf = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Encodes a row. The returned buffer is flipped and ready to be read, and is only valid until the next call.
+     */
+    public ByteBuffer encode(Row row) {
+        buf.clear();
+        writeString(row.tableName);
+        writeValue(row.id);
+        if (row.isCollection()) {
+            ensureCapacity(1);
+            buf.put(ROW_COLLECTION);
+            writeValue(row.values);
+        } else {
+            ensureCapacity(5);
+            buf.put(ROW_SIMPLE);
+            buf.putInt(row.size);
+            for (int i = 0; i < row.size; i++) {
+                writeString(row.keys[i]);
+                writeValue(row.values[i]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Decodes a row previously encoded with {@link #encode}. The buffer position is advanced.
+     */
+    public Row decode(ByteBuffer in) {
+        String tableName = readString(in);
+        Serializable id = readValue(in);
+        if (in.get() == ROW_COLLECTION) {
+            return new Row(tableName, id, (Serializable[]) readValue(in));
+        }
+        int size = in.getInt();
+        Row row = new Row(tableName, id);
+        row.keys = new String[size];
+        row.values = new Serializable[size];
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            row.keys[i] = key == null ? null : key.intern();
+            row.values[i] = readValue(in);
+        }
+        row.size = size;
+        return row;
+    }
+
+    protected void ensureCapacity(int n) {
+        if (buf.remaining() < n) {
+            int capacity = Math.max(buf.capacity() * 2, buf.position() + n);
+            ByteBuffer newBuf = ByteBuffer.allocate(capacity);
+            buf.flip();
+            newBuf.put(buf);
+            buf = newBuf;
+        }
+    }
+
+    protected void writeString(String string) {
+        if (string == null) {
+            ensureCapacity(4);
+            buf.putInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(4 + bytes.length);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    protected static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        String string;
+        if (in.hasArray()) {
+            string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    protected void writeCalendar(Calendar cal) {
+        ensureCapacity(8);
+        buf.putLong(cal.getTimeInMillis());
+        writeString(cal.getTimeZone().getID());
+    }
+
+    protected static Calendar readCalendar(ByteBuffer in) {
+        long millis = in.getLong();
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone(readString(in)));
+        cal.setTimeInMillis(millis);
+        return cal;
+    }
+
+    protected void writeValue(Object value) {
+        ensureCapacity(9);
+        if (value == null) {
+            buf.put(NULL);
+        } else if (value instanceof String) {
+            buf.put(STRING);
+            writeString((String) value);
+        } else if (value instanceof Long) {
+            buf.put(LONG);
+            buf.putLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            buf.put(INTEGER);
+            buf.putInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            buf.put(BOOLEAN);
+            buf.put((byte) (((Boolean) value).booleanValue() ? 1 : 0));
+        } else if (value instanceof Double) {
+            buf.put(DOUBLE);
+            buf.putDouble(((Double) value).doubleValue());
+        } else if (value.getClass() == GregorianCalendar.class) {
+            buf.put(CALENDAR);
+            writeCalendar((Calendar) value);
+        } else if (value == Row.OPAQUE) {
+            buf.put(OPAQUE);
+        } else if (value instanceof ACLRow) {
+            buf.put(ACLROW);
+            writeACLRow((ACLRow) value);
+        } else if (value instanceof Object[] && componentCode(value.getClass().getComponentType()) != -1) {
+            Object[] array = (Object[]) value;
+            buf.put(ARRAY);
+            ensureCapacity(5);
+            buf.put((byte) componentCode(value.getClass().getComponentType()));
+            buf.putInt(array.length);
+            for (Object v : array) {
+                writeValue(v);
+            }
+        } else {
+            buf.put(SERIALIZED);
+            writeSerialized(value);
+        }
+    }
+
+    protected static Serializable readValue(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return Long.valueOf(in.getLong());
+        case INTEGER:
+            return Integer.valueOf(in.getInt());
+        case BOOLEAN:
+            return Boolean.valueOf(in.get() != 0);
+        case DOUBLE:
+            return Double.valueOf(in.getDouble());
+        case CALENDAR:
+            return readCalendar(in);
+        case OPAQUE:
+            return Row.OPAQUE;
+        case ACLROW:
+            return readACLRow(in);
+        case ARRAY:
+            Class<?> componentType = COMPONENT_TYPES[in.get()];
+            int length = in.getInt();
+            Object[] array = (Object[]) Array.newInstance(componentType, length);
+            for (int i = 0; i < length; i++) {
+                array[i] = readValue(in);
+            }
+            return (Serializable) array;
+        case SERIALIZED:
+            return readSerialized(in);
+        default:
+            throw new NuxeoException("Invalid encoded row value type: " + type);
+        }
+    }
+
+    protected static int componentCode(Class<?> componentType) {
+        for (int i = 0; i < COMPONENT_TYPES.length; i++) {
+            if (COMPONENT_TYPES[i] == componentType) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected void writeACLRow(ACLRow acl) {
+        ensureCapacity(5);
+        buf.putInt(acl.pos);
+        buf.put((byte) (acl.grant ? 1 : 0));
+        writeString(acl.name);
+        writeString(acl.permission);
+        writeString(acl.user);
+        writeString(acl.group);
+        writeString(acl.creator);
+        writeValue(acl.begin);
+        writeValue(acl.end);
+        writeValue(acl.status);
+    }
+
+    protected static ACLRow readACLRow(ByteBuffer in) {
+        int pos = in.getInt();
+        boolean grant = in.get() != 0;
+        String name = readString(in);
+        String permission = readString(in);
+        String user = readString(in);
+        String group = readString(in);
+        String creator = readString(in);
+        Calendar begin = (Calendar) readValue(in);
+        Calendar end = (Calendar) readValue(in);
+        Long status = (Long) readValue(in);
+        return new ACLRow(pos, name, grant, permission, user, group, creator, begin, end, status);
+    }
+
+    protected void writeSerialized(Object value) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot serialize row value: " + value, e);
+        }
+        byte[] bytes = baos.toByteArray();
+        ensureCapacity(4 + bytes.length);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    protected static Serializable readSerialized(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Serializable) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new NuxeoException("Cannot deserialize row value", e);
+        }
+    }
+
+}
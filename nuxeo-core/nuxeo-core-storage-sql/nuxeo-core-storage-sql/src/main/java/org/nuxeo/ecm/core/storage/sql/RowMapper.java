@@ -47,6 +47,15 @@ public interface RowMapper {
      */
     Serializable generateNewId();
 
+    /**
+     * Computes several new unique ids at once.
+     *
+     * @param count the number of ids
+     * @return the new unique ids
+     * @since 9.2
+     */
+    List<Serializable> generateNewIds(int count);
+
     /*
      * ----- Batch -----
      */
@@ -72,6 +72,23 @@ public interface Session extends Connection {
      */
     void save();
 
+    /**
+     * Allocates in one block the ids of the given number of nodes about to be created.
+     *
+     * @param count the number of ids to allocate
+     * @since 9.2
+     */
+    void reserveIds(int count);
+
+    /**
+     * Fetches in bulk the fragments of a schema for several nodes.
+     *
+     * @param ids the node ids
+     * @param schema the schema name
+     * @since 9.2
+     */
+    void prefetchSchema(List<Serializable> ids, String schema);
+
     /**
      * Gets the root node of the repository.
      *
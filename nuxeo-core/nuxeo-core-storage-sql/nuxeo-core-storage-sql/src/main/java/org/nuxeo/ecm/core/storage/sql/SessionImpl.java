@@ -240,6 +240,29 @@ public class SessionImpl implements Session, XAResource {
         return context.generateNewId(id);
     }
 
+    @Override
+    public void reserveIds(int count) {
+        checkLive();
+        context.reserveIds(count);
+    }
+
+    @Override
+    public void prefetchSchema(List<Serializable> ids, String schema) {
+        checkLive();
+        Set<String> fragmentNames = model.getSchemaFragments(schema);
+        if (fragmentNames == null || fragmentNames.isEmpty()) {
+            return;
+        }
+        List<RowId> rowIds = new ArrayList<>(ids.size() * fragmentNames.size());
+        for (Serializable id : ids) {
+            for (String fragmentName : fragmentNames) {
+                rowIds.add(new RowId(fragmentName, id));
+            }
+        }
+        // fetched in bulk into the context, where the nodes will find them
+        context.getMulti(rowIds, true);
+    }
+
     protected boolean isIdNew(Serializable id) {
         return context.isIdNew(id);
     }
@@ -1347,13 +1370,34 @@ public class SessionImpl implements Session, XAResource {
     public void updateReadAcls() {
         final Timer.Context timerContext = aclrUpdateTimer.time();
         try {
-            mapper.updateReadAcls();
+            if (repository.getRepositoryDescriptor().getAclOptimizationsAsync()) {
+                int pending = mapper.prepareReadAclsUpdate();
+                repository.setReadAclsPending(pending);
+                if (pending > 0) {
+                    scheduleWork(Collections.singletonList(new ReadAclsUpdateWork(repository.getName())));
+                }
+            } else {
+                mapper.updateReadAcls();
+            }
             readAclsChanged = false;
         } finally {
             timerContext.stop();
         }
     }
 
+    /**
+     * Updates the read acls of a chunk of the documents queued by an asynchronous read acls update.
+     *
+     * @return the number of documents updated and still queued
+     * @since 9.2
+     */
+    public Mapper.ReadAclsChunk updateReadAclsChunk(int max) {
+        checkLive();
+        Mapper.ReadAclsChunk chunk = mapper.updateReadAclsChunk(max);
+        repository.setReadAclsPending(chunk.pending);
+        return chunk;
+    }
+
     @Override
     public void rebuildReadAcls() {
         mapper.rebuildReadAcls();
@@ -48,7 +48,7 @@ import com.codahale.metrics.Timer;
  */
 public class SoftRefCachingRowMapper implements RowMapper {
 
-    private static final String ABSENT = "__ABSENT__\0\0\0";
+    protected static final String ABSENT = "__ABSENT__\0\0\0";
 
     /**
      * The cached rows. All held data is identical to what is present in the underlying {@link RowMapper} and could be
@@ -141,6 +141,11 @@ public class SoftRefCachingRowMapper implements RowMapper {
         return rowMapper.generateNewId();
     }
 
+    @Override
+    public List<Serializable> generateNewIds(int count) {
+        return rowMapper.generateNewIds(count);
+    }
+
     /*
      * ----- Cache -----
      */
@@ -132,6 +132,16 @@ public class UnifiedCachingMapper extends UnifiedCachingRowMapper implements Cac
         mapper.rebuildReadAcls();
     }
 
+    @Override
+    public int prepareReadAclsUpdate() {
+        return mapper.prepareReadAclsUpdate();
+    }
+
+    @Override
+    public ReadAclsChunk updateReadAclsChunk(int max) {
+        return mapper.updateReadAclsChunk(max);
+    }
+
     @Override
     public int getClusterNodeIdType() {
         return mapper.getClusterNodeIdType();
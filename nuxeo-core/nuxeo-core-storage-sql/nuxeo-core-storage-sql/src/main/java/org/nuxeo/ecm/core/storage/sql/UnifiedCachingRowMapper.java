@@ -186,6 +186,11 @@ public class UnifiedCachingRowMapper implements RowMapper {
         return rowMapper.generateNewId();
     }
 
+    @Override
+    public List<Serializable> generateNewIds(int count) {
+        return rowMapper.generateNewIds(count);
+    }
+
     /*
      * ----- ehcache -----
      */
@@ -0,0 +1,241 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * PubSub implementation of the VCS {@link ClusterInvalidator} that sends invalidations asynchronously.
+ * <p>
+ * The invalidations sent by the local transactions are coalesced during a short window (or until a maximum size is
+ * reached) and published as a single message from a background thread, so that committing transactions don't wait for
+ * the PubSub round-trip.
+ * <p>
+ * Each published message carries a monotonic sequence number. A receiver detecting a gap in the sequence of a sender
+ * (lost message) falls back to invalidating everything.
+ *
+ * @since 9.2
+ */
+public class VCSCoalescingPubSubInvalidator extends VCSPubSubInvalidator {
+
+    private static final Log log = LogFactory.getLog(VCSCoalescingPubSubInvalidator.class);
+
+    /** Coalescing window, in milliseconds. */
+    public static final String DELAY_PROP = "org.nuxeo.vcs.invalidations.coalescing.delay";
+
+    public static final String DEFAULT_DELAY = "100";
+
+    /** Number of pending invalidations after which they are sent without waiting for the end of the window. */
+    public static final String MAX_SIZE_PROP = "org.nuxeo.vcs.invalidations.coalescing.maxSize";
+
+    public static final String DEFAULT_MAX_SIZE = "1000";
+
+    /**
+     * Invalidations with the information needed for gap detection and latency measurement.
+     */
+    public static class SequencedInvalidations extends Invalidations {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The sending node. */
+        public String nodeId;
+
+        /** The start time of the sending invalidator, to distinguish node restarts. */
+        public long epoch;
+
+        /** The sequence number, increasing by one for each message from a given sender. */
+        public long sequence;
+
+        /** The time at which the message was sent, in milliseconds. */
+        public long sendTime;
+
+        @Override
+        public String toString() {
+            return super.toString() + "[node=" + nodeId + ",epoch=" + epoch + ",seq=" + sequence + ']';
+        }
+    }
+
+    protected String nodeId;
+
+    protected final long epoch = System.currentTimeMillis();
+
+    protected final AtomicLong sequence = new AtomicLong();
+
+    protected long delay;
+
+    protected int maxSize;
+
+    protected Invalidations pending = new Invalidations();
+
+    protected ScheduledExecutorService executor;
+
+    /** Epoch and last sequence received for each sender, keyed by node id. */
+    protected final Map<String, long[]> lastReceived = new ConcurrentHashMap<>();
+
+    protected Timer latencyTimer;
+
+    protected Histogram batchSizeHistogram;
+
+    protected Counter gapsCounter;
+
+    @Override
+    public void initialize(String nodeId, RepositoryImpl repository) {
+        initialize(nodeId, repository.getName(), Long.parseLong(Framework.getProperty(DELAY_PROP, DEFAULT_DELAY)),
+                Integer.parseInt(Framework.getProperty(MAX_SIZE_PROP, DEFAULT_MAX_SIZE)));
+    }
+
+    /**
+     * Initializes the invalidator for the given repository.
+     *
+     * @param nodeId the cluster node id
+     * @param repositoryName the repository name
+     * @param delay the coalescing window, in milliseconds
+     * @param maxSize the number of pending invalidations after which they are sent without waiting
+     */
+    protected void initialize(String nodeId, String repositoryName, long delay, int maxSize) {
+        this.nodeId = nodeId;
+        this.delay = delay;
+        this.maxSize = maxSize;
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        latencyTimer = registry.timer(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "invalidations", "latency"));
+        batchSizeHistogram = registry.histogram(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "invalidations", "batch-size"));
+        gapsCounter = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "invalidations", "gaps"));
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-VCS-Invalidations-" + repositoryName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, delay, delay, TimeUnit.MILLISECONDS);
+        initialize("vcs:" + repositoryName, nodeId);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(delay + 1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        flush();
+        super.close();
+    }
+
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        if (invalidations == null || invalidations.isEmpty()) {
+            return;
+        }
+        boolean flushNow;
+        synchronized (this) {
+            pending.add(invalidations);
+            flushNow = pending.all || size(pending) >= maxSize;
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    protected static int size(Invalidations invalidations) {
+        return (invalidations.modified == null ? 0 : invalidations.modified.size())
+                + (invalidations.deleted == null ? 0 : invalidations.deleted.size());
+    }
+
+    protected void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // don't kill the scheduled task
+            log.error("Failed to send invalidations", e);
+        }
+    }
+
+    /**
+     * Sends the pending invalidations, if any.
+     * <p>
+     * Synchronized on a separate monitor than the pending invalidations so that sequence numbers are published in
+     * order without blocking the senders during the publication.
+     */
+    protected void flush() {
+        synchronized (sequence) {
+            SequencedInvalidations invalidations = new SequencedInvalidations();
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                invalidations.add(pending);
+                pending = new Invalidations();
+            }
+            invalidations.nodeId = nodeId;
+            invalidations.epoch = epoch;
+            invalidations.sequence = sequence.incrementAndGet();
+            invalidations.sendTime = System.currentTimeMillis();
+            batchSizeHistogram.update(size(invalidations));
+            super.sendInvalidations(invalidations);
+        }
+    }
+
+    /**
+     * Deserializes the invalidations and checks their sequence.
+     * <p>
+     * The latency is computed from the sender's clock, so it includes any clock skew between nodes.
+     */
+    @Override
+    public Invalidations deserialize(InputStream in) throws IOException {
+        Invalidations invalidations = super.deserialize(in);
+        if (!(invalidations instanceof SequencedInvalidations)) {
+            return invalidations;
+        }
+        SequencedInvalidations sequenced = (SequencedInvalidations) invalidations;
+        latencyTimer.update(Math.max(0, System.currentTimeMillis() - sequenced.sendTime), TimeUnit.MILLISECONDS);
+        long[] last = lastReceived.put(sequenced.nodeId, new long[] { sequenced.epoch, sequenced.sequence });
+        if (last != null && last[0] == sequenced.epoch && sequenced.sequence != last[1] + 1) {
+            gapsCounter.inc();
+            log.warn("Gap in invalidations from node: " + sequenced.nodeId + ", expected sequence: "
+                    + (last[1] + 1) + ", received: " + sequenced.sequence + ", invalidating everything");
+            return new Invalidations(true);
+        }
+        return invalidations;
+    }
+
+}
@@ -19,12 +19,15 @@
  */
 package org.nuxeo.ecm.core.storage.sql.coremodel;
 
+import java.io.DataInput;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.storage.DefaultFulltextParser;
 import org.nuxeo.ecm.core.storage.FulltextExtractorWork;
 import org.nuxeo.ecm.core.storage.FulltextParser;
 import org.nuxeo.ecm.core.storage.FulltextUpdaterWork;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.AbstractWorkSerializer;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -61,4 +64,18 @@ public class SQLFulltextExtractorWork extends FulltextExtractorWork {
         }
     }
 
+    /**
+     * Serializer for the compact encoding of the stored works.
+     *
+     * @since 9.2
+     */
+    public static class Serializer extends AbstractWorkSerializer<SQLFulltextExtractorWork> {
+
+        @Override
+        protected SQLFulltextExtractorWork readWork(DataInput in) {
+            // the repository name and document id are part of the common state
+            return new SQLFulltextExtractorWork(null, null);
+        }
+    }
+
 }
@@ -138,6 +138,23 @@ public class SQLSession implements Session {
         session.save();
     }
 
+    @Override
+    public void reserveIds(int count) {
+        session.reserveIds(count);
+    }
+
+    @Override
+    public void prefetchSchema(List<Document> docs, String schema) {
+        List<Serializable> ids = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            if (doc.isProxy()) {
+                doc = doc.getTargetDocument();
+            }
+            ids.add(((SQLDocument) doc).getNode().getId());
+        }
+        session.prefetchSchema(ids, schema);
+    }
+
     @Override
     public boolean isLive() {
         // session can become non-live behind our back
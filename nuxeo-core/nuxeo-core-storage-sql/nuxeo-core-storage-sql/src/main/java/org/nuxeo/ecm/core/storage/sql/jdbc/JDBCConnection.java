@@ -18,10 +18,18 @@
  */
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.xa.XAResource;
@@ -35,6 +43,11 @@ import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.datasource.ConnectionHelper;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * Holds a connection to a JDBC database.
@@ -50,6 +63,15 @@ public class JDBCConnection {
 
     private static final String SET_CLIENT_INFO_DEFAULT = "false";
 
+    /**
+     * Maximum number of prepared statements kept open per connection for reuse, 0 to disable.
+     *
+     * @since 9.2
+     */
+    public static final String STATEMENT_CACHE_SIZE_PROP = "org.nuxeo.vcs.statementCacheSize";
+
+    public static final String STATEMENT_CACHE_SIZE_DEFAULT = "0";
+
     /** The model used to do the mapping. */
     protected final Model model;
 
@@ -83,6 +105,27 @@ public class JDBCConnection {
 
     protected boolean setClientInfo;
 
+    protected final int statementCacheSize;
+
+    /** Prepared statements by SQL, in least recently used order. */
+    protected final Map<String, CachedStatement> statementCache = new LinkedHashMap<String, CachedStatement>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= statementCacheSize) {
+                return false;
+            }
+            eldest.getValue().evict();
+            return true;
+        }
+    };
+
+    protected Counter statementCacheHits;
+
+    protected Counter statementCacheMisses;
+
     /**
      * Creates a new Mapper.
      *
@@ -95,6 +138,16 @@ public class JDBCConnection {
         this.sqlInfo = sqlInfo;
         dialect = sqlInfo.dialect;
         setClientInfo = Boolean.parseBoolean(Framework.getProperty(SET_CLIENT_INFO_PROP, SET_CLIENT_INFO_DEFAULT));
+        statementCacheSize = Integer.parseInt(
+                Framework.getProperty(STATEMENT_CACHE_SIZE_PROP, STATEMENT_CACHE_SIZE_DEFAULT));
+        if (statementCacheSize > 0) {
+            MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+            String repositoryName = getRepositoryName();
+            statementCacheHits = registry.counter(
+                    MetricRegistry.name("nuxeo", "repositories", repositoryName, "statements", "cache-hits"));
+            statementCacheMisses = registry.counter(
+                    MetricRegistry.name("nuxeo", "repositories", repositoryName, "statements", "cache-misses"));
+        }
     }
 
     /**
@@ -106,6 +159,7 @@ public class JDBCConnection {
         sqlInfo = null;
         model = null;
         dialect = null;
+        statementCacheSize = 0;
     }
 
     public String getRepositoryName() {
@@ -156,6 +210,7 @@ public class JDBCConnection {
 
     public void closeConnections() {
         if (connection != null) {
+            clearStatementCache();
             try {
                 try {
                     if (setClientInfo) {
@@ -173,6 +228,114 @@ public class JDBCConnection {
         }
     }
 
+    /**
+     * Prepares a statement, reusing a previously prepared one for the same SQL if the statement cache is enabled.
+     * <p>
+     * The returned statement must be closed after use, which makes it available for reuse.
+     *
+     * @since 9.2
+     */
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (statementCacheSize <= 0) {
+            return connection.prepareStatement(sql);
+        }
+        CachedStatement cached = statementCache.get(sql);
+        if (cached != null && !cached.inUse) {
+            statementCacheHits.inc();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+        statementCacheMisses.inc();
+        PreparedStatement ps = connection.prepareStatement(sql);
+        if (cached != null) {
+            // statement already in use by an enclosing operation, use a non-cached one
+            return ps;
+        }
+        cached = new CachedStatement(ps);
+        cached.inUse = true;
+        statementCache.put(sql, cached);
+        return cached.proxy;
+    }
+
+    /**
+     * Closes all the cached prepared statements.
+     * <p>
+     * Must be called when the database schema changes, as the statements may depend on it.
+     *
+     * @since 9.2
+     */
+    public void clearStatementCache() {
+        for (CachedStatement cached : new ArrayList<>(statementCache.values())) {
+            cached.evict();
+        }
+        statementCache.clear();
+    }
+
+    /**
+     * A prepared statement kept open for reuse. The statement given to callers is a proxy whose {@code close} makes it
+     * available again.
+     *
+     * @since 9.2
+     */
+    protected class CachedStatement implements InvocationHandler {
+
+        protected final PreparedStatement ps;
+
+        protected final PreparedStatement proxy;
+
+        protected boolean inUse;
+
+        protected boolean evicted;
+
+        protected CachedStatement(PreparedStatement ps) {
+            this.ps = ps;
+            proxy = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                release();
+                return null;
+            }
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        protected void release() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                ps.close();
+                return;
+            }
+            try {
+                ps.clearParameters();
+                ps.clearBatch();
+            } catch (SQLException e) {
+                // don't reuse it
+                statementCache.values().remove(this);
+                ps.close();
+            }
+        }
+
+        protected void evict() {
+            evicted = true;
+            if (inUse) {
+                // closed on release
+                return;
+            }
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                log.error("Cannot close statement: " + e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Checks the SQL error we got and determine if a concurrent update happened. Throws if that's the case.
      *
@@ -305,6 +305,9 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             List<Column> addedColumns = en.getValue();
             String tableKey = en.getKey();
             upgradeTable(tableKey, addedColumns, ddlMode, ddlCollector);
+            if (addedColumns != null) {
+                tableUpgrader.upgradeArrayColumns(tableKey, addedColumns, tableNames, ddlCollector);
+            }
         }
 
         sqlInfo.executeSQLStatements("afterTableCreation", ddlMode, connection, logger, ddlCollector);
@@ -400,6 +403,9 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                     countExecute();
                 }
             }
+
+            // statements prepared before the DDL may refer to the old schema
+            clearStatementCache();
         }
     }
 
@@ -430,7 +436,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         Calendar now = Calendar.getInstance();
         String sql = sqlInfo.getCreateClusterNodeSql();
         List<Column> columns = sqlInfo.getCreateClusterNodeColumns();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             if (logger.isLogEnabled()) {
                 logger.logSQL(sql, Arrays.asList(nodeId, now));
             }
@@ -448,7 +454,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         // delete from cluster_nodes
         String sql = sqlInfo.getDeleteClusterNodeSql();
         Column column = sqlInfo.getDeleteClusterNodeColumn();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             if (logger.isLogEnabled()) {
                 logger.logSQL(sql, Collections.singletonList(nodeId));
             }
@@ -464,7 +470,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
     protected void deleteClusterInvals(Serializable nodeId) throws SQLException {
         String sql = sqlInfo.getDeleteClusterInvalsSql();
         Column column = sqlInfo.getDeleteClusterInvalsColumn();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             if (logger.isLogEnabled()) {
                 logger.logSQL(sql, Collections.singletonList(nodeId));
             }
@@ -481,7 +487,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
     public void insertClusterInvalidations(Serializable nodeId, Invalidations invalidations) {
         String sql = dialect.getClusterInsertInvalidations();
         List<Column> columns = sqlInfo.getClusterInvalidationsColumns();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             int kind = Invalidations.MODIFIED;
             while (true) {
                 Set<RowId> rowIds = invalidations.getKindSet(kind);
@@ -556,7 +562,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Collections.singletonList(nodeId));
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             setToPreparedStatement(ps, 1, nodeId);
             try (ResultSet rs = ps.executeQuery()) {
                 countExecute();
@@ -593,7 +599,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Collections.<Serializable> singletonList(repositoryId));
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             ps.setString(1, repositoryId);
             try (ResultSet rs = ps.executeQuery()) {
                 countExecute();
@@ -622,7 +628,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
     @Override
     public void setRootId(Serializable repositoryId, Serializable id) {
         String sql = sqlInfo.getInsertRootIdSql();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             List<Column> columns = sqlInfo.getInsertRootIdColumns();
             List<Serializable> debugValues = null;
             if (logger.isLogEnabled()) {
@@ -665,6 +671,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                 throw new NuxeoException(e);
             }
             if (queryMaker.accepts(queryType)) {
+                queryMaker.setConnection(connection);
                 return queryMaker;
             }
         }
@@ -680,7 +687,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         if (!dialect.supportsArrays()) {
             principals = String.join(Dialect.ARRAY_SEP, (String[]) principals);
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             if (logger.isLogEnabled()) {
                 logger.logSQL(sql, Collections.singleton(principals));
             }
@@ -743,6 +750,49 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         return result;
     }
 
+    /**
+     * Gets the execution plan chosen by the database for a query, for diagnostics.
+     *
+     * @return the lines of the execution plan, or {@code null} if the database cannot explain queries
+     * @since 9.2
+     */
+    public List<String> explainQuery(String query, String queryType, QueryFilter queryFilter, Object... params) {
+        if (dialect.needsPrepareUserReadAcls()) {
+            prepareUserReadAcls(queryFilter);
+        }
+        QueryMaker queryMaker = findQueryMaker(queryType);
+        if (queryMaker == null) {
+            throw new NuxeoException("No QueryMaker accepts query: " + queryType + ": " + query);
+        }
+        QueryMaker.Query q = queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter, params);
+        if (q == null) {
+            return Collections.emptyList();
+        }
+        String sql = dialect.getExplainSql(q.selectInfo.sql);
+        if (sql == null) {
+            return null;
+        }
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, q.selectParams);
+        }
+        try (PreparedStatement ps = prepareStatement(sql)) {
+            int i = 1;
+            for (Serializable object : q.selectParams) {
+                setToPreparedStatement(ps, i++, object);
+            }
+            List<String> plan = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                while (rs.next()) {
+                    plan.add(rs.getString(1));
+                }
+            }
+            return plan;
+        } catch (SQLException e) {
+            throw new NuxeoException("Invalid query: " + query, e);
+        }
+    }
+
     protected String computeDistinctDocuments(String query, boolean distinctDocuments) {
         if (distinctDocuments) {
             String q = query.toLowerCase();
@@ -1073,7 +1123,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             logger.logSQL(select.sql, Collections.singleton(whereIds));
         }
         Column what = select.whatColumns.get(0);
-        try (PreparedStatement ps = connection.prepareStatement(select.sql)) {
+        try (PreparedStatement ps = prepareStatement(select.sql)) {
             setToPreparedStatementIdArray(ps, 1, whereIds);
             try (ResultSet rs = ps.executeQuery()) {
                 countExecute();
@@ -1128,7 +1178,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                 }
                 Column what = select.whatColumns.get(0);
                 Column where = select.whereColumns.get(0);
-                try (PreparedStatement ps = connection.prepareStatement(select.sql)) {
+                try (PreparedStatement ps = prepareStatement(select.sql)) {
                     int i = 1;
                     for (Serializable id : todo) {
                         where.setToPreparedStatement(ps, i++, id);
@@ -1205,6 +1255,60 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         log.debug("rebuildReadAcls: done.");
     }
 
+    @Override
+    public int prepareReadAclsUpdate() {
+        if (!dialect.supportsReadAcl()) {
+            return 0;
+        }
+        String sql = dialect.getPrepareReadAclsUpdateSql();
+        if (sql == null) {
+            // no asynchronous update, do everything now
+            updateReadAcls();
+            return 0;
+        }
+        if (logger.isLogEnabled()) {
+            logger.log(sql);
+        }
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            countExecute();
+            rs.next();
+            int pending = rs.getInt(1);
+            if (log.isDebugEnabled()) {
+                log.debug("prepareReadAclsUpdate: " + pending + " documents queued");
+            }
+            return pending;
+        } catch (SQLException e) {
+            checkConcurrentUpdate(e);
+            throw new NuxeoException("Failed to prepare read acls update", e);
+        }
+    }
+
+    @Override
+    public ReadAclsChunk updateReadAclsChunk(int max) {
+        String sql = dialect.getUpdateReadAclsChunkSql();
+        if (!dialect.supportsReadAcl() || sql == null) {
+            return new ReadAclsChunk(0, 0);
+        }
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(Integer.valueOf(max)));
+        }
+        try (PreparedStatement ps = prepareStatement(sql)) {
+            ps.setInt(1, max);
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                rs.next();
+                ReadAclsChunk chunk = new ReadAclsChunk(rs.getInt(1), rs.getInt(2));
+                if (log.isDebugEnabled()) {
+                    log.debug("updateReadAclsChunk: " + chunk);
+                }
+                return chunk;
+            }
+        } catch (SQLException e) {
+            checkConcurrentUpdate(e);
+            throw new NuxeoException("Failed to update read acls chunk", e);
+        }
+    }
+
     /*
      * ----- Locking -----
      */
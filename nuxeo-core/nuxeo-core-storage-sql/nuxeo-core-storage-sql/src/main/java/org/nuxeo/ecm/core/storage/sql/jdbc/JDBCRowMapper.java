@@ -78,6 +78,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     public static final int DEBUG_MAX_TREE = 50;
 
+    /**
+     * Maximum number of parameters in a statement reading several tables at once (SQL Server is limited to 2100).
+     *
+     * @since 9.2
+     */
+    public static final int MULTI_TABLE_READ_MAX_ARGS = 2000;
+
     /** Property to determine whether collection appends delete all then re-insert, or are optimized for append. */
     public static final String COLLECTION_DELETE_BEFORE_APPEND_PROP = "org.nuxeo.vcs.list-delete-before-append";
 
@@ -161,6 +168,15 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    @Override
+    public List<Serializable> generateNewIds(int count) {
+        try {
+            return dialect.getGeneratedIds(connection, count);
+        } catch (SQLException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
     /*
      * ----- RowIO -----
      */
@@ -184,14 +200,23 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             }
             ids.add(rowId.id);
         }
+        // read several tables at once if possible
+        Map<String, List<Row>> tableRows;
+        if (dialect.supportsMultipleResultSets() && tableIds.size() > 1) {
+            tableRows = readMultipleTables(tableIds);
+        } else {
+            tableRows = Collections.emptyMap();
+        }
         // read on each table
         for (Entry<String, Set<Serializable>> en : tableIds.entrySet()) {
             String tableName = en.getKey();
             Set<Serializable> ids = new HashSet<Serializable>(en.getValue());
             int size = ids.size();
             int chunkSize = sqlInfo.getMaximumArgsForIn();
-            List<Row> rows;
-            if (size > chunkSize) {
+            List<Row> rows = tableRows.get(tableName);
+            if (rows != null) {
+                // already read
+            } else if (size > chunkSize) {
                 List<Serializable> idList = new ArrayList<Serializable>(ids);
                 rows = new ArrayList<Row>(size);
                 for (int start = 0; start < size; start += chunkSize) {
@@ -230,6 +255,138 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         return res;
     }
 
+    /**
+     * Reads rows from several tables in as few round-trips as possible, by sending the selects of several tables in a
+     * single statement returning multiple result sets.
+     * <p>
+     * Tables whose ids don't fit in a single IN clause, or whose columns are all opaque, are not read.
+     *
+     * @param tableIds the ids to read for each table
+     * @return the rows read for each table (without the missing ones), only for the tables that were read
+     * @since 9.2
+     */
+    protected Map<String, List<Row>> readMultipleTables(Map<String, Set<Serializable>> tableIds) {
+        Map<String, List<Row>> tableRows = new HashMap<>();
+        int chunkSize = sqlInfo.getMaximumArgsForIn();
+        List<MultiTableSelect> batch = new ArrayList<>();
+        int batchArgs = 0;
+        for (Entry<String, Set<Serializable>> en : tableIds.entrySet()) {
+            String tableName = en.getKey();
+            Set<Serializable> ids = en.getValue();
+            if (ids.size() > chunkSize) {
+                continue;
+            }
+            MultiTableSelect mts = new MultiTableSelect(tableName, ids);
+            if (!mts.collection && mts.select.whatColumns.isEmpty()) {
+                continue;
+            }
+            if (batchArgs + ids.size() > MULTI_TABLE_READ_MAX_ARGS) {
+                readMultipleTables(batch, tableRows);
+                batch.clear();
+                batchArgs = 0;
+            }
+            batch.add(mts);
+            batchArgs += ids.size();
+        }
+        readMultipleTables(batch, tableRows);
+        return tableRows;
+    }
+
+    /**
+     * The select for one table in a multiple tables read.
+     *
+     * @since 9.2
+     */
+    protected class MultiTableSelect {
+
+        protected final String tableName;
+
+        protected final Collection<Serializable> ids;
+
+        protected final boolean collection;
+
+        protected final SQLInfoSelect select;
+
+        protected MultiTableSelect(String tableName, Collection<Serializable> ids) {
+            this.tableName = tableName;
+            this.ids = ids;
+            collection = model.isCollectionFragment(tableName);
+            if (collection) {
+                select = getSelectCollectionArrays(tableName, ids.size());
+            } else {
+                select = sqlInfo.getSelectFragmentsByIds(tableName, ids.size());
+            }
+        }
+    }
+
+    protected void readMultipleTables(List<MultiTableSelect> batch, Map<String, List<Row>> tableRows) {
+        if (batch.size() < 2) {
+            // nothing gained, let the caller do a normal read
+            return;
+        }
+        List<String> sqls = new ArrayList<>(batch.size());
+        List<Serializable> allIds = new ArrayList<>();
+        for (MultiTableSelect mts : batch) {
+            sqls.add(mts.select.sql);
+            allIds.addAll(mts.ids);
+        }
+        String sql = String.join("; ", sqls);
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, allIds);
+        }
+        try (PreparedStatement ps = prepareStatement(sql)) {
+            int i = 1;
+            for (Serializable id : allIds) {
+                dialect.setId(ps, i++, id);
+            }
+            boolean hasResultSet = ps.execute();
+            countExecute();
+            for (MultiTableSelect mts : batch) {
+                if (!hasResultSet) {
+                    throw new NuxeoException("Missing result set for table: " + mts.tableName + " in: " + sql);
+                }
+                List<Row> rows;
+                try (ResultSet rs = ps.getResultSet()) {
+                    if (mts.collection) {
+                        rows = readCollectionArrays(mts.tableName, mts.ids, mts.select, rs);
+                    } else {
+                        rows = readSimpleRows(mts.tableName, mts.select, rs);
+                    }
+                }
+                tableRows.put(mts.tableName, rows);
+                hasResultSet = ps.getMoreResults();
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Could not select: " + sql, e);
+        }
+    }
+
+    /**
+     * Gets the rows for {@link SimpleFragment}s from a result set of a select by ids.
+     *
+     * @since 9.2
+     */
+    protected List<Row> readSimpleRows(String tableName, SQLInfoSelect select, ResultSet rs) throws SQLException {
+        List<Row> list = new LinkedList<>();
+        while (rs.next()) {
+            Row row = new Row(tableName, (Serializable) null);
+            int i = 1;
+            for (Column column : select.whatColumns) {
+                row.put(column.getKey(), column.getFromResultSet(rs, i++));
+            }
+            if (select.opaqueColumns != null) {
+                for (Column column : select.opaqueColumns) {
+                    row.putNew(column.getKey(), Row.OPAQUE);
+                }
+            }
+            if (logger.isLogEnabled()) {
+                logger.logResultSet(rs, select.whatColumns);
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
     /**
      * Gets a list of rows for {@link SimpleFragment}s from the database, given the table name and the ids.
      *
@@ -256,71 +413,84 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (ids.isEmpty()) {
             return Collections.emptyList();
         }
-        String[] orderBys = { Model.MAIN_KEY, Model.COLL_TABLE_POS_KEY }; // clusters
-                                                                          // results
-        Set<String> skipColumns = new HashSet<String>(Arrays.asList(Model.COLL_TABLE_POS_KEY));
-        SQLInfoSelect select = sqlInfo.getSelectFragmentsByIds(tableName, ids.size(), orderBys, skipColumns);
+        SQLInfoSelect select = getSelectCollectionArrays(tableName, ids.size());
 
         String sql = select.sql;
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, ids);
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             int i = 1;
             for (Serializable id : ids) {
                 dialect.setId(ps, i++, id);
             }
             try (ResultSet rs = ps.executeQuery()) {
                 countExecute();
+                return readCollectionArrays(tableName, ids, select, rs);
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Could not select: " + sql, e);
+        }
+    }
 
-                // get all values from result set, separate by ids
-                // the result set is ordered by id, pos
-                CollectionIO io = getCollectionIO(tableName);
-                PropertyType ftype = model.getCollectionFragmentType(tableName);
-                PropertyType type = ftype.getArrayBaseType();
-                Serializable curId = null;
-                List<Serializable> list = null;
-                Serializable[] returnId = new Serializable[1];
-                int[] returnPos = { -1 };
-                List<Row> res = new LinkedList<Row>();
-                Set<Serializable> remainingIds = new HashSet<Serializable>(ids);
-                while (rs.next()) {
-                    Serializable value = io.getCurrentFromResultSet(rs, select.whatColumns, model, returnId, returnPos);
-                    Serializable newId = returnId[0];
-                    if (newId != null && !newId.equals(curId)) {
-                        // flush old list
-                        if (list != null) {
-                            res.add(new Row(tableName, curId, type.collectionToArray(list)));
-                            remainingIds.remove(curId);
-                        }
-                        curId = newId;
-                        list = new ArrayList<Serializable>();
-                    }
-                    list.add(value);
-                }
-                if (curId != null && list != null) {
-                    // flush last list
+    protected SQLInfoSelect getSelectCollectionArrays(String tableName, int nids) {
+        String[] orderBys = { Model.MAIN_KEY, Model.COLL_TABLE_POS_KEY }; // clusters
+                                                                          // results
+        Set<String> skipColumns = new HashSet<String>(Arrays.asList(Model.COLL_TABLE_POS_KEY));
+        return sqlInfo.getSelectFragmentsByIds(tableName, nids, orderBys, skipColumns);
+    }
+
+    /**
+     * Reads several collection rows from a result set ordered by id and pos.
+     *
+     * @since 9.2
+     */
+    protected List<Row> readCollectionArrays(String tableName, Collection<Serializable> ids, SQLInfoSelect select,
+            ResultSet rs) throws SQLException {
+        // get all values from result set, separate by ids
+        // the result set is ordered by id, pos
+        CollectionIO io = getCollectionIO(tableName);
+        PropertyType ftype = model.getCollectionFragmentType(tableName);
+        PropertyType type = ftype.getArrayBaseType();
+        Serializable curId = null;
+        List<Serializable> list = null;
+        Serializable[] returnId = new Serializable[1];
+        int[] returnPos = { -1 };
+        List<Row> res = new LinkedList<Row>();
+        Set<Serializable> remainingIds = new HashSet<Serializable>(ids);
+        while (rs.next()) {
+            Serializable value = io.getCurrentFromResultSet(rs, select.whatColumns, model, returnId, returnPos);
+            Serializable newId = returnId[0];
+            if (newId != null && !newId.equals(curId)) {
+                // flush old list
+                if (list != null) {
                     res.add(new Row(tableName, curId, type.collectionToArray(list)));
                     remainingIds.remove(curId);
                 }
+                curId = newId;
+                list = new ArrayList<Serializable>();
+            }
+            list.add(value);
+        }
+        if (curId != null && list != null) {
+            // flush last list
+            res.add(new Row(tableName, curId, type.collectionToArray(list)));
+            remainingIds.remove(curId);
+        }
 
-                // fill empty ones
-                if (!remainingIds.isEmpty()) {
-                    Serializable[] emptyArray = ftype.getEmptyArray();
-                    for (Serializable id : remainingIds) {
-                        res.add(new Row(tableName, id, emptyArray));
-                    }
-                }
-                if (logger.isLogEnabled()) {
-                    for (Row row : res) {
-                        logger.log("  -> " + row);
-                    }
-                }
-                return res;
+        // fill empty ones
+        if (!remainingIds.isEmpty()) {
+            Serializable[] emptyArray = ftype.getEmptyArray();
+            for (Serializable id : remainingIds) {
+                res.add(new Row(tableName, id, emptyArray));
+            }
+        }
+        if (logger.isLogEnabled()) {
+            for (Row row : res) {
+                logger.log("  -> " + row);
             }
-        } catch (SQLException e) {
-            throw new NuxeoException("Could not select: " + sql, e);
         }
+        return res;
     }
 
     /**
@@ -350,7 +520,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (joinMap == null) {
             joinMap = Collections.emptyMap();
         }
-        try (PreparedStatement ps = connection.prepareStatement(select.sql)) {
+        try (PreparedStatement ps = prepareStatement(select.sql)) {
 
             /*
              * Compute where part.
@@ -525,7 +695,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         boolean batched = supportsBatchUpdates && rows.size() > 1;
         String loggedSql = batched ? sql + " -- BATCHED" : sql;
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             int batch = 0;
             for (Iterator<Row> rowIt = rows.iterator(); rowIt.hasNext();) {
                 Row row = rowIt.next();
@@ -571,7 +741,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         String sql = sqlInfo.getInsertSql(tableName);
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
         CollectionIO io = getCollectionIO(tableName);
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             io.executeInserts(ps, rowus, columns, supportsBatchUpdates, sql, this);
         } catch (SQLException e) {
             throw new NuxeoException("Could not insert: " + sql, e);
@@ -604,7 +774,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             boolean batched = supportsBatchUpdates && rowUpdates.size() > 1
                     && (dialect.supportsBatchUpdateCount() || !changeTokenEnabled);
             String loggedSql = batched ? update.sql + " -- BATCHED" : update.sql;
-            try (PreparedStatement ps = connection.prepareStatement(update.sql)) {
+            try (PreparedStatement ps = prepareStatement(update.sql)) {
                 int batch = 0;
                 for (Iterator<RowUpdate> rowIt = rowUpdates.iterator(); rowIt.hasNext();) {
                     RowUpdate rowu = rowIt.next();
@@ -735,7 +905,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Arrays.asList(whereIds, now));
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             setToPreparedStatementIdArray(ps, 1, whereIds);
             dialect.setToPreparedStatementTimestamp(ps, 2, now, null);
             ps.execute();
@@ -804,7 +974,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 }
             } else {
                 // standard prepared statement with result set
-                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareStatement(sql)) {
                     ps.setInt(1, max);
                     dialect.setToPreparedStatementTimestamp(ps, 2, beforeTime, null);
                     try (ResultSet rs = ps.executeQuery()) {
@@ -828,7 +998,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, ids);
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             int i = 1;
             for (Serializable id : ids) {
                 dialect.setId(ps, i++, id);
@@ -867,7 +1037,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Collections.singletonList(id));
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             dialect.setId(ps, 1, id);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
@@ -893,7 +1063,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Collections.singletonList(id));
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             List<Column> columns = sqlInfo.selectFragmentById.get(tableName).whatColumns;
             dialect.setId(ps, 1, id); // assumes only one primary column
             try (ResultSet rs = ps.executeQuery()) {
@@ -1038,7 +1208,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         Update update = sqlInfo.getUpdateByIdForKeys(tableName, row.getKeys());
         Table table = update.getTable();
         String sql = update.getStatement();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             if (logger.isLogEnabled()) {
                 List<Serializable> values = new LinkedList<Serializable>();
                 values.addAll(row.getValues());
@@ -1109,7 +1279,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         boolean explicitName = name != null;
 
         SQLInfoSelect copy = sqlInfo.getCopyHier(explicitName, resetVersion);
-        try (PreparedStatement ps = connection.prepareStatement(copy.sql)) {
+        try (PreparedStatement ps = prepareStatement(copy.sql)) {
             Serializable newId = generateNewId();
 
             List<Serializable> debugValues = null;
@@ -1169,7 +1339,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             logger.logSQL(sql, Collections.singletonList(id));
         }
         List<Column> columns = sqlInfo.getSelectChildrenIdsAndTypesWhatColumns();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             List<String> debugValues = null;
             if (logger.isLogEnabled()) {
                 debugValues = new LinkedList<String>();
@@ -1220,8 +1390,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         String copySql = sqlInfo.getCopySql(tableName);
         Column copyIdColumn = sqlInfo.getCopyIdColumn(tableName);
         String deleteSql = sqlInfo.getDeleteSql(tableName);
-        try (PreparedStatement copyPs = connection.prepareStatement(copySql);
-                PreparedStatement deletePs = connection.prepareStatement(deleteSql)) {
+        try (PreparedStatement copyPs = prepareStatement(copySql);
+                PreparedStatement deletePs = prepareStatement(deleteSql)) {
             boolean before = false;
             boolean after = false;
             for (Serializable id : ids) {
@@ -1275,7 +1445,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             logger.logSQL(sql, Collections.singletonList(rootId));
         }
         List<Column> columns = sqlInfo.getSelectDescendantsInfoWhatColumns();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = prepareStatement(sql)) {
             List<String> debugValues = null;
             if (logger.isLogEnabled()) {
                 debugValues = new LinkedList<String>();
@@ -1376,7 +1546,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             logger.logSQL(select.sql, ids);
         }
         Column where = select.whereColumns.get(0);
-        try (PreparedStatement ps = connection.prepareStatement(select.sql)) {
+        try (PreparedStatement ps = prepareStatement(select.sql)) {
             List<String> debugValues = null;
             if (logger.isLogEnabled()) {
                 debugValues = new LinkedList<String>();
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
 import java.io.Serializable;
+import java.sql.Connection;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -82,6 +83,7 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.db.TableAlias;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect.ArraySubQuery;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect.FulltextMatchInfo;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * Transformer of NXQL queries into underlying SQL queries to the actual database.
@@ -207,6 +209,24 @@ public class NXQLQueryMaker implements QueryMaker {
     protected static final List<String> AGGREGATE_FUNCTIONS = Arrays.asList(COUNT_FUNCTION, AVG_FUNCTION, "SUM", "MIN",
             "MAX");
 
+    /**
+     * Enables the choice of the SQL formulation of a query according to the repository statistics.
+     *
+     * @since 9.2
+     */
+    public static final String PLANNER_ENABLED_PROP = "org.nuxeo.vcs.query.planner.enabled";
+
+    /**
+     * Maximum estimated number of candidate rows for which tree membership is checked by probing the ancestors of each
+     * row rather than by joining with all the descendants.
+     *
+     * @since 9.2
+     */
+    public static final String PLANNER_PROBE_THRESHOLD_PROP = "org.nuxeo.vcs.query.planner.probeThreshold";
+
+    /** @since 9.2 */
+    public static final long DEFAULT_PLANNER_PROBE_THRESHOLD = 1000;
+
     /*
      * Fields used by the search service.
      */
@@ -255,6 +275,12 @@ public class NXQLQueryMaker implements QueryMaker {
 
     protected int fragJoinCount = 0;
 
+    // connection used to gather statistics, may be null
+    protected Connection connection;
+
+    // whether ecm:ancestorId is checked by probing the ancestors of each row
+    protected boolean ancestorsProbe;
+
     @Override
     public String getName() {
         return NXQL.NXQL;
@@ -269,6 +295,11 @@ public class NXQLQueryMaker implements QueryMaker {
         DIRECT, PROXY
     }
 
+    @Override
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
     @Override
     public Query buildQuery(SQLInfo sqlInfo, Model model, PathResolver pathResolver, String query,
             QueryFilter queryFilter, Object... params) {
@@ -339,6 +370,12 @@ public class NXQLQueryMaker implements QueryMaker {
                     "Cannot use " + NXQL.ECM_FULLTEXT_SCORE + " with more than one fulltext match expression");
         }
 
+        /*
+         * Choose the SQL formulation of some criteria according to statistics.
+         */
+
+        planQuery(queryAnalyzer.wherePredicate.values);
+
         /*
          * Find whether to check proxies, relations.
          */
@@ -829,6 +866,84 @@ public class NXQLQueryMaker implements QueryMaker {
         // to be overridden
     }
 
+    /**
+     * Chooses how to check ecm:ancestorId, and reorders the toplevel ANDed operands accordingly.
+     * <p>
+     * By default tree membership joins with all the descendants of the base document, which is efficient for a small
+     * tree. When the other criteria (primary types or fulltext match) are estimated to select few rows, it's better to
+     * start from these rows and probe their ancestors.
+     *
+     * @since 9.2
+     */
+    protected void planQuery(List<Operand> operands) {
+        ancestorsProbe = false;
+        if (connection == null || !Framework.isBooleanPropertyTrue(PLANNER_ENABLED_PROP)) {
+            return;
+        }
+        boolean hasAncestorId = false;
+        Set<String> primaryTypes = null;
+        Expression fulltext = null;
+        for (Operand operand : operands) {
+            if (!(operand instanceof Expression) || !(((Expression) operand).lvalue instanceof Reference)) {
+                continue;
+            }
+            Expression expr = (Expression) operand;
+            String name = ((Reference) expr.lvalue).name;
+            if (NXQL.ECM_ANCESTORID.equals(name) && expr.operator == Operator.EQ) {
+                hasAncestorId = true;
+            } else if (NXQL.ECM_PRIMARYTYPE.equals(name)) {
+                if (expr.operator == Operator.EQ && expr.rvalue instanceof StringLiteral) {
+                    primaryTypes = Collections.singleton(((StringLiteral) expr.rvalue).value);
+                } else if (expr.operator == Operator.IN && expr.rvalue instanceof LiteralList) {
+                    primaryTypes = getStringLiterals((LiteralList) expr.rvalue);
+                }
+            } else if (name.startsWith(NXQL.ECM_FULLTEXT) && !NXQL.ECM_FULLTEXT_JOBID.equals(name)
+                    && !NXQL.ECM_FULLTEXT_SCORE.equals(name) && expr.rvalue instanceof StringLiteral) {
+                fulltext = expr;
+            }
+        }
+        if (!hasAncestorId || dialect.getInTreeProbeSql("id", null) == null) {
+            return;
+        }
+        long threshold = Long.parseLong(Framework.getProperty(PLANNER_PROBE_THRESHOLD_PROP,
+                String.valueOf(DEFAULT_PLANNER_PROBE_THRESHOLD)));
+        QueryStatistics statistics = sqlInfo.getQueryStatistics();
+        long typesCount = primaryTypes == null ? -1 : statistics.getTypesRowCount(connection, primaryTypes);
+        long fulltextCount = -1;
+        if (fulltext != null && (typesCount < 0 || typesCount > threshold)) {
+            String[] nameref = new String[] { ((Reference) fulltext.lvalue).name };
+            if (findFulltextIndexOrField(model, nameref)) {
+                String fulltextQuery = dialect.getDialectFulltextQuery(((StringLiteral) fulltext.rvalue).value);
+                fulltextCount = statistics.getFulltextRowCount(connection, nameref[0], fulltextQuery, threshold + 1);
+            }
+        }
+        boolean typesSelective = typesCount >= 0 && typesCount <= threshold;
+        boolean fulltextSelective = fulltextCount >= 0 && fulltextCount <= threshold;
+        ancestorsProbe = typesSelective || fulltextSelective;
+        if (log.isDebugEnabled()) {
+            log.debug("Query plan: types count=" + typesCount + ", fulltext count=" + fulltextCount
+                    + ", ancestors probe=" + ancestorsProbe);
+        }
+        if (!ancestorsProbe) {
+            return;
+        }
+        // the selective criteria first, the tree membership check last
+        List<Operand> ancestorIds = new LinkedList<>();
+        for (Iterator<Operand> it = operands.iterator(); it.hasNext();) {
+            Operand operand = it.next();
+            if (operand instanceof Expression && ((Expression) operand).lvalue instanceof Reference
+                    && NXQL.ECM_ANCESTORID.equals(((Reference) ((Expression) operand).lvalue).name)) {
+                ancestorIds.add(operand);
+                it.remove();
+            }
+        }
+        if (fulltextSelective && !typesSelective) {
+            operands.remove(fulltext);
+            operands.add(0, fulltext);
+        }
+        operands.addAll(ancestorIds);
+    }
+
     protected static boolean findFulltextIndexOrField(Model model, String[] nameref) {
         boolean useIndex;
         String name = nameref[0];
@@ -2032,7 +2147,13 @@ public class NXQLQueryMaker implements QueryMaker {
             if (not) {
                 buf.append("(NOT (");
             }
-            String sql = dialect.getInTreeSql(hierTable.getColumn(Model.MAIN_KEY).getFullQuotedName(), id);
+            String idColumnName = hierTable.getColumn(Model.MAIN_KEY).getFullQuotedName();
+            String sql;
+            if (ancestorsProbe && !not) {
+                sql = dialect.getInTreeProbeSql(idColumnName, id);
+            } else {
+                sql = dialect.getInTreeSql(idColumnName, id);
+            }
             if (sql == null) {
                 buf.append("0=1");
             } else {
@@ -20,6 +20,7 @@
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
 import java.io.Serializable;
+import java.sql.Connection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -65,6 +66,17 @@ public interface QueryMaker {
     Query buildQuery(SQLInfo sqlInfo, Model model, PathResolver pathResolver, String query, QueryFilter queryFilter,
             Object... params);
 
+    /**
+     * Sets the connection that the query maker may use to gather statistics about the data before building the query.
+     * <p>
+     * Called before {@link #buildQuery}.
+     *
+     * @param connection the connection
+     * @since 9.2
+     */
+    default void setConnection(Connection connection) {
+    }
+
     /**
      * A SQL query that can be executed by the backend.
      */
@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Database;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Statistics about the data of a repository, used by the {@link NXQLQueryMaker} to choose between equivalent SQL
+ * formulations of a query.
+ * <p>
+ * The row counts per primary type are estimated from the statistics of the database planner, without reading the
+ * hierarchy table. The fulltext match counts are computed up to a limit, as only the selectivity of small matches is of
+ * interest, and only one at a time: the queries arriving meanwhile do without. Both are cached, and computed again after
+ * a time-to-live by a single query while the others keep using the previous values.
+ *
+ * @since 9.2
+ */
+public class QueryStatistics {
+
+    private static final Log log = LogFactory.getLog(QueryStatistics.class);
+
+    /** Time-to-live of the statistics, in seconds. */
+    public static final String TTL_PROP = "org.nuxeo.vcs.query.statistics.ttl";
+
+    public static final int DEFAULT_TTL = 3600;
+
+    protected static final int FULLTEXT_CACHE_SIZE = 1000;
+
+    /**
+     * Estimated row counts per primary type.
+     */
+    protected static class TypeCounts {
+
+        protected final Map<String, Long> counts;
+
+        /** The estimated row count of the primary types not in {@link #counts}. */
+        protected final long otherCount;
+
+        protected TypeCounts(Map<String, Long> counts, long otherCount) {
+            this.counts = counts;
+            this.otherCount = otherCount;
+        }
+    }
+
+    protected final Model model;
+
+    protected final Dialect dialect;
+
+    protected final Database database;
+
+    protected final long ttl;
+
+    protected volatile TypeCounts typeCounts;
+
+    protected volatile long typeCountsTime;
+
+    protected final AtomicBoolean typeCountsComputing = new AtomicBoolean();
+
+    protected final Map<String, long[]> fulltextCounts = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > FULLTEXT_CACHE_SIZE;
+        }
+    };
+
+    protected final Semaphore fulltextCountComputing = new Semaphore(1);
+
+    public QueryStatistics(Model model, Dialect dialect, Database database) {
+        this.model = model;
+        this.dialect = dialect;
+        this.database = database;
+        ttl = Long.parseLong(Framework.getProperty(TTL_PROP, String.valueOf(DEFAULT_TTL))) * 1000;
+    }
+
+    /**
+     * Clears all cached statistics.
+     */
+    public void clear() {
+        typeCounts = null;
+        synchronized (fulltextCounts) {
+            fulltextCounts.clear();
+        }
+    }
+
+    /**
+     * Gets the estimated number of documents having one of the given primary types.
+     *
+     * @param connection the connection to use if the statistics have to be read
+     * @param types the primary types
+     * @return the estimated number of documents, or {@code -1} if unknown
+     */
+    public long getTypesRowCount(Connection connection, Collection<String> types) {
+        TypeCounts counts = typeCounts;
+        if ((counts == null || System.currentTimeMillis() - typeCountsTime > ttl)
+                && typeCountsComputing.compareAndSet(false, true)) {
+            try {
+                TypeCounts computed = computeTypeCounts(connection);
+                if (computed != null) {
+                    counts = computed;
+                    typeCounts = computed;
+                    typeCountsTime = System.currentTimeMillis();
+                }
+            } finally {
+                typeCountsComputing.set(false);
+            }
+        }
+        if (counts == null) {
+            return -1;
+        }
+        long count = 0;
+        for (String type : types) {
+            count += counts.counts.getOrDefault(type, Long.valueOf(counts.otherCount)).longValue();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the row counts per primary type from the planner statistics.
+     *
+     * @return the counts, or {@code null} if there are no statistics
+     */
+    protected TypeCounts computeTypeCounts(Connection connection) {
+        String sql = dialect.getPrimaryTypeStatisticsSql(database);
+        if (sql == null) {
+            return null;
+        }
+        try (Statement st = connection.createStatement()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Reading statistics: " + sql);
+            }
+            try (ResultSet rs = st.executeQuery(sql)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                double rows = rs.getDouble(1);
+                double distinct = rs.getDouble(2);
+                Array valuesArray = rs.getArray(3);
+                Array freqsArray = rs.getArray(4);
+                if (rows <= 0 || valuesArray == null || freqsArray == null) {
+                    // never analyzed
+                    return null;
+                }
+                Object[] values = (Object[]) valuesArray.getArray();
+                Object[] freqs = (Object[]) freqsArray.getArray();
+                Map<String, Long> counts = new HashMap<>();
+                double remaining = 1;
+                for (int i = 0; i < values.length && i < freqs.length; i++) {
+                    double freq = ((Number) freqs[i]).doubleValue();
+                    counts.put((String) values[i], Long.valueOf(Math.round(freq * rows)));
+                    remaining -= freq;
+                }
+                if (distinct < 0) {
+                    distinct = -distinct * rows;
+                }
+                // the other types share the remaining rows
+                double others = Math.max(1, distinct - counts.size());
+                long otherCount = Math.round(Math.max(0, remaining) * rows / others);
+                return new TypeCounts(Collections.unmodifiableMap(counts), otherCount);
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Cannot read statistics: " + sql, e);
+        }
+    }
+
+    /**
+     * Gets the number of documents matching a fulltext query, up to a limit.
+     * <p>
+     * If another fulltext count is being computed, this one is not computed and is unknown.
+     *
+     * @param connection the connection to use if the statistics have to be computed
+     * @param indexName the fulltext index name
+     * @param fulltextQuery the fulltext query, as returned by {@link Dialect#getDialectFulltextQuery}
+     * @param limit the maximum count
+     * @return the number of documents matching, at most {@code limit}, or {@code -1} if unknown
+     */
+    public long getFulltextRowCount(Connection connection, String indexName, String fulltextQuery, long limit) {
+        String sql = dialect.getFulltextMatchCountSql(indexName, model, database);
+        if (sql == null) {
+            return -1;
+        }
+        String key = indexName + '\0' + limit + '\0' + fulltextQuery;
+        long now = System.currentTimeMillis();
+        synchronized (fulltextCounts) {
+            long[] countAndTime = fulltextCounts.get(key);
+            if (countAndTime != null && now - countAndTime[1] <= ttl) {
+                return countAndTime[0];
+            }
+        }
+        if (!fulltextCountComputing.tryAcquire()) {
+            return -1;
+        }
+        long count;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Computing statistics: " + sql + " -- " + fulltextQuery);
+            }
+            ps.setString(1, fulltextQuery);
+            ps.setLong(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Cannot compute statistics: " + sql, e);
+        } finally {
+            fulltextCountComputing.release();
+        }
+        synchronized (fulltextCounts) {
+            fulltextCounts.put(key, new long[] { count, now });
+        }
+        return count;
+    }
+
+}
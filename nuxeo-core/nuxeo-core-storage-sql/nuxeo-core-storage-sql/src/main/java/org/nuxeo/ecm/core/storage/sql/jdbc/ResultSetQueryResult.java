@@ -27,11 +27,15 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
 
 /**
  * Iterable query result implemented as a cursor on a SQL {@link ResultSet}.
+ * <p>
+ * If the query filter has a fetch size, the result set is forward-only and fetched from the database in batches of
+ * that size, otherwise it is scrollable (which means that many drivers hold all the rows in memory).
  */
 public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<String, Serializable>> {
 
@@ -49,11 +53,15 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
 
     private long size = -1;
 
+    private final boolean streaming;
+
     private final JDBCLogger logger;
 
     public ResultSetQueryResult(QueryMaker queryMaker, String query, QueryFilter queryFilter, PathResolver pathResolver,
             JDBCMapper mapper, Object... params) throws SQLException {
         logger = mapper.logger;
+        int fetchSize = queryFilter == null ? 0 : queryFilter.getFetchSize();
+        streaming = fetchSize > 0;
         q = queryMaker.buildQuery(mapper.sqlInfo, mapper.model, pathResolver, query, queryFilter, params);
         if (q == null) {
             // no result
@@ -68,8 +76,18 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
         if (logger.isLogEnabled()) {
             logger.logSQL(q.selectInfo.sql, q.selectParams);
         }
-        ps = mapper.connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
+        if (streaming) {
+            if (mapper.connection.getAutoCommit()) {
+                // PostgreSQL only uses a server-side cursor inside a transaction
+                throw new NuxeoException("Streaming query should be done inside a transaction");
+            }
+            ps = mapper.connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+        } else {
+            ps = mapper.connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
+                    ResultSet.CONCUR_READ_ONLY);
+        }
         int i = 1;
         for (Serializable object : q.selectParams) {
             mapper.setToPreparedStatement(ps, i++, object);
@@ -136,7 +154,7 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
 
     @Override
     public long size() {
-        if (size != -1) {
+        if (size != -1 || streaming) {
             return size;
         }
         checkNotClosed();
@@ -169,6 +187,10 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
     @Override
     public void skipTo(long pos) {
         checkNotClosed();
+        if (streaming) {
+            skipForward(pos);
+            return;
+        }
         try {
             boolean available = rs.absolute((int) pos + 1);
             if (available) {
@@ -186,6 +208,21 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
         }
     }
 
+    protected void skipForward(long pos) {
+        if (this.pos == -1 || pos < this.pos) {
+            throw new IllegalArgumentException("Cannot skip backward in a streamed result, from " + this.pos + " to "
+                    + pos);
+        }
+        while (this.pos < pos && hasNext()) {
+            next = null;
+            this.pos++;
+        }
+        if (this.pos < pos) {
+            // after last row
+            this.pos = -1; // XXX
+        }
+    }
+
     @Override
     public Iterator<Map<String, Serializable>> iterator() {
         checkNotClosed();
@@ -133,6 +133,8 @@ public class SQLInfo {
 
     protected List<Column> getBinariesColumns;
 
+    protected final QueryStatistics queryStatistics;
+
     /**
      * Generates and holds the needed SQL statements given a {@link Model} and a {@link Dialect}.
      *
@@ -170,6 +172,8 @@ public class SQLInfo {
         getBinariesSql = new ArrayList<>(1);
         getBinariesColumns = new ArrayList<>(1);
 
+        queryStatistics = new QueryStatistics(model, dialect, database);
+
         initSQL();
         initSelections();
 
@@ -184,6 +188,15 @@ public class SQLInfo {
         return database;
     }
 
+    /**
+     * Gets the statistics used to plan queries.
+     *
+     * @since 9.2
+     */
+    public QueryStatistics getQueryStatistics() {
+        return queryStatistics;
+    }
+
     // ----- select -----
 
     public String getSelectRootIdSql() {
@@ -874,7 +887,14 @@ public class SQLInfo {
         protected void newFragmentFields() {
             Map<String, ColumnType> keysType = model.getFragmentKeysType(tableName);
             for (Entry<String, ColumnType> entry : keysType.entrySet()) {
-                newColumn(entry.getKey(), entry.getValue());
+                String key = entry.getKey();
+                ColumnType type = entry.getValue();
+                newColumn(key, type);
+                // array column for a list property, index it for element queries (but not large texts)
+                if (type.isArray() && type != ColumnType.ARRAY_CLOB
+                        && model.getArrayColumnCollectionFragment(tableName, key) != null) {
+                    table.addIndex(key, IndexType.ARRAY, key);
+                }
             }
         }
 
@@ -22,6 +22,7 @@ package org.nuxeo.ecm.core.storage.sql.jdbc;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -107,7 +108,42 @@ public class TableUpgrader {
                 log.info("Upgrading table: " + tableKey);
                 mapper.sqlInfo.executeSQLStatements(upgrade.sqlProcedure, ddlMode, mapper.connection, mapper.logger,
                         ddlCollector);
+                // statements prepared before the upgrade may refer to the old table definition
+                mapper.clearStatementCache();
             }
         }
     }
+
+    /**
+     * Fills the added array columns with the values of the collection tables previously used for the same list
+     * properties, if such tables exist. The collection tables are left in place and can be dropped afterwards.
+     *
+     * @param tableKey table name
+     * @param addedColumns list of added column
+     * @param tableNames the existing table names, in uppercase
+     * @since 9.2
+     */
+    public void upgradeArrayColumns(String tableKey, List<Column> addedColumns, Set<String> tableNames,
+            ListCollector ddlCollector) {
+        for (Column col : addedColumns) {
+            if (!col.isArray()) {
+                continue;
+            }
+            String collectionFragment = mapper.model.getArrayColumnCollectionFragment(tableKey, col.getKey());
+            if (collectionFragment == null) {
+                continue;
+            }
+            String collectionTableName = mapper.dialect.getTableName(collectionFragment);
+            if (!tableNames.contains(collectionTableName.toUpperCase())) {
+                continue;
+            }
+            String sql = mapper.dialect.getArrayColumnMigrationSql(col, collectionTableName);
+            if (sql == null) {
+                continue;
+            }
+            log.info("Migrating collection table: " + collectionTableName + " to array column: "
+                    + col.getFullQuotedName());
+            ddlCollector.add(sql);
+        }
+    }
 }
@@ -35,7 +35,13 @@ public interface Table extends Serializable {
         /** Fulltext index, may be on several columns. */
         FULLTEXT,
         /** Non primary index but the main one for this table. */
-        MAIN_NON_PRIMARY
+        MAIN_NON_PRIMARY,
+        /**
+         * Index on an array column, usable for element containment queries.
+         *
+         * @since 9.2
+         */
+        ARRAY
     }
 
     boolean isAlias();
@@ -312,6 +312,23 @@ public abstract class Dialect {
         }
     }
 
+    /**
+     * Gets several generated ids if so configured, otherwise returns an empty list.
+     *
+     * @since 9.2
+     */
+    public List<Serializable> getGeneratedIds(Connection connection, int count) throws SQLException {
+        List<Serializable> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Serializable id = getGeneratedId(connection);
+            if (id == null) {
+                return Collections.emptyList();
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
     /**
      * Sets a prepared statement value that is a Nuxeo main id (usually UUID).
      *
@@ -568,12 +585,24 @@ public abstract class Dialect {
         String quotedIndexName = openQuote() + getIndexName(table.getKey(), pcols) + closeQuote();
         if (indexType == Table.IndexType.FULLTEXT) {
             return getCreateFulltextIndexSql(indexName, quotedIndexName, table, columns, model);
+        } else if (indexType == Table.IndexType.ARRAY) {
+            return getCreateArrayIndexSql(quotedIndexName, table, qcols);
         } else {
             return String.format("CREATE INDEX %s ON %s (%s)", quotedIndexName, table.getQuotedName(),
                     String.join(", ", qcols));
         }
     }
 
+    /**
+     * Gets a CREATE INDEX statement for an index on array columns.
+     *
+     * @since 9.2
+     */
+    public String getCreateArrayIndexSql(String quotedIndexName, Table table, List<String> quotedColumnNames) {
+        return String.format("CREATE INDEX %s ON %s (%s)", quotedIndexName, table.getQuotedName(),
+                String.join(", ", quotedColumnNames));
+    }
+
     /**
      * Specifies what columns of the fulltext table have to be indexed.
      *
@@ -627,6 +656,42 @@ public abstract class Dialect {
         public Column scoreCol;
     }
 
+    /**
+     * Gets the statement returning the execution plan of a query.
+     *
+     * @param sql the query
+     * @return the SQL statement, or {@code null} if not supported
+     * @since 9.2
+     */
+    public String getExplainSql(String sql) {
+        return null;
+    }
+
+    /**
+     * Gets the SQL returning the planner statistics about the primary types of the hierarchy table, without reading the
+     * table. The statement returns one row with the estimated number of rows of the table, the estimated number of
+     * distinct primary types (negative for a fraction of the number of rows), the array of the most common primary types
+     * and the array of their frequencies, these last three being {@code NULL} when the table was never analyzed.
+     *
+     * @return the SQL statement, or {@code null} if not supported
+     * @since 9.2
+     */
+    public String getPrimaryTypeStatisticsSql(Database database) {
+        return null;
+    }
+
+    /**
+     * Gets the SQL counting, up to a limit, the rows of the fulltext table matching a fulltext query. The statement
+     * takes the fulltext query (as returned by {@link #getDialectFulltextQuery}) and the limit as parameters.
+     *
+     * @param indexName the fulltext index name
+     * @return the SQL statement, or {@code null} if not supported
+     * @since 9.2
+     */
+    public String getFulltextMatchCountSql(String indexName, Model model, Database database) {
+        return null;
+    }
+
     /**
      * Gets the SQL information needed to do a a fulltext match, either with a direct expression in the WHERE clause, or
      * using a join with an additional table.
@@ -878,6 +943,22 @@ public abstract class Dialect {
      */
     public abstract String getInTreeSql(String idColumnName, String id);
 
+    /**
+     * Gets the expression to use to check tree membership by probing the ancestors of each candidate row, instead of
+     * joining with all the descendants of the base id as {@link #getInTreeSql} does.
+     * <p>
+     * This is preferable when the other criteria of the query select few rows.
+     *
+     * @param idColumnName the quoted name of the id column to use
+     * @param id the id, to check syntax with respect to specialized id column types
+     * @return an SQL expression with one parameters for the based id that is true if the document is under base id, or
+     *         {@code null} if not supported
+     * @since 9.2
+     */
+    public String getInTreeProbeSql(String idColumnName, String id) {
+        return null;
+    }
+
     /**
      * Does the dialect support passing ARRAY values (to stored procedures mostly).
      * <p>
@@ -980,6 +1061,19 @@ public abstract class Dialect {
         throw new QueryParseException("Array ILIKE not supported");
     }
 
+    /**
+     * Gets the SQL statement filling a newly added array column with the values of the collection table previously
+     * used for the same list property.
+     *
+     * @param arrayColumn the array column
+     * @param collectionTableName the physical name of the collection table
+     * @return the SQL statement, or {@code null} if not supported
+     * @since 9.2
+     */
+    public String getArrayColumnMigrationSql(Column arrayColumn, String collectionTableName) {
+        return null;
+    }
+
     /**
      * Factory method for creating Array objects, suitable for passing to {@link PreparedStatement#setArray}.
      * <p>
@@ -1059,6 +1153,16 @@ public abstract class Dialect {
         return false;
     }
 
+    /**
+     * Does the dialect support several SELECT statements, separated by semicolons, in a single prepared statement
+     * returning multiple result sets.
+     *
+     * @since 9.2
+     */
+    public boolean supportsMultipleResultSets() {
+        return false;
+    }
+
     /**
      * Does the dialect have an empty string identical to NULL (Oracle).
      */
@@ -1093,6 +1197,29 @@ public abstract class Dialect {
         return null;
     }
 
+    /**
+     * Gets the statement to update the read acls of new and modified documents, queuing their descendants. The
+     * statement returns the number of queued documents.
+     *
+     * @return the SQL statement, or {@code null} if asynchronous read acls update is not supported
+     * @since 9.2
+     */
+    public String getPrepareReadAclsUpdateSql() {
+        return null;
+    }
+
+    /**
+     * Gets the statement to update the read acls of a chunk of queued documents. The statement takes the maximum number
+     * of documents to compute a read acl for as parameter, and returns one row with the number of documents updated and
+     * the number of documents still queued.
+     *
+     * @return the SQL statement, or {@code null} if asynchronous read acls update is not supported
+     * @since 9.2
+     */
+    public String getUpdateReadAclsChunkSql() {
+        return null;
+    }
+
     /**
      * Gets the expression to check if access is allowed using read acls. The dialect must suppportsReadAcl.
      *
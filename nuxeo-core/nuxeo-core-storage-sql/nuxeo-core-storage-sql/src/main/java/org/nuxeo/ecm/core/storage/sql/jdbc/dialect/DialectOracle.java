@@ -354,6 +354,23 @@ public class DialectOracle extends Dialect {
         }
     }
 
+    @Override
+    public List<Serializable> getGeneratedIds(Connection connection, int count) throws SQLException {
+        if (idType != DialectIdType.SEQUENCE) {
+            return super.getGeneratedIds(connection, count);
+        }
+        String sql = String.format("SELECT %s.NEXTVAL FROM DUAL CONNECT BY LEVEL <= %d", idSequenceName,
+                Integer.valueOf(count));
+        List<Serializable> ids = new ArrayList<>(count);
+        try (Statement s = connection.createStatement()) {
+            ResultSet rs = s.executeQuery(sql);
+            while (rs.next()) {
+                ids.add(Long.valueOf(rs.getLong(1)));
+            }
+        }
+        return ids;
+    }
+
     @Override
     public void setId(PreparedStatement ps, int index, Serializable value) throws SQLException {
         switch (idType) {
@@ -108,6 +108,9 @@ public class DialectPostgreSQL extends Dialect {
 
     protected final String unloggedKeyword;
 
+    /** @since 9.2 */
+    protected final boolean supportsSkipLocked;
+
     protected String idSequenceName;
 
     public DialectPostgreSQL(DatabaseMetaData metadata, RepositoryDescriptor repositoryDescriptor) {
@@ -133,6 +136,8 @@ public class DialectPostgreSQL extends Dialect {
         } else {
             unloggedKeyword = "";
         }
+        // SKIP LOCKED and ON CONFLICT since PostgreSQL 9.5
+        supportsSkipLocked = (major == 9 && minor >= 5) || (major > 9);
         usersSeparator = repositoryDescriptor == null ? null
                 : repositoryDescriptor.usersSeparatorKey == null ? DEFAULT_USERS_SEPARATOR
                         : repositoryDescriptor.usersSeparatorKey;
@@ -320,6 +325,23 @@ public class DialectPostgreSQL extends Dialect {
         }
     }
 
+    @Override
+    public List<Serializable> getGeneratedIds(Connection connection, int count) throws SQLException {
+        if (idType != DialectIdType.SEQUENCE) {
+            return super.getGeneratedIds(connection, count);
+        }
+        String sql = String.format("SELECT NEXTVAL('%s') FROM generate_series(1, %d)", idSequenceName,
+                Integer.valueOf(count));
+        List<Serializable> ids = new ArrayList<>(count);
+        try (Statement s = connection.createStatement()) {
+            ResultSet rs = s.executeQuery(sql);
+            while (rs.next()) {
+                ids.add(Long.valueOf(rs.getLong(1)));
+            }
+        }
+        return ids;
+    }
+
     @Override
     public void setId(PreparedStatement ps, int index, Serializable value) throws SQLException {
         switch (idType) {
@@ -714,6 +736,36 @@ public class DialectPostgreSQL extends Dialect {
         return info;
     }
 
+    @Override
+    public String getExplainSql(String sql) {
+        return "EXPLAIN " + sql;
+    }
+
+    @Override
+    public String getPrimaryTypeStatisticsSql(Database database) {
+        Table hier = database.getTable(Model.HIER_TABLE_NAME);
+        String tableName = hier.getPhysicalName();
+        String typeColumnName = hier.getColumn(Model.MAIN_PRIMARY_TYPE_KEY).getPhysicalName();
+        return String.format("SELECT c.reltuples, s.n_distinct, s.most_common_vals::text::text[], s.most_common_freqs" //
+                + " FROM pg_class c" //
+                + " LEFT JOIN pg_stats s ON s.schemaname = current_schema() AND s.tablename = '%s' AND s.attname = '%s'"
+                + " WHERE c.oid = '%s'::regclass", tableName, typeColumnName, tableName);
+    }
+
+    @Override
+    public String getFulltextMatchCountSql(String indexName, Model model, Database database) {
+        if (compatibilityFulltextTable) {
+            return null;
+        }
+        String indexSuffix = model.getFulltextIndexSuffix(indexName);
+        Table ft = database.getTable(Model.FULLTEXT_TABLE_NAME);
+        Column ftColumn = ft.getColumn(Model.FULLTEXT_FULLTEXT_KEY + indexSuffix);
+        // for phrase search, count on the words only, ignoring the LIKE part
+        String tsquery = String.format("TO_TSQUERY('%s', SPLIT_PART(?, '%s', 1))", fulltextAnalyzer, FT_LIKE_SEP);
+        return String.format("SELECT COUNT(*) FROM (SELECT 1 FROM %s WHERE %s @@ NX_TO_TSVECTOR(%s) LIMIT ?) _nxcount",
+                ft.getQuotedName(), tsquery, ftColumn.getFullQuotedName());
+    }
+
     @Override
     public boolean getMaterializeFulltextSyntheticColumn() {
         return true;
@@ -777,6 +829,16 @@ public class DialectPostgreSQL extends Dialect {
         return "SELECT nx_rebuild_read_acls();";
     }
 
+    @Override
+    public String getPrepareReadAclsUpdateSql() {
+        return "SELECT nx_prepare_read_acls_update();";
+    }
+
+    @Override
+    public String getUpdateReadAclsChunkSql() {
+        return "SELECT * FROM nx_update_read_acls_chunk(?);";
+    }
+
     @Override
     public String getSecurityCheckSql(String idColumnName) {
         return String.format("NX_ACCESS_ALLOWED(%s, ?, ?)", idColumnName);
@@ -808,6 +870,23 @@ public class DialectPostgreSQL extends Dialect {
         return String.format("%s IN (SELECT * FROM nx_children(?%s))", idColumnName, cast);
     }
 
+    @Override
+    public String getInTreeProbeSql(String idColumnName, String id) {
+        if (!pathOptimizationsEnabled) {
+            return null;
+        }
+        String cast;
+        try {
+            cast = getCastForId(id);
+        } catch (IllegalArgumentException e) {
+            // discard query with invalid id
+            return null;
+        }
+        // correlated subquery, cannot be turned into a join by the planner
+        return String.format("ARRAY[?]%s <@ (SELECT ancestors FROM ancestors WHERE id = %s)", getCastForArray(cast),
+                idColumnName);
+    }
+
     protected String getCastForArray(String cast) {
         if (cast.isEmpty()) {
             return cast;
@@ -925,7 +1004,12 @@ public class DialectPostgreSQL extends Dialect {
         if (!positive) {
             sql.append("(NOT(");
         }
-        if (params.size() == 1) {
+        if (params.size() == 1 && cast == null) {
+            // arrayColumn @> ARRAY[?], can use a GIN index
+            sql.append(arrayColumn.getFullQuotedName());
+            sql.append(" @> ARRAY[?]::");
+            sql.append(arrayColumn.getSqlTypeString());
+        } else if (params.size() == 1) {
             // ? = ANY(arrayColumn)
             sql.append("? = ANY(");
             sql.append(arrayColumn.getFullQuotedName());
@@ -958,6 +1042,28 @@ public class DialectPostgreSQL extends Dialect {
         return sql.toString();
     }
 
+    @Override
+    public String getCreateArrayIndexSql(String quotedIndexName, Table table, List<String> quotedColumnNames) {
+        return String.format("CREATE INDEX %s ON %s USING GIN (%s)", quotedIndexName, table.getQuotedName(),
+                String.join(", ", quotedColumnNames));
+    }
+
+    @Override
+    public String getArrayColumnMigrationSql(Column arrayColumn, String collectionTableName) {
+        Table table = arrayColumn.getTable();
+        String tableName = table.getQuotedName();
+        String id = table.getColumn(Model.MAIN_KEY).getQuotedName();
+        String item = openQuote() + Model.COLL_TABLE_VALUE_KEY + closeQuote();
+        String pos = openQuote() + Model.COLL_TABLE_POS_KEY + closeQuote();
+        String collTableName = openQuote() + collectionTableName + closeQuote();
+        return String.format("UPDATE %s SET %s = _nxcoll.items" //
+                + " FROM (SELECT %s, ARRAY_AGG(%s ORDER BY %s)::%s AS items FROM %s GROUP BY %s) _nxcoll" //
+                + " WHERE %s.%s = _nxcoll.%s", //
+                tableName, arrayColumn.getQuotedName(), //
+                id, item, pos, arrayColumn.getSqlTypeString(), collTableName, id, //
+                tableName, id, id);
+    }
+
     @Override
     public String getArrayLikeSql(Column arrayColumn, String refName, boolean positive, Table dataHierTable) {
         return getArrayOpSql(arrayColumn, refName, positive, dataHierTable, "LIKE");
@@ -1109,6 +1215,8 @@ public class DialectPostgreSQL extends Dialect {
         properties.put("everyone", SecurityConstants.EVERYONE);
         properties.put("readAclMaxSize", Integer.toString(readAclMaxSize));
         properties.put("unlogged", unloggedKeyword);
+        properties.put("skipLocked", supportsSkipLocked ? " SKIP LOCKED" : "");
+        properties.put("onConflictDoNothing", supportsSkipLocked ? "ON CONFLICT DO NOTHING" : "");
         return properties;
     }
 
@@ -1169,6 +1277,11 @@ public class DialectPostgreSQL extends Dialect {
         return sql + String.format(" LIMIT %d OFFSET %d", limit, offset);
     }
 
+    @Override
+    public boolean supportsMultipleResultSets() {
+        return true;
+    }
+
     @Override
     public boolean supportsWith() {
         return false; // don't activate until proven useful
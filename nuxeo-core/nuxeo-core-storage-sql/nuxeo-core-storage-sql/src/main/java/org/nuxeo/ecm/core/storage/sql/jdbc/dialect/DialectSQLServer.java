@@ -594,6 +594,11 @@ public class DialectSQLServer extends Dialect {
         return aclOptimizationsEnabled;
     }
 
+    @Override
+    public boolean supportsMultipleResultSets() {
+        return true;
+    }
+
     @Override
     public String getPrepareUserReadAclsSql() {
         return "EXEC nx_prepare_user_read_acls ?";
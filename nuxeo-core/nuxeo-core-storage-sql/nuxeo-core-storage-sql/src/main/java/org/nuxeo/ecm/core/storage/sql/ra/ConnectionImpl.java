@@ -173,6 +173,16 @@ public class ConnectionImpl implements Session {
         getSession().save();
     }
 
+    @Override
+    public void reserveIds(int count) {
+        getSession().reserveIds(count);
+    }
+
+    @Override
+    public void prefetchSchema(List<Serializable> ids, String schema) {
+        getSession().prefetchSchema(ids, schema);
+    }
+
     @Override
     public Node getRootNode() {
         return getSession().getRootNode();
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TestOffHeapRowCache {
+
+    protected static final Row ABSENT = new Row("__ABSENT__", (Serializable) null);
+
+    @Test
+    public void testSimpleRow() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024);
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890123L);
+        Row row = new Row("dublincore", "id1");
+        row.put("title", "foo");
+        row.put("modified", cal);
+        row.put("size", Long.valueOf(123));
+        row.put("flag", Boolean.TRUE);
+        row.put("ratio", Double.valueOf(0.5));
+        row.put("nothing", null);
+        row.put("amount", new BigDecimal("12.34"));
+        row.put("tags", new String[] { "a", "b" });
+        cache.put(row);
+
+        Row cached = cache.get(new RowId("dublincore", "id1"), ABSENT);
+        assertNotNull(cached);
+        assertEquals("dublincore", cached.tableName);
+        assertEquals("id1", cached.id);
+        assertEquals(row.getKeys(), cached.getKeys());
+        assertEquals("foo", cached.get("title"));
+        assertEquals(cal.getTimeInMillis(), ((Calendar) cached.get("modified")).getTimeInMillis());
+        assertEquals(cal.getTimeZone(), ((Calendar) cached.get("modified")).getTimeZone());
+        assertEquals(Long.valueOf(123), cached.get("size"));
+        assertEquals(Boolean.TRUE, cached.get("flag"));
+        assertEquals(Double.valueOf(0.5), cached.get("ratio"));
+        assertNull(cached.get("nothing"));
+        assertEquals(new BigDecimal("12.34"), cached.get("amount"));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) cached.get("tags"));
+    }
+
+    @Test
+    public void testCollectionRow() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024);
+        cache.put(new Row("dc:subjects", "id1", new String[] { "a", "b", "c" }));
+        ACLRow acl = new ACLRow(0, "local", true, "Read", "bob", null);
+        cache.put(new Row("acls", "id1", new ACLRow[] { acl }));
+
+        Row cached = cache.get(new RowId("dc:subjects", "id1"), ABSENT);
+        assertTrue(cached.isCollection());
+        assertArrayEquals(new String[] { "a", "b", "c" }, (String[]) cached.values);
+
+        cached = cache.get(new RowId("acls", "id1"), ABSENT);
+        ACLRow[] acls = (ACLRow[]) cached.values;
+        assertEquals(1, acls.length);
+        assertEquals("local", acls[0].name);
+        assertTrue(acls[0].grant);
+        assertEquals("Read", acls[0].permission);
+        assertEquals("bob", acls[0].user);
+        assertNull(acls[0].group);
+    }
+
+    @Test
+    public void testLargeRow() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        String text = sb.toString();
+        Row row = new Row("content", "id1");
+        row.put("text", text);
+        cache.put(row);
+        Row small = new Row("hierarchy", "id1");
+        small.put("name", "doc");
+        cache.put(small);
+
+        // spans many blocks
+        assertTrue(cache.getBytes() > 10 * OffHeapRowCache.SlabAllocator.BLOCK_SIZE);
+        assertEquals(text, cache.get(new RowId("content", "id1"), ABSENT).get("text"));
+        assertEquals("doc", cache.get(new RowId("hierarchy", "id1"), ABSENT).get("name"));
+        cache.remove(new RowId("content", "id1"));
+        assertNull(cache.get(new RowId("content", "id1"), ABSENT));
+        assertEquals("doc", cache.get(new RowId("hierarchy", "id1"), ABSENT).get("name"));
+    }
+
+    @Test
+    public void testAbsentAndRemove() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024);
+        RowId rowId = new RowId("hierarchy", "id1");
+        assertNull(cache.get(rowId, ABSENT));
+        cache.putAbsent(rowId);
+        assertSame(ABSENT, cache.get(rowId, ABSENT));
+        cache.remove(rowId);
+        assertNull(cache.get(rowId, ABSENT));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        long maxBytes = 100 * 1024;
+        OffHeapRowCache cache = new OffHeapRowCache(maxBytes);
+        long[] evicted = new long[1];
+        long[] bytes = new long[1];
+        cache.setListener(new OffHeapRowCache.Listener() {
+            @Override
+            public void evicted(long weight) {
+                evicted[0]++;
+                bytes[0] -= weight;
+            }
+
+            @Override
+            public void added(long weight) {
+                bytes[0] += weight;
+            }
+
+            @Override
+            public void removed(long weight) {
+                bytes[0] -= weight;
+            }
+        });
+        for (int i = 0; i < 10000; i++) {
+            Row row = new Row("hierarchy", "id" + i);
+            row.put("name", "document number " + i);
+            cache.put(row);
+            assertTrue(cache.getBytes() <= maxBytes);
+        }
+        assertTrue(evicted[0] > 0);
+        assertEquals(cache.getBytes(), bytes[0]);
+        // freed blocks are reused, the direct memory does not grow with the number of rows put
+        assertEquals(OffHeapRowCache.SlabAllocator.SLAB_SIZE, cache.allocator.getAllocatedBytes());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, bytes[0]);
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesAreKept() {
+        OffHeapRowCache cache = new OffHeapRowCache(100 * 1024);
+        RowId hot = new RowId("hierarchy", "hot");
+        Row row = new Row("hierarchy", "hot");
+        row.put("name", "hot");
+        cache.put(row);
+        for (int i = 0; i < 10000; i++) {
+            assertNotNull("hot entry evicted at " + i, cache.get(hot, ABSENT));
+            Row cold = new Row("hierarchy", "cold" + i);
+            cold.put("name", "cold " + i);
+            // cold entries are looked up once before being put, as in a cache miss
+            cache.get(cold, ABSENT);
+            cache.put(cold);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.pubsub.PubSubService;
+import org.nuxeo.ecm.core.storage.sql.VCSCoalescingPubSubInvalidator.SequencedInvalidations;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@Deploy("org.nuxeo.ecm.core.event")
+public class TestVCSCoalescingPubSubInvalidator {
+
+    protected static final String REPOSITORY = "test";
+
+    protected static final long NO_WINDOW = 3600 * 1000;
+
+    @Inject
+    protected PubSubService pubSubService;
+
+    protected VCSCoalescingPubSubInvalidator sender;
+
+    protected VCSCoalescingPubSubInvalidator receiver;
+
+    protected final AtomicInteger messages = new AtomicInteger();
+
+    protected final BiConsumer<String, byte[]> counter = (topic, message) -> messages.incrementAndGet();
+
+    @Before
+    public void setUp() {
+        pubSubService.registerSubscriber("vcs:" + REPOSITORY, counter);
+        receiver = new VCSCoalescingPubSubInvalidator();
+        receiver.initialize("receiver", REPOSITORY, NO_WINDOW, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (sender != null) {
+            sender.close();
+        }
+        receiver.close();
+        pubSubService.unregisterSubscriber("vcs:" + REPOSITORY, counter);
+    }
+
+    protected void initSender(long delay, int maxSize) {
+        sender = new VCSCoalescingPubSubInvalidator();
+        sender.initialize("sender", REPOSITORY, delay, maxSize);
+    }
+
+    protected static Invalidations modified(String id) {
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId("hierarchy", id));
+        return invalidations;
+    }
+
+    protected Invalidations awaitReceived() throws InterruptedException {
+        for (long end = System.currentTimeMillis() + 5000; System.currentTimeMillis() < end;) {
+            Invalidations invalidations = receiver.receiveInvalidations();
+            if (!invalidations.isEmpty()) {
+                return invalidations;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("nothing received in 5s");
+    }
+
+    protected static HashSet<RowId> rowIds(String... ids) {
+        HashSet<RowId> rowIds = new HashSet<>();
+        for (String id : ids) {
+            rowIds.add(new RowId("hierarchy", id));
+        }
+        return rowIds;
+    }
+
+    @Test
+    public void testCoalescingWindow() throws Exception {
+        initSender(500, 1000);
+        sender.sendInvalidations(modified("id1"));
+        sender.sendInvalidations(modified("id2"));
+        // nothing sent before the end of the window
+        assertEquals(0, messages.get());
+        Invalidations invalidations = awaitReceived();
+        assertEquals(rowIds("id1", "id2"), invalidations.modified);
+        assertEquals(1, messages.get());
+    }
+
+    @Test
+    public void testCoalescingMaxSize() throws Exception {
+        initSender(NO_WINDOW, 3);
+        sender.sendInvalidations(modified("id1"));
+        sender.sendInvalidations(modified("id2"));
+        Thread.sleep(100);
+        assertEquals(0, messages.get());
+        // max size reached, sent without waiting for the window
+        sender.sendInvalidations(modified("id3"));
+        Invalidations invalidations = awaitReceived();
+        assertEquals(rowIds("id1", "id2", "id3"), invalidations.modified);
+        assertEquals(1, messages.get());
+    }
+
+    @Test
+    public void testFlushOnClose() throws Exception {
+        initSender(NO_WINDOW, 1000);
+        sender.sendInvalidations(modified("id1"));
+        Thread.sleep(100);
+        assertEquals(0, messages.get());
+        sender.close();
+        sender = null;
+        Invalidations invalidations = awaitReceived();
+        assertEquals(rowIds("id1"), invalidations.modified);
+    }
+
+    protected Invalidations receive(long epoch, long sequence, String id) throws IOException {
+        SequencedInvalidations invalidations = new SequencedInvalidations();
+        invalidations.add(modified(id));
+        invalidations.nodeId = "sender";
+        invalidations.epoch = epoch;
+        invalidations.sequence = sequence;
+        invalidations.sendTime = System.currentTimeMillis();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invalidations.serialize(out);
+        return receiver.deserialize(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testSequenceGap() throws Exception {
+        Invalidations invalidations = receive(1, 1, "id1");
+        assertFalse(invalidations.all);
+        assertEquals(rowIds("id1"), invalidations.modified);
+        invalidations = receive(1, 2, "id2");
+        assertFalse(invalidations.all);
+
+        // message 3 lost
+        invalidations = receive(1, 4, "id4");
+        assertTrue(invalidations.all);
+        assertNull(invalidations.modified);
+
+        // back in sequence
+        invalidations = receive(1, 5, "id5");
+        assertFalse(invalidations.all);
+
+        // sender restarted, its sequence starts again
+        invalidations = receive(2, 1, "id1");
+        assertFalse(invalidations.all);
+        assertEquals(rowIds("id1"), invalidations.modified);
+    }
+
+}
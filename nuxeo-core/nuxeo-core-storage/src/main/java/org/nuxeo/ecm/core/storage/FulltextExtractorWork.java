@@ -87,6 +87,18 @@ public abstract class FulltextExtractorWork extends AbstractWork {
         return TITLE;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The extraction reads the document when it runs, so extractions of the same document can be coalesced.
+     *
+     * @since 9.2
+     */
+    @Override
+    public String getCoalescingKey() {
+        return docId == null ? null : getId();
+    }
+
     @Override
     public int getRetryCount() {
         // even read-only threads may encounter concurrent update exceptions
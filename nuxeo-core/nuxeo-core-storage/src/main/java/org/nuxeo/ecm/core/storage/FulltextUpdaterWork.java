@@ -19,7 +19,13 @@
  */
 package org.nuxeo.ecm.core.storage;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -31,6 +37,7 @@ import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.ecm.core.work.CompactWorkCodec.AbstractWorkSerializer;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 
 /**
@@ -169,4 +176,48 @@ public class FulltextUpdaterWork extends AbstractWork {
         return name;
     }
 
+    /**
+     * Serializer for the compact encoding of the stored works.
+     *
+     * @since 9.2
+     */
+    public static class Serializer extends AbstractWorkSerializer<FulltextUpdaterWork> {
+
+        @Override
+        protected void writeFields(FulltextUpdaterWork work, DataOutput out) throws IOException {
+            out.writeBoolean(work.isSimpleText);
+            out.writeBoolean(work.isJob);
+            out.writeInt(work.indexesAndText.size());
+            for (IndexAndText indexAndText : work.indexesAndText) {
+                writeString(out, indexAndText.indexName);
+                // the text may be longer than what writeUTF allows
+                byte[] bytes = indexAndText.text == null ? null : indexAndText.text.getBytes(UTF_8);
+                out.writeInt(bytes == null ? -1 : bytes.length);
+                if (bytes != null) {
+                    out.write(bytes);
+                }
+            }
+        }
+
+        @Override
+        protected FulltextUpdaterWork readWork(DataInput in) throws IOException {
+            boolean isSimpleText = in.readBoolean();
+            boolean isJob = in.readBoolean();
+            int size = in.readInt();
+            List<IndexAndText> indexesAndText = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String indexName = readString(in);
+                int length = in.readInt();
+                String text = null;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    text = new String(bytes, UTF_8);
+                }
+                indexesAndText.add(new IndexAndText(indexName, text));
+            }
+            return new FulltextUpdaterWork(null, null, isSimpleText, isJob, indexesAndText);
+        }
+    }
+
 }
@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobManagerComponent;
+import org.nuxeo.ecm.core.blob.BlobProviderDescriptor;
+import org.nuxeo.ecm.core.blob.DocumentBlobManager;
+import org.nuxeo.ecm.core.blob.DocumentBlobManagerComponent;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.blob.binary.DefaultBinaryManager;
+import org.nuxeo.ecm.core.blob.binary.LocalBinaryManager;
+import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Binaries GC with a mark split into partitions, using a GC that can be resumed.
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+public class TestBinariesGCParallelMark {
+
+    protected static final int PARTITIONS = 4;
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected BlobManager blobManager;
+
+    @Inject
+    protected DocumentBlobManager documentBlobManager;
+
+    @Inject
+    protected RepositoryService repositoryService;
+
+    protected BlobProviderDescriptor descr;
+
+    @Before
+    public void setUp() throws Exception {
+        // only DBS repositories have several partitions
+        assumeTrue(coreFeature.getStorageConfiguration().isDBS());
+        // a GC that can be resumed
+        descr = new BlobProviderDescriptor();
+        descr.name = session.getRepositoryName();
+        descr.klass = DefaultBinaryManager.class;
+        descr.properties.put(LocalBinaryManager.PROP_GC_MODE, LocalBinaryManager.GC_MODE_PARALLEL);
+        ((BlobManagerComponent) blobManager).registerBlobProvider(descr);
+
+        // GC binaries from previous tests
+        Thread.sleep(3 * 1000);
+        documentBlobManager.garbageCollectBinaries(true);
+
+        // store some binaries
+        for (String str : Arrays.asList("ABC", "DEF", "GHI", "JKL")) {
+            addBinary(str, str);
+            addBinary(str, str + "2");
+        }
+        session.save();
+        // remove some binaries
+        session.removeDocument(new PathRef("/ABC"));
+        session.removeDocument(new PathRef("/ABC2"));
+        session.save();
+        nextTransaction();
+        Thread.sleep(3 * 1000);
+
+        Framework.getProperties().put(DocumentBlobManagerComponent.GC_MARK_PARTITIONS_PROP, String.valueOf(PARTITIONS));
+    }
+
+    @After
+    public void tearDown() {
+        Framework.getProperties().remove(DocumentBlobManagerComponent.GC_MARK_PARTITIONS_PROP);
+        if (descr != null) {
+            ((BlobManagerComponent) blobManager).unregisterBlobProvider(descr);
+        }
+    }
+
+    protected void addBinary(String content, String name) {
+        Blob blob = Blobs.createBlob(content);
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        session.createDocument(doc);
+    }
+
+    protected void nextTransaction() {
+        if (TransactionHelper.isTransactionActiveOrMarkedRollback()) {
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+        }
+    }
+
+    protected Path getMarkCheckpointPath() {
+        return Environment.getDefault()
+                          .getData()
+                          .toPath()
+                          .resolve("binaries-gc")
+                          .resolve("mark-" + session.getRepositoryName());
+    }
+
+    protected void checkStatus(BinaryManagerStatus status) {
+        assertEquals(3, status.numBinaries); // DEF, GHI, JKL
+        assertEquals(3 * 3, status.sizeBinaries);
+        assertEquals(1, status.numBinariesGC); // ABC
+        assertEquals(1 * 3, status.sizeBinariesGC);
+        assertFalse(Files.exists(getMarkCheckpointPath()));
+    }
+
+    @Test
+    public void testParallelMark() throws Exception {
+        checkStatus(documentBlobManager.garbageCollectBinaries(false));
+    }
+
+    @Test
+    public void testParallelMarkResume() throws Exception {
+        Repository repository = repositoryService.getRepository(session.getRepositoryName());
+        List<String> partitions = repository.getBinariesMarkPartitions(PARTITIONS);
+        assertEquals(PARTITIONS, partitions.size());
+
+        // a GC marks the first two partitions, then crashes
+        BinaryGarbageCollector gc = blobManager.getBlobProvider(descr.name).getBinaryManager().getGarbageCollector();
+        gc.start();
+        repository.markReferencedBinaries(partitions.get(0));
+        repository.markReferencedBinaries(partitions.get(1));
+        gc.checkpoint();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(PARTITIONS));
+        lines.addAll(partitions);
+        lines.add("0");
+        lines.add("1");
+        Path checkpoint = getMarkCheckpointPath();
+        Files.createDirectories(checkpoint.getParent());
+        Files.write(checkpoint, lines, UTF_8);
+
+        // restart with a new binary manager
+        ((BlobManagerComponent) blobManager).unregisterBlobProvider(descr);
+        ((BlobManagerComponent) blobManager).registerBlobProvider(descr);
+
+        // the GC resumes with the marks of the first two partitions, and marks the other two
+        checkStatus(documentBlobManager.garbageCollectBinaries(false));
+    }
+
+}
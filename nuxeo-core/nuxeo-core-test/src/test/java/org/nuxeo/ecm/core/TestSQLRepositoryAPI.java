@@ -64,6 +64,7 @@ import org.nuxeo.ecm.core.api.DataModel;
 import org.nuxeo.ecm.core.api.DocumentExistsException;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelIterator;
+import org.nuxeo.ecm.core.api.DocumentModelFactory;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
 import org.nuxeo.ecm.core.api.DocumentRef;
@@ -95,6 +96,8 @@ import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.DocumentBlobManager;
+import org.nuxeo.ecm.core.blob.DocumentBlobManagerComponent;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
@@ -115,6 +118,7 @@ import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
 import org.nuxeo.ecm.core.versioning.VersioningService;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.ConditionalIgnoreRule;
 import org.nuxeo.runtime.test.runner.ConditionalIgnoreRule.IgnoreWindows;
 import org.nuxeo.runtime.test.runner.Deploy;
@@ -651,6 +655,66 @@ public class TestSQLRepositoryAPI {
         assertEquals(name2, returnedChildFiles.get(1).getName());
     }
 
+    @Test
+    public void testCreateDocuments() {
+        DocumentModel existing = session.createDocument(session.createDocumentModel("/", "existing", "File"));
+        List<DocumentModel> docs = new ArrayList<>();
+        // parent created in the same batch as its children
+        docs.add(session.createDocumentModel("/", "folder", "Folder"));
+        for (int i = 0; i < 10; i++) {
+            DocumentModel doc = session.createDocumentModel("/folder", "file" + i, "File");
+            doc.setPropertyValue("dc:title", "file " + i);
+            docs.add(doc);
+        }
+        docs.add(session.createDocumentModel("/", "other", "File"));
+
+        List<DocumentModel> created = session.createDocuments(docs);
+        session.save();
+
+        assertEquals(12, created.size());
+        assertEquals("folder", created.get(0).getName());
+        DocumentModel folder = session.getDocument(new PathRef("/folder"));
+        assertEquals(10, session.getChildren(folder.getRef()).size());
+        for (int i = 0; i < 10; i++) {
+            DocumentModel doc = session.getDocument(new PathRef("/folder/file" + i));
+            assertEquals(created.get(i + 1).getId(), doc.getId());
+            assertEquals("file " + i, doc.getPropertyValue("dc:title"));
+        }
+        assertTrue(session.exists(new PathRef("/other")));
+        assertTrue(session.exists(existing.getRef()));
+    }
+
+    @Test
+    public void testLazySchemas() {
+        for (int i = 0; i < 3; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "file" + i, "File");
+            doc.setPropertyValue("dc:title", "file " + i);
+            doc.setPropertyValue("dc:description", "desc " + i);
+            session.createDocument(doc);
+        }
+        session.save();
+        nextTransaction();
+        reopenSession();
+
+        Framework.getProperties().setProperty(DocumentModelFactory.LAZY_SCHEMAS_PROP, "true");
+        try {
+            DocumentModelList docs = session.query("SELECT * FROM File ORDER BY dc:title");
+            assertEquals(3, docs.size());
+            for (DocumentModel doc : docs) {
+                assertFalse(((DocumentModelImpl) doc).isSchemaLoaded("dublincore"));
+            }
+            // loading the schema for one document loads it for the whole page
+            assertEquals("desc 0", docs.get(0).getPropertyObject("dublincore", "description").getValue());
+            for (DocumentModel doc : docs) {
+                assertTrue(((DocumentModelImpl) doc).isSchemaLoaded("dublincore"));
+            }
+            assertEquals("file 2", docs.get(2).getPropertyValue("dc:title"));
+            assertEquals("desc 2", docs.get(2).getPropertyValue("dc:description"));
+        } finally {
+            Framework.getProperties().remove(DocumentModelFactory.LAZY_SCHEMAS_PROP);
+        }
+    }
+
     @Test
     public void testExists() {
         DocumentModel root = session.getRootDocument();
@@ -4229,6 +4293,39 @@ public class TestSQLRepositoryAPI {
         assertEquals(0, status.sizeBinariesGC);
     }
 
+    @Test
+    @ConditionalIgnoreRule.Ignore(condition = IgnoreWindows.class, cause = "Not enough time granularity")
+    public void testBinaryGCParallelMark() throws Exception {
+        // GC binaries from previous tests
+        Thread.sleep(3 * 1000);
+        runBinariesGC(true, false);
+
+        // store some binaries
+        for (String str : Arrays.asList("ABC", "DEF", "GHI", "JKL")) {
+            addBinary(str, str);
+            addBinary(str, str + "2");
+        }
+        session.save();
+        // remove some binaries
+        session.removeDocument(new PathRef("/ABC"));
+        session.removeDocument(new PathRef("/ABC2"));
+        session.save();
+        nextTransaction();
+
+        Thread.sleep(3 * 1000);
+        Framework.getProperties().put(DocumentBlobManagerComponent.GC_MARK_PARTITIONS_PROP, "4");
+        try {
+            BinaryManagerStatus status = Framework.getService(DocumentBlobManager.class).garbageCollectBinaries(
+                    false);
+            assertEquals(3, status.numBinaries); // DEF, GHI, JKL
+            assertEquals(3 * 3, status.sizeBinaries);
+            assertEquals(1, status.numBinariesGC); // ABC
+            assertEquals(1 * 3, status.sizeBinariesGC);
+        } finally {
+            Framework.getProperties().remove(DocumentBlobManagerComponent.GC_MARK_PARTITIONS_PROP);
+        }
+    }
+
     protected void addBinary(String content, String name) {
         Blob blob = Blobs.createBlob(content);
         DocumentModel doc = session.createDocumentModel("/", name, "File");
@@ -4444,6 +4541,41 @@ public class TestSQLRepositoryAPI {
         assertNotEquals(token2, token2b);
     }
 
+    @Test
+    public void testChangeTokenBulkUpdate() {
+        int n = 200;
+        DocumentModel[] docs = new DocumentModel[n];
+        String[] tokens = new String[n];
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            maybeCreateChangeToken(doc);
+            docs[i] = session.createDocument(doc);
+        }
+        session.save();
+        for (int i = 0; i < n; i++) {
+            tokens[i] = docs[i].getChangeToken();
+        }
+
+        // change all the docs in a single save
+        for (int i = 0; i < n; i++) {
+            docs[i].setPropertyValue("dc:title", "Doc " + i + " Changed");
+            docs[i].setPropertyValue("dc:subjects", new String[] { "foo", "bar" + i });
+            maybeUpdateChangeToken(docs[i]);
+            docs[i] = session.saveDocument(docs[i]);
+        }
+        session.save();
+        nextTransaction();
+        reopenSession();
+
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.getDocument(docs[i].getRef());
+            assertEquals("Doc " + i + " Changed", doc.getPropertyValue("dc:title"));
+            Object[] subjects = (Object[]) doc.getPropertyValue("dc:subjects");
+            assertEquals(Arrays.asList("foo", "bar" + i), Arrays.asList(subjects));
+            assertNotEquals(tokens[i], doc.getChangeToken());
+        }
+    }
+
     // query providers create "search" doc types to collect results
     @Test
     public void testChangeTokenOnFakeDocument() {
@@ -2277,6 +2277,31 @@ public class TestSQLRepositoryQuery {
         res.close();
     }
 
+    @Test
+    public void testQueryAndFetchStream() throws Exception {
+        createDocs();
+
+        String query = "SELECT ecm:uuid, dc:title FROM File ORDER BY dc:title";
+        List<String> titles = new ArrayList<>();
+        try (IterableQueryResult res = session.queryAndFetchStream(query, "NXQL", 2)) {
+            // size is unknown when streamed from the database
+            assertTrue(res.size() == -1 || res.size() == 3);
+            for (Map<String, Serializable> map : res) {
+                titles.add((String) map.get("dc:title"));
+            }
+        }
+        assertEquals(Arrays.asList("testfile1_Title", "testfile2_Title", "testfile4Title"), titles);
+
+        // skip forward
+        try (IterableQueryResult res = session.queryAndFetchStream(query, "NXQL", 1)) {
+            res.skipTo(1);
+            Iterator<Map<String, Serializable>> it = res.iterator();
+            assertEquals("testfile2_Title", it.next().get("dc:title"));
+            assertEquals("testfile4Title", it.next().get("dc:title"));
+            assertFalse(it.hasNext());
+        }
+    }
+
     @Test
     public void testQueryProjectionDistinctId() throws Exception {
         makeComplexDoc();
@@ -50,9 +50,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
@@ -64,7 +67,9 @@ import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.event.DocumentEventCategories;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.api.facet.VersioningDocument;
+import org.nuxeo.ecm.core.api.impl.DataModelLoadGroup;
 import org.nuxeo.ecm.core.api.impl.DocumentModelChildrenIterator;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.impl.FacetFilter;
 import org.nuxeo.ecm.core.api.impl.UserPrincipal;
@@ -92,6 +97,7 @@ import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery.Transformer;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.FacetNames;
+import org.nuxeo.ecm.core.schema.PrefetchInfo;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.types.CompositeType;
 import org.nuxeo.ecm.core.schema.types.Schema;
@@ -152,6 +158,12 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
     protected Counter updateDocumentCount;
 
+    // @since 9.2
+    protected Counter deferredSchemasCount;
+
+    // @since 9.2
+    protected Counter lazyLoadedSchemasCount;
+
     protected void createMetrics() {
         createDocumentCount = registry.counter(
                 MetricRegistry.name("nuxeo.repositories", getRepositoryName(), "documents", "create"));
@@ -159,6 +171,10 @@ public abstract class AbstractSession implements CoreSession, Serializable {
                 MetricRegistry.name("nuxeo.repositories", getRepositoryName(), "documents", "delete"));
         updateDocumentCount = registry.counter(
                 MetricRegistry.name("nuxeo.repositories", getRepositoryName(), "documents", "update"));
+        deferredSchemasCount = registry.counter(
+                MetricRegistry.name("nuxeo.repositories", getRepositoryName(), "documents", "schemas-deferred"));
+        lazyLoadedSchemasCount = registry.counter(
+                MetricRegistry.name("nuxeo.repositories", getRepositoryName(), "documents", "schemas-lazy-loaded"));
     }
 
     /**
@@ -351,7 +367,30 @@ public abstract class AbstractSession implements CoreSession, Serializable {
      * @return the document model
      */
     protected DocumentModel readModel(Document doc) {
-        return DocumentModelFactory.createDocumentModel(doc, getSessionId(), null);
+        DocumentModelImpl docModel = DocumentModelFactory.createDocumentModel(doc, getSessionId(), null);
+        if (DocumentModelFactory.isLazySchemas()) {
+            PrefetchInfo prefetchInfo = doc.getType().getPrefetchInfo();
+            String[] prefetchSchemas = prefetchInfo == null ? null : prefetchInfo.getSchemas();
+            if (prefetchSchemas != null) {
+                for (String schema : prefetchSchemas) {
+                    if (docModel.hasSchema(schema) && !docModel.isSchemaLoaded(schema)) {
+                        deferredSchemasCount.inc();
+                    }
+                }
+            }
+        }
+        return docModel;
+    }
+
+    /**
+     * Groups the document models of a list so that their data models are lazily loaded together.
+     *
+     * @since 9.2
+     */
+    protected void groupLazyLoads(List<DocumentModel> docModels) {
+        if (DocumentModelFactory.isLazySchemas()) {
+            DataModelLoadGroup.attach(docModels);
+        }
     }
 
     /**
@@ -653,6 +692,16 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
     @Override
     public DocumentModel createDocument(DocumentModel docModel) {
+        return createDocument(docModel, null);
+    }
+
+    /**
+     * Creates a document, possibly as part of a batch.
+     *
+     * @param batch the batch, or {@code null} for a single document
+     * @since 9.2
+     */
+    protected DocumentModel createDocument(DocumentModel docModel, CreateBatch batch) {
 
         // start by removing disallowed characters
         CharacterFilteringService charFilteringService = Framework.getService(CharacterFilteringService.class);
@@ -681,7 +730,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             }
         }
 
-        Document folder = fillCreateOptions(parentRef, childName, options);
+        Document folder = batch == null ? fillCreateOptions(parentRef, childName, options)
+                : batch.fillCreateOptions(parentRef, childName, options);
 
         // get initial life cycle state info
         String initialLifecycleState = null;
@@ -693,6 +743,9 @@ public abstract class AbstractSession implements CoreSession, Serializable {
                                                                                                      // yet
         childName = (String) options.get(CoreEventConstants.DESTINATION_NAME);
         Document doc = folder.addChild(childName, typeName);
+        if (batch != null) {
+            batch.childAdded(parentRef, childName);
+        }
 
         // update facets too since some of them may be dynamic
         for (String facetName : docModel.getFacets()) {
@@ -760,6 +813,139 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return folder;
     }
 
+    /**
+     * Maximum number of names looked up in one query by {@link CreateBatch}.
+     *
+     * @since 9.2
+     */
+    protected static final int CREATE_BATCH_NAMES_QUERY_SIZE = 100;
+
+    /**
+     * Parent of documents created in a batch, resolved and checked once.
+     *
+     * @since 9.2
+     */
+    protected static class CreateParent {
+
+        protected final Document folder;
+
+        protected final String path;
+
+        /** The names of the batch already used by children. */
+        protected final Set<String> existingNames;
+
+        protected CreateParent(Document folder, Set<String> existingNames) {
+            this.folder = folder;
+            path = folder.getPath();
+            this.existingNames = existingNames;
+        }
+    }
+
+    /**
+     * State shared by the documents created by {@link #createDocuments}.
+     * <p>
+     * Parents are resolved lazily, when their first child is created, as they may themselves be created by the same
+     * batch.
+     *
+     * @since 9.2
+     */
+    protected class CreateBatch {
+
+        /** The names of the documents to create, by parent. */
+        protected final Map<DocumentRef, Set<String>> namesByParent = new HashMap<>();
+
+        protected final Map<DocumentRef, CreateParent> parents = new HashMap<>();
+
+        protected CreateBatch(List<DocumentModel> docModels) {
+            for (DocumentModel docModel : docModels) {
+                DocumentRef parentRef = docModel.getParentRef();
+                String name = docModel.getName();
+                if (parentRef == null || EMPTY_PATH.equals(parentRef) || name == null) {
+                    continue;
+                }
+                namesByParent.computeIfAbsent(parentRef, k -> new HashSet<>()).add(name);
+            }
+        }
+
+        protected Document fillCreateOptions(DocumentRef parentRef, String childName,
+                Map<String, Serializable> options) {
+            if (parentRef == null || EMPTY_PATH.equals(parentRef)) {
+                return AbstractSession.this.fillCreateOptions(parentRef, childName, options);
+            }
+            CreateParent parent = getParent(parentRef);
+            options.put(CoreEventConstants.DESTINATION_REF, parentRef);
+            options.put(CoreEventConstants.DESTINATION_PATH, parent.path);
+            options.put(CoreEventConstants.DESTINATION_NAME, childName);
+            boolean exists;
+            if (Boolean.TRUE.equals(options.get(CoreSession.SKIP_DESTINATION_CHECK_ON_CREATE))) {
+                exists = false;
+            } else if (childName == null || getNames(parentRef).contains(childName)) {
+                exists = parent.existingNames.contains(childName);
+            } else {
+                // name changed since the batch was prepared
+                exists = parent.folder.hasChild(childName);
+            }
+            options.put(CoreEventConstants.DESTINATION_EXISTS, exists);
+            return parent.folder;
+        }
+
+        protected CreateParent getParent(DocumentRef parentRef) {
+            CreateParent parent = parents.get(parentRef);
+            if (parent == null) {
+                Document folder = resolveReference(parentRef);
+                checkPermission(folder, ADD_CHILDREN);
+                parent = new CreateParent(folder, getExistingChildNames(folder, getNames(parentRef)));
+                parents.put(parentRef, parent);
+            }
+            return parent;
+        }
+
+        protected Set<String> getNames(DocumentRef parentRef) {
+            return namesByParent.getOrDefault(parentRef, Collections.emptySet());
+        }
+
+        protected void childAdded(DocumentRef parentRef, String childName) {
+            CreateParent parent = parents.get(parentRef);
+            if (parent != null && childName != null) {
+                // later documents of the batch with the same name must see it
+                parent.existingNames.add(childName);
+            }
+        }
+    }
+
+    /**
+     * Finds which of the given names are already used by children of the given folder.
+     *
+     * @since 9.2
+     */
+    protected Set<String> getExistingChildNames(Document folder, Collection<String> names) {
+        Set<String> existing = new HashSet<>();
+        List<String> list = new ArrayList<>(names);
+        for (int i = 0; i < list.size(); i += CREATE_BATCH_NAMES_QUERY_SIZE) {
+            List<String> chunk = list.subList(i, Math.min(i + CREATE_BATCH_NAMES_QUERY_SIZE, list.size()));
+            String query = String.format("SELECT %s FROM Document WHERE %s = %s AND %s IN (%s)", NXQL.ECM_NAME,
+                    NXQL.ECM_PARENTID, NXQL.escapeString(folder.getUUID()), NXQL.ECM_NAME,
+                    chunk.stream().map(NXQL::escapeString).collect(Collectors.joining(", ")));
+            PartialList<Map<String, Serializable>> res = getSession().queryProjection(query, NXQL.NXQL,
+                    QueryFilter.EMPTY, false, 0, null);
+            for (Map<String, Serializable> map : res.list) {
+                existing.add((String) map.get(NXQL.ECM_NAME));
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public List<DocumentModel> createDocuments(List<DocumentModel> docModels) {
+        CreateBatch batch = new CreateBatch(docModels);
+        getSession().reserveIds(docModels.size());
+        List<DocumentModel> models = new ArrayList<>(docModels.size());
+        for (DocumentModel docModel : docModels) {
+            models.add(createDocument(docModel, batch));
+        }
+        return models;
+    }
+
     @Override
     public void importDocuments(List<DocumentModel> docModels) {
         docModels.forEach(this::importDocument);
@@ -819,13 +1005,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
     @Override
     public DocumentModel[] createDocument(DocumentModel[] docModels) {
-        DocumentModel[] models = new DocumentModel[docModels.length];
-        int i = 0;
-        // TODO: optimize this (do not call at each iteration createDocument())
-        for (DocumentModel docModel : docModels) {
-            models[i++] = createDocument(docModel);
-        }
-        return models;
+        List<DocumentModel> models = createDocuments(Arrays.asList(docModels));
+        return models.toArray(new DocumentModel[models.size()]);
     }
 
     @Override
@@ -1179,6 +1360,7 @@ public abstract class AbstractSession implements CoreSession, Serializable {
 
             if (!postFilter) {
                 // the backend has done all the needed filtering
+                groupLazyLoads(dms);
                 return dms;
             }
 
@@ -1216,6 +1398,7 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             if (countUpTo != 0) {
                 docs.setTotalSize(n);
             }
+            groupLazyLoads(docs);
             return docs;
         } catch (QueryParseException e) {
             e.addInfo("Failed to execute query: " + query);
@@ -1231,6 +1414,24 @@ public abstract class AbstractSession implements CoreSession, Serializable {
     @Override
     public IterableQueryResult queryAndFetch(String query, String queryType, boolean distinctDocuments,
             Object... params) {
+        return queryAndFetch(query, queryType, distinctDocuments, 0, params);
+    }
+
+    @Override
+    public IterableQueryResult queryAndFetchStream(String query, String queryType, int fetchSize,
+            Object... params) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Invalid fetch size: " + fetchSize);
+        }
+        return queryAndFetch(query, queryType, false, fetchSize, params);
+    }
+
+    /**
+     * @param fetchSize the number of results to fetch at a time when streaming them, or {@code 0}
+     * @since 9.2
+     */
+    protected IterableQueryResult queryAndFetch(String query, String queryType, boolean distinctDocuments,
+            int fetchSize, Object... params) {
         try {
             SecurityService securityService = getSecurityService();
             Principal principal = getPrincipal();
@@ -1239,7 +1440,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             String[] permissions = securityService.getPermissionsToCheck(permission);
             Collection<Transformer> transformers = getPoliciesQueryTransformers(queryType);
 
-            QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+            QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0,
+                    fetchSize);
             IterableQueryResult result = getSession().queryAndFetch(query, queryType, queryFilter, distinctDocuments,
                     params);
             return result;
@@ -1991,9 +2193,37 @@ public abstract class AbstractSession implements CoreSession, Serializable {
     public DataModel getDataModel(DocumentRef docRef, Schema schema) {
         Document doc = resolveReference(docRef);
         checkPermission(doc, READ);
+        lazyLoadedSchemasCount.inc();
         return DocumentModelFactory.createDataModel(doc, schema);
     }
 
+    @Override
+    public DataModel[] getDataModels(DocumentRef[] docRefs, Schema schema) {
+        List<Document> docs = new ArrayList<>(docRefs.length);
+        for (DocumentRef docRef : docRefs) {
+            Document doc;
+            try {
+                doc = resolveReference(docRef);
+                checkPermission(doc, READ);
+            } catch (DocumentNotFoundException | DocumentSecurityException e) {
+                doc = null;
+            }
+            docs.add(doc);
+        }
+        List<Document> readable = new ArrayList<>(docs);
+        readable.removeIf(Objects::isNull);
+        getSession().prefetchSchema(readable, schema.getName());
+        DataModel[] dataModels = new DataModel[docRefs.length];
+        for (int i = 0; i < dataModels.length; i++) {
+            Document doc = docs.get(i);
+            if (doc != null) {
+                dataModels[i] = DocumentModelFactory.createDataModel(doc, schema);
+            }
+        }
+        lazyLoadedSchemasCount.inc(readable.size());
+        return dataModels;
+    }
+
     protected Object getDataModelField(DocumentRef docRef, String schema, String field) {
         Document doc = resolveReference(docRef);
         if (doc != null) {
@@ -57,6 +57,14 @@ public class DocumentModelFactory {
 
     private static final Log log = LogFactory.getLog(DocumentModelFactory.class);
 
+    /**
+     * If {@code true}, the data models of the prefetched schemas are not built when a document model is read. Their
+     * simple properties are still available through the prefetch, and the data models are loaded on first access.
+     *
+     * @since 9.2
+     */
+    public static final String LAZY_SCHEMAS_PROP = "org.nuxeo.core.documentModel.lazySchemas";
+
     // Utility class.
     private DocumentModelFactory() {
     }
@@ -129,7 +137,7 @@ public class DocumentModelFactory {
 
         // populate datamodels
         List<String> loadSchemas = new LinkedList<String>();
-        if (schemas == null) {
+        if (schemas == null && !isLazySchemas()) {
             schemas = prefetchSchemas;
         }
         if (schemas != null) {
@@ -168,6 +176,15 @@ public class DocumentModelFactory {
         return docModel;
     }
 
+    /**
+     * Checks if the data models of the prefetched schemas are loaded lazily.
+     *
+     * @since 9.2
+     */
+    public static boolean isLazySchemas() {
+        return Framework.isBooleanPropertyTrue(LAZY_SCHEMAS_PROP);
+    }
+
     /**
      * Returns a document model computed from its type, querying the {@link SchemaManager} service.
      * <p>
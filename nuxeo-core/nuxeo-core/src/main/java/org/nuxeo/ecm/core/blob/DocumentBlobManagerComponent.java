@@ -18,15 +18,33 @@
  */
 package org.nuxeo.ecm.core.blob;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -42,6 +60,7 @@ import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 
 /**
  * Implementation of the service managing {@link Blob}s associated to a {@link Document} or a repository.
@@ -56,8 +75,36 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
 
     protected static BlobDispatcher DEFAULT_BLOB_DISPATCHER = new DefaultBlobDispatcher();
 
+    /**
+     * Framework property for the number of partitions of each repository whose binaries are marked in parallel during a
+     * binaries GC. By default the binaries are marked sequentially.
+     *
+     * @since 9.2
+     */
+    public static final String GC_MARK_PARTITIONS_PROP = "nuxeo.binarymanager.gc.mark.partitions";
+
+    /**
+     * Framework property for the maximum duration in seconds of a parallel mark, after which the binaries GC fails.
+     *
+     * @since 9.2
+     */
+    public static final String GC_MARK_TIMEOUT_PROP = "nuxeo.binarymanager.gc.mark.timeout";
+
+    /** @since 9.2 */
+    public static final long GC_MARK_TIMEOUT_DEFAULT = TimeUnit.HOURS.toSeconds(24);
+
+    protected static final String GC_MARK_CHECKPOINT_DIR = "binaries-gc";
+
+    protected static final String GC_MARK_CHECKPOINT_PREFIX = "mark-";
+
     protected Deque<BlobDispatcherDescriptor> blobDispatcherDescriptorsRegistry = new LinkedList<>();
 
+    /**
+     * The keys already marked during a parallel mark, to mark each binary only once for the garbage collectors that
+     * don't deduplicate the marks themselves.
+     */
+    protected volatile Set<String> markedKeys;
+
     @Override
     public void deactivate(ComponentContext context) {
         blobDispatcherDescriptorsRegistry.clear();
@@ -243,10 +290,15 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         }
         // in all repositories, mark referenced binaries
         // the marking itself will call back into the appropriate gc's mark method
-        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
-        for (String repositoryName : repositoryService.getRepositoryNames()) {
-            Repository repository = repositoryService.getRepository(repositoryName);
-            repository.markReferencedBinaries();
+        int numPartitions = Integer.parseInt(Framework.getProperty(GC_MARK_PARTITIONS_PROP, "1"));
+        if (numPartitions > 1) {
+            markReferencedBinariesInParallel(gcs, numPartitions);
+        } else {
+            RepositoryService repositoryService = Framework.getService(RepositoryService.class);
+            for (String repositoryName : repositoryService.getRepositoryNames()) {
+                Repository repository = repositoryService.getRepository(repositoryName);
+                repository.markReferencedBinaries();
+            }
         }
         // stop gc
         BinaryManagerStatus globalStatus = new BinaryManagerStatus();
@@ -262,17 +314,144 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         return globalStatus;
     }
 
+    /**
+     * Marks the referenced binaries of all the repositories, splitting each repository into partitions marked in
+     * parallel.
+     * <p>
+     * The partitions are marked by threads local to this node, as the marks go to the garbage collectors started here.
+     * If the mark does not finish within {@link #GC_MARK_TIMEOUT_PROP} seconds, the GC fails.
+     * <p>
+     * If all the garbage collectors can be resumed, the partitions already marked are recorded in a checkpoint file per
+     * repository, so that a mark interrupted by a crash only marks the remaining partitions when the GC is run again.
+     *
+     * @since 9.2
+     */
+    protected void markReferencedBinariesInParallel(List<BinaryGarbageCollector> gcs, int numPartitions) {
+        boolean resumable = gcs.stream().allMatch(BinaryGarbageCollector::checkpoint);
+        long timeout = Long.parseLong(
+                Framework.getProperty(GC_MARK_TIMEOUT_PROP, String.valueOf(GC_MARK_TIMEOUT_DEFAULT)));
+        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numPartitions, r -> {
+            Thread thread = new Thread(r, "Nuxeo-BinariesGCMark-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Path> checkpoints = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        if (!gcs.stream().allMatch(BinaryGarbageCollector::deduplicatesMarks)) {
+            markedKeys = ConcurrentHashMap.newKeySet();
+        }
+        try {
+            for (String repositoryName : repositoryService.getRepositoryNames()) {
+                Repository repository = repositoryService.getRepository(repositoryName);
+                Path checkpoint = getMarkCheckpointPath(repositoryName);
+                checkpoints.add(checkpoint);
+                List<String> partitions;
+                Set<String> done;
+                if (resumable && Files.exists(checkpoint)) {
+                    // number of partitions, partitions, then indexes of the partitions done
+                    List<String> lines = Files.readAllLines(checkpoint, UTF_8);
+                    int n = Integer.parseInt(lines.get(0));
+                    partitions = lines.subList(1, n + 1);
+                    done = new HashSet<>(lines.subList(n + 1, lines.size()));
+                    log.info("Resuming binaries mark for repository: " + repositoryName + ", " + done.size() + "/" + n
+                            + " partitions already done");
+                } else {
+                    partitions = repository.getBinariesMarkPartitions(numPartitions);
+                    done = Collections.emptySet();
+                    Files.deleteIfExists(checkpoint);
+                    if (resumable) {
+                        List<String> lines = new ArrayList<>();
+                        lines.add(String.valueOf(partitions.size()));
+                        lines.addAll(partitions);
+                        Files.createDirectories(checkpoint.getParent());
+                        Files.write(checkpoint, lines, UTF_8);
+                    }
+                }
+                for (int i = 0; i < partitions.size(); i++) {
+                    if (done.contains(String.valueOf(i))) {
+                        continue;
+                    }
+                    String partition = partitions.get(i);
+                    CompletableFuture<Void> future = CompletableFuture.runAsync(
+                            () -> markReferencedBinaries(repository, partition), executor);
+                    if (resumable) {
+                        int index = i;
+                        future = future.thenRun(() -> checkpointPartition(gcs, checkpoint, index));
+                    }
+                    futures.add(future);
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                             .get(timeout, TimeUnit.SECONDS);
+            for (Path checkpoint : checkpoints) {
+                Files.deleteIfExists(checkpoint);
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot mark binaries", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            throw new NuxeoException("Cannot mark binaries", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NuxeoException("Binaries mark not finished after " + timeout + "s", e);
+        } finally {
+            executor.shutdownNow();
+            markedKeys = null;
+        }
+    }
+
+    /**
+     * Marks the referenced binaries of a partition of a repository.
+     *
+     * @since 9.2
+     */
+    protected void markReferencedBinaries(Repository repository, String partition) {
+        log.debug("Marking binaries of " + repository.getName() + " partition " + partition);
+        TransactionHelper.runInTransaction(() -> repository.markReferencedBinaries(partition));
+    }
+
+    protected Path getMarkCheckpointPath(String repositoryName) {
+        return Environment.getDefault()
+                          .getData()
+                          .toPath()
+                          .resolve(GC_MARK_CHECKPOINT_DIR)
+                          .resolve(GC_MARK_CHECKPOINT_PREFIX + repositoryName);
+    }
+
+    /**
+     * Records that a partition has been marked, once the garbage collectors have made its marks durable.
+     */
+    protected synchronized void checkpointPartition(List<BinaryGarbageCollector> gcs, Path checkpoint, int index) {
+        for (BinaryGarbageCollector gc : gcs) {
+            gc.checkpoint();
+        }
+        try {
+            Files.write(checkpoint, (index + "\n").getBytes(UTF_8), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void markReferencedBinary(String key, String repositoryName) {
         BlobProvider blobProvider = getBlobProvider(key, repositoryName);
         BinaryManager binaryManager = blobProvider.getBinaryManager();
         if (binaryManager != null) {
+            BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+            Set<String> marked = markedKeys;
+            if (marked != null && !gc.deduplicatesMarks() && !marked.add(key)) {
+                // already marked during this GC
+                return;
+            }
             int colon = key.indexOf(':');
             if (colon > 0) {
                 // if the key is in the "providerId:digest" format, keep only the real digest
                 key = key.substring(colon + 1);
             }
-            binaryManager.getGarbageCollector().mark(key);
+            gc.mark(key);
         } else {
             log.error("Unknown binary manager for key: " + key);
         }
@@ -21,6 +21,9 @@
 
 package org.nuxeo.ecm.core.model;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Interface to manage a low-level repository.
  */
@@ -41,4 +44,31 @@ public interface Repository {
      */
     void markReferencedBinaries();
 
+    /**
+     * Splits the documents of the repository into partitions whose binaries can be marked independently and in
+     * parallel, see {@link #markReferencedBinaries(String)}.
+     * <p>
+     * The default implementation returns a single partition containing all the documents.
+     *
+     * @param max the maximum number of partitions
+     * @return the partitions, as strings that can be persisted and reused later
+     * @since 9.2
+     */
+    default List<String> getBinariesMarkPartitions(int max) {
+        return Collections.singletonList("");
+    }
+
+    /**
+     * Marks the binaries in use by the documents of a partition, by passing them to the binary manager(s)'s GC mark()
+     * method.
+     * <p>
+     * May be called concurrently for different partitions.
+     *
+     * @param partition a partition returned by {@link #getBinariesMarkPartitions}
+     * @since 9.2
+     */
+    default void markReferencedBinaries(String partition) {
+        markReferencedBinaries();
+    }
+
 }
@@ -238,4 +238,22 @@ public interface Session {
      */
     Map<String, String> getBinaryFulltext(String id);
 
+    /**
+     * Notifies the session that the given number of documents are about to be created, so that their ids can be
+     * allocated in one block.
+     *
+     * @since 9.2
+     */
+    void reserveIds(int count);
+
+    /**
+     * Fetches in bulk the data of the given schema for several documents, so that reading it for each of them afterwards
+     * doesn't need a separate access to the storage.
+     *
+     * @param docs the documents
+     * @param schema the schema name
+     * @since 9.2
+     */
+    void prefetchSchema(List<Document> docs, String schema);
+
 }
@@ -65,6 +65,12 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
         return " ElasticSearch bucket indexer size " + documentCount;
     }
 
+    @Override
+    public Priority getPriority() {
+        // bulk reindexing must not delay the indexing of user changes
+        return Priority.BATCH;
+    }
+
     @Override
     protected void doWork() {
         ElasticSearchIndexing esi = Framework.getLocalService(ElasticSearchIndexing.class);
@@ -62,6 +62,12 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         return "Elasticsearch scrolling indexer: " + nxql + ", processed " + documentCount;
     }
 
+    @Override
+    public Priority getPriority() {
+        // bulk reindexing must not delay the indexing of user changes
+        return Priority.BATCH;
+    }
+
     @Override
     protected void doWork() {
         String jobName = getSchedulePath().getPath();